@@ -0,0 +1,357 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Robert "Unlogic" Olofsson (unlogic@unlogic.se).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-3.0-standalone.html
+ ******************************************************************************/
+package se.unlogic.eagledns;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+import se.unlogic.standardutils.time.MillisecondTimeUnits;
+
+/**
+ * Cache of rendered responses in wire format.
+ * <p>
+ * Responses are keyed by the raw question section of the query (which keeps the case of the query name that is echoed in the response), the DNSSEC OK
+ * bit, whether the query contained an OPT record and the bucket of the maximum response length. Keys are created directly from the raw query so a hit
+ * never needs to parse the query, only the message ID and RD flag of the cached response are patched.
+ * <p>
+ * Only authoritative NOERROR and NXDOMAIN responses are cached, for at most the lowest TTL of the records they contain. The cache must be cleared
+ * whenever the zone data changes.
+ *
+ * @author Robert "Unlogic" Olofsson (unlogic@unlogic.se)
+ *
+ */
+public class AnswerCache {
+
+	private static final int[] PAYLOAD_BUCKETS = { 512, 1232, 1472, 4096 };
+
+	private final int maxSize;
+	private final long maxTTL;
+
+	private final ConcurrentHashMap<CacheKey, CacheEntry> entryMap = new ConcurrentHashMap<CacheKey, CacheEntry>();
+
+	/**
+	 * @param maxSize the maximum number of responses to cache, 0 disables the cache
+	 * @param maxTTL the maximum time in seconds to cache a response
+	 */
+	public AnswerCache(int maxSize, long maxTTL) {
+
+		this.maxSize = maxSize;
+		this.maxTTL = maxTTL;
+	}
+
+	/**
+	 * Returns the cached response for the given raw query with the message ID and RD flag of the query.
+	 *
+	 * @return the response in wire format or null if no valid response is cached for the query
+	 */
+	public byte[] get(byte[] in, int length, boolean tcp) {
+
+		if (entryMap.isEmpty()) {
+			return null;
+		}
+
+		CacheKey key = createKey(in, length, tcp);
+
+		if (key == null) {
+			return null;
+		}
+
+		CacheEntry entry = entryMap.get(key);
+
+		if (entry == null) {
+			return null;
+		}
+
+		if (entry.getExpires() <= System.currentTimeMillis()) {
+
+			entryMap.remove(key, entry);
+			return null;
+		}
+
+		if (!entry.fits(key.getMaxLength())) {
+			return null;
+		}
+
+		byte[] wire = entry.getWire().clone();
+
+		wire[0] = in[0];
+		wire[1] = in[1];
+		wire[2] = (byte) ((wire[2] & ~0x01) | (in[2] & 0x01));
+
+		return wire;
+	}
+
+	/**
+	 * Caches the given response if it is cacheable.
+	 *
+	 * @param in the raw query
+	 * @param length the length of the raw query
+	 * @param tcp true if the query was received over TCP
+	 * @param response the response
+	 * @param wire the response rendered in wire format for the query
+	 */
+	public void put(byte[] in, int length, boolean tcp, Message response, byte[] wire) {
+
+		if (maxSize == 0 || !response.getHeader().getFlag(Flags.AA) || response.getTSIG() != null) {
+			return;
+		}
+
+		int rcode = response.getHeader().getRcode();
+
+		if (rcode != Rcode.NOERROR && rcode != Rcode.NXDOMAIN) {
+			return;
+		}
+
+		CacheKey key = createKey(in, length, tcp);
+
+		if (key == null) {
+			return;
+		}
+
+		long ttl = maxTTL;
+
+		for (int section = Section.ANSWER; section <= Section.ADDITIONAL; section++) {
+
+			for (Record record : response.getSectionArray(section)) {
+
+				if (record.getType() != Type.OPT) {
+
+					ttl = Math.min(ttl, record.getTTL());
+				}
+			}
+		}
+
+		if (ttl <= 0) {
+			return;
+		}
+
+		if (entryMap.size() >= maxSize) {
+
+			//Evict an arbitrary entry, the cache is meant to hold the working set of hot names and is sized accordingly
+			Iterator<CacheKey> iterator = entryMap.keySet().iterator();
+
+			if (iterator.hasNext()) {
+
+				iterator.next();
+				iterator.remove();
+			}
+		}
+
+		boolean truncated = (wire[2] & 0x02) != 0;
+
+		entryMap.put(key, new CacheEntry(wire, key.getMaxLength(), truncated, System.currentTimeMillis() + ttl * MillisecondTimeUnits.SECOND));
+	}
+
+	public void clear() {
+
+		entryMap.clear();
+	}
+
+	public int size() {
+
+		return entryMap.size();
+	}
+
+	/**
+	 * Parses the header, question and optional OPT record of a raw query without creating a {@link Message}.
+	 *
+	 * @return the cache key of the query or null if the query is not a plain single question query
+	 */
+	private static CacheKey createKey(byte[] in, int length, boolean tcp) {
+
+		if (length < 12) {
+			return null;
+		}
+
+		//QR set, opcode other than QUERY or rcode other than NOERROR
+		if ((in[2] & 0xF8) != 0 || (in[3] & 0x0F) != 0) {
+			return null;
+		}
+
+		if (readShort(in, 4) != 1 || readShort(in, 6) != 0 || readShort(in, 8) != 0) {
+			return null;
+		}
+
+		int additionalCount = readShort(in, 10);
+
+		if (additionalCount > 1) {
+			return null;
+		}
+
+		int pos = 12;
+
+		while (true) {
+
+			if (pos >= length) {
+				return null;
+			}
+
+			int labelLength = in[pos] & 0xFF;
+
+			if (labelLength == 0) {
+
+				pos++;
+				break;
+			}
+
+			if ((labelLength & 0xC0) != 0) {
+				return null;
+			}
+
+			pos += labelLength + 1;
+		}
+
+		if (pos + 4 > length) {
+			return null;
+		}
+
+		int type = readShort(in, pos);
+
+		if (!Type.isRR(type) && type != Type.ANY) {
+			return null;
+		}
+
+		pos += 4;
+
+		byte[] question = Arrays.copyOfRange(in, 12, pos);
+
+		boolean opt = false;
+		boolean dnssecOK = false;
+		int maxLength = 512;
+
+		if (additionalCount == 1) {
+
+			//The only additional record allowed is an OPT record with the root name, queries with TSIG records are never cached
+			if (pos + 11 > length || in[pos] != 0 || readShort(in, pos + 1) != Type.OPT) {
+				return null;
+			}
+
+			opt = true;
+			dnssecOK = (readShort(in, pos + 7) & 0x8000) != 0;
+			maxLength = Math.max(readShort(in, pos + 3), 512);
+		}
+
+		if (tcp) {
+			maxLength = 65535;
+		}
+
+		return new CacheKey(question, opt, dnssecOK, maxLength);
+	}
+
+	private static int readShort(byte[] in, int pos) {
+
+		return ((in[pos] & 0xFF) << 8) | (in[pos + 1] & 0xFF);
+	}
+
+	private static class CacheKey {
+
+		private final byte[] question;
+		private final boolean opt;
+		private final boolean dnssecOK;
+		private final int payloadBucket;
+		private final int maxLength;
+		private final int hashCode;
+
+		public CacheKey(byte[] question, boolean opt, boolean dnssecOK, int maxLength) {
+
+			this.question = question;
+			this.opt = opt;
+			this.dnssecOK = dnssecOK;
+			this.maxLength = maxLength;
+
+			int payloadBucket = PAYLOAD_BUCKETS.length;
+
+			for (int i = 0; i < PAYLOAD_BUCKETS.length; i++) {
+
+				if (maxLength <= PAYLOAD_BUCKETS[i]) {
+
+					payloadBucket = i;
+					break;
+				}
+			}
+
+			this.payloadBucket = payloadBucket;
+
+			this.hashCode = ((Arrays.hashCode(question) * 31 + payloadBucket) * 31 + (opt ? 1 : 0)) * 31 + (dnssecOK ? 1 : 0);
+		}
+
+		public int getMaxLength() {
+
+			return maxLength;
+		}
+
+		@Override
+		public int hashCode() {
+
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+
+			if (this == obj) {
+				return true;
+			}
+
+			if (!(obj instanceof CacheKey)) {
+				return false;
+			}
+
+			CacheKey other = (CacheKey) obj;
+
+			return hashCode == other.hashCode && payloadBucket == other.payloadBucket && opt == other.opt && dnssecOK == other.dnssecOK && Arrays.equals(question, other.question);
+		}
+	}
+
+	private static class CacheEntry {
+
+		private final byte[] wire;
+		private final int maxLength;
+		private final boolean truncated;
+		private final long expires;
+
+		public CacheEntry(byte[] wire, int maxLength, boolean truncated, long expires) {
+
+			this.wire = wire;
+			this.maxLength = maxLength;
+			this.truncated = truncated;
+			this.expires = expires;
+		}
+
+		public byte[] getWire() {
+
+			return wire;
+		}
+
+		public long getExpires() {
+
+			return expires;
+		}
+
+		/**
+		 * @return true if this response is identical to the one that would be rendered for the given maximum response length
+		 */
+		public boolean fits(int maxLength) {
+
+			if (truncated) {
+
+				return this.maxLength == maxLength;
+			}
+
+			return wire.length <= maxLength;
+		}
+	}
+}
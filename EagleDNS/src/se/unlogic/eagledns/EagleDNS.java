@@ -17,6 +17,7 @@ import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.nio.channels.DatagramChannel;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -51,6 +52,8 @@ import org.xbill.DNS.Zone;
 
 import se.unlogic.eagledns.plugins.Plugin;
 import se.unlogic.eagledns.resolvers.Resolver;
+import se.unlogic.eagledns.zoneproviders.IncrementalZoneProvider;
+import se.unlogic.eagledns.zoneproviders.ZoneChanges;
 import se.unlogic.eagledns.zoneproviders.ZoneProvider;
 import se.unlogic.standardutils.datatypes.SimpleEntry;
 import se.unlogic.standardutils.numbers.LongCounter;
@@ -99,8 +102,7 @@ public class EagleDNS implements Runnable, SystemInterface {
 
 	private final Logger log = Logger.getLogger(this.getClass());
 
-	private ConcurrentHashMap<Name, CachedPrimaryZone> primaryZoneMap = new ConcurrentHashMap<Name, CachedPrimaryZone>();
-	private ConcurrentHashMap<Name, CachedSecondaryZone> secondaryZoneMap = new ConcurrentHashMap<Name, CachedSecondaryZone>();
+	private volatile ZoneIndex zoneIndex = new ZoneIndex(new ConcurrentHashMap<Name, CachedPrimaryZone>(), new ConcurrentHashMap<Name, CachedSecondaryZone>());
 
 	private final HashMap<Name, TSIG> TSIGs = new HashMap<Name, TSIG>();
 
@@ -116,8 +118,13 @@ public class EagleDNS implements Runnable, SystemInterface {
 	private int tcpThreadPoolShutdownTimeout = 60;
 	private int udpThreadPoolShutdownTimeout = 60;
 
+	private boolean udpChannelMode = false;
+	private int udpChannelWorkers = Runtime.getRuntime().availableProcessors();
+	private boolean udpChannelReusePort = false;
+
 	private ArrayList<TCPSocketMonitor> tcpMonitorThreads = new ArrayList<TCPSocketMonitor>();
 	private ArrayList<UDPSocketMonitor> udpMonitorThreads = new ArrayList<UDPSocketMonitor>();
+	private ArrayList<UDPChannelMonitor> udpChannelMonitorThreads = new ArrayList<UDPChannelMonitor>();
 
 	private ThreadPoolExecutor tcpThreadPool;
 	private ThreadPoolExecutor udpThreadPool;
@@ -127,6 +134,14 @@ public class EagleDNS implements Runnable, SystemInterface {
 
 	private int axfrTimeout = 60;
 
+	private int negativeCacheSize = 10000;
+	private int negativeCacheMaxTTL = 10800;
+	private NegativeCache negativeCache;
+
+	private int answerCacheSize = 10000;
+	private int answerCacheMaxTTL = 3600;
+	private AnswerCache answerCache;
+
 	private Timer secondaryZoneUpdateTimer;
 	private RunnableTimerTask timerTask;
 
@@ -268,6 +283,39 @@ public class EagleDNS implements Runnable, SystemInterface {
 			this.udpThreadPoolShutdownTimeout = udpThreadPoolShutdownTimeout;
 		}
 
+		String udpMode = configFile.getString("/Config/System/UDPMode");
+
+		if (udpMode != null && udpMode.equalsIgnoreCase("Channel")) {
+
+			log.debug("Setting UDP mode to Channel");
+			this.udpChannelMode = true;
+
+		} else if (!StringUtils.isEmpty(udpMode) && !udpMode.equalsIgnoreCase("ThreadPool")) {
+
+			log.error("Invalid UDP mode '" + udpMode + "' found in config, using default mode ThreadPool");
+		}
+
+		Integer udpChannelWorkers = configFile.getInteger("/Config/System/UDPChannelWorkers");
+
+		if (udpChannelWorkers != null && udpChannelWorkers > 0) {
+
+			log.debug("Setting UDP channel workers to " + udpChannelWorkers);
+			this.udpChannelWorkers = udpChannelWorkers;
+		}
+
+		if (configFile.getPrimitiveBoolean("/Config/System/UDPChannelReusePort")) {
+
+			if (UDPChannelMonitor.isReusePortSupported()) {
+
+				log.debug("Enabling SO_REUSEPORT for UDP channels");
+				this.udpChannelReusePort = true;
+
+			} else {
+
+				log.warn("SO_REUSEPORT is not supported on this platform, UDP channel workers will share one channel per address and port");
+			}
+		}
+
 		Integer axfrTimeout = configFile.getInteger("/Config/System/AXFRTimeout");
 
 		if (axfrTimeout != null) {
@@ -276,13 +324,49 @@ public class EagleDNS implements Runnable, SystemInterface {
 			this.axfrTimeout = axfrTimeout;
 		}
 
+		Integer negativeCacheSize = configFile.getInteger("/Config/System/NegativeCacheSize");
+
+		if (negativeCacheSize != null && negativeCacheSize >= 0) {
+
+			log.debug("Setting negative cache size to " + negativeCacheSize);
+			this.negativeCacheSize = negativeCacheSize;
+		}
+
+		Integer negativeCacheMaxTTL = configFile.getInteger("/Config/System/NegativeCacheMaxTTL");
+
+		if (negativeCacheMaxTTL != null && negativeCacheMaxTTL >= 0) {
+
+			log.debug("Setting negative cache max TTL to " + negativeCacheMaxTTL + " seconds");
+			this.negativeCacheMaxTTL = negativeCacheMaxTTL;
+		}
+
+		this.negativeCache = new NegativeCache(this.negativeCacheSize, this.negativeCacheMaxTTL);
+
+		Integer answerCacheSize = configFile.getInteger("/Config/System/AnswerCacheSize");
+
+		if (answerCacheSize != null && answerCacheSize >= 0) {
+
+			log.debug("Setting answer cache size to " + answerCacheSize);
+			this.answerCacheSize = answerCacheSize;
+		}
+
+		Integer answerCacheMaxTTL = configFile.getInteger("/Config/System/AnswerCacheMaxTTL");
+
+		if (answerCacheMaxTTL != null && answerCacheMaxTTL >= 0) {
+
+			log.debug("Setting answer cache max TTL to " + answerCacheMaxTTL + " seconds");
+			this.answerCacheMaxTTL = answerCacheMaxTTL;
+		}
+
+		this.answerCache = new AnswerCache(this.answerCacheSize, this.answerCacheMaxTTL);
+
 		// TODO TSIG stuff
 
 		List<? extends SettingNode> zoneProviderElements = configFile.getNodes("/Config/ZoneProviders/ZoneProvider");
 
 		for (SettingNode settingNode : zoneProviderElements) {
 
-			String name = settingNode.getString("Name");
+			final String name = settingNode.getString("Name");
 
 			if (StringUtils.isEmpty(name)) {
 
@@ -302,7 +386,7 @@ public class EagleDNS implements Runnable, SystemInterface {
 
 				log.debug("Instantiating zone provider " + name + " (" + className + ")");
 
-				ZoneProvider zoneProvider = (ZoneProvider) Class.forName(className).newInstance();
+				final ZoneProvider zoneProvider = (ZoneProvider) Class.forName(className).newInstance();
 
 				log.debug("Zone provider " + name + " successfully instantiated");
 
@@ -363,7 +447,12 @@ public class EagleDNS implements Runnable, SystemInterface {
 
 							public void zoneDataChanged() {
 
-								reloadZones();
+								reloadZones(name, zoneProvider);
+							}
+
+							public void zoneDataChanged(ZoneChanges zoneChanges) {
+
+								applyZoneChanges(name, zoneProvider, zoneChanges);
 							}
 						});
 					}
@@ -406,7 +495,7 @@ public class EagleDNS implements Runnable, SystemInterface {
 
 		this.reloadZones();
 
-		if (requireZones && this.primaryZoneMap.isEmpty() && this.secondaryZoneMap.isEmpty()) {
+		if (requireZones && this.zoneIndex.getPrimaryZoneMap().isEmpty() && this.zoneIndex.getSecondaryZoneMap().isEmpty()) {
 
 			log.fatal("No zones found, aborting startup! (disable the /Config/System/RequireZones property in configuration file if you wish to proceed without any zones or zone provider)");
 			System.out.println("No zones found, aborting startup! (disable the /Config/System/RequireZones property in configuration file if you wish to proceed without any zones or zone provider)");
@@ -663,10 +752,21 @@ public class EagleDNS implements Runnable, SystemInterface {
 			while (iport.hasNext()) {
 				int port = iport.next().intValue();
 
-				try {
-					this.udpMonitorThreads.add(new UDPSocketMonitor(this, addr, port));
-				} catch (SocketException e) {
-					log.error("Unable to open UDP server socket on address " + addr + ":" + port + ", " + e);
+				if (udpChannelMode) {
+
+					try {
+						startUDPChannelMonitors(addr, port);
+					} catch (IOException e) {
+						log.error("Unable to open UDP channel on address " + addr + ":" + port + ", " + e);
+					}
+
+				} else {
+
+					try {
+						this.udpMonitorThreads.add(new UDPSocketMonitor(this, addr, port));
+					} catch (SocketException e) {
+						log.error("Unable to open UDP server socket on address " + addr + ":" + port + ", " + e);
+					}
 				}
 
 				try {
@@ -677,7 +777,7 @@ public class EagleDNS implements Runnable, SystemInterface {
 			}
 		}
 
-		if (this.tcpMonitorThreads.isEmpty() && this.udpMonitorThreads.isEmpty()) {
+		if (this.tcpMonitorThreads.isEmpty() && this.udpMonitorThreads.isEmpty() && this.udpChannelMonitorThreads.isEmpty()) {
 
 			log.fatal("Not bound on any sockets, aborting startup!");
 			System.out.println("Not bound on any sockets, aborting startup!");
@@ -689,8 +789,8 @@ public class EagleDNS implements Runnable, SystemInterface {
 		this.secondaryZoneUpdateTimer = new Timer();
 		this.secondaryZoneUpdateTimer.schedule(timerTask, MillisecondTimeUnits.SECOND * 60, MillisecondTimeUnits.SECOND * 60);
 
-		log.fatal(VERSION + " started with " + this.primaryZoneMap.size() + " primary zones and " + this.secondaryZoneMap.size() + " secondary zones, " + this.zoneProviders.size() + " Zone providers and " + resolvers.size() + " resolvers");
-		System.out.println(VERSION + " started with " + this.primaryZoneMap.size() + " primary zones and " + this.secondaryZoneMap.size() + " secondary zones, " + this.zoneProviders.size() + " Zone providers and " + resolvers.size() + " resolvers");
+		log.fatal(VERSION + " started with " + this.primaryZoneCount() + " primary zones and " + this.secondaryZoneCount() + " secondary zones, " + this.zoneProviders.size() + " Zone providers and " + resolvers.size() + " resolvers");
+		System.out.println(VERSION + " started with " + this.primaryZoneCount() + " primary zones and " + this.secondaryZoneCount() + " secondary zones, " + this.zoneProviders.size() + " Zone providers and " + resolvers.size() + " resolvers");
 		
 		this.status = Status.STARTED;
 		
@@ -698,6 +798,54 @@ public class EagleDNS implements Runnable, SystemInterface {
 		System.err.close();
 	}
 
+	/**
+	 * Creates an instance that is never started, used to run the query path in-process (e.g. by benchmarks). No config file is read, no plugins are
+	 * loaded and no sockets are opened.
+	 *
+	 * @param zoneIndex the zones
+	 * @param resolvers the resolvers in the order they are asked
+	 * @param defaultResponse the rcode sent when none of the resolvers answers a query
+	 * @param cacheSize the size of the negative and answer caches, 0 disables both caches
+	 */
+	public EagleDNS(ZoneIndex zoneIndex, List<Entry<String, Resolver>> resolvers, int defaultResponse, int cacheSize) {
+
+		this.startTime = System.currentTimeMillis();
+		this.zoneIndex = zoneIndex;
+		this.resolvers.addAll(resolvers);
+		this.defaultResponse = defaultResponse;
+		this.negativeCache = new NegativeCache(cacheSize, this.negativeCacheMaxTTL);
+		this.answerCache = new AnswerCache(cacheSize, this.answerCacheMaxTTL);
+		this.status = Status.STARTED;
+	}
+
+	private void startUDPChannelMonitors(InetAddress addr, int port) throws IOException {
+
+		log.info("Starting " + udpChannelWorkers + " UDP channel monitors on address " + addr + ":" + port + (udpChannelReusePort ? " using SO_REUSEPORT" : ""));
+
+		DatagramChannel sharedChannel = null;
+
+		for (int i = 0; i < udpChannelWorkers; i++) {
+
+			DatagramChannel channel;
+
+			if (udpChannelReusePort) {
+
+				channel = UDPChannelMonitor.openChannel(addr, port, true);
+
+			} else {
+
+				if (sharedChannel == null) {
+
+					sharedChannel = UDPChannelMonitor.openChannel(addr, port, false);
+				}
+
+				channel = sharedChannel;
+			}
+
+			this.udpChannelMonitorThreads.add(new UDPChannelMonitor(this, channel, addr, port, i));
+		}
+	}
+
 	public synchronized void shutdown() {
 
 		if (status == Status.STARTING || status == Status.STARTED) {
@@ -846,8 +994,111 @@ public class EagleDNS implements Runnable, SystemInterface {
 			}
 		}
 
-		this.primaryZoneMap = primaryZoneMap;
-		this.secondaryZoneMap = secondaryZoneMap;
+		this.zoneIndex = new ZoneIndex(primaryZoneMap, secondaryZoneMap);
+
+		clearCaches();
+	}
+
+	/**
+	 * Reloads the zones of a single zone provider. Only the primary zones reported as changed by an {@link IncrementalZoneProvider} are replaced, zone
+	 * providers not implementing {@link IncrementalZoneProvider} trigger a full reload.
+	 */
+	private synchronized void reloadZones(String name, ZoneProvider zoneProvider) {
+
+		if (!(zoneProvider instanceof IncrementalZoneProvider)) {
+
+			reloadZones();
+			return;
+		}
+
+		ZoneChanges zoneChanges;
+
+		try {
+			zoneChanges = ((IncrementalZoneProvider) zoneProvider).getPrimaryZoneChanges();
+
+		} catch (Throwable e) {
+
+			log.error("Error getting primary zone changes from zone provider " + name, e);
+			return;
+		}
+
+		if (zoneChanges == null) {
+
+			log.info("Zone provider " + name + " unable to determine changed zones, reloading all zones");
+
+			reloadZones();
+			return;
+		}
+
+		applyZoneChanges(name, zoneProvider, zoneChanges);
+	}
+
+	/**
+	 * Replaces the primary zones of the given zone provider listed in the zone changes, in a copy of the current zone maps which is then swapped in
+	 */
+	private synchronized void applyZoneChanges(String name, ZoneProvider zoneProvider, ZoneChanges zoneChanges) {
+
+		if (zoneChanges.isEmpty()) {
+
+			log.debug("No changed zones found in zone provider " + name);
+			return;
+		}
+
+		log.info("Got " + zoneChanges + " from zone provider " + name);
+
+		ZoneIndex zoneIndex = this.zoneIndex;
+
+		ConcurrentHashMap<Name, CachedPrimaryZone> primaryZoneMap = new ConcurrentHashMap<Name, CachedPrimaryZone>(zoneIndex.getPrimaryZoneMap());
+
+		for (Name origin : zoneChanges.getRemovedZones()) {
+
+			CachedPrimaryZone cachedPrimaryZone = primaryZoneMap.get(origin);
+
+			if (cachedPrimaryZone != null && cachedPrimaryZone.getZoneProvider() == zoneProvider) {
+
+				log.info("Removed zone " + origin);
+
+				primaryZoneMap.remove(origin);
+			}
+		}
+
+		for (Zone zone : zoneChanges.getAddedZones()) {
+
+			log.info("Got zone " + zone.getOrigin());
+
+			primaryZoneMap.put(zone.getOrigin(), new CachedPrimaryZone(zone, zoneProvider));
+		}
+
+		for (Zone zone : zoneChanges.getChangedZones()) {
+
+			CachedPrimaryZone previousZone = primaryZoneMap.put(zone.getOrigin(), new CachedPrimaryZone(zone, zoneProvider));
+
+			if (previousZone != null) {
+
+				log.info("Updated zone " + zone.getOrigin() + " from serial " + previousZone.getZone().getSOA().getSerial() + " to serial " + zone.getSOA().getSerial());
+
+			} else {
+
+				log.info("Got zone " + zone.getOrigin());
+			}
+		}
+
+		this.zoneIndex = new ZoneIndex(primaryZoneMap, zoneIndex.getSecondaryZoneMap());
+
+		clearCaches();
+	}
+
+	private void clearCaches() {
+
+		if (negativeCache != null) {
+
+			negativeCache.clear();
+		}
+
+		if (answerCache != null) {
+
+			answerCache.clear();
+		}
 	}
 
 	// @SuppressWarnings("unused")
@@ -876,13 +1127,15 @@ public class EagleDNS implements Runnable, SystemInterface {
 
 	public Zone getZone(Name name) {
 
-		CachedPrimaryZone cachedPrimaryZone = this.primaryZoneMap.get(name);
+		ZoneIndex zoneIndex = this.zoneIndex;
+
+		CachedPrimaryZone cachedPrimaryZone = zoneIndex.getPrimaryZoneMap().get(name);
 
 		if (cachedPrimaryZone != null) {
 			return cachedPrimaryZone.getZone();
 		}
 
-		CachedSecondaryZone cachedSecondaryZone = this.secondaryZoneMap.get(name);
+		CachedSecondaryZone cachedSecondaryZone = zoneIndex.getSecondaryZoneMap().get(name);
 
 		if (cachedSecondaryZone != null && cachedSecondaryZone.getSecondaryZone().getZoneCopy() != null) {
 
@@ -892,10 +1145,15 @@ public class EagleDNS implements Runnable, SystemInterface {
 		return null;
 	}
 
+	public Zone findBestZone(Name name) {
+
+		return zoneIndex.findBestZone(name);
+	}
+
 	/*
 	 * Note: a null return value means that the caller doesn't need to do anything. Currently this only happens if this is an AXFR request over TCP.
 	 */
-	byte[] generateReply(Message query, byte[] in, int length, Socket socket, SocketAddress socketAddress) throws IOException {
+	public byte[] generateReply(Message query, byte[] in, int length, Socket socket, SocketAddress socketAddress) throws IOException {
 
 		if (log.isDebugEnabled()) {
 
@@ -903,54 +1161,69 @@ public class EagleDNS implements Runnable, SystemInterface {
 			log.debug("Full query:\n" + query);
 		}
 
-		Message response = null;
+		Message response = getNegativeCacheResponse(query);
 
-		Request request = new DefaultRequest(socketAddress, query, in, length, socket);
+		boolean resolved = false;
 
-		for (Entry<String, Resolver> resolverEntry : resolvers) {
+		if (response != null) {
 
-			try {
-				response = resolverEntry.getValue().generateReply(request);
+			log.debug("Answering query " + toString(query.getQuestion()) + " from negative cache with response " + Rcode.string(response.getHeader().getRcode()));
+
+		} else {
+
+			Request request = new DefaultRequest(socketAddress, query, in, length, socket);
 
-				if (response != null) {
+			for (Entry<String, Resolver> resolverEntry : resolvers) {
 
-					if (log.isDebugEnabled()) {
+				try {
+					response = resolverEntry.getValue().generateReply(request);
+
+					if (response != null) {
+
+						if (log.isDebugEnabled()) {
+
+							log.debug("Resolver " + resolverEntry.getKey() + " responded to query " + toString(query.getQuestion()) + " with response " + Rcode.string(response.getHeader().getRcode()) + " containing " + response.getSectionArray(Section.ANSWER).length + " answer, " + response.getSectionArray(Section.AUTHORITY).length + " authoritative and " + response.getSectionArray(Section.ADDITIONAL).length + " additional records");
+
+							log.debug(response);
+						}
+
+						break;
 
-						log.debug("Resolver " + resolverEntry.getKey() + " responded to query " + toString(query.getQuestion()) + " with response " + Rcode.string(response.getHeader().getRcode()) + " containing " + response.getSectionArray(Section.ANSWER).length + " answer, " + response.getSectionArray(Section.AUTHORITY).length + " authoritative and " + response.getSectionArray(Section.ADDITIONAL).length + " additional records");
-						
-						log.debug(response);
+					}else if(socket != null && socket.isClosed()){
+
+						log.info("TCP response sent by resolver " + resolverEntry.getKey() + " for query " + toString(query.getQuestion()));
+						return null;
 					}
 
-					break;
-					
-				}else if(socket != null && socket.isClosed()){
-					
-					log.info("TCP response sent by resolver " + resolverEntry.getKey() + " for query " + toString(query.getQuestion()));
-					return null;
-				}
+				} catch (Exception e) {
 
-			} catch (Exception e) {
+					log.error("Caught exception from resolver " + resolverEntry.getKey(), e);
+				}
 
-				log.error("Caught exception from resolver " + resolverEntry.getKey(), e);
 			}
 
-		}
+			if (socket != null && socket.isClosed()) {
 
-		if (socket != null && socket.isClosed()) {
+				//Response already comitted;
+				return null;
+			}
 
-			//Response already comitted;
-			return null;
-		}
+			if (response == null) {
 
-		OPTRecord queryOPT = query.getOPT();
+				response = getInternalResponse(query, in, length, socket, query.getOPT());
 
-		if (response == null) {
+				//The default response is not cached, the resolvers may only have failed to answer in time
+				log.info("Got no response from resolvers for query " + toString(query.getQuestion()) + " sending default response " + Rcode.string(this.defaultResponse));
 
-			response = getInternalResponse(query, in, length, socket, queryOPT);
+			} else {
 
-			log.info("Got no response from resolvers for query " + toString(query.getQuestion()) + " sending default response " + Rcode.string(this.defaultResponse));
+				negativeCache.cacheResponse(query, response);
+				resolved = true;
+			}
 		}
 
+		OPTRecord queryOPT = query.getOPT();
+
 		int maxLength;
 
 		if (socket != null) {
@@ -961,7 +1234,70 @@ public class EagleDNS implements Runnable, SystemInterface {
 			maxLength = 512;
 		}
 
-		return response.toWire(maxLength);
+		byte[] wire = response.toWire(maxLength);
+
+		if (resolved) {
+
+			answerCache.put(in, length, socket != null, response, wire);
+		}
+
+		return wire;
+	}
+
+	/**
+	 * Returns a previously rendered response for the given raw query from the answer cache without parsing the query.
+	 *
+	 * @return the response in wire format or null if no response is cached for the query
+	 */
+	public byte[] getCachedReply(byte[] in, int length, boolean tcp) {
+
+		return answerCache.get(in, length, tcp);
+	}
+
+	/**
+	 * Returns a response built from the negative cache or null if no negative answer is cached for the query
+	 */
+	private Message getNegativeCacheResponse(Message query) {
+
+		if (!NegativeCache.isCacheable(query)) {
+			return null;
+		}
+
+		Header header = query.getHeader();
+
+		if (header.getFlag(Flags.QR) || header.getRcode() != Rcode.NOERROR || header.getOpcode() != Opcode.QUERY) {
+			return null;
+		}
+
+		Record queryRecord = query.getQuestion();
+
+		NegativeCache.CacheEntry entry = negativeCache.get(queryRecord.getName(), queryRecord.getType(), queryRecord.getDClass());
+
+		if (entry == null) {
+			return null;
+		}
+
+		Message response = new Message(header.getID());
+		response.getHeader().setFlag(Flags.QR);
+
+		if (header.getFlag(Flags.RD)) {
+			response.getHeader().setFlag(Flags.RD);
+		}
+
+		if (entry.isAuthoritative()) {
+			response.getHeader().setFlag(Flags.AA);
+		}
+
+		response.getHeader().setRcode(entry.getRcode());
+
+		response.addRecord(queryRecord, Section.QUESTION);
+		response.addRecord(entry.getRemainingSOA(), Section.AUTHORITY);
+
+		if (query.getOPT() != null) {
+			response.addRecord(new OPTRecord((short) 4096, entry.getRcode(), (byte) 0, 0), Section.ADDITIONAL);
+		}
+
+		return response;
 	}
 
 	private Message getInternalResponse(Message query, byte[] in, int length, Socket socket, OPTRecord queryOPT) {
@@ -1129,13 +1465,20 @@ public class EagleDNS implements Runnable, SystemInterface {
 
 		log.debug("Checking secondary zones...");
 
-		for (CachedSecondaryZone cachedSecondaryZone : this.secondaryZoneMap.values()) {
+		for (CachedSecondaryZone cachedSecondaryZone : this.zoneIndex.getSecondaryZoneMap().values()) {
 
 			SecondaryZone secondaryZone = cachedSecondaryZone.getSecondaryZone();
 
 			if (secondaryZone.getZoneCopy() == null || secondaryZone.getDownloaded() == null || (System.currentTimeMillis() - secondaryZone.getDownloaded().getTime()) > (secondaryZone.getZoneCopy().getSOA().getRefresh() * 1000)) {
 
+				Zone previousZoneCopy = secondaryZone.getZoneCopy();
+
 				cachedSecondaryZone.update(this.axfrTimeout);
+
+				if (secondaryZone.getZoneCopy() != previousZoneCopy) {
+
+					clearCaches();
+				}
 			}
 		}
 	}
@@ -1162,12 +1505,12 @@ public class EagleDNS implements Runnable, SystemInterface {
 
 	public int primaryZoneCount() {
 
-		return primaryZoneMap.size();
+		return zoneIndex.getPrimaryZoneMap().size();
 	}
 
 	public int secondaryZoneCount() {
 
-		return secondaryZoneMap.size();
+		return zoneIndex.getSecondaryZoneMap().size();
 	}
 
 	public int getResolverCount() {
@@ -1207,7 +1550,14 @@ public class EagleDNS implements Runnable, SystemInterface {
 
 	public long getCompletedUDPQueryCount() {
 
-		return udpThreadPool.getCompletedTaskCount();
+		long completedQueries = udpThreadPool.getCompletedTaskCount();
+
+		for (UDPChannelMonitor udpChannelMonitor : udpChannelMonitorThreads) {
+
+			completedQueries += udpChannelMonitor.getCompletedQueries();
+		}
+
+		return completedQueries;
 	}
 
 	public int getMaxActiveUDPThreadCount() {
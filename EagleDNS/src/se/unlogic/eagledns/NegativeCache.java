@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Robert "Unlogic" Olofsson (unlogic@unlogic.se).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-3.0-standalone.html
+ ******************************************************************************/
+package se.unlogic.eagledns;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.xbill.DNS.ExtendedFlags;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.OPTRecord;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+import se.unlogic.standardutils.time.MillisecondTimeUnits;
+
+/**
+ * Cache of negative answers (NXDOMAIN and NODATA) as described in RFC 2308, keyed by query name, type and class.
+ * <p>
+ * Negative answers carrying a SOA record are cached for the lower of the SOA TTL and the SOA minimum field. Queries that none of the resolvers could
+ * answer are never cached, as the resolvers may only have failed to answer in time. An NXDOMAIN answer applies to all types of the queried name.
+ *
+ * @author Robert "Unlogic" Olofsson (unlogic@unlogic.se)
+ *
+ */
+public class NegativeCache {
+
+	private static final int NXDOMAIN_TYPE = 0;
+
+	private final int maxSize;
+	private final long maxTTL;
+
+	private final LinkedHashMap<CacheKey, CacheEntry> entryMap;
+
+	/**
+	 * @param maxSize the maximum number of negative answers to cache, 0 disables the cache
+	 * @param maxTTL the maximum time in seconds to cache a negative answer
+	 */
+	public NegativeCache(final int maxSize, long maxTTL) {
+
+		this.maxSize = maxSize;
+		this.maxTTL = maxTTL;
+
+		this.entryMap = new LinkedHashMap<CacheKey, CacheEntry>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 2640738393217461398L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<CacheKey, CacheEntry> eldest) {
+
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Caches the given response if it is a negative answer (NXDOMAIN or NODATA) containing a SOA record in the authority section.
+	 *
+	 * @param query the query the response was generated for
+	 * @param response the response
+	 */
+	public void cacheResponse(Message query, Message response) {
+
+		if (maxSize == 0 || !isCacheable(query)) {
+			return;
+		}
+
+		int rcode = response.getHeader().getRcode();
+
+		if ((rcode != Rcode.NXDOMAIN && rcode != Rcode.NOERROR) || response.getSectionArray(Section.ANSWER).length != 0) {
+			return;
+		}
+
+		SOARecord soa = null;
+
+		for (Record record : response.getSectionArray(Section.AUTHORITY)) {
+
+			if (record.getType() == Type.SOA) {
+
+				soa = (SOARecord) record;
+				break;
+			}
+		}
+
+		if (soa == null) {
+			return;
+		}
+
+		Record question = query.getQuestion();
+
+		long ttl = Math.min(Math.min(soa.getTTL(), soa.getMinimum()), maxTTL);
+
+		put(new CacheKey(question.getName(), rcode == Rcode.NXDOMAIN ? NXDOMAIN_TYPE : question.getType(), question.getDClass()), new CacheEntry(rcode, soa, response.getHeader().getFlag(Flags.AA), ttl));
+	}
+
+	/**
+	 * Returns the cached negative answer for the given question.
+	 *
+	 * @return the cached answer or null if no unexpired answer is cached
+	 */
+	public synchronized CacheEntry get(Name name, int type, int dclass) {
+
+		if (entryMap.isEmpty()) {
+			return null;
+		}
+
+		CacheEntry entry = get(new CacheKey(name, type, dclass));
+
+		if (entry == null) {
+
+			entry = get(new CacheKey(name, NXDOMAIN_TYPE, dclass));
+		}
+
+		return entry;
+	}
+
+	private CacheEntry get(CacheKey key) {
+
+		CacheEntry entry = entryMap.get(key);
+
+		if (entry != null && entry.getExpires() <= System.currentTimeMillis()) {
+
+			entryMap.remove(key);
+			return null;
+		}
+
+		return entry;
+	}
+
+	private synchronized void put(CacheKey key, CacheEntry entry) {
+
+		entryMap.put(key, entry);
+	}
+
+	public synchronized void clear() {
+
+		entryMap.clear();
+	}
+
+	public synchronized int size() {
+
+		return entryMap.size();
+	}
+
+	public static boolean isCacheable(Message query) {
+
+		Record question = query.getQuestion();
+
+		if (question == null || query.getTSIG() != null || !Type.isRR(question.getType())) {
+			return false;
+		}
+
+		//DNSSEC records are not cached so DNSSEC OK queries always go to the resolvers
+		OPTRecord queryOPT = query.getOPT();
+
+		return queryOPT == null || (queryOPT.getFlags() & ExtendedFlags.DO) == 0;
+	}
+
+	private static class CacheKey {
+
+		private final Name name;
+		private final int type;
+		private final int dclass;
+
+		public CacheKey(Name name, int type, int dclass) {
+
+			this.name = name;
+			this.type = type;
+			this.dclass = dclass;
+		}
+
+		@Override
+		public int hashCode() {
+
+			return (name.hashCode() * 31 + type) * 31 + dclass;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+
+			if (this == obj) {
+				return true;
+			}
+
+			if (!(obj instanceof CacheKey)) {
+				return false;
+			}
+
+			CacheKey other = (CacheKey) obj;
+
+			return type == other.type && dclass == other.dclass && name.equals(other.name);
+		}
+	}
+
+	public static class CacheEntry {
+
+		private final int rcode;
+		private final SOARecord soa;
+		private final boolean authoritative;
+		private final long expires;
+
+		public CacheEntry(int rcode, SOARecord soa, boolean authoritative, long ttl) {
+
+			this.rcode = rcode;
+			this.soa = soa;
+			this.authoritative = authoritative;
+			this.expires = System.currentTimeMillis() + ttl * MillisecondTimeUnits.SECOND;
+		}
+
+		public int getRcode() {
+
+			return rcode;
+		}
+
+		/**
+		 * @return the SOA record of the negative answer
+		 */
+		public SOARecord getSOA() {
+
+			return soa;
+		}
+
+		public boolean isAuthoritative() {
+
+			return authoritative;
+		}
+
+		public long getExpires() {
+
+			return expires;
+		}
+
+		/**
+		 * @return the SOA record with its TTL decremented by the time the answer has been cached
+		 */
+		public SOARecord getRemainingSOA() {
+
+			long remainingTTL = Math.max((expires - System.currentTimeMillis()) / MillisecondTimeUnits.SECOND, 0);
+
+			return new SOARecord(soa.getName(), soa.getDClass(), remainingTTL, soa.getHost(), soa.getAdmin(), soa.getSerial(), soa.getRefresh(), soa.getRetry(), soa.getExpire(), soa.getMinimum());
+		}
+	}
+}
@@ -35,6 +35,14 @@ public interface SystemInterface {
 	 * @return {@link Zone} the requested zone or null if no matching zone was found
 	 */
 	public Zone getZone(Name name);
+
+	/**
+	 * Returns the zone with the longest origin that the given name belongs to, using an index of all zones loaded thru the {@link ZoneProvider}'s.
+	 * 
+	 * @param name a domain name
+	 * @return {@link Zone} the best matching zone or null if the name doesn't belong to any zone
+	 */
+	public Zone findBestZone(Name name);
 	
 	public TSIG getTSIG(Name name);
 
@@ -47,20 +47,29 @@ public class TCPConnection implements Runnable {
 			dataIn.readFully(in);
 
 			Message query;
-			byte[] response = null;
-			try {
-				query = new Message(in);
+			byte[] response = this.eagleDNS.getCachedReply(in, in.length, true);
 
-				log.info("TCP query " + EagleDNS.toString(query.getQuestion()) + " from " + socket.getRemoteSocketAddress());
+			if (response != null) {
 
-				response = this.eagleDNS.generateReply(query, in, in.length, socket, socket.getRemoteSocketAddress());
+				log.debug("TCP query from " + socket.getRemoteSocketAddress() + " answered from answer cache");
 
-				if (response == null) {
-					return;
+			} else {
+
+				try {
+					query = new Message(in);
+
+					log.info("TCP query " + EagleDNS.toString(query.getQuestion()) + " from " + socket.getRemoteSocketAddress());
+
+					response = this.eagleDNS.generateReply(query, in, in.length, socket, socket.getRemoteSocketAddress());
+
+					if (response == null) {
+						return;
+					}
+				} catch (IOException e) {
+					response = this.eagleDNS.formerrMessage(in).toWire();
 				}
-			} catch (IOException e) {
-				response = this.eagleDNS.formerrMessage(in).toWire();
 			}
+
 			dataOut = new DataOutputStream(socket.getOutputStream());
 			dataOut.writeShort(response.length);
 			dataOut.write(response);
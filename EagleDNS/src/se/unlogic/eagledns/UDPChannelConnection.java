@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Robert "Unlogic" Olofsson (unlogic@unlogic.se).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-3.0-standalone.html
+ ******************************************************************************/
+package se.unlogic.eagledns;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+import org.apache.log4j.Logger;
+import org.xbill.DNS.Message;
+
+/**
+ * Resolves a UDP query received by a {@link UDPChannelMonitor} that could not be answered from the answer cache and sends the reply through the channel
+ * of the monitor.
+ *
+ * @author Robert "Unlogic" Olofsson (unlogic@unlogic.se)
+ *
+ */
+public class UDPChannelConnection implements Runnable {
+
+	private static final Logger log = Logger.getLogger(UDPChannelConnection.class);
+
+	private final EagleDNS eagleDNS;
+	private final DatagramChannel channel;
+	private final byte[] in;
+	private final SocketAddress clientAddress;
+
+	public UDPChannelConnection(EagleDNS eagleDNS, DatagramChannel channel, byte[] in, SocketAddress clientAddress) {
+		super();
+		this.eagleDNS = eagleDNS;
+		this.channel = channel;
+		this.in = in;
+		this.clientAddress = clientAddress;
+	}
+
+	public void run() {
+
+		try {
+			byte[] response;
+
+			try {
+				Message query = new Message(in);
+
+				log.info("UDP query " + EagleDNS.toString(query.getQuestion()) + " from " + clientAddress);
+
+				response = this.eagleDNS.generateReply(query, in, in.length, null, clientAddress);
+
+				if (response == null) {
+					return;
+				}
+
+			} catch (IOException e) {
+
+				Message formerrMessage = this.eagleDNS.formerrMessage(in);
+
+				if (formerrMessage == null) {
+					return;
+				}
+
+				response = formerrMessage.toWire();
+			}
+
+			try {
+				if (channel.send(ByteBuffer.wrap(response), clientAddress) == 0) {
+
+					log.debug("Send buffer full, dropping UDP response to " + clientAddress);
+				}
+
+			} catch (IOException e) {
+
+				log.debug("Error sending UDP response to " + clientAddress + ", " + e);
+			}
+
+		} catch (Throwable e) {
+
+			log.warn("Error processing UDP query from " + clientAddress + ", " + e, e);
+		}
+	}
+}
@@ -0,0 +1,287 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Robert "Unlogic" Olofsson (unlogic@unlogic.se).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-3.0-standalone.html
+ ******************************************************************************/
+package se.unlogic.eagledns;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Arrays;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Non-blocking alternative to {@link UDPSocketMonitor}. Each monitor runs its own selector loop and answers the queries found in the answer cache directly
+ * in the loop. All other queries are handed over to the UDP thread pool as {@link UDPChannelConnection}s, so that slow resolvers never stall the loop.
+ *
+ * The receive and send buffers are direct buffers owned by the monitor and reused for every packet.
+ *
+ * @author Robert "Unlogic" Olofsson (unlogic@unlogic.se)
+ *
+ */
+public class UDPChannelMonitor extends Thread {
+
+	private Logger log = Logger.getLogger(this.getClass());
+
+	private static final String REUSE_PORT_OPTION = "SO_REUSEPORT";
+
+	private static final short UDP_LENGTH = 512;
+	private static final int MAX_RESPONSE_LENGTH = 65535;
+
+	private final EagleDNS eagleDNS;
+	private final InetAddress addr;
+	private final int port;
+	private final int workerIndex;
+	private final DatagramChannel channel;
+	private final Selector selector;
+
+	private final ByteBuffer inBuffer = ByteBuffer.allocateDirect(UDP_LENGTH);
+	private final ByteBuffer outBuffer = ByteBuffer.allocateDirect(MAX_RESPONSE_LENGTH);
+	private final byte[] in = new byte[UDP_LENGTH];
+
+	private volatile long completedQueries;
+
+	public UDPChannelMonitor(EagleDNS eagleDNS, DatagramChannel channel, final InetAddress addr, final int port, int workerIndex) throws IOException {
+
+		super();
+		this.eagleDNS = eagleDNS;
+		this.channel = channel;
+		this.addr = addr;
+		this.port = port;
+		this.workerIndex = workerIndex;
+
+		this.selector = Selector.open();
+		this.channel.register(selector, SelectionKey.OP_READ);
+
+		this.setName("UDP channel monitor " + getAddressAndPort() + " #" + workerIndex);
+		this.setDaemon(true);
+		this.start();
+	}
+
+	/**
+	 * Opens a non-blocking datagram channel bound to the given address and port.
+	 *
+	 * @param reusePort if true SO_REUSEPORT is enabled so that several channels can be bound to the same address and port and have the kernel distribute
+	 *            the incoming packets between them
+	 */
+	public static DatagramChannel openChannel(InetAddress addr, int port, boolean reusePort) throws IOException {
+
+		DatagramChannel channel = DatagramChannel.open();
+
+		try {
+			if (reusePort) {
+
+				SocketOption<Boolean> reusePortOption = getReusePortOption(channel);
+
+				if (reusePortOption == null) {
+
+					throw new IOException(REUSE_PORT_OPTION + " is not supported");
+				}
+
+				channel.setOption(reusePortOption, true);
+			}
+
+			channel.bind(new InetSocketAddress(addr, port));
+			channel.configureBlocking(false);
+
+		} catch (IOException e) {
+
+			channel.close();
+			throw e;
+		}
+
+		return channel;
+	}
+
+	public static boolean isReusePortSupported() {
+
+		DatagramChannel channel = null;
+
+		try {
+			channel = DatagramChannel.open();
+
+			return getReusePortOption(channel) != null;
+
+		} catch (IOException e) {
+
+			return false;
+
+		} finally {
+
+			if (channel != null) {
+
+				try {
+					channel.close();
+				} catch (IOException e) {}
+			}
+		}
+	}
+
+	/**
+	 * Looks SO_REUSEPORT up among the options supported by the given channel. The option is looked up by name since StandardSocketOptions.SO_REUSEPORT
+	 * only exists from Java 9 on.
+	 *
+	 * @return the option or null if it is not supported
+	 */
+	@SuppressWarnings("unchecked")
+	private static SocketOption<Boolean> getReusePortOption(DatagramChannel channel) {
+
+		for (SocketOption<?> option : channel.supportedOptions()) {
+
+			if (option.name().equals(REUSE_PORT_OPTION) && option.type() == Boolean.class) {
+
+				return (SocketOption<Boolean>) option;
+			}
+		}
+
+		return null;
+	}
+
+	@Override
+	public void run() {
+
+		log.info("Starting UDP channel monitor #" + workerIndex + " on address " + this.getAddressAndPort());
+
+		while (eagleDNS.getStatus() == Status.STARTING || eagleDNS.getStatus() == Status.STARTED) {
+
+			try {
+
+				if (selector.select() == 0) {
+					continue;
+				}
+
+				selector.selectedKeys().clear();
+
+				SocketAddress clientAddress;
+
+				//Drain the channel before going back to the selector, other monitors sharing the channel may already have picked up the packet
+				while ((clientAddress = receive()) != null) {
+
+					if (eagleDNS.getStatus() == Status.STARTING || eagleDNS.getStatus() == Status.STARTED) {
+
+						processQuery(clientAddress, inBuffer.remaining());
+					}
+				}
+
+			} catch (ClosedSelectorException e) {
+
+				//This is usally thrown on shutdown
+				log.debug("Selector closed for UDP channel on address " + this.getAddressAndPort());
+				break;
+
+			} catch (ClosedChannelException e) {
+
+				//This is usally thrown on shutdown
+				log.debug("ClosedChannelException thrown from UDP channel on address " + this.getAddressAndPort() + ", " + e);
+				break;
+
+			} catch (IOException e) {
+
+				log.info("IOException thrown by UDP channel on address " + this.getAddressAndPort() + ", " + e);
+
+			} catch (Throwable t) {
+
+				log.info("Throwable thrown by UDP channel on address " + getAddressAndPort(), t);
+			}
+		}
+
+		log.info("UDP channel monitor #" + workerIndex + " on address " + getAddressAndPort() + " shutdown");
+	}
+
+	private SocketAddress receive() throws IOException {
+
+		inBuffer.clear();
+
+		SocketAddress clientAddress = channel.receive(inBuffer);
+
+		if (clientAddress != null) {
+
+			inBuffer.flip();
+			inBuffer.get(in, 0, inBuffer.remaining());
+			inBuffer.rewind();
+
+			log.debug("UDP connection from " + clientAddress);
+		}
+
+		return clientAddress;
+	}
+
+	private void processQuery(SocketAddress clientAddress, int length) {
+
+		try {
+			byte[] response = this.eagleDNS.getCachedReply(in, length, false);
+
+			if (response == null) {
+
+				try {
+					//The receive buffer is reused for the next packet
+					this.eagleDNS.getUdpThreadPool().execute(new UDPChannelConnection(eagleDNS, channel, Arrays.copyOf(in, length), clientAddress));
+
+				} catch (RejectedExecutionException e) {
+
+					if (eagleDNS.getStatus() == Status.STARTING || eagleDNS.getStatus() == Status.STARTED) {
+
+						log.warn("UDP thread pool exausted, rejecting query from " + clientAddress);
+						eagleDNS.incrementRejectedUDPConnections();
+					}
+				}
+
+				return;
+			}
+
+			log.debug("UDP query from " + clientAddress + " answered from answer cache");
+
+			outBuffer.clear();
+			outBuffer.put(response);
+			outBuffer.flip();
+
+			try {
+				if (channel.send(outBuffer, clientAddress) == 0) {
+
+					log.debug("Send buffer full, dropping UDP response to " + clientAddress);
+				}
+
+			} catch (IOException e) {
+
+				log.debug("Error sending UDP response to " + clientAddress + ", " + e);
+			}
+
+			completedQueries++;
+
+		} catch (Throwable e) {
+
+			log.warn("Error processing UDP query from " + clientAddress + ", " + e, e);
+		}
+	}
+
+	public void closeSocket() throws IOException {
+
+		log.info("Closing UDP channel monitor #" + workerIndex + " on address " + getAddressAndPort() + "...");
+
+		this.channel.close();
+		this.selector.close();
+	}
+
+	public long getCompletedQueries() {
+
+		return completedQueries;
+	}
+
+	public String getAddressAndPort() {
+
+		return addr.getHostAddress() + ":" + port;
+	}
+}
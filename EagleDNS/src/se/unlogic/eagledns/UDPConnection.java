@@ -34,20 +34,27 @@ public class UDPConnection implements Runnable {
 
 		try{
 
-			byte[] response = null;
+			byte[] response = this.eagleDNS.getCachedReply(inDataPacket.getData(), inDataPacket.getLength(), false);
 
-			try {
-				Message query = new Message(inDataPacket.getData());
+			if (response != null) {
+
+				log.debug("UDP query from " + inDataPacket.getSocketAddress() + " answered from answer cache");
+
+			} else {
 
-				log.info("UDP query " + EagleDNS.toString(query.getQuestion()) + " from " + inDataPacket.getSocketAddress());
+				try {
+					Message query = new Message(inDataPacket.getData());
 
-				response = this.eagleDNS.generateReply(query, inDataPacket.getData(), inDataPacket.getLength(), null,inDataPacket.getSocketAddress());
+					log.info("UDP query " + EagleDNS.toString(query.getQuestion()) + " from " + inDataPacket.getSocketAddress());
 
-				if (response == null) {
-					return;
+					response = this.eagleDNS.generateReply(query, inDataPacket.getData(), inDataPacket.getLength(), null,inDataPacket.getSocketAddress());
+
+					if (response == null) {
+						return;
+					}
+				} catch (IOException e) {
+					response = this.eagleDNS.formerrMessage(inDataPacket.getData()).toWire();
 				}
-			} catch (IOException e) {
-				response = this.eagleDNS.formerrMessage(inDataPacket.getData()).toWire();
 			}
 
 			DatagramPacket outdp = new DatagramPacket(response, response.length, inDataPacket.getAddress(), inDataPacket.getPort());
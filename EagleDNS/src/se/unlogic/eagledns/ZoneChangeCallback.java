@@ -8,6 +8,8 @@
 package se.unlogic.eagledns;
 
 import se.unlogic.eagledns.plugins.remotemanagement.EagleManager;
+import se.unlogic.eagledns.zoneproviders.IncrementalZoneProvider;
+import se.unlogic.eagledns.zoneproviders.ZoneChanges;
 import se.unlogic.eagledns.zoneproviders.ZoneProvider;
 
 /**
@@ -20,8 +22,17 @@ import se.unlogic.eagledns.zoneproviders.ZoneProvider;
 public interface ZoneChangeCallback {
 
 	/**
-	 * Calling this method causes Eagle DNS to reload all it's zone from the registered zone providers
+	 * Calling this method causes Eagle DNS to reload all it's zone from the registered zone providers.
+	 * If the calling zone provider implements {@link IncrementalZoneProvider} only the zones it reports as changed are reloaded.
 	 */
 	void zoneDataChanged();
 
+	/**
+	 * Calling this method causes Eagle DNS to apply the given changes to the primary zones previously loaded from the calling zone provider,
+	 * without reloading any other zones.
+	 * 
+	 * @param zoneChanges the added, changed and removed zones
+	 */
+	void zoneDataChanged(ZoneChanges zoneChanges);
+
 }
@@ -0,0 +1,266 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Robert "Unlogic" Olofsson (unlogic@unlogic.se).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-3.0-standalone.html
+ ******************************************************************************/
+package se.unlogic.eagledns;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Zone;
+
+/**
+ * Immutable snapshot of all primary and secondary zones, consisting of the zone maps keyed by origin and a trie of the origins keyed by their labels in
+ * reverse order (top level domain first).
+ * <p>
+ * Longest match lookups walk the trie from the root using a single lower case copy of the queried name, instead of creating a {@link Name} and probing
+ * the zone maps for every label of the name. The zone maps must not be modified once the index has been created, a new index is built every time the
+ * zones are reloaded.
+ *
+ * @author Robert "Unlogic" Olofsson (unlogic@unlogic.se)
+ *
+ */
+public class ZoneIndex {
+
+	private static final Comparator<byte[]> LABEL_COMPARATOR = new Comparator<byte[]>() {
+
+		public int compare(byte[] label1, byte[] label2) {
+
+			return compareLabel(label1, label2, 0);
+		}
+	};
+
+	private final Map<Name, CachedPrimaryZone> primaryZoneMap;
+	private final Map<Name, CachedSecondaryZone> secondaryZoneMap;
+
+	private final Node root;
+
+	public ZoneIndex(Map<Name, CachedPrimaryZone> primaryZoneMap, Map<Name, CachedSecondaryZone> secondaryZoneMap) {
+
+		NodeBuilder rootBuilder = new NodeBuilder();
+
+		for (Entry<Name, CachedSecondaryZone> entry : secondaryZoneMap.entrySet()) {
+
+			rootBuilder.getNode(entry.getKey()).secondaryZone = entry.getValue();
+		}
+
+		for (Entry<Name, CachedPrimaryZone> entry : primaryZoneMap.entrySet()) {
+
+			rootBuilder.getNode(entry.getKey()).primaryZone = entry.getValue();
+		}
+
+		this.primaryZoneMap = primaryZoneMap;
+		this.secondaryZoneMap = secondaryZoneMap;
+		this.root = rootBuilder.build();
+	}
+
+	public Map<Name, CachedPrimaryZone> getPrimaryZoneMap() {
+
+		return primaryZoneMap;
+	}
+
+	public Map<Name, CachedSecondaryZone> getSecondaryZoneMap() {
+
+		return secondaryZoneMap;
+	}
+
+	/**
+	 * Returns the zone with the longest origin that the given name belongs to. Primary zones take precedence over secondary zones with the same origin
+	 * and secondary zones without a transfered copy are skipped.
+	 *
+	 * @param name an absolute name
+	 * @return the best matching zone or null if no zone matches the name
+	 */
+	public Zone findBestZone(Name name) {
+
+		if (!name.isAbsolute()) {
+			return null;
+		}
+
+		Node node = root;
+		Zone bestZone = node.getZone();
+
+		int labels = name.labels();
+
+		if (labels == 1 || node.labels.length == 0) {
+			return bestZone;
+		}
+
+		byte[] wire = name.toWireCanonical();
+
+		//The last label is the empty root label, start with the top level domain
+		for (int i = labels - 2; i >= 0; i--) {
+
+			node = node.getChild(wire, getLabelOffset(wire, i));
+
+			if (node == null) {
+				break;
+			}
+
+			Zone zone = node.getZone();
+
+			if (zone != null) {
+
+				bestZone = zone;
+			}
+		}
+
+		return bestZone;
+	}
+
+	private static int getLabelOffset(byte[] wire, int label) {
+
+		int pos = 0;
+
+		for (int i = 0; i < label; i++) {
+
+			pos += (wire[pos] & 0xFF) + 1;
+		}
+
+		return pos;
+	}
+
+	/**
+	 * Compares a label (length byte followed by the label data) to the label at the given position in a name in wire format
+	 */
+	private static int compareLabel(byte[] label, byte[] wire, int pos) {
+
+		int length = label[0] & 0xFF;
+
+		int diff = length - (wire[pos] & 0xFF);
+
+		if (diff != 0) {
+			return diff;
+		}
+
+		for (int i = 1; i <= length; i++) {
+
+			diff = (label[i] & 0xFF) - (wire[pos + i] & 0xFF);
+
+			if (diff != 0) {
+				return diff;
+			}
+		}
+
+		return 0;
+	}
+
+	private static class Node {
+
+		private final CachedPrimaryZone primaryZone;
+		private final CachedSecondaryZone secondaryZone;
+
+		//Sorted child labels and their nodes
+		private final byte[][] labels;
+		private final Node[] children;
+
+		public Node(CachedPrimaryZone primaryZone, CachedSecondaryZone secondaryZone, byte[][] labels, Node[] children) {
+
+			this.primaryZone = primaryZone;
+			this.secondaryZone = secondaryZone;
+			this.labels = labels;
+			this.children = children;
+		}
+
+		public Zone getZone() {
+
+			if (primaryZone != null) {
+
+				return primaryZone.getZone();
+			}
+
+			if (secondaryZone != null) {
+
+				return secondaryZone.getSecondaryZone().getZoneCopy();
+			}
+
+			return null;
+		}
+
+		public Node getChild(byte[] wire, int pos) {
+
+			int low = 0;
+			int high = labels.length - 1;
+
+			while (low <= high) {
+
+				int mid = (low + high) >>> 1;
+
+				int cmp = compareLabel(labels[mid], wire, pos);
+
+				if (cmp < 0) {
+
+					low = mid + 1;
+
+				} else if (cmp > 0) {
+
+					high = mid - 1;
+
+				} else {
+
+					return children[mid];
+				}
+			}
+
+			return null;
+		}
+	}
+
+	private static class NodeBuilder {
+
+		private CachedPrimaryZone primaryZone;
+		private CachedSecondaryZone secondaryZone;
+
+		private final TreeMap<byte[], NodeBuilder> children = new TreeMap<byte[], NodeBuilder>(LABEL_COMPARATOR);
+
+		public NodeBuilder getNode(Name origin) {
+
+			byte[] wire = origin.toWireCanonical();
+
+			NodeBuilder node = this;
+
+			for (int i = origin.labels() - 2; i >= 0; i--) {
+
+				int pos = getLabelOffset(wire, i);
+
+				byte[] label = Arrays.copyOfRange(wire, pos, pos + (wire[pos] & 0xFF) + 1);
+
+				NodeBuilder child = node.children.get(label);
+
+				if (child == null) {
+
+					child = new NodeBuilder();
+					node.children.put(label, child);
+				}
+
+				node = child;
+			}
+
+			return node;
+		}
+
+		public Node build() {
+
+			byte[][] labels = new byte[children.size()][];
+			Node[] nodes = new Node[children.size()];
+
+			int i = 0;
+
+			for (Entry<byte[], NodeBuilder> entry : children.entrySet()) {
+
+				labels[i] = entry.getKey();
+				nodes[i] = entry.getValue().build();
+				i++;
+			}
+
+			return new Node(primaryZone, secondaryZone, labels, nodes);
+		}
+	}
+}
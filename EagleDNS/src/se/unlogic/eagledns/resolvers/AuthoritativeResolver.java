@@ -374,24 +374,6 @@ public class AuthoritativeResolver extends BasePlugin implements Resolver{
 
 	private Zone findBestZone(Name name) {
 
-		Zone foundzone = systemInterface.getZone(name);
-
-		if (foundzone != null) {
-			return foundzone;
-		}
-
-		int labels = name.labels();
-
-		for (int i = 1; i < labels; i++) {
-
-			Name tname = new Name(name, i);
-			foundzone = systemInterface.getZone(tname);
-
-			if (foundzone != null) {
-				return foundzone;
-			}
-		}
-
-		return null;
+		return systemInterface.findBestZone(name);
 	}
 }
@@ -6,16 +6,14 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Properties;
+import java.util.Timer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import javax.xml.parsers.ParserConfigurationException;
 
@@ -62,16 +60,27 @@ import se.unlogic.eagledns.EagleDNS;
 import se.unlogic.eagledns.Request;
 import se.unlogic.eagledns.SystemInterface;
 import se.unlogic.eagledns.plugins.Plugin;
+import se.unlogic.eagledns.utils.ZoneUtils;
 import se.unlogic.standardutils.net.SocketUtils;
+import se.unlogic.standardutils.numbers.NumberUtils;
+import se.unlogic.standardutils.time.MillisecondTimeUnits;
+import se.unlogic.standardutils.timer.RunnableTimerTask;
 import se.unlogic.standardutils.xml.XMLParser;
 import test.SimpleTypeHandler;
 
-public class PGridResolver implements Plugin, Resolver, SearchListener {
+public class PGridResolver implements Plugin, Resolver, SearchListener, Runnable {
 
 	private Logger log = Logger.getLogger(this.getClass());
 	private SystemInterface systemInterface;
 	private String name;
-	private List<Zone> zones;
+
+	private final ConcurrentHashMap<GUID, ZoneLookup> pendingLookups = new ConcurrentHashMap<GUID, ZoneLookup>();
+	private long lookupTimeout = 1000;
+
+	private int zoneCacheSize = 1000;
+	private long zoneCacheMaxTTL = 3600;
+	private ZoneCache zoneCache;
+	private Timer zoneCacheRefreshTimer;
 
 	private Properties properties;
 	private P2PFactory p2pFactory;
@@ -99,6 +108,34 @@ public class PGridResolver implements Plugin, Resolver, SearchListener {
 		storageFactory.registerTypeHandler(type, handler);
 		
 		insertZones();
+
+		zoneCache = new ZoneCache(zoneCacheSize, zoneCacheMaxTTL);
+
+		if (zoneCacheSize > 0) {
+
+			log.info("Resolver " + name + " caching up to " + zoneCacheSize + " zones for at most " + zoneCacheMaxTTL + " seconds");
+
+			zoneCacheRefreshTimer = new Timer(name, true);
+			zoneCacheRefreshTimer.schedule(new RunnableTimerTask(this), 5 * MillisecondTimeUnits.SECOND, 5 * MillisecondTimeUnits.SECOND);
+		}
+	}
+
+	/**
+	 * Refreshes cached zones that are in use and about to expire
+	 */
+	public void run() {
+
+		for (Name origin : zoneCache.getZonesDueForRefresh()) {
+
+			log.debug("Resolver " + name + " refreshing cached zone " + origin);
+
+			Zone zone = lookupZone(origin);
+
+			if (zone != null && zone.getOrigin().equals(origin)) {
+
+				zoneCache.put(zone);
+			}
+		}
 	}
 
 	public Message generateReply(Request request) throws Exception {
@@ -429,53 +466,118 @@ public class PGridResolver implements Plugin, Resolver, SearchListener {
 
 	private Zone findBestZone(Name name) {
 
-		zones = new ArrayList<Zone>();
+		Zone zone = zoneCache.get(name);
+
+		if (zone != null) {
+
+			return zone;
+		}
+
+		zone = lookupZone(name);
+
+		if (zone != null) {
+
+			zoneCache.put(zone);
+		}
+
+		return zone;
+	}
+
+	private Zone lookupZone(Name name) {
+
 		Query query = storageFactory.createQuery(type, name.toString());
-		storage.search(query, this);
 
-		// wait a bit for the searching to end
+		ZoneLookup lookup = new ZoneLookup(name);
+
+		pendingLookups.put(query.getGUID(), lookup);
+
 		try {
-			Thread.sleep(1000);
+			storage.search(query, this);
+
+			if (!lookup.await(lookupTimeout)) {
+
+				log.debug("Resolver " + this.name + " timed out after " + lookupTimeout + " ms waiting for P-Grid lookup of " + name);
+			}
+
 		} catch (InterruptedException e) {
+
+			Thread.currentThread().interrupt();
+
+		} finally {
+
+			pendingLookups.remove(query.getGUID());
 		}
-		if (zones.isEmpty() == true)
-			return null;
 
-		return zones.get(0);
+		return lookup.getZone();
 	}
 
 	public void newSearchResult(GUID guid, Collection results) {
+
+		ZoneLookup lookup = pendingLookups.get(guid);
+
+		if (lookup == null) {
+
+			log.debug("Resolver " + name + " ignoring search result for unknown or expired query " + guid);
+			return;
+		}
+
+		Zone bestZone = null;
+
 		for (Iterator it = results.iterator(); it.hasNext();) {
+
 			DataItem item = (DataItem) it.next();
-			String data = (String) item.getData();
-			log.info("Found item: " + data.split("\n")[0]);
-			String first = data.split("\n")[0];
-			String name = first.split("\t")[0];
-			name = name.substring(0, name.length());
-
-			Path file = Paths.get("temp.txt");
-			List<String> lines = Arrays.asList(data);
-			Charset charset = Charset.forName("UTF-8");
+
 			try {
-				Files.write(file, lines, charset);
-				Zone zone = new Zone(new Name(name), "temp.txt");
-				zones.add(zone);
+				Zone zone = ZoneUtils.parseZone((String) item.getData());
+
+				log.info("Found zone " + zone.getOrigin() + " for query " + lookup.getName());
+
+				if (lookup.getName().subdomain(zone.getOrigin()) && (bestZone == null || zone.getOrigin().labels() > bestZone.getOrigin().labels())) {
+
+					bestZone = zone;
+				}
+
 			} catch (IOException e) {
-				e.printStackTrace();
+
+				log.warn("Resolver " + name + " unable to parse zone data found for query " + lookup.getName(), e);
 			}
 		}
+
+		if (bestZone != null) {
+
+			lookup.complete(bestZone);
+		}
 	}
 
 	public void noResultsFound(GUID guid) {
+
 		log.info("No results found.");
+
+		completeLookup(guid);
 	}
 
 	public void searchFailed(GUID guid) {
+
 		log.info("Search failed.");
+
+		completeLookup(guid);
 	}
 
 	public void searchFinished(GUID guid) {
+
 		log.info("Search finished.");
+
+		completeLookup(guid);
+	}
+
+	private void completeLookup(GUID guid) {
+
+		ZoneLookup lookup = pendingLookups.get(guid);
+
+		if (lookup != null) {
+
+			lookup.complete(null);
+		}
 	}
 
 	public void searchStarted(GUID guid, String message) {
@@ -532,6 +634,11 @@ public class PGridResolver implements Plugin, Resolver, SearchListener {
 	}
 
 	public void shutdown() throws Exception {
+
+		if (zoneCacheRefreshTimer != null) {
+
+			zoneCacheRefreshTimer.cancel();
+		}
 	}
 
 	private String getPort() throws SAXException, IOException, ParserConfigurationException {
@@ -544,4 +651,102 @@ public class PGridResolver implements Plugin, Resolver, SearchListener {
 	public void setSystemInterface(SystemInterface systemInterface) {
 		this.systemInterface = systemInterface;
 	}
+
+	/**
+	 * The maximum time in milliseconds to wait for a P-Grid lookup to complete
+	 *
+	 * @param lookupTimeout
+	 */
+	public void setLookupTimeout(String lookupTimeout) {
+
+		Integer value = NumberUtils.toInt(lookupTimeout);
+
+		if (value != null && value > 0) {
+
+			this.lookupTimeout = value;
+
+		} else {
+
+			log.warn("Invalid lookup timeout " + lookupTimeout + " specified! (sticking to default value " + this.lookupTimeout + ")");
+		}
+	}
+
+	/**
+	 * The maximum number of zones to keep in the zone cache, 0 disables the cache
+	 *
+	 * @param zoneCacheSize
+	 */
+	public void setZoneCacheSize(String zoneCacheSize) {
+
+		Integer value = NumberUtils.toInt(zoneCacheSize);
+
+		if (value != null && value >= 0) {
+
+			this.zoneCacheSize = value;
+
+		} else {
+
+			log.warn("Invalid zone cache size " + zoneCacheSize + " specified! (sticking to default value " + this.zoneCacheSize + ")");
+		}
+	}
+
+	/**
+	 * The maximum time in seconds a zone is kept in the zone cache regardless of the refresh interval in its SOA record
+	 *
+	 * @param zoneCacheMaxTTL
+	 */
+	public void setZoneCacheMaxTTL(String zoneCacheMaxTTL) {
+
+		Integer value = NumberUtils.toInt(zoneCacheMaxTTL);
+
+		if (value != null && value > 0) {
+
+			this.zoneCacheMaxTTL = value;
+
+		} else {
+
+			log.warn("Invalid zone cache max TTL " + zoneCacheMaxTTL + " specified! (sticking to default value " + this.zoneCacheMaxTTL + ")");
+		}
+	}
+
+	/**
+	 * Tracks a single zone lookup in the P-Grid network. The lookup is completed by the first search result containing a zone that is authoritative for
+	 * the queried name or when the search ends without such a result.
+	 */
+	private static class ZoneLookup {
+
+		private final Name name;
+		private final CountDownLatch latch = new CountDownLatch(1);
+		private volatile Zone zone;
+
+		public ZoneLookup(Name name) {
+
+			this.name = name;
+		}
+
+		public Name getName() {
+
+			return name;
+		}
+
+		public Zone getZone() {
+
+			return zone;
+		}
+
+		public synchronized void complete(Zone zone) {
+
+			if (latch.getCount() == 0) {
+				return;
+			}
+
+			this.zone = zone;
+			latch.countDown();
+		}
+
+		public boolean await(long timeout) throws InterruptedException {
+
+			return latch.await(timeout, TimeUnit.MILLISECONDS);
+		}
+	}
 }
@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Robert "Unlogic" Olofsson (unlogic@unlogic.se).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-3.0-standalone.html
+ ******************************************************************************/
+package se.unlogic.eagledns.resolvers;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xbill.DNS.Name;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.Zone;
+
+import se.unlogic.standardutils.time.MillisecondTimeUnits;
+
+/**
+ * A bounded cache of zones keyed by zone origin used by resolvers that fetch their zones from remote sources.
+ * <p>
+ * Each zone is kept for the refresh interval of its SOA record (or the SOA minimum if no refresh interval is set), capped by the max TTL of the cache.
+ * When the cache is full the least recently used zone is evicted.
+ *
+ * @author Robert "Unlogic" Olofsson (unlogic@unlogic.se)
+ *
+ */
+public class ZoneCache {
+
+	private final int maxSize;
+	private final long maxTTL;
+
+	private final LinkedHashMap<Name, CacheEntry> zoneMap;
+
+	/**
+	 * @param maxSize the maximum number of zones to keep in the cache
+	 * @param maxTTL the maximum time in seconds a zone is kept in the cache
+	 */
+	public ZoneCache(final int maxSize, long maxTTL) {
+
+		this.maxSize = maxSize;
+		this.maxTTL = maxTTL;
+
+		this.zoneMap = new LinkedHashMap<Name, CacheEntry>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = -3457223584719465215L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Name, CacheEntry> eldest) {
+
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cached zone with the longest origin matching the given name.
+	 *
+	 * @param name the queried name
+	 * @return the best matching zone or null if no unexpired zone matching the name is cached
+	 */
+	public synchronized Zone get(Name name) {
+
+		if (zoneMap.isEmpty()) {
+			return null;
+		}
+
+		long currentTime = System.currentTimeMillis();
+
+		int labels = name.labels();
+
+		for (int i = 0; i < labels; i++) {
+
+			Name tname = i == 0 ? name : new Name(name, i);
+
+			CacheEntry entry = zoneMap.get(tname);
+
+			if (entry != null) {
+
+				if (entry.getExpires() <= currentTime) {
+
+					zoneMap.remove(tname);
+					continue;
+				}
+
+				entry.setAccessed(true);
+
+				return entry.getZone();
+			}
+		}
+
+		return null;
+	}
+
+	public synchronized void put(Zone zone) {
+
+		if (maxSize > 0) {
+
+			zoneMap.put(zone.getOrigin(), new CacheEntry(zone, System.currentTimeMillis() + getTTL(zone) * MillisecondTimeUnits.SECOND));
+		}
+	}
+
+	public synchronized void remove(Name origin) {
+
+		zoneMap.remove(origin);
+	}
+
+	public synchronized void clear() {
+
+		zoneMap.clear();
+	}
+
+	public synchronized int size() {
+
+		return zoneMap.size();
+	}
+
+	/**
+	 * Returns the origins of all zones that have been used since they were cached and will expire within the last tenth of their TTL. Expired zones are
+	 * removed from the cache.
+	 */
+	public synchronized List<Name> getZonesDueForRefresh() {
+
+		long currentTime = System.currentTimeMillis();
+
+		List<Name> origins = new ArrayList<Name>();
+
+		Iterator<CacheEntry> iterator = zoneMap.values().iterator();
+
+		while (iterator.hasNext()) {
+
+			CacheEntry entry = iterator.next();
+
+			if (entry.getExpires() <= currentTime) {
+
+				iterator.remove();
+
+			} else if (entry.isAccessed() && entry.getExpires() - currentTime <= (getTTL(entry.getZone()) * MillisecondTimeUnits.SECOND) / 10) {
+
+				origins.add(entry.getZone().getOrigin());
+			}
+		}
+
+		return origins;
+	}
+
+	private long getTTL(Zone zone) {
+
+		SOARecord soa = zone.getSOA();
+
+		long ttl = soa.getRefresh() > 0 ? soa.getRefresh() : soa.getMinimum();
+
+		return Math.min(ttl, maxTTL);
+	}
+
+	private static class CacheEntry {
+
+		private final Zone zone;
+		private final long expires;
+		private volatile boolean accessed;
+
+		public CacheEntry(Zone zone, long expires) {
+
+			this.zone = zone;
+			this.expires = expires;
+		}
+
+		public Zone getZone() {
+
+			return zone;
+		}
+
+		public long getExpires() {
+
+			return expires;
+		}
+
+		public boolean isAccessed() {
+
+			return accessed;
+		}
+
+		public void setAccessed(boolean accessed) {
+
+			this.accessed = accessed;
+		}
+	}
+}
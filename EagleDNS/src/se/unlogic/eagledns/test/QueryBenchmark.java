@@ -0,0 +1,541 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Robert "Unlogic" Olofsson (unlogic@unlogic.se).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-3.0-standalone.html
+ ******************************************************************************/
+package se.unlogic.eagledns.test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.CNAMERecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.ExtendedFlags;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.NSRecord;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.OPTRecord;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+import org.xbill.DNS.Zone;
+
+import se.unlogic.eagledns.CachedPrimaryZone;
+import se.unlogic.eagledns.CachedSecondaryZone;
+import se.unlogic.eagledns.DefaultRequest;
+import se.unlogic.eagledns.EagleDNS;
+import se.unlogic.eagledns.SystemInterface;
+import se.unlogic.eagledns.ZoneIndex;
+import se.unlogic.eagledns.resolvers.AuthoritativeResolver;
+import se.unlogic.eagledns.resolvers.Resolver;
+import se.unlogic.standardutils.datatypes.SimpleEntry;
+import se.unlogic.standardutils.numbers.NumberUtils;
+
+/**
+ * In-process benchmark of the authoritative query path: parsing of the raw query, {@link AuthoritativeResolver#generateReply}, rendering of the
+ * response and AXFR streaming, run against synthetic zones of configurable size and depth.
+ * <p>
+ * The complete server path, {@link EagleDNS#getCachedReply} followed by {@link EagleDNS#generateReply} on a miss as done for UDP queries, is measured
+ * with the answer and negative caches disabled ("EagleDNS") and enabled ("EagleDNS cached").
+ * <p>
+ * For each scenario the throughput (ops/s), the number of bytes allocated per operation and the 50th and 99th percentile latencies are reported.
+ * Allocation is measured with the HotSpot specific com.sun.management.ThreadMXBean and reported as n/a on other VMs.
+ * <p>
+ * Usage: QueryBenchmark [zones] [records per zone] [name depth] [CNAME chain length] [seconds per scenario]
+ *
+ * @author Robert "Unlogic" Olofsson (unlogic@unlogic.se)
+ *
+ */
+public class QueryBenchmark {
+
+	private static final int QUERY_COUNT = 4096;
+	private static final int MAX_SAMPLES = 1000000;
+	private static final int CACHE_SIZE = 10000;
+	private static final SocketAddress CLIENT_ADDRESS = new InetSocketAddress(InetAddress.getLoopbackAddress(), 53000);
+
+	private final int zoneCount;
+	private final int recordCount;
+	private final int depth;
+	private final int chainLength;
+	private final long duration;
+
+	private final Random random = new Random(42);
+
+	private ZoneIndex zoneIndex;
+	private AuthoritativeResolver resolver;
+	private EagleDNS uncachedServer;
+	private EagleDNS cachedServer;
+
+	public QueryBenchmark(int zoneCount, int recordCount, int depth, int chainLength, int seconds) {
+
+		this.zoneCount = zoneCount;
+		this.recordCount = recordCount;
+		this.depth = depth;
+		this.chainLength = chainLength;
+		this.duration = seconds * 1000000000L;
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		BasicConfigurator.configure();
+		Logger.getRootLogger().setLevel(Level.WARN);
+
+		QueryBenchmark benchmark = new QueryBenchmark(getArgument(args, 0, 1000), getArgument(args, 1, 50), getArgument(args, 2, 3), getArgument(args, 3, 4), getArgument(args, 4, 5));
+
+		benchmark.run();
+	}
+
+	private static int getArgument(String[] args, int index, int defaultValue) {
+
+		if (args.length > index) {
+
+			Integer value = NumberUtils.toInt(args[index]);
+
+			if (value != null && value > 0) {
+				return value;
+			}
+		}
+
+		return defaultValue;
+	}
+
+	public void run() throws Exception {
+
+		System.out.println("Building " + zoneCount + " zones with " + recordCount + " records, name depth " + depth + " and CNAME chains of length " + chainLength);
+
+		buildZones();
+
+		resolver = new AuthoritativeResolver();
+		resolver.setSystemInterface(createSystemInterface());
+		resolver.init("Benchmark resolver");
+
+		List<Entry<String, Resolver>> resolvers = new ArrayList<Entry<String, Resolver>>();
+		resolvers.add(new SimpleEntry<String, Resolver>("Benchmark resolver", resolver));
+
+		uncachedServer = new EagleDNS(zoneIndex, resolvers, Rcode.NXDOMAIN, 0);
+		cachedServer = new EagleDNS(zoneIndex, resolvers, Rcode.NXDOMAIN, CACHE_SIZE);
+
+		System.out.println();
+		System.out.println(String.format("%-28s %14s %14s %12s %12s", "Scenario", "ops/s", "bytes/op", "p50 (us)", "p99 (us)"));
+
+		runQueryScenarios("A", createQueries("h", Type.A, false));
+		runQueryScenarios("CNAME chain", createQueries("c0", Type.A, false));
+		runQueryScenarios("Wildcard", createQueries("*", Type.A, false));
+		runQueryScenarios("DNSSEC OK", createQueries("h", Type.A, true));
+		runQueryScenarios("NXDOMAIN", createQueries("missing", Type.A, false));
+
+		runAXFRScenario();
+	}
+
+	private void buildZones() throws IOException {
+
+		ConcurrentHashMap<Name, CachedPrimaryZone> primaryZoneMap = new ConcurrentHashMap<Name, CachedPrimaryZone>();
+
+		Name nameServer = Name.fromString("localhost.");
+
+		InetAddress address = InetAddress.getByName("192.0.2.1");
+
+		for (int i = 0; i < zoneCount; i++) {
+
+			Name origin = Name.fromString("zone" + i + ".bench.");
+			Name hostOrigin = getHostOrigin(origin);
+
+			List<Record> records = new ArrayList<Record>();
+
+			records.add(new SOARecord(origin, DClass.IN, 3600, nameServer, Name.fromString("hostmaster", origin), 1, 3600, 600, 86400, 300));
+			records.add(new NSRecord(origin, DClass.IN, 3600, nameServer));
+
+			for (int j = 0; j < recordCount; j++) {
+
+				records.add(new ARecord(Name.fromString("h" + j, hostOrigin), DClass.IN, 3600, address));
+			}
+
+			for (int j = 0; j < chainLength; j++) {
+
+				Name target = j + 1 < chainLength ? Name.fromString("c" + (j + 1), hostOrigin) : Name.fromString("h0", hostOrigin);
+
+				records.add(new CNAMERecord(Name.fromString("c" + j, hostOrigin), DClass.IN, 3600, target));
+			}
+
+			records.add(new ARecord(Name.fromString("*", hostOrigin), DClass.IN, 3600, address));
+
+			primaryZoneMap.put(origin, new CachedPrimaryZone(new Zone(origin, records.toArray(new Record[records.size()])), null));
+		}
+
+		zoneIndex = new ZoneIndex(primaryZoneMap, new ConcurrentHashMap<Name, CachedSecondaryZone>());
+	}
+
+	private Name getHostOrigin(Name origin) throws IOException {
+
+		Name hostOrigin = origin;
+
+		for (int i = 1; i < depth; i++) {
+
+			hostOrigin = Name.fromString("l" + i, hostOrigin);
+		}
+
+		return hostOrigin;
+	}
+
+	private SystemInterface createSystemInterface() {
+
+		return (SystemInterface) Proxy.newProxyInstance(SystemInterface.class.getClassLoader(), new Class<?>[] { SystemInterface.class }, new InvocationHandler() {
+
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+				if (method.getName().equals("findBestZone")) {
+
+					return zoneIndex.findBestZone((Name) args[0]);
+
+				} else if (method.getName().equals("getZone")) {
+
+					CachedPrimaryZone cachedPrimaryZone = zoneIndex.getPrimaryZoneMap().get(args[0]);
+
+					return cachedPrimaryZone != null ? cachedPrimaryZone.getZone() : null;
+				}
+
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Creates raw queries for random zones, the host label "h" is replaced with a random host and "*" with a random name matching the wildcard
+	 */
+	private byte[][] createQueries(String host, int type, boolean dnssecOK) throws IOException {
+
+		byte[][] queries = new byte[QUERY_COUNT][];
+
+		for (int i = 0; i < QUERY_COUNT; i++) {
+
+			Name hostOrigin = getHostOrigin(Name.fromString("zone" + random.nextInt(zoneCount) + ".bench."));
+
+			String label = host;
+
+			if (host.equals("h")) {
+
+				label = "h" + random.nextInt(recordCount);
+
+			} else if (host.equals("*")) {
+
+				label = "w" + random.nextInt(1000000);
+			}
+
+			Message query = Message.newQuery(Record.newRecord(Name.fromString(label, hostOrigin), type, DClass.IN));
+
+			query.getHeader().setID(random.nextInt(65536));
+
+			if (dnssecOK) {
+
+				query.addRecord(new OPTRecord(4096, 0, 0, ExtendedFlags.DO), Section.ADDITIONAL);
+			}
+
+			queries[i] = query.toWire();
+		}
+
+		return queries;
+	}
+
+	private void runQueryScenarios(String name, final byte[][] queries) throws Exception {
+
+		final Message[] parsedQueries = new Message[queries.length];
+		final Message[] responses = new Message[queries.length];
+
+		for (int i = 0; i < queries.length; i++) {
+
+			parsedQueries[i] = new Message(queries[i]);
+			responses[i] = resolve(parsedQueries[i], queries[i], null);
+
+			if (responses[i] == null) {
+
+				throw new IllegalStateException("No response generated for query " + parsedQueries[i].getQuestion());
+			}
+		}
+
+		runScenario(name + " parse", new Operation() {
+
+			public void run(int i) throws Exception {
+
+				new Message(queries[i]);
+			}
+		});
+
+		runScenario(name + " resolve", new Operation() {
+
+			public void run(int i) throws Exception {
+
+				resolve(parsedQueries[i], queries[i], null);
+			}
+		});
+
+		runScenario(name + " render", new Operation() {
+
+			public void run(int i) throws Exception {
+
+				responses[i].toWire(getMaxLength(parsedQueries[i]));
+			}
+		});
+
+		runScenario(name + " full", new Operation() {
+
+			public void run(int i) throws Exception {
+
+				Message query = new Message(queries[i]);
+
+				resolve(query, queries[i], null).toWire(getMaxLength(query));
+			}
+		});
+
+		runScenario(name + " EagleDNS", new Operation() {
+
+			public void run(int i) throws Exception {
+
+				serve(uncachedServer, queries[i]);
+			}
+		});
+
+		runScenario(name + " EagleDNS cached", new Operation() {
+
+			public void run(int i) throws Exception {
+
+				serve(cachedServer, queries[i]);
+			}
+		});
+	}
+
+	private void runAXFRScenario() throws Exception {
+
+		final ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+
+		final byte[][] queries = new byte[QUERY_COUNT][];
+
+		for (int i = 0; i < QUERY_COUNT; i++) {
+
+			Message query = Message.newQuery(Record.newRecord(Name.fromString("zone" + random.nextInt(zoneCount) + ".bench."), Type.AXFR, DClass.IN));
+
+			queries[i] = query.toWire();
+		}
+
+		try {
+			//AXFR requests are only accepted from the nameservers of the zone
+			if (transfer(serverSocket, queries[0]) == 0) {
+
+				System.out.println(String.format("%-28s %s", "AXFR", "refused, localhost. does not resolve to the loopback address"));
+				return;
+			}
+
+			runScenario("AXFR", new Operation() {
+
+				public void run(int i) throws Exception {
+
+					transfer(serverSocket, queries[i]);
+				}
+			});
+
+		} finally {
+
+			serverSocket.close();
+		}
+	}
+
+	/**
+	 * Runs a zone transfer over a loopback connection
+	 *
+	 * @return the number of messages received by the client
+	 */
+	private int transfer(ServerSocket serverSocket, byte[] query) throws Exception {
+
+		Socket client = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+		Socket socket = serverSocket.accept();
+
+		TransferReader reader = new TransferReader(client);
+		reader.start();
+
+		try {
+			resolve(new Message(query), query, socket);
+
+		} finally {
+
+			//Refused transfers leave the socket open
+			socket.close();
+		}
+
+		reader.join();
+
+		return reader.getMessageCount();
+	}
+
+	private Message resolve(Message query, byte[] rawQuery, Socket socket) throws Exception {
+
+		return resolver.generateReply(new DefaultRequest(CLIENT_ADDRESS, query, rawQuery, rawQuery.length, socket));
+	}
+
+	/**
+	 * Answers a raw query the way a UDP connection does, from the answer cache or else through the resolvers
+	 */
+	private static byte[] serve(EagleDNS eagleDNS, byte[] query) throws Exception {
+
+		byte[] response = eagleDNS.getCachedReply(query, query.length, false);
+
+		if (response == null) {
+
+			response = eagleDNS.generateReply(new Message(query), query, query.length, null, CLIENT_ADDRESS);
+		}
+
+		return response;
+	}
+
+	private static int getMaxLength(Message query) {
+
+		OPTRecord queryOPT = query.getOPT();
+
+		if (queryOPT != null) {
+
+			return Math.max(queryOPT.getPayloadSize(), 512);
+		}
+
+		return 512;
+	}
+
+	private void runScenario(String name, Operation operation) throws Exception {
+
+		//Warmup
+		execute(operation, duration / 2, null);
+
+		long[] samples = new long[MAX_SAMPLES];
+
+		long allocatedBefore = getAllocatedBytes();
+		long start = System.nanoTime();
+
+		long operations = execute(operation, duration, samples);
+
+		long elapsed = System.nanoTime() - start;
+		long allocatedAfter = getAllocatedBytes();
+
+		int sampleCount = (int) Math.min(operations, MAX_SAMPLES);
+
+		Arrays.sort(samples, 0, sampleCount);
+
+		String allocation = allocatedBefore >= 0 ? String.valueOf((allocatedAfter - allocatedBefore) / operations) : "n/a";
+
+		System.out.println(String.format("%-28s %14.0f %14s %12.2f %12.2f", name, operations * 1000000000d / elapsed, allocation, samples[sampleCount / 2] / 1000d, samples[(int) (sampleCount * 0.99)] / 1000d));
+	}
+
+	private long execute(Operation operation, long duration, long[] samples) throws Exception {
+
+		long end = System.nanoTime() + duration;
+
+		long operations = 0;
+
+		while (true) {
+
+			long start = System.nanoTime();
+
+			if (start >= end) {
+				break;
+			}
+
+			operation.run((int) (operations % QUERY_COUNT));
+
+			if (samples != null && operations < MAX_SAMPLES) {
+
+				samples[(int) operations] = System.nanoTime() - start;
+			}
+
+			operations++;
+		}
+
+		return operations;
+	}
+
+	private static long getAllocatedBytes() {
+
+		java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+		if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+
+			return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+
+		return -1;
+	}
+
+	private static interface Operation {
+
+		public void run(int index) throws Exception;
+	}
+
+	/**
+	 * Reads the length prefixed messages of a zone transfer until the connection is closed
+	 */
+	private static class TransferReader extends Thread {
+
+		private final Socket socket;
+		private int messageCount;
+
+		public TransferReader(Socket socket) {
+
+			this.socket = socket;
+		}
+
+		@Override
+		public void run() {
+
+			try {
+				InputStream inputStream = socket.getInputStream();
+				DataInputStream dataIn = new DataInputStream(inputStream);
+
+				byte[] buffer = new byte[65535];
+
+				while (true) {
+
+					int length = dataIn.readUnsignedShort();
+
+					dataIn.readFully(buffer, 0, length);
+
+					messageCount++;
+				}
+
+			} catch (IOException e) {
+
+				//Connection closed at the end of the transfer
+
+			} finally {
+
+				try {
+					socket.close();
+				} catch (IOException e) {}
+			}
+		}
+
+		public int getMessageCount() {
+
+			return messageCount;
+		}
+	}
+}
@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Robert "Unlogic" Olofsson (unlogic@unlogic.se).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-3.0-standalone.html
+ ******************************************************************************/
+package se.unlogic.eagledns.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xbill.DNS.Master;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Type;
+import org.xbill.DNS.Zone;
+
+public class ZoneUtils {
+
+	/**
+	 * Parses a zone from its master file representation (as produced by {@link Zone#toMasterFile()}) in memory.
+	 *
+	 * @param masterFile the zone data
+	 * @return the parsed zone
+	 * @throws IOException if the zone data cannot be parsed or contains no SOA record
+	 */
+	public static Zone parseZone(String masterFile) throws IOException {
+
+		Master master = new Master(new ByteArrayInputStream(masterFile.getBytes("UTF-8")));
+
+		List<Record> records = new ArrayList<Record>();
+		Name origin = null;
+
+		Record record;
+
+		while ((record = master.nextRecord()) != null) {
+
+			if (origin == null && record.getType() == Type.SOA) {
+
+				origin = record.getName();
+			}
+
+			records.add(record);
+		}
+
+		if (origin == null) {
+
+			throw new IOException("No SOA record found in zone data");
+		}
+
+		return new Zone(origin, records.toArray(new Record[records.size()]));
+	}
+}
@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Robert "Unlogic" Olofsson (unlogic@unlogic.se).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-3.0-standalone.html
+ ******************************************************************************/
+package se.unlogic.eagledns.zoneproviders;
+
+import se.unlogic.eagledns.ZoneChangeCallback;
+
+/**
+ * 
+ * An extension of the {@link ZoneProvider} interface for zone providers that are able to tell which of their primary zones have changed.
+ * 
+ * When such a zone provider signals a change thru its {@link ZoneChangeCallback} Eagle DNS only applies the returned changes
+ * instead of reloading all zones from all zone providers.
+ * 
+ * @author Robert "Unlogic" Olofsson (unlogic@unlogic.se)
+ *
+ */
+public interface IncrementalZoneProvider extends ZoneProvider {
+
+	/**
+	 * This method is called each time the zone provider has signaled a change thru its {@link ZoneChangeCallback}.
+	 * It should return the primary zones that have been added, changed or removed since the last call to
+	 * {@link #getPrimaryZones()} or this method. Unchanged zones should not be loaded again.
+	 * 
+	 * If the changes cannot be determined the ZoneProvider should return null, in which case all zones are reloaded.
+	 * 
+	 * @return
+	 */
+	public ZoneChanges getPrimaryZoneChanges();
+}
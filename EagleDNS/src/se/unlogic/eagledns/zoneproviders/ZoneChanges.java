@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Robert "Unlogic" Olofsson (unlogic@unlogic.se).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-3.0-standalone.html
+ ******************************************************************************/
+package se.unlogic.eagledns.zoneproviders;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Zone;
+
+/**
+ * The changes to the primary zones of an {@link IncrementalZoneProvider}.
+ * 
+ * @author Robert "Unlogic" Olofsson (unlogic@unlogic.se)
+ *
+ */
+public class ZoneChanges {
+
+	private final List<Zone> addedZones = new ArrayList<Zone>();
+	private final List<Zone> changedZones = new ArrayList<Zone>();
+	private final List<Name> removedZones = new ArrayList<Name>();
+
+	public void addAddedZone(Zone zone) {
+
+		addedZones.add(zone);
+	}
+
+	public void addChangedZone(Zone zone) {
+
+		changedZones.add(zone);
+	}
+
+	public void addRemovedZone(Name origin) {
+
+		removedZones.add(origin);
+	}
+
+	public List<Zone> getAddedZones() {
+
+		return addedZones;
+	}
+
+	public List<Zone> getChangedZones() {
+
+		return changedZones;
+	}
+
+	public List<Name> getRemovedZones() {
+
+		return removedZones;
+	}
+
+	public boolean isEmpty() {
+
+		return addedZones.isEmpty() && changedZones.isEmpty() && removedZones.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+
+		return addedZones.size() + " added, " + changedZones.size() + " changed and " + removedZones.size() + " removed zones";
+	}
+}
@@ -9,11 +9,27 @@ package se.unlogic.eagledns.zoneproviders.file;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 import org.xbill.DNS.Name;
@@ -24,7 +40,8 @@ import se.unlogic.eagledns.SecondaryZone;
 import se.unlogic.eagledns.SystemInterface;
 import se.unlogic.eagledns.ZoneChangeCallback;
 import se.unlogic.eagledns.ZoneProviderUpdatable;
-import se.unlogic.eagledns.zoneproviders.ZoneProvider;
+import se.unlogic.eagledns.zoneproviders.IncrementalZoneProvider;
+import se.unlogic.eagledns.zoneproviders.ZoneChanges;
 import se.unlogic.standardutils.numbers.NumberUtils;
 import se.unlogic.standardutils.time.MillisecondTimeUnits;
 import se.unlogic.standardutils.timer.RunnableTimerTask;
@@ -37,7 +54,7 @@ import se.unlogic.standardutils.timer.RunnableTimerTask;
  * @author Michael Neale, Red Hat (JBoss division)
  * 
  */
-public class FileZoneProvider implements ZoneProvider, ZoneProviderUpdatable, Runnable {
+public class FileZoneProvider implements IncrementalZoneProvider, ZoneProviderUpdatable, Runnable {
 
 	private final Logger log = Logger.getLogger(this.getClass());
 
@@ -53,10 +70,53 @@ public class FileZoneProvider implements ZoneProvider, ZoneProviderUpdatable, Ru
 
 	private Timer watcher;
 
+	private boolean useWatchService;
+	private long watchDebounce = 500;
+	private WatchService watchService;
+
+	private Integer parserThreads;
+	private ForkJoinPool parserPool;
+
+	private String zoneCacheDirectory;
+	private ZoneFileCache zoneFileCache;
+
 	public void init(String name) {
 
 		this.name = name;
 
+		parserPool = new ForkJoinPool(parserThreads != null ? parserThreads : Runtime.getRuntime().availableProcessors());
+
+		if (zoneCacheDirectory != null) {
+
+			File cacheDir = new File(zoneCacheDirectory);
+
+			if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+
+				log.error("Unable to create zone cache directory " + zoneCacheDirectory + " for FileZoneProvider " + name + ", parsed zones will not be cached");
+
+			} else {
+
+				zoneFileCache = new ZoneFileCache(cacheDir);
+			}
+		}
+
+		if (autoReloadZones && useWatchService) {
+
+			try {
+				watchService = FileSystems.getDefault().newWatchService();
+
+				new File(zoneFileDirectory).toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+
+				new DirectoryWatcher().start();
+
+				return;
+
+			} catch (IOException e) {
+
+				log.error("FileZoneProvider " + name + " unable to watch zone file directory " + zoneFileDirectory + ", " + e);
+			}
+		}
+
 		if (autoReloadZones && pollingInterval != null) {
 
 			watcher = new Timer(true);
@@ -74,7 +134,7 @@ public class FileZoneProvider implements ZoneProvider, ZoneProviderUpdatable, Ru
 		}
 	}
 
-	private boolean hasDirectoryChanged() {
+	private synchronized boolean hasDirectoryChanged() {
 
 		File folder = new File(this.zoneFileDirectory);
 		File[] files = folder.listFiles();
@@ -102,18 +162,11 @@ public class FileZoneProvider implements ZoneProvider, ZoneProviderUpdatable, Ru
 		}
 	}
 
-	public Collection<Zone> getPrimaryZones() {
-
-		File zoneDir = new File(this.zoneFileDirectory);
-
-		if (!zoneDir.exists() || !zoneDir.isDirectory()) {
-
-			log.error("Zone file directory specified for FileZoneProvider " + name + " does not exist!");
-			return null;
+	public synchronized Collection<Zone> getPrimaryZones() {
 
-		} else if (!zoneDir.canRead()) {
+		File zoneDir = getZoneDirectory();
 
-			log.error("Zone file directory specified for FileZoneProvider " + name + " is not readable!");
+		if (zoneDir == null) {
 			return null;
 		}
 
@@ -128,36 +181,254 @@ public class FileZoneProvider implements ZoneProvider, ZoneProviderUpdatable, Ru
 
 		ArrayList<Zone> zones = new ArrayList<Zone>(files.length);
 
+		for (Zone zone : parseZones(Arrays.asList(files))) {
+
+			if (zone != null) {
+
+				zones.add(zone);
+			}
+		}
+
+		if (!zones.isEmpty()) {
+
+			return zones;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Only the zone files that have been added or modified since the last reload are parsed, zone files that have been deleted are reported as
+	 * removed zones. A modified zone file that can no longer be parsed is ignored, leaving the previously loaded version of the zone in place.
+	 */
+	public synchronized ZoneChanges getPrimaryZoneChanges() {
+
+		File zoneDir = getZoneDirectory();
+
+		if (zoneDir == null) {
+			return null;
+		}
+
+		File[] files = zoneDir.listFiles();
+
+		if (files == null) {
+			return null;
+		}
+
+		Map<String, Long> previousFileList = lastFileList;
+
+		updateZoneFiles(files);
+
+		List<File> modifiedFiles = new ArrayList<File>();
+
 		for (File zoneFile : files) {
 
-			if (!zoneFile.canRead()) {
-				log.error("FileZoneProvider " + name + " unable to access zone file " + zoneFile);
+			Long lastModified = previousFileList.get(zoneFile.getName());
+
+			if (lastModified == null || zoneFile.lastModified() > lastModified) {
+
+				modifiedFiles.add(zoneFile);
+			}
+		}
+
+		List<String> removedFiles = new ArrayList<String>();
+
+		for (String fileName : previousFileList.keySet()) {
+
+			if (!lastFileList.containsKey(fileName)) {
+
+				removedFiles.add(fileName);
+			}
+		}
+
+		return getZoneChanges(previousFileList, modifiedFiles, removedFiles);
+	}
+
+	/**
+	 * Returns the changes for the given zone files reported by the watch service
+	 */
+	private synchronized ZoneChanges getZoneChanges(Set<String> fileNames) {
+
+		Map<String, Long> previousFileList = lastFileList;
+		Map<String, Long> fileList = new HashMap<String, Long>(previousFileList);
+
+		List<File> modifiedFiles = new ArrayList<File>();
+		List<String> removedFiles = new ArrayList<String>();
+
+		for (String fileName : fileNames) {
+
+			File zoneFile = new File(zoneFileDirectory, fileName);
+
+			Long lastModified = previousFileList.get(fileName);
+
+			if (zoneFile.isFile()) {
+
+				//Parse the file even if its modification time is unchanged since it may have been written twice within the timestamp resolution
+				modifiedFiles.add(zoneFile);
+
+				fileList.put(fileName, zoneFile.lastModified());
+
+			} else if (lastModified != null) {
+
+				fileList.remove(fileName);
+				removedFiles.add(fileName);
+			}
+		}
+
+		lastFileList = fileList;
+
+		return getZoneChanges(previousFileList, modifiedFiles, removedFiles);
+	}
+
+	private ZoneChanges getZoneChanges(Map<String, Long> previousFileList, List<File> modifiedFiles, List<String> removedFiles) {
+
+		ZoneChanges zoneChanges = new ZoneChanges();
+
+		List<Zone> modifiedZones = parseZones(modifiedFiles);
+
+		for (int i = 0; i < modifiedFiles.size(); i++) {
+
+			Zone zone = modifiedZones.get(i);
+
+			if (zone == null) {
 				continue;
 			}
 
-			Name origin;
-			try {
+			if (!previousFileList.containsKey(modifiedFiles.get(i).getName())) {
 
-				origin = Name.fromString(zoneFile.getName(), Name.root);
-				Zone zone = new Zone(origin, zoneFile.getPath());
+				zoneChanges.addAddedZone(zone);
 
-				log.debug("FileZoneProvider " + name + " successfully parsed zone file " + zoneFile.getName());
+			} else {
 
-				zones.add(zone);
+				zoneChanges.addChangedZone(zone);
+			}
+		}
+
+		for (String fileName : removedFiles) {
+
+			if (zoneFileCache != null) {
+
+				zoneFileCache.remove(fileName);
+			}
+
+			try {
+				zoneChanges.addRemovedZone(Name.fromString(fileName, Name.root));
 
 			} catch (TextParseException e) {
 
-				log.error("FileZoneProvider " + name + " unable to parse zone file " + zoneFile.getName(), e);
+				log.debug("FileZoneProvider " + name + " ignoring removed file " + fileName + " with invalid zone name");
+			}
+		}
 
-			} catch (IOException e) {
+		return zoneChanges;
+	}
+
+	private File getZoneDirectory() {
+
+		File zoneDir = new File(this.zoneFileDirectory);
+
+		if (!zoneDir.exists() || !zoneDir.isDirectory()) {
+
+			log.error("Zone file directory specified for FileZoneProvider " + name + " does not exist!");
+			return null;
 
-				log.error("Unable to parse zone file " + zoneFile + " in FileZoneProvider " + name, e);
+		} else if (!zoneDir.canRead()) {
+
+			log.error("Zone file directory specified for FileZoneProvider " + name + " is not readable!");
+			return null;
+		}
+
+		return zoneDir;
+	}
+
+	/**
+	 * Parses the given zone files in parallel using the parser pool
+	 *
+	 * @return the parsed zones in the same order as the zone files, with null for each zone file that could not be parsed
+	 */
+	private List<Zone> parseZones(List<File> zoneFiles) {
+
+		List<Callable<Zone>> tasks = new ArrayList<Callable<Zone>>(zoneFiles.size());
+
+		for (final File zoneFile : zoneFiles) {
+
+			tasks.add(new Callable<Zone>() {
+
+				public Zone call() {
+
+					return parseZone(zoneFile);
+				}
+			});
+		}
+
+		List<Zone> zones = new ArrayList<Zone>(zoneFiles.size());
+
+		for (Future<Zone> future : parserPool.invokeAll(tasks)) {
+
+			try {
+				zones.add(future.get());
+
+			} catch (ExecutionException e) {
+
+				log.error("FileZoneProvider " + name + " unable to parse zone file", e.getCause());
+				zones.add(null);
+
+			} catch (InterruptedException e) {
+
+				Thread.currentThread().interrupt();
+				zones.add(null);
 			}
 		}
 
-		if (!zones.isEmpty()) {
+		return zones;
+	}
 
-			return zones;
+	private Zone parseZone(File zoneFile) {
+
+		if (!zoneFile.canRead()) {
+			log.error("FileZoneProvider " + name + " unable to access zone file " + zoneFile);
+			return null;
+		}
+
+		//Read before parsing so that changes made while parsing invalidate the cached zone
+		long lastModified = zoneFile.lastModified();
+		long length = zoneFile.length();
+
+		Name origin;
+		try {
+
+			origin = Name.fromString(zoneFile.getName(), Name.root);
+
+			if (zoneFileCache != null) {
+
+				Zone zone = zoneFileCache.get(zoneFile, origin);
+
+				if (zone != null) {
+
+					log.debug("FileZoneProvider " + name + " loaded unchanged zone file " + zoneFile.getName() + " from cache");
+
+					return zone;
+				}
+			}
+
+			Zone zone = new Zone(origin, zoneFile.getPath());
+
+			log.debug("FileZoneProvider " + name + " successfully parsed zone file " + zoneFile.getName());
+
+			if (zoneFileCache != null) {
+
+				zoneFileCache.put(zoneFile, lastModified, length, zone);
+			}
+
+			return zone;
+
+		} catch (TextParseException e) {
+
+			log.error("FileZoneProvider " + name + " unable to parse zone file " + zoneFile.getName(), e);
+
+		} catch (IOException e) {
+
+			log.error("Unable to parse zone file " + zoneFile + " in FileZoneProvider " + name, e);
 		}
 
 		return null;
@@ -165,6 +436,17 @@ public class FileZoneProvider implements ZoneProvider, ZoneProviderUpdatable, Ru
 
 	public void shutdown() {
 
+		if (watchService != null) {
+
+			try {
+				watchService.close();
+			} catch (IOException e) {}
+		}
+
+		if (parserPool != null) {
+
+			parserPool.shutdown();
+		}
 	}
 
 	public String getZoneFileDirectory() {
@@ -219,7 +501,132 @@ public class FileZoneProvider implements ZoneProvider, ZoneProviderUpdatable, Ru
 		}
 	}
 
+	public void setUseWatchService(String useWatchService) {
+
+		this.useWatchService = Boolean.parseBoolean(useWatchService);
+	}
+
+	public void setWatchDebounce(String watchDebounce) {
+
+		Integer value = NumberUtils.toInt(watchDebounce);
+
+		if (value != null && value >= 0) {
+
+			this.watchDebounce = value;
+
+		} else {
+
+			log.warn("Invalid watch debounce specified: " + watchDebounce);
+		}
+	}
+
+	public void setParserThreads(String parserThreads) {
+
+		Integer value = NumberUtils.toInt(parserThreads);
+
+		if (value != null && value > 0) {
+
+			this.parserThreads = value;
+
+		} else {
+
+			log.warn("Invalid number of parser threads specified: " + parserThreads);
+		}
+	}
+
+	public void setZoneCacheDirectory(String zoneCacheDirectory) {
+
+		this.zoneCacheDirectory = zoneCacheDirectory;
+
+		log.debug("zoneCacheDirectory set to " + zoneCacheDirectory);
+	}
+
 	public void setSystemInterface(SystemInterface systemInterface) {
 
 	}
+
+	/**
+	 * Waits for events from the watch service and reports the changed zone files once no new events have arrived during the debounce interval
+	 */
+	private class DirectoryWatcher extends Thread {
+
+		public DirectoryWatcher() {
+
+			super("FileZoneProvider " + name + " directory watcher");
+			this.setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+
+			log.info("FileZoneProvider " + name + " watching zone file directory " + zoneFileDirectory + " for changes");
+
+			while (true) {
+
+				try {
+					WatchKey key = watchService.take();
+
+					Set<String> fileNames = new HashSet<String>();
+					boolean overflow = false;
+
+					while (key != null) {
+
+						for (WatchEvent<?> event : key.pollEvents()) {
+
+							if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+
+								overflow = true;
+
+							} else {
+
+								fileNames.add(((Path) event.context()).getFileName().toString());
+							}
+						}
+
+						if (!key.reset()) {
+
+							log.error("FileZoneProvider " + name + " no longer able to watch zone file directory " + zoneFileDirectory);
+							return;
+						}
+
+						key = watchService.poll(watchDebounce, TimeUnit.MILLISECONDS);
+					}
+
+					if (changeCallback == null) {
+						continue;
+					}
+
+					if (overflow) {
+
+						log.info("Changes in directory " + zoneFileDirectory + " detected, events lost");
+
+						changeCallback.zoneDataChanged();
+
+					} else {
+
+						ZoneChanges zoneChanges = getZoneChanges(fileNames);
+
+						if (!zoneChanges.isEmpty()) {
+
+							log.info("Changes in directory " + zoneFileDirectory + " detected");
+
+							changeCallback.zoneDataChanged(zoneChanges);
+						}
+					}
+
+				} catch (ClosedWatchServiceException e) {
+
+					return;
+
+				} catch (InterruptedException e) {
+
+					return;
+
+				} catch (Throwable t) {
+
+					log.error("Error processing changes in zone file directory " + zoneFileDirectory + " in FileZoneProvider " + name, t);
+				}
+			}
+		}
+	}
 }
@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Robert "Unlogic" Olofsson (unlogic@unlogic.se).
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v3
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-3.0-standalone.html
+ ******************************************************************************/
+package se.unlogic.eagledns.zoneproviders.file;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.RRset;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Zone;
+
+import se.unlogic.standardutils.io.CloseUtils;
+
+/**
+ * Binary cache of parsed zone files used by {@link FileZoneProvider}.
+ * <p>
+ * Each zone is stored in a file of its own containing the path, modification time and size of the zone file it was parsed from followed by the records
+ * of the zone in DNS wire format. A cached zone is only used if the path, modification time and size still match the zone file.
+ *
+ * @author Robert "Unlogic" Olofsson (unlogic@unlogic.se)
+ *
+ */
+public class ZoneFileCache {
+
+	private static final int MAGIC = 0x45444E53;
+	private static final int VERSION = 1;
+
+	private static final String CACHE_FILE_SUFFIX = ".cache";
+
+	private final Logger log = Logger.getLogger(this.getClass());
+
+	private final File cacheDirectory;
+
+	public ZoneFileCache(File cacheDirectory) {
+
+		this.cacheDirectory = cacheDirectory;
+	}
+
+	/**
+	 * @return the cached zone or null if the zone file is not cached or has been modified since it was cached
+	 */
+	public Zone get(File zoneFile, Name origin) {
+
+		File cacheFile = getCacheFile(zoneFile.getName());
+
+		DataInputStream in = null;
+
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return null;
+			}
+
+			if (!in.readUTF().equals(zoneFile.getAbsolutePath()) || in.readLong() != zoneFile.lastModified() || in.readLong() != zoneFile.length()) {
+				return null;
+			}
+
+			int recordCount = in.readInt();
+
+			Record[] records = new Record[recordCount];
+
+			for (int i = 0; i < recordCount; i++) {
+
+				byte[] data = new byte[in.readUnsignedShort()];
+
+				in.readFully(data);
+
+				records[i] = Record.fromWire(data, Section.ANSWER);
+			}
+
+			return new Zone(origin, records);
+
+		} catch (FileNotFoundException e) {
+
+			return null;
+
+		} catch (IOException e) {
+
+			log.debug("Unable to read cached zone " + cacheFile + ", " + e);
+
+		} catch (RuntimeException e) {
+
+			log.debug("Unable to read cached zone " + cacheFile + ", " + e);
+
+		} finally {
+
+			CloseUtils.close(in);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Caches a parsed zone
+	 *
+	 * @param zoneFile the zone file the zone was parsed from
+	 * @param lastModified the modification time of the zone file before it was parsed
+	 * @param length the size of the zone file before it was parsed
+	 * @param zone the parsed zone
+	 */
+	@SuppressWarnings("unchecked")
+	public void put(File zoneFile, long lastModified, long length, Zone zone) {
+
+		List<Record> records = new ArrayList<Record>();
+
+		Iterator<RRset> rrsetIterator = zone.iterator();
+
+		while (rrsetIterator.hasNext()) {
+
+			RRset rrset = rrsetIterator.next();
+
+			addRecords(records, rrset.rrs());
+			addRecords(records, rrset.sigs());
+		}
+
+		File cacheFile = getCacheFile(zoneFile.getName());
+		File tempFile = new File(cacheDirectory, cacheFile.getName() + ".tmp");
+
+		DataOutputStream out = null;
+
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(zoneFile.getAbsolutePath());
+			out.writeLong(lastModified);
+			out.writeLong(length);
+			out.writeInt(records.size());
+
+			for (Record record : records) {
+
+				byte[] data = record.toWire(Section.ANSWER);
+
+				out.writeShort(data.length);
+				out.write(data);
+			}
+
+			out.close();
+			out = null;
+
+			if (!tempFile.renameTo(cacheFile)) {
+
+				cacheFile.delete();
+
+				if (!tempFile.renameTo(cacheFile)) {
+
+					throw new IOException("Unable to rename " + tempFile + " to " + cacheFile);
+				}
+			}
+
+		} catch (IOException e) {
+
+			log.warn("Unable to cache zone " + zone.getOrigin() + " in " + cacheFile + ", " + e);
+
+			tempFile.delete();
+
+		} finally {
+
+			CloseUtils.close(out);
+		}
+	}
+
+	public void remove(String zoneFileName) {
+
+		getCacheFile(zoneFileName).delete();
+	}
+
+	private File getCacheFile(String zoneFileName) {
+
+		return new File(cacheDirectory, zoneFileName + CACHE_FILE_SUFFIX);
+	}
+
+	private static void addRecords(List<Record> records, Iterator<?> iterator) {
+
+		while (iterator.hasNext()) {
+
+			records.add((Record) iterator.next());
+		}
+	}
+}
@@ -4,15 +4,11 @@ import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Timer;
 
@@ -42,17 +38,20 @@ import se.unlogic.eagledns.SecondaryZone;
 import se.unlogic.eagledns.SystemInterface;
 import se.unlogic.eagledns.ZoneChangeCallback;
 import se.unlogic.eagledns.ZoneProviderUpdatable;
-import se.unlogic.eagledns.zoneproviders.ZoneProvider;
+import se.unlogic.eagledns.utils.ZoneUtils;
+import se.unlogic.eagledns.zoneproviders.IncrementalZoneProvider;
+import se.unlogic.eagledns.zoneproviders.ZoneChanges;
 import se.unlogic.standardutils.time.MillisecondTimeUnits;
 import se.unlogic.standardutils.timer.RunnableTimerTask;
 import se.unlogic.standardutils.xml.XMLParser;
 import test.SimpleTypeHandler;
 
-public class PGridZoneProvider implements ZoneProvider, ZoneProviderUpdatable, SearchListener, Runnable {
+public class PGridZoneProvider implements IncrementalZoneProvider, ZoneProviderUpdatable, SearchListener, Runnable {
 
 	private final Logger log = Logger.getLogger(this.getClass());
 	private String name;
 	private Collection<Zone> zones;
+	private Map<Name, Long> zoneSerials = new HashMap<Name, Long>();
 	private ZoneChangeCallback zoneChangeCallback;
 	private Timer watcher;
 
@@ -89,6 +88,35 @@ public class PGridZoneProvider implements ZoneProvider, ZoneProviderUpdatable, S
 	}
 
 	public Collection<Zone> getPrimaryZones() {
+		Collection<Zone> zones = searchZones();
+		zoneSerials = getSerials(zones);
+		if (zones.isEmpty() == false)
+			return zones;
+		return null;
+	}
+
+	// compares the serials of the zones found in the network with the ones found by the previous search
+	public ZoneChanges getPrimaryZoneChanges() {
+		Collection<Zone> zones = searchZones();
+		Map<Name, Long> previousSerials = zoneSerials;
+		zoneSerials = getSerials(zones);
+
+		ZoneChanges zoneChanges = new ZoneChanges();
+		for (Zone zone : zones) {
+			Long serial = previousSerials.get(zone.getOrigin());
+			if (serial == null)
+				zoneChanges.addAddedZone(zone);
+			else if (serial != zone.getSOA().getSerial())
+				zoneChanges.addChangedZone(zone);
+		}
+		for (Name origin : previousSerials.keySet()) {
+			if (!zoneSerials.containsKey(origin))
+				zoneChanges.addRemovedZone(origin);
+		}
+		return zoneChanges;
+	}
+
+	private Collection<Zone> searchZones() {
 		zones = new ArrayList<Zone>();
 		Query query = storageFactory.createQuery(type, "a", "z");
 		storage.search(query, this);
@@ -100,9 +128,15 @@ public class PGridZoneProvider implements ZoneProvider, ZoneProviderUpdatable, S
 		for (Zone zone : zones) {
 			log.info(zone.getOrigin());
 		}
-		if (zones.isEmpty() == false)
-			return zones;
-		return null;
+		return zones;
+	}
+
+	private Map<Name, Long> getSerials(Collection<Zone> zones) {
+		Map<Name, Long> serials = new HashMap<Name, Long>();
+		for (Zone zone : zones) {
+			serials.put(zone.getOrigin(), zone.getSOA().getSerial());
+		}
+		return serials;
 	}
 
 	public Collection<SecondaryZone> getSecondaryZones() {
@@ -123,17 +157,8 @@ public class PGridZoneProvider implements ZoneProvider, ZoneProviderUpdatable, S
 			DataItem item = (DataItem) it.next();
 			String data = (String) item.getData();
 			log.info("Found item: " + data);
-			String first = data.split("\n")[0];
-			String name = first.split("\t")[0];
-			name = name.substring(0, name.length());
-
-			Path file = Paths.get("temp.txt");
-			List<String> lines = Arrays.asList(data);
-			Charset charset = Charset.forName("UTF-8");
 			try {
-				Files.write(file, lines, charset);
-				Zone zone = new Zone(new Name(name), "temp.txt");
-				zones.add(zone);
+				zones.add(ZoneUtils.parseZone(data));
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
@@ -85,6 +85,22 @@ public interface Storage {
 	 */
 	public void search(Query query, SearchListener listener) throws NoSuchTypeException, NoRouteToKeyException;
 
+	/**
+	 * Search the network for the items matching a batch of exact
+	 * queries. The queries are grouped by the next peer on their
+	 * route and each group is sent as one message. Callback is
+	 * notified for the results of each query by its GUID, and
+	 * when the batch is finished if it is a
+	 * {@link p2p.storage.events.BatchSearchListener}.
+	 *
+	 * @param queries  the exact queries of the batch
+	 * @param listener an object to notify when results arrive
+	 * @return the GUID of the batch.
+	 * @throws p2p.storage.events.NoSuchTypeException if the provided Type is unknown.
+   * @throws NoRouteToKeyException if the queries cannot be routed to responsible peers.
+	 */
+	public GUID search(Collection queries, SearchListener listener) throws NoSuchTypeException, NoRouteToKeyException;
+
 	/**
 	 * Inserts the dataitems int the network, if the items with such ID's already
 	 * exist, they will be rewritten
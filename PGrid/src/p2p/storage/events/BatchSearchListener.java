@@ -0,0 +1,45 @@
+/**
+ * Copyright (c) 2002 The P-Grid Team,
+ *                    All Rights Reserved.
+ *
+ * This file is part of the P-Grid package.
+ * P-Grid homepage: http://www.p-grid.org/
+ *
+ * The P-Grid package is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This package is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; see the file LICENSE.
+ * If not you can find the GPL at http://www.gnu.org/copyleft/gpl.html
+ */
+
+package p2p.storage.events;
+
+import p2p.basic.GUID;
+
+/**
+ * Extends the search callback interface by the notification of finished batch searches. The queries of a batch are
+ * reported with their own GUIDs as usual, search listeners not implementing this interface are not informed when the
+ * whole batch is finished.
+ *
+ * @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
+ * @version 1.0.0
+ */
+public interface BatchSearchListener extends SearchListener {
+
+	/**
+	 * Invoked when all queries of a batch search were answered, failed, or exceeded their deadline. No further
+	 * notifications are sent for the queries of the batch.
+	 *
+	 * @param guid    the GUID of the batch search
+	 */
+	public void batchFinished(GUID guid);
+
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2002 The P-Grid Team,
+ *                    All Rights Reserved.
+ *
+ * This file is part of the P-Grid package.
+ * P-Grid homepage: http://www.p-grid.org/
+ *
+ * The P-Grid package is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This package is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; see the file LICENSE.
+ * If not you can find the GPL at http://www.gnu.org/copyleft/gpl.html
+ */
+
+package pgrid;
+
+import pgrid.network.protocol.BinaryReader;
+import pgrid.network.protocol.BinaryWriter;
+
+import java.io.IOException;
+
+/**
+ * This interface represents a data item, which can be sent in binary P-Grid messages without an XML representation.
+ * Data items not implementing this interface are sent as XML string inside binary messages.
+ *
+ * @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
+ * @version 1.0.0
+ */
+public interface BinaryDataItem {
+
+	/**
+	 * Writes the values of this data item except its type.
+	 *
+	 * @param out       the binary writer.
+	 * @param signature <code>true</code> if the signature of the data item should be written.
+	 */
+	public void encode(BinaryWriter out, boolean signature);
+
+	/**
+	 * Reads the values of this data item except its type.
+	 *
+	 * @param in the binary reader.
+	 * @throws IOException if the data item is malformed.
+	 */
+	public void decode(BinaryReader in) throws IOException;
+
+}
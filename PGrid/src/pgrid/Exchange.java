@@ -26,7 +26,8 @@ package pgrid;
 
 import p2p.basic.GUID;
 import pgrid.core.XMLRoutingTable;
-import pgrid.core.storage.DBDataTable;
+import pgrid.core.storage.DataTable;
+import pgrid.core.storage.PageSignature;
 import pgrid.util.LexicalDefaultHandler;
 
 /**
@@ -40,7 +41,7 @@ public abstract class Exchange extends LexicalDefaultHandler {
 	/**
 	 * The list of data items.
 	 */
-	protected DBDataTable mDataTable = null;
+	protected DataTable mDataTable = null;
 
 	/**
 	 * The message GUID.
@@ -62,6 +63,17 @@ public abstract class Exchange extends LexicalDefaultHandler {
 	 */
 	protected int mMinStorage = 0;
 
+	/**
+	 * The page signature of the data items below the path of the creating host.
+	 */
+	protected PageSignature mPageSignature = null;
+
+	/**
+	 * The page signature of the creating host's data items in the data table. Data items of pages with the same
+	 * signature at the receiving host are left out.
+	 */
+	protected PageSignature mDataTablePages = null;
+
 	/**
 	 * The random number.
 	 */
@@ -99,7 +111,7 @@ public abstract class Exchange extends LexicalDefaultHandler {
 	 * @param routingTable the Routing Table of the creating host.
 	 * @param dataTable    the list of data items.
 	 */
-	protected Exchange(GUID guid, PGridHost host, int recursion, int lCurrent, int minStorage, double replicaEst, XMLRoutingTable routingTable, DBDataTable dataTable) {
+	protected Exchange(GUID guid, PGridHost host, int recursion, int lCurrent, int minStorage, double replicaEst, XMLRoutingTable routingTable, DataTable dataTable) {
 		mGUID = guid;
 		mHost = host;
 		mRecursion = recursion;
@@ -110,12 +122,31 @@ public abstract class Exchange extends LexicalDefaultHandler {
 		mDataTable = dataTable;
 	}
 
+	/**
+	 * Returns the page signature of the data items below the path of the creating host.
+	 *
+	 * @return the page signature, or <code>null</code> if not sent.
+	 */
+	public PageSignature getPageSignature() {
+		return mPageSignature;
+	}
+
+	/**
+	 * Returns the page signature of the creating host's data items in the data table. The data table lacks the data
+	 * items of all pages signed equally by the receiving host.
+	 *
+	 * @return the page signature, or <code>null</code> if the data table is complete.
+	 */
+	public PageSignature getDataTablePages() {
+		return mDataTablePages;
+	}
+
 	/**
 	 * Returns the list of data items.
 	 *
 	 * @return the list of data items.
 	 */
-	public DBDataTable getDataTable() {
+	public DataTable getDataTable() {
 		return mDataTable;
 	}
 
@@ -124,7 +155,7 @@ public abstract class Exchange extends LexicalDefaultHandler {
 	 *
 	 * @param dataTable the list of data items.
 	 */
-	public void setDataTable(DBDataTable dataTable) {
+	public void setDataTable(DataTable dataTable) {
 		mDataTable = dataTable;
 	}
 
@@ -60,6 +60,15 @@ public class GUID extends pgrid.util.guid.GUID implements p2p.basic.GUID {
 		super(v);
 	}
 
+	/**
+	 * Constructs an unique ID object from the given bytes, e.g., read from a binary message.
+	 *
+	 * @param id the bytes of the unique ID.
+	 */
+	public GUID(byte[] id) {
+		super(id);
+	}
+
 	/**
 	 * Returns a GUID.
 	 *
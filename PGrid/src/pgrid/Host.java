@@ -191,6 +191,30 @@ public abstract class Host {
 		}
 	}
 
+	/**
+	 * Sets the address of the host if it differs from the current address. The internet address of a changed host has
+	 * to be resolved again.
+	 *
+	 * @param addr the address of the host.
+	 * @param port the port as string of the host.
+	 * @return <code>true</code> if the address or the port changed.
+	 */
+	public boolean setAddress(String addr, String port) {
+		int p;
+		try {
+			p = Integer.parseInt(port);
+		} catch (NumberFormatException e) {
+			p = Constants.DEFAULT_PORT;
+		}
+		if ((addr == null) || (addr.equals(mAddrString) && (p == mPort)))
+			return false;
+		mAddrString = addr;
+		mAddrStringResolved = addr;
+		mNetAddr = null;
+		mPort = p;
+		return true;
+	}
+
 	/**
 	 * Returns a string represantation of this host.
 	 *
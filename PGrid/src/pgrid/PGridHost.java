@@ -124,6 +124,26 @@ public class PGridHost extends Host implements Peer, Comparable {
 	 */
 	protected int mOffline = 0;
 
+	/**
+	 * The weight of a new sample in the latency and failure averages.
+	 */
+	private static final double EWMA_WEIGHT = 0.2;
+
+	/**
+	 * The exponentially weighted average of the round trip time in ms (negative if unknown).
+	 */
+	protected double mLatency = -1;
+
+	/**
+	 * The exponentially weighted average of failed requests (between 0 and 1).
+	 */
+	protected double mFailureRate = 0;
+
+	/**
+	 * The number of requests sent to this host not answered yet.
+	 */
+	protected int mOutstanding = 0;
+
 	/**
 	 * Creates a new host.
 	 */
@@ -205,6 +225,24 @@ public class PGridHost extends Host implements Peer, Comparable {
 		return host;
 	}
 
+	/**
+	 * Returns a host for the given values.
+	 *
+	 * @param guid the GUID.
+	 * @param addr the address of the host.
+	 * @param port the port.
+	 * @return the created host.
+	 */
+	public static PGridHost getHost(GUID guid, String addr, int port) {
+		PGridHost host = (PGridHost)mHosts.get(guid);
+		if (host == null) {
+			host = new PGridHost(addr, port);
+			host.mGUID = guid;
+			mHosts.put(guid, host);
+		}
+		return host;
+	}
+
 	/**
 	 * Returns a host for the given values.
 	 *
@@ -557,4 +595,72 @@ public class PGridHost extends Host implements Peer, Comparable {
 		return mOffline;
 	}
 
+	/**
+	 * Notifies that a request was sent to this host.
+	 */
+	synchronized public void requestSent() {
+		mOutstanding++;
+	}
+
+	/**
+	 * Notifies that this host answered a request.
+	 *
+	 * @param latency the round trip time in ms.
+	 * @param success <code>false</code> if the host answered with an error.
+	 */
+	synchronized public void requestAnswered(long latency, boolean success) {
+		if (mOutstanding > 0)
+			mOutstanding--;
+		if (mLatency < 0)
+			mLatency = latency;
+		else
+			mLatency += EWMA_WEIGHT * (latency - mLatency);
+		mFailureRate += EWMA_WEIGHT * ((success ? 0 : 1) - mFailureRate);
+	}
+
+	/**
+	 * Notifies that a request to this host could not be sent or was not answered in time.
+	 */
+	synchronized public void requestFailed() {
+		if (mOutstanding > 0)
+			mOutstanding--;
+		mFailureRate += EWMA_WEIGHT * (1 - mFailureRate);
+	}
+
+	/**
+	 * Notifies that a request to this host is not waited for anymore, e.g. because it was hedged to another host.
+	 * Neither the latency nor the failure rate are changed.
+	 */
+	synchronized public void requestCancelled() {
+		if (mOutstanding > 0)
+			mOutstanding--;
+	}
+
+	/**
+	 * Returns the average round trip time.
+	 *
+	 * @return the average round trip time in ms, or a negative value if unknown.
+	 */
+	synchronized public double getLatency() {
+		return mLatency;
+	}
+
+	/**
+	 * Returns the average rate of failed requests.
+	 *
+	 * @return the failure rate between 0 and 1.
+	 */
+	synchronized public double getFailureRate() {
+		return mFailureRate;
+	}
+
+	/**
+	 * Returns the number of requests not answered yet.
+	 *
+	 * @return the number of outstanding requests.
+	 */
+	synchronized public int getOutstandingRequests() {
+		return mOutstanding;
+	}
+
 }
\ No newline at end of file
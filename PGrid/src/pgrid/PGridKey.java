@@ -26,16 +26,34 @@ package pgrid;
 import p2p.basic.Key;
 
 /**
+ * A binary key packed into bits, most significant bit first. Keys not only consisting of '0' and '1' characters are
+ * kept as string only. The string representation is created lazily and only used for display and the wire format.
+ *
  * @author <a href="mailto:Renault John <renault.john@epfl.ch>">Renault John</a>
  * @version 1.2.0
  */
 public class PGridKey implements Key {
 
 	/**
-	 * String representation of the key
+	 * The amount of bits per word.
+	 */
+	private static final int WORD_BITS = 64;
+
+	/**
+	 * String representation of the key, created lazily for binary keys.
 	 */
 	protected String mKey;
 
+	/**
+	 * The bits of a binary key, or <code>null</code> if the key is not binary.
+	 */
+	private long[] mBits = null;
+
+	/**
+	 * The amount of bits of a binary key.
+	 */
+	private int mLength = 0;
+
 	/**
 	 * Constructor
 	 *
@@ -43,13 +61,59 @@ public class PGridKey implements Key {
 	 */
 	public PGridKey(String key) {
 		mKey = key;
+		if (key == null)
+			return;
+		int len = key.length();
+		long[] bits = new long[words(len)];
+		for (int i = 0; i < len; i++) {
+			char c = key.charAt(i);
+			if (c == '1')
+				bits[i / WORD_BITS] |= mask(i);
+			else if (c != '0')
+				return;
+		}
+		mBits = bits;
+		mLength = len;
+	}
+
+	/**
+	 * Creates a binary key of the given bits.
+	 *
+	 * @param bits   the bits, most significant bit first. The array is not copied.
+	 * @param length the amount of bits.
+	 */
+	public PGridKey(long[] bits, int length) {
+		if (words(length) > bits.length)
+			throw new IllegalArgumentException("too few bits for length " + length + "!");
+		mBits = bits;
+		mLength = length;
+	}
+
+	/**
+	 * Returns the amount of words required for the given amount of bits.
+	 *
+	 * @param length the amount of bits.
+	 * @return the amount of words.
+	 */
+	static int words(int length) {
+		return (length + WORD_BITS - 1) / WORD_BITS;
+	}
+
+	/**
+	 * Returns the mask of a bit in its word.
+	 *
+	 * @param index the bit index.
+	 * @return the mask.
+	 */
+	static long mask(int index) {
+		return 1L << (WORD_BITS - 1 - (index % WORD_BITS));
 	}
 
 	/**
 	 * @see p2p.basic.Key#getBytes()
 	 */
 	public byte[] getBytes() {
-		return mKey.getBytes();
+		return toString().getBytes();
 	}
 
 	/**
@@ -59,8 +123,19 @@ public class PGridKey implements Key {
 	 * @return the new key
 	 */
 	public Key append(Key toAppend) {
-		mKey = mKey + toAppend.toString();
-		return this;
+		if ((mBits != null) && (toAppend instanceof PGridKey) && (((PGridKey)toAppend).mBits != null)) {
+			PGridKey key = (PGridKey)toAppend;
+			long[] bits = new long[words(mLength + key.mLength)];
+			System.arraycopy(mBits, 0, bits, 0, words(mLength));
+			for (int i = 0; i < key.mLength; i++)
+				if (key.bit(i))
+					bits[(mLength + i) / WORD_BITS] |= mask(mLength + i);
+			mBits = bits;
+			mLength += key.mLength;
+			mKey = null;
+			return this;
+		}
+		return append(toAppend.toString());
 	}
 
 	/**
@@ -70,14 +145,106 @@ public class PGridKey implements Key {
 	 * @return the new key
 	 */
 	public Key append(String toAppend) {
+		if (mBits != null) {
+			PGridKey key = new PGridKey(toAppend);
+			if (key.mBits != null)
+				return append(key);
+			// the appended key is not binary => the key is kept as string only
+			mKey = toString();
+			mBits = null;
+			mLength = 0;
+		}
 		mKey = mKey + toAppend;
 		return this;
 	}
 
+	/**
+	 * Tests if this key is binary, i.e. only consists of '0' and '1' bits.
+	 *
+	 * @return <code>true</code> if the key is binary.
+	 */
+	public boolean isBinary() {
+		return mBits != null;
+	}
+
+	/**
+	 * Returns the bit at the given index of a binary key.
+	 *
+	 * @param index the bit index.
+	 * @return <code>true</code> for '1', <code>false</code> for '0'.
+	 */
+	public boolean bit(int index) {
+		if ((index < 0) || (index >= mLength))
+			throw new IndexOutOfBoundsException("bit " + index + " of " + mLength + "!");
+		return (mBits[index / WORD_BITS] & mask(index)) != 0;
+	}
+
+	/**
+	 * Returns the length of the common prefix of this key and the given one.
+	 *
+	 * @param key the key to compare.
+	 * @return the length of the common prefix.
+	 */
+	public int commonPrefixLength(PGridKey key) {
+		if ((mBits == null) || (key.mBits == null))
+			return commonPrefixLength(key.toString());
+		int len = Math.min(mLength, key.mLength);
+		for (int word = 0; word * WORD_BITS < len; word++) {
+			long diff = mBits[word] ^ key.mBits[word];
+			if (diff != 0)
+				return Math.min(len, word * WORD_BITS + Long.numberOfLeadingZeros(diff));
+		}
+		return len;
+	}
+
+	/**
+	 * Returns the length of the common prefix of this key and the given path without creating the string of the key.
+	 *
+	 * @param path the path to compare.
+	 * @return the length of the common prefix.
+	 */
+	public int commonPrefixLength(String path) {
+		if (mBits == null) {
+			String key = toString();
+			int len = Math.min(key.length(), path.length());
+			for (int i = 0; i < len; i++)
+				if (key.charAt(i) != path.charAt(i))
+					return i;
+			return len;
+		}
+		int len = Math.min(mLength, path.length());
+		for (int i = 0; i < len; i++)
+			if (path.charAt(i) != (bit(i) ? '1' : '0'))
+				return i;
+		return len;
+	}
+
+	/**
+	 * Tests if this key is a prefix of the given key.
+	 *
+	 * @param key the key to compare.
+	 * @return <code>true</code> if this key is a prefix of the given key.
+	 */
+	public boolean isPrefixOf(PGridKey key) {
+		return (size() <= key.size()) && (commonPrefixLength(key) == size());
+	}
+
+	/**
+	 * Tests if this key starts with the given path.
+	 *
+	 * @param path the path.
+	 * @return <code>true</code> if this key starts with the path.
+	 */
+	public boolean startsWith(String path) {
+		return (path.length() <= size()) && (commonPrefixLength(path) == path.length());
+	}
+
 	/**
 	 * @see p2p.basic.Key#size()
 	 */
 	public int size() {
+		if (mBits != null)
+			return mLength;
 		return mKey.length();
 	}
 
@@ -85,13 +252,34 @@ public class PGridKey implements Key {
 	 * @see java.lang.Object#toString()
 	 */
 	public String toString() {
-		return mKey;
+		String key = mKey;
+		if (key == null) {
+			char[] chars = new char[mLength];
+			for (int i = 0; i < mLength; i++)
+				chars[i] = (bit(i) ? '1' : '0');
+			key = new String(chars);
+			mKey = key;
+		}
+		return key;
 	}
 
 	public boolean equals(Object o) {
 		if (!(o instanceof PGridKey)) 
 			return false;
-		return ((PGridKey)o).mKey.equals(mKey);
+		PGridKey key = (PGridKey)o;
+		if ((mBits != null) && (key.mBits != null)) {
+			if (mLength != key.mLength)
+				return false;
+			for (int word = 0; word < words(mLength); word++)
+				if (mBits[word] != key.mBits[word])
+					return false;
+			return true;
+		}
+		return key.toString().equals(toString());
+	}
+
+	public int hashCode() {
+		return toString().hashCode();
 	}
 
 }
@@ -24,6 +24,9 @@
 
 package pgrid;
 
+import pgrid.core.storage.StorageManager;
+import pgrid.network.protocol.InitMessage;
+
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
@@ -54,6 +57,23 @@ public class Properties {
 	 */
 	public static final String DATA_TABLE = "DataTable";
 
+	/**
+	 * Property "DataTableBackend", the storage of the data tables (DB or Memory).
+	 */
+	public static final String DATA_TABLE_BACKEND = "DataTableBackend";
+
+	/**
+	 * Property "DataTableSnapshotThreshold", the number of logged modifications after which
+	 * an in-memory data table writes a new snapshot.
+	 */
+	public static final String DATA_TABLE_SNAPSHOT_THRESHOLD = "DataTableSnapshotThreshold";
+
+	/**
+	 * Property "DataTableBatchSize", the number of data items a database data table inserts per batch and
+	 * transaction.
+	 */
+	public static final String DATA_TABLE_BATCH_SIZE = "DataTableBatchSize";
+
 	/**
 	 * Property "TreeIniFile", the used PGridP2P Tree initialization file.
 	 */
@@ -89,6 +109,43 @@ public class Properties {
 	 */
 	public static final String RANGE_QUERY_ALGORITHM = "RangeQueryAlgorithm";
 
+	/**
+	 * Property "QueryDeadline", the time in msec after which an unanswered query is reported as exceeding its deadline.
+	 */
+	public static final String QUERY_DEADLINE = "QueryDeadline";
+
+	/**
+	 * Property "QueryHedgeDelay", the time in msec after which an unanswered query is sent to another replica, if too few
+	 * reply times are known for the routing table level (0 disables hedging).
+	 */
+	public static final String QUERY_HEDGE_DELAY = "QueryHedgeDelay";
+
+	/**
+	 * Property "QueryHedgePercentile", the percentile of the recent reply times of a routing table level after which an
+	 * unanswered query is sent to another replica.
+	 */
+	public static final String QUERY_HEDGE_PERCENTILE = "QueryHedgePercentile";
+
+	/**
+	 * Property "RouterThreads", the amount of threads routing the requests of each routing strategy.
+	 */
+	public static final String ROUTER_THREADS = "RouterThreads";
+
+	/**
+	 * Property "RouterQueueSize", the maximal amount of waiting requests of each routing strategy.
+	 */
+	public static final String ROUTER_QUEUE_SIZE = "RouterQueueSize";
+
+	/**
+	 * Property "SearchThreads", the amount of threads handling search requests.
+	 */
+	public static final String SEARCH_THREADS = "SearchThreads";
+
+	/**
+	 * Property "SearchQueueSize", the maximal amount of waiting search requests.
+	 */
+	public static final String SEARCH_QUEUE_SIZE = "SearchQueueSize";
+
 	/**
 	 * Property "ExchangeRate", the time between two initiated exchanges in msec.
 	 */
@@ -104,6 +161,21 @@ public class Properties {
 	 */
 	public static final String COMPRESSION_LEVEL = "CompressionLevel";
 
+	/**
+	 * Property "CompressionThreshold", the minimum size in bytes of binary messages to compress.
+	 */
+	public static final String COMPRESSION_THRESHOLD = "CompressionThreshold";
+
+	/**
+	 * Property "FastCompression", if the fast LZ4 compression is offered for exchanges over binary connections.
+	 */
+	public static final String FAST_COMPRESSION = "FastCompression";
+
+	/**
+	 * Property "WireProtocol", the message codec offered to other hosts.
+	 */
+	public static final String WIRE_PROTOCOL = "WireProtocol";
+
 	/**
 	 * Property "BootstrapHosts", the used bootstrap hosts.
 	 */
@@ -193,6 +265,10 @@ public class Properties {
 			DATA_TABLE, "DataTable.xml",
 			TREE_INI_FILE, "PGridTree.ini",
 			TREE_DB_FILE, "PGridTree.dat",
+			"#", "Data table storage (" + StorageManager.DB_BACKEND + " or " + StorageManager.MEMORY_BACKEND + ")",
+			DATA_TABLE_BACKEND, StorageManager.DB_BACKEND,
+			DATA_TABLE_SNAPSHOT_THRESHOLD, "10000",
+			DATA_TABLE_BATCH_SIZE, "1000",
 			"", "",
 			/* Setup */ "#", "Setup",
 			REPLICATION_START_TIME, "0",
@@ -209,9 +285,24 @@ public class Properties {
 			/* Range query */ "#", "Range Query algorithm (" + RangeQuery.MINMAX_ALGORITHM + " or " + RangeQuery.SHOWER_ALGORITHM + ")",
 			RANGE_QUERY_ALGORITHM, RangeQuery.SHOWER_ALGORITHM,
 			"", "",
+			/* Query */ "#", "Query",
+			QUERY_DEADLINE, String.valueOf(Constants.QUERY_PROCESSING_TIMEOUT),
+			QUERY_HEDGE_DELAY, "1000",
+			QUERY_HEDGE_PERCENTILE, "95",
+			"", "",
+			/* Dispatch */ "#", "Dispatch",
+			ROUTER_THREADS, "4",
+			ROUTER_QUEUE_SIZE, "1000",
+			SEARCH_THREADS, "4",
+			SEARCH_QUEUE_SIZE, "1000",
+			"", "",
 			/* Network */ "#", "Network",
 			BOOTSTRAP_HOSTS, "www.p-grid.org:1805",
 			COMPRESSION_LEVEL, String.valueOf(Deflater.BEST_COMPRESSION),
+			COMPRESSION_THRESHOLD, "512",
+			FAST_COMPRESSION, "true",
+			"#", "Message codec (" + InitMessage.CODEC_BINARY + " or " + InitMessage.CODEC_XML + ")",
+			WIRE_PROTOCOL, InitMessage.CODEC_BINARY,
 			CONNECTION_SPEED, "56",
 			BEHIND_FIREWALL, "false",
 			RESOLVE_IP, "true",
@@ -90,6 +90,11 @@ public class DBManager {
 	private String jdbcUrl = null;
 	private Connection con;
 
+	/**
+	 * The connection used for transactions, so that the shared auto-commit connection is never part of one.
+	 */
+	private Connection transactionCon = null;
+
 	protected DBManager(String driver, String Url, String uName, String pass) {
 		driverClassName = driver;
 		userName = uName;
@@ -151,6 +156,23 @@ public class DBManager {
 		}
 	}
 
+	/**
+	 * Returns the connection for transactions. It is opened in addition to the shared connection and never commits
+	 * automatically, so statements of other threads on the shared connection are never committed or rolled back with a
+	 * transaction. All transactions use this connection, so callers have to synchronize on it from the first statement
+	 * until the commit or rollback.
+	 *
+	 * @return the transaction connection.
+	 * @throws SQLException if the connection could not be opened.
+	 */
+	public synchronized Connection getTransactionConnection() throws SQLException {
+		if (transactionCon == null) {
+			transactionCon = DriverManager.getConnection(jdbcUrl, userName, password);
+			transactionCon.setAutoCommit(false);
+		}
+		return transactionCon;
+	}
+
 	/**
 	 * Sets the auto-commit parameter of the driver
 	 *
@@ -437,6 +459,16 @@ public class DBManager {
 	 * Closes the connection to the DB
 	 */
 	private void closeConnect() {
+		synchronized (this) {
+			if (transactionCon != null) {
+				try {
+					transactionCon.close();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+				transactionCon = null;
+			}
+		}
 		try {
 			con.close();
 		} catch (Exception e) {
@@ -25,6 +25,7 @@
 package pgrid.core;
 
 import pgrid.Constants;
+import pgrid.PGridKey;
 import pgrid.Properties;
 import pgrid.interfaces.basic.PGridP2P;
 import pgrid.util.Tokenizer;
@@ -36,6 +37,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.Arrays;
+import java.util.Locale;
 import java.util.Vector;
 import java.util.logging.Level;
 
@@ -83,6 +85,31 @@ public class PGridTree {
 	 */
 	private TreeNode mTreeRoot = null;
 
+	/**
+	 * The prefixes of the flattened tree nodes, the root node at index 0.
+	 */
+	private String[] mPrefixes = null;
+
+	/**
+	 * The indexes of the left children of the flattened tree nodes (-1 if none).
+	 */
+	private int[] mLeft = null;
+
+	/**
+	 * The indexes of the right children of the flattened tree nodes (-1 if none).
+	 */
+	private int[] mRight = null;
+
+	/**
+	 * The maximum length of binary keys created by the flattened tree.
+	 */
+	private int mKeyLength = 0;
+
+	/**
+	 * Flag if the lower case mapping of the default locale differs from the ASCII mapping.
+	 */
+	private boolean mLocaleFolding = false;
+
 	/**
 	 * Creates a new PGridP2P tree.
 	 */
@@ -96,28 +123,140 @@ public class PGridTree {
 	 * @return the binary represantation.
 	 */
 	public String findKey(String query) {
-		if (mTreeRoot == null)
+		PGridKey key = createKey(query);
+		if (key == null)
 			return null;
-		String key = findKey(query.toLowerCase(), mTreeRoot);
-		return key;
+		return key.toString();
 	}
 
 	/**
-	 * Returns the binary represantation for the given query string, starting at
-	 * the given entry node of the PGridP2P tree and recursivly parses throw down
-	 * the tree.
+	 * Returns the bit packed binary key for the given query string.
 	 *
 	 * @param query the query string
-	 * @param node  the entry node of the PGridP2P tree.
-	 * @return the binary represantation.
+	 * @return the binary key.
 	 */
-	private String findKey(String query, TreeNode node) {
-		if ((node.getLeftChild() == null) && (node.getRightChild() == null))
-			return "";
-		if (node.getPrefix().compareTo(query) > 0)
-			return ("0" + findKey(query, node.getLeftChild()));
-		else
-			return ("1" + findKey(query, node.getRightChild()));
+	public PGridKey createKey(String query) {
+		if (mPrefixes == null)
+			return null;
+		long[] bits = new long[getKeyWords()];
+		int length = findKey(query, bits);
+		return new PGridKey(bits, length);
+	}
+
+	/**
+	 * Returns the amount of words required for the bits passed to {@link #findKey(String, long[])}.
+	 *
+	 * @return the amount of words.
+	 */
+	public int getKeyWords() {
+		return (mKeyLength + 63) / 64;
+	}
+
+	/**
+	 * Walks down the flattened PGridP2P tree for the given query string and sets the bits of the binary represantation,
+	 * most significant bit first. The query is compared case insensitive without creating a lower case copy, unless it
+	 * contains non ASCII characters or the lower case mapping of the default locale differs for ASCII characters.
+	 *
+	 * @param query the query string
+	 * @param bits  the cleared bits of at least {@link #getKeyWords()} words.
+	 * @return the length of the binary represantation, or -1 if the tree is not initialized.
+	 */
+	public int findKey(String query, long[] bits) {
+		String[] prefixes = mPrefixes;
+		int[] left = mLeft;
+		int[] right = mRight;
+		if (prefixes == null)
+			return -1;
+		if (mLocaleFolding || !isAscii(query))
+			query = query.toLowerCase();
+		int node = 0;
+		int length = 0;
+		while (true) {
+			int next;
+			if (compareFolded(prefixes[node], query) > 0) {
+				next = left[node];
+			} else {
+				next = right[node];
+				if (next >= 0)
+					bits[length >> 6] |= 1L << (63 - (length & 63));
+			}
+			if (next < 0)
+				return length;
+			node = next;
+			length++;
+		}
+	}
+
+	/**
+	 * Tests if the given string only consists of ASCII characters.
+	 *
+	 * @param str the string.
+	 * @return <code>true</code> if the string only consists of ASCII characters.
+	 */
+	private static boolean isAscii(String str) {
+		for (int i = 0; i < str.length(); i++)
+			if (str.charAt(i) > 0x7f)
+				return false;
+		return true;
+	}
+
+	/**
+	 * Compares a lower case prefix lexicographically to the given query with upper case ASCII characters mapped to
+	 * lower case.
+	 *
+	 * @param prefix the lower case prefix.
+	 * @param query  the query string.
+	 * @return the comparison result as {@link String#compareTo(String)}.
+	 */
+	private static int compareFolded(String prefix, String query) {
+		int len = Math.min(prefix.length(), query.length());
+		for (int i = 0; i < len; i++) {
+			char c = query.charAt(i);
+			if ((c >= 'A') && (c <= 'Z'))
+				c += 'a' - 'A';
+			int diff = prefix.charAt(i) - c;
+			if (diff != 0)
+				return diff;
+		}
+		return prefix.length() - query.length();
+	}
+
+	/**
+	 * Flattens the tree into arrays used by {@link #findKey(String, long[])}.
+	 */
+	private void flattenTree() {
+		if (mTreeRoot == null)
+			return;
+		int count = mTreeRoot.getNodesCount();
+		String[] prefixes = new String[count];
+		int[] left = new int[count];
+		int[] right = new int[count];
+		int[] depth = new int[count];
+		TreeNode[] nodes = new TreeNode[count];
+		nodes[0] = mTreeRoot;
+		int size = 1;
+		int keyLength = 0;
+		for (int i = 0; i < size; i++) {
+			TreeNode node = nodes[i];
+			prefixes[i] = node.getPrefix();
+			left[i] = -1;
+			right[i] = -1;
+			if (node.getLeftChild() != null) {
+				left[i] = size;
+				depth[size] = depth[i] + 1;
+				nodes[size++] = node.getLeftChild();
+			}
+			if (node.getRightChild() != null) {
+				right[i] = size;
+				depth[size] = depth[i] + 1;
+				nodes[size++] = node.getRightChild();
+			}
+			keyLength = Math.max(keyLength, depth[i]);
+		}
+		mLeft = left;
+		mRight = right;
+		mKeyLength = keyLength;
+		mPrefixes = prefixes;
 	}
 
 	/**
@@ -193,6 +332,9 @@ public class PGridTree {
 			pgrid.Constants.LOGGER.log(Level.SEVERE, "Could not read/write PGrid Tree initialization file '" + mPGridP2P.propertyString(Properties.TREE_INI_FILE) + "'!", e);
 			System.exit(-1);
 		}
+		String language = Locale.getDefault().getLanguage();
+		mLocaleFolding = language.equals("tr") || language.equals("az");
+		flattenTree();
 	}
 
 	/**
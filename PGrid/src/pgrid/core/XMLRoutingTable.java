@@ -28,8 +28,11 @@ import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import pgrid.XMLizable;
 import pgrid.PGridHost;
+import pgrid.network.protocol.BinaryReader;
+import pgrid.network.protocol.BinaryWriter;
 import pgrid.network.protocol.XMLPGridHost;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Vector;
@@ -151,6 +154,108 @@ public class XMLRoutingTable extends RoutingTable implements XMLizable {
 		}
 	}
 
+	/**
+	 * Reads a routing table written by {@link #encode(BinaryWriter, boolean, boolean, boolean)}.
+	 *
+	 * @param in the binary reader.
+	 * @throws IOException if the routing table is malformed.
+	 */
+	public void decode(BinaryReader in) throws IOException {
+		PGridHost local = in.readHost(false);
+		if ((local != null) && (local.isValid())) {
+			mLocalHost = local;
+			setLevels(mLocalHost.getPath().length() - 1);
+		}
+		Collection hosts = decodeHosts(in);
+		if (hosts != null)
+			setFidgets(hosts);
+		int levels = in.readVarInt();
+		for (int i = 0; i < levels; i++) {
+			hosts = decodeHosts(in);
+			try {
+				setLevel(i, (hosts == null ? new Vector() : hosts));
+			} catch (RuntimeException e) {
+				throw new IOException("invalid routing table level " + i + "!");
+			}
+		}
+		hosts = decodeHosts(in);
+		if (hosts != null)
+			setReplicas(hosts);
+	}
+
+	/**
+	 * Reads a list of hosts with their paths.
+	 *
+	 * @param in the binary reader.
+	 * @return the valid hosts, or <code>null</code> if the list is empty.
+	 * @throws IOException if a host is malformed.
+	 */
+	private Collection decodeHosts(BinaryReader in) throws IOException {
+		int count = in.readVarInt();
+		if (count == 0)
+			return null;
+		Collection hosts = new Vector();
+		for (int i = 0; i < count; i++) {
+			PGridHost host = in.readHost(mLocalHost != null);
+			if ((host != null) && (host.isValid()))
+				hosts.add(host);
+		}
+		return hosts;
+	}
+
+	/**
+	 * Writes the local host and the given parts of this routing table for a binary message.
+	 *
+	 * @param out      the binary writer.
+	 * @param fidgets  if the fidgets should be written.
+	 * @param refs     if the references should be written.
+	 * @param replicas if the replicas should be written.
+	 */
+	public void encode(BinaryWriter out, boolean fidgets, boolean refs, boolean replicas) {
+		out.writeHost(mLocalHost, true);
+		synchronized (mFidgets) {
+			encodeHosts(out, (fidgets ? mFidgets : null));
+		}
+
+		synchronized (mLevels) {
+			if ((refs) && (mLevels.size() > 0)) {
+				if (mLevels.size() > mLocalHost.getPath().length()) {
+					for (int i = mLevels.size(); i >= mLocalHost.getPath().length(); i--)
+						try {
+							removeLevel(i);
+						} catch (Exception e) {
+							// do nothing
+						}
+				}
+				out.writeVarInt(mLevels.size());
+				for (Iterator it = mLevels.iterator(); it.hasNext();)
+					encodeHosts(out, (Collection)it.next());
+			} else {
+				out.writeVarInt(0);
+			}
+		}
+
+		synchronized (mReplicas) {
+			encodeHosts(out, (replicas ? mReplicas : null));
+		}
+	}
+
+	/**
+	 * Writes a list of hosts with their paths.
+	 *
+	 * @param out   the binary writer.
+	 * @param hosts the hosts, can be <code>null</code>.
+	 */
+	private void encodeHosts(BinaryWriter out, Collection hosts) {
+		if (hosts == null) {
+			out.writeVarInt(0);
+			return;
+		}
+		out.writeVarInt(hosts.size());
+		for (Iterator it = hosts.iterator(); it.hasNext();)
+			out.writeHost((PGridHost)it.next(), true);
+	}
+
 	/**
 	 * Returns the XML representation of this object.
 	 *
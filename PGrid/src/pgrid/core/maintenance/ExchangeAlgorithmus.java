@@ -32,7 +32,7 @@ import pgrid.PGridHost;
 import pgrid.util.Utils;
 import pgrid.core.*;
 import pgrid.core.storage.StorageManager;
-import pgrid.core.storage.DBDataTable;
+import pgrid.core.storage.DataTable;
 import pgrid.core.storage.DBView;
 import pgrid.core.storage.Signature;
 import pgrid.interfaces.basic.PGridP2P;
@@ -89,6 +89,24 @@ class ExchangeAlgorithmus extends Exchanger {
 	 * @param currentLen the current len position.
 	 */
 	void process(PGridHost host, Exchange exchange, boolean invited, int recursion, int currentLen, int minStorage) {
+		// the views of the exchange read each data table only once
+		DBView.beginExchange();
+		try {
+			processExchange(host, exchange, invited, recursion, currentLen, minStorage);
+		} finally {
+			DBView.endExchange();
+		}
+	}
+
+	/**
+	 * Executes the exchange using the data table views of the exchange.
+	 *
+	 * @param exchange   the exchange to process.
+	 * @param invited    indicates the initiator of this exchange.
+	 * @param recursion  the recursion.
+	 * @param currentLen the current len position.
+	 */
+	private void processExchange(PGridHost host, Exchange exchange, boolean invited, int recursion, int currentLen, int minStorage) {
 		LOGGER.fine("start " + mExchangeCount + ". Exchange " + exchange.getGUID() + " (Invite=" + String.valueOf(invited) + ", Recursion=" + exchange.getRecursion() + ") with Host " + exchange.getHost().toString());
 		LOGGER.fine("Local Host (Path: '" + mPGridP2P.getLocalPath() + "', Data Items: " + mStorageManager.getDataTable().count() + ") - Remote Host (Path: '" + exchange.getHost().getPath() + "', Data Items: " + (exchange.getDataTable() != null ? exchange.getDataTable().count() : 0) + ")");
 		mPGridP2P.getStatistics().Exchanges++;
@@ -101,9 +119,9 @@ class ExchangeAlgorithmus extends Exchanger {
 		String path = exchange.getHost().getPath();
 		host.setPath(path);
 		routingTable.setLocalHost(host);
-		DBDataTable dataTable = exchange.getDataTable();
+		DataTable dataTable = exchange.getDataTable();
 		if (dataTable == null)
-			dataTable = new DBDataTable(exchange.getHost());
+			dataTable = mStorageManager.createDataTable(exchange.getHost());
 
 		// construct common path and its length
 		String commonPath = Utils.commonPrefix(mPGridP2P.getLocalPath(), path);
@@ -27,6 +27,7 @@ package pgrid.core.maintenance;
 import pgrid.Constants;
 import pgrid.PGridHost;
 import pgrid.Properties;
+import pgrid.core.storage.PageSignature;
 import pgrid.interfaces.basic.PGridP2P;
 import pgrid.network.MessageManager;
 import pgrid.network.protocol.BootstrapMessage;
@@ -125,7 +126,8 @@ class ExchangeInitiator {
 
 			// send invite exchange message
 			mPGridP2P.getLocalHost().refreshPathTimestamp();
-			ExchangeInvitationMessage msg = new ExchangeInvitationMessage(mPGridP2P.getLocalPath(), mPGridP2P.getStorageManager().getDataSignature(), recursion, lCurrent);
+			ExchangeInvitationMessage msg = new ExchangeInvitationMessage(mPGridP2P.getLocalPath(), mPGridP2P.getStorageManager().getDataSignature(),
+					PageSignature.create(mPGridP2P.getStorageManager().getDataTable(), mPGridP2P.getLocalPath()), recursion, lCurrent);
 			if (mMsgMgr.sendMessage(host, msg)) {
 				Constants.LOGGER.finer("Invited Host " + host.toString() + " for an Exchange.");
 				mPGridP2P.getStatistics().ExchangesInitiated++;
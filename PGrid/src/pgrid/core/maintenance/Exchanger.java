@@ -27,8 +27,9 @@ package pgrid.core.maintenance;
 import pgrid.Constants;
 import pgrid.Exchange;
 import pgrid.Properties;
-import pgrid.core.storage.DBDataTable;
+import pgrid.core.storage.DataTable;
 import pgrid.core.storage.DBView;
+import pgrid.core.storage.PageSignature;
 import pgrid.core.storage.Signature;
 import pgrid.core.storage.StorageManager;
 import pgrid.interfaces.basic.PGridP2P;
@@ -166,8 +167,18 @@ class Exchanger extends pgrid.util.WorkerThread {
 		mExchangeAlg = new ExchangeAlgorithmus(maintenanceMgr);
 	}
 
-	private Collection compileDataTable(String path, Signature sign) {
-		DBDataTable localDataTable = mStorageManager.getDataTable();
+	/**
+	 * Compiles the data items sent to a remote host with the given path. If the remote host sent the page signature of
+	 * its data items, the data items of all pages signed equally by both hosts are left out.
+	 *
+	 * @param path        the path of the remote host.
+	 * @param sign        the data table signature of the remote host.
+	 * @param dataPages   the local page signature in the layout of the remote one, or <code>null</code>.
+	 * @param remotePages the page signature of the remote host, or <code>null</code>.
+	 * @return the data items to send.
+	 */
+	private Collection compileDataTable(String path, Signature sign, PageSignature dataPages, PageSignature remotePages) {
+		DataTable localDataTable = mStorageManager.getDataTable();
 		Signature localSign = localDataTable.getSignature();
 		Collection col = null;
 		// is the other host a replica?
@@ -176,20 +187,71 @@ class Exchanger extends pgrid.util.WorkerThread {
 				mPGridP2P.getStatistics().ExchangesReplicas++;
 			// are the signatures not equal => send also data items
 			if (!localSign.equals(sign)) {
-				col = DBView.selection(localDataTable, path).getDataItems();
+				col = compileDataItems(path, dataPages, remotePages);
 			} else {
 				if (Constants.TESTS)
 					mPGridP2P.getStatistics().ExchangesRealReplicas++;
 				col = new Vector();
 			}
 		} else {
-			col = DBView.selection(localDataTable, path).getDataItems();
+			col = compileDataItems(path, dataPages, remotePages);
 		}
 		if (Constants.TESTS)
 			mPGridP2P.getStatistics().DataItemsSent += col.size();
 		return col;
 	}
 
+	/**
+	 * Returns the local data items with the given path, without the data items of pages signed equally by the remote
+	 * host.
+	 *
+	 * @param path        the path of the remote host.
+	 * @param dataPages   the local page signature in the layout of the remote one, or <code>null</code>.
+	 * @param remotePages the page signature of the remote host, or <code>null</code>.
+	 * @return the data items.
+	 */
+	private Collection compileDataItems(String path, PageSignature dataPages, PageSignature remotePages) {
+		if (dataPages == null)
+			return DBView.selection(mStorageManager.getDataTable(), path).getDataItems();
+		return dataPages.getDifferentDataItems(mStorageManager.getDataTable(), remotePages);
+	}
+
+	/**
+	 * Creates the local page signature in the layout of the page signature sent by a remote host with the given path.
+	 *
+	 * @param path        the path of the remote host.
+	 * @param remotePages the page signature of the remote host, or <code>null</code>.
+	 * @return the local page signature, or <code>null</code> if the remote host sent no usable page signature.
+	 */
+	private PageSignature createDataPages(String path, PageSignature remotePages) {
+		if ((remotePages == null) || (!remotePages.getPath().equals(path)))
+			return null;
+		return PageSignature.create(mStorageManager.getDataTable(), remotePages);
+	}
+
+	/**
+	 * Completes the data table received by an exchange. If the data table signatures are equal, the local data items
+	 * are duplicated, otherwise the local data items of all pages the remote host left out are added.
+	 *
+	 * @param exchange the received exchange.
+	 */
+	private void completeDataTable(Exchange exchange) {
+		DataTable dataTable = exchange.getDataTable();
+		DataTable localDataTable = mStorageManager.getDataTable();
+		// duplicate local data table if the signatures are equal
+		if (localDataTable.getSignature().equals(dataTable.getSignature())) {
+			localDataTable.duplicate(dataTable);
+			return;
+		}
+		PageSignature pages = exchange.getDataTablePages();
+		if (pages == null)
+			return;
+		Collection dataItems = PageSignature.create(localDataTable, pages).getEqualDataItems(localDataTable, pages);
+		if (dataItems.size() > 0)
+			dataTable.addAll(dataItems);
+		LOGGER.finer("Exchange data table completed by " + dataItems.size() + " local data items.");
+	}
+
 	protected void handleError(Throwable t) {
 		if (t instanceof InterruptedException) {
 			LOGGER.finer("Exchanger interupted.");
@@ -215,13 +277,17 @@ class Exchanger extends pgrid.util.WorkerThread {
 		request.getExchangeInvitation().getHeader().getHost().invited();
 
 		// create the data table according to the path of the remote host
-		Collection dataItems = compileDataTable(request.getExchangeInvitation().getPath(), request.getExchangeInvitation().getSignature());
+		PageSignature remotePages = request.getExchangeInvitation().getPageSignature();
+		PageSignature dataPages = createDataPages(request.getExchangeInvitation().getPath(), remotePages);
+		Collection dataItems = compileDataTable(request.getExchangeInvitation().getPath(), request.getExchangeInvitation().getSignature(),
+				dataPages, remotePages);
 
 		// create the message sent to the remote host
 		mPGridP2P.getLocalHost().refreshPathTimestamp();
 		ExchangeMessage msg = new ExchangeMessage(request.getExchangeInvitation().getGUID(), mPGridP2P.getLocalHost(),
 				request.getExchangeInvitation().getRecursion(),	request.getExchangeInvitation().getCurrentLen(), mMinStorageEstimate,
-				mReplicaEstimate,	mPGridP2P.getRoutingTable(), dataItems, mPGridP2P.getStorageManager().getDataSignature());
+				mReplicaEstimate,	mPGridP2P.getRoutingTable(), dataItems, mPGridP2P.getStorageManager().getDataSignature(),
+				dataPages, PageSignature.create(mStorageManager.getDataTable(), mPGridP2P.getLocalPath()));
 
 		msg.setRandomNumber(mRandomizer.nextDouble());
 		mMsgMgr.sendMessage(request.getExchangeInvitation().getHeader().getHost(), msg);
@@ -248,10 +314,8 @@ class Exchanger extends pgrid.util.WorkerThread {
 					if (found) {
 						mExchangeReplies.remove(exchReply);
 
-						// duplicate local data table if the signatures are equal
-						if (mStorageManager.getDataTable().getSignature().equals(exchReply.getDataTable().getSignature())) {
-							mStorageManager.getDataTable().duplicate(exchReply.getDataTable());
-						}
+						// complete the received data table by the local data items
+						completeDataTable(exchReply);
 						// set the random number
 						exchReply.setRandomNumber(msg.getRandomNumber());
 						// execute the exchange algorithmus
@@ -291,21 +355,21 @@ class Exchanger extends pgrid.util.WorkerThread {
 
 	private void handleExchangeRequest(ExchangeRequest request) {
 		// create the data table according to the path of the remote host
+		PageSignature remotePages = request.getExchange().getPageSignature();
+		PageSignature dataPages = createDataPages(request.getExchange().getHost().getPath(), remotePages);
 		Collection dataItems = compileDataTable(request.getExchange().getHost().getPath(),
-				request.getExchange().getDataTable().getSignature());
+				request.getExchange().getDataTable().getSignature(), dataPages, remotePages);
 
 		// create the message sent to the remote host
 		mPGridP2P.getLocalHost().refreshPathTimestamp();
 		ExchangeReplyMessage msg = new ExchangeReplyMessage(request.getExchange().getGUID(), mPGridP2P.getLocalHost(),
 				request.getExchange().getRecursion(), request.getExchange().getLenCurrent(), mMinStorageEstimate, mReplicaEstimate,
-				mPGridP2P.getRoutingTable(), dataItems, mPGridP2P.getStorageManager().getDataSignature());
+				mPGridP2P.getRoutingTable(), dataItems, mPGridP2P.getStorageManager().getDataSignature(), dataPages, null);
 
 		mMsgMgr.sendMessage(request.getExchange().getHost(), msg);
 
-		// duplicate local data table if the signatures are equal
-		if (mStorageManager.getDataTable().getSignature().equals(request.getExchange().getDataTable().getSignature())) {
-			mStorageManager.getDataTable().duplicate(request.getExchange().getDataTable());
-		}
+		// complete the received data table by the local data items
+		completeDataTable(request.getExchange());
 
 		// execute the exchange algorithmus
 		// recompute our min storage
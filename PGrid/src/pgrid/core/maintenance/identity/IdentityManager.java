@@ -32,6 +32,7 @@ import p2p.storage.Query;
 import p2p.storage.events.SearchListener;
 import pgrid.*;
 import pgrid.DataItem;
+import pgrid.core.storage.HostCache;
 import pgrid.core.storage.StorageManager;
 import pgrid.core.search.SearchManager;
 import pgrid.core.maintenance.identity.CoUPolicy;
@@ -173,6 +174,7 @@ public class IdentityManager implements TypeHandler {
 	 */
 	public void dataItemAdded(DataItem item) {
 		mItemsByGUID.put(item.getPeer().getGUID().toString(), item);
+		HostCache.sharedInstance().invalidate(item.getPeer().getGUID());
 	}
 
 	/**
@@ -429,7 +431,11 @@ public class IdentityManager implements TypeHandler {
 	 * @see pgrid.DataTypeHandler#handleUpdate(pgrid.DataItem)
 	 */
 	public boolean handleUpdate(DataItem item) {
-		return mMaintenancePolicy.handleUpdate(item);
+		if (!mMaintenancePolicy.handleUpdate(item))
+			return false;
+		// the address of the host has changed
+		HostCache.sharedInstance().invalidate(item.getPeer().getGUID());
+		return true;
 	}
 
 	/**
@@ -24,26 +24,32 @@
 
 package pgrid.core.search;
 
+import p2p.basic.GUID;
 import p2p.basic.events.NoRouteToKeyException;
 import p2p.storage.events.NoSuchTypeException;
 import p2p.storage.events.SearchListener;
 import pgrid.*;
 import pgrid.core.storage.StorageManager;
 import pgrid.interfaces.basic.PGridP2P;
+import pgrid.network.MessageManager;
+import pgrid.network.protocol.ACKMessage;
+import pgrid.network.protocol.QueryBatchMessage;
+import pgrid.network.router.RoutingRequestFactory;
+import pgrid.util.Dispatcher;
 
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.Vector;
-import java.util.logging.Level;
 
 /**
  * This class maintains a list of queries and of those listeners that are
- * interested in the results of these queries.
+ * interested in the results of these queries. The search requests are handled by a pool of threads.
  *
  * @author <a href="mailto:Tim van Pelt <tim@vanpelt.com>">Tim van Pelt</a> &amp;
  *         <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
  * @version 1.0.0
  */
-public class SearchManager extends pgrid.util.WorkerThread {
+public class SearchManager {
 
 	/**
 	 * The reference to the only instance of this class (Singleton
@@ -76,11 +82,9 @@ public class SearchManager extends pgrid.util.WorkerThread {
 	private RemoteSearchHandler mRemoteSearchHandler = null;
 
 	/**
-	 * The search requests.
+	 * The dispatcher handling the search requests.
 	 */
-	private final Vector mRequests = new Vector();
-
-	private Thread mThread = null;
+	private Dispatcher mDispatcher = null;
 
 	/**
 	 * The constructor must be protected to ensure that only subclasses can
@@ -103,15 +107,6 @@ public class SearchManager extends pgrid.util.WorkerThread {
 		return SHARED_INSTANCE;
 	}
 
-	
-	protected void handleError(Throwable t) {
-		if (t instanceof InterruptedException) {
-			Constants.LOGGER.finer("Searcher manager interupted.");
-		} else {
-			Constants.LOGGER.log(Level.WARNING, "Error in Search thread", t);
-			t.printStackTrace();
-		}
-	}
 
 	/**
 	 * Initializes the search manager.
@@ -122,19 +117,31 @@ public class SearchManager extends pgrid.util.WorkerThread {
 
 		mRemoteRequestHandler = new RemoteRequestHandler();
 		mRemoteSearchHandler = new RemoteSearchHandler(mPGridP2P);
+		mDispatcher = new Dispatcher("Search Manager", mPGridP2P.propertyInteger(Properties.SEARCH_THREADS),
+				mPGridP2P.propertyInteger(Properties.SEARCH_QUEUE_SIZE), Constants.LOGGER);
 	}
 
-	protected boolean isCondition() {
-		return !mRequests.isEmpty();
-	}
-
-	protected void prepareWorker() throws Exception {
-		mThread = Thread.currentThread();
-		Constants.LOGGER.config("Search thread prepared.");
+	/**
+	 * Returns the dispatcher handling the search requests, which keeps the queue depth and wait time of the requests.
+	 *
+	 * @return the dispatcher.
+	 */
+	public Dispatcher getDispatcher() {
+		return mDispatcher;
 	}
 
-	protected void releaseWorker() throws Exception {
-		Constants.LOGGER.config("Search thread released.");
+	/**
+	 * Hands the given search request to a thread of the dispatcher.
+	 *
+	 * @param request the search request.
+	 * @return <code>true</code> if the request was queued, <code>false</code> if it was dropped.
+	 */
+	private boolean dispatch(final SearchRequest request) {
+		return mDispatcher.dispatch(new Runnable() {
+			public void run() {
+				request.handleSearch();
+			}
+		});
 	}
 
 	/**
@@ -155,10 +162,25 @@ public class SearchManager extends pgrid.util.WorkerThread {
 			mRemoteRequestHandler.register(query, remoteHost);
 			request = SearchRequestFactory.createSearchRequest(query, mRemoteRequestHandler);
         }
-		mRequests.add(request);
+		if (!dispatch(request)) {
+			// the query is forgotten without a reply, which may block this connection thread
+			request.getSearchListener().searchFinished(query.getGUID());
+			return;
+		}
 		Constants.LOGGER.finest("Search request for query ("+query.getGUID().toString()+") added.");
+	}
 
-		broadcast();
+	/**
+	 * Invoked when a new query batch message was received. The batch is acknowledged and its queries are answered or
+	 * routed further by the router.
+	 *
+	 * @param batch      the query batch message.
+	 * @param remoteHost the sending host.
+	 */
+	public void remoteSearch(QueryBatchMessage batch, PGridHost remoteHost) {
+		MessageManager.sharedInstance().sendMessage(remoteHost, new ACKMessage(batch.getGUID(), ACKMessage.CODE_OK, "Batch of " + batch.getQueries().size() + " queries received."));
+		mPGridP2P.getRouter().route(RoutingRequestFactory.createBatchQueryRoutingRequest(batch));
+		Constants.LOGGER.finest("Search request for query batch ("+batch.getBatchGUID().toString()+") added.");
 	}
 
 	/**
@@ -174,27 +196,37 @@ public class SearchManager extends pgrid.util.WorkerThread {
 	public void search(p2p.storage.Query query, SearchListener listener) throws NoSuchTypeException, NoRouteToKeyException {
 		SearchRequest request = SearchRequestFactory.createSearchRequest(query, listener);
 
-		mRequests.add(request);
-		broadcast();
+		if (!dispatch(request))
+			listener.searchFailed(query.getGUID());
 	}
 
-	protected void work() throws Exception {
-		Iterator requests = null;
-		synchronized(mRequests) {
-			requests = ((Vector)mRequests.clone()).iterator();
-			mRequests.clear();
+	/**
+	 * Search the network for the items matching a batch of exact queries. The queries are routed by the router, which
+	 * sends the queries with the same next hop in one message.
+	 *
+	 * @param queries  the exact queries of the batch
+	 * @param listener an object to notify when results arrive
+	 * @return the GUID of the batch.
+	 * @throws p2p.storage.events.NoSuchTypeException if the provided Type is unknown.
+	 * @throws p2p.basic.events.NoRouteToKeyException if the queries cannot be routed to responsible peers.
+	 */
+	public GUID search(Collection queries, SearchListener listener) throws NoSuchTypeException, NoRouteToKeyException {
+		for (Iterator it = queries.iterator(); it.hasNext();) {
+			if (!(it.next() instanceof pgrid.Query))
+				throw new IllegalArgumentException("Only exact queries can be searched in a batch.");
 		}
 
-		while(requests.hasNext()) {
-				((SearchRequest)requests.next()).handleSearch();
-			}
+		GUID guid = pgrid.GUID.getGUID();
+		mPGridP2P.getRouter().route(RoutingRequestFactory.createBatchQueryRoutingRequest(guid, new Vector(queries), listener));
+		return guid;
 	}
 
 	/**
 	 * Shutdown
 	 */
 	public void shutdown() {
-		mThread.interrupt();
+		Constants.LOGGER.config(mDispatcher.toString());
+		mDispatcher.shutdown();
 	}
 
 }
\ No newline at end of file
@@ -5,11 +5,14 @@ import pgrid.*;
 import pgrid.core.DBManager;
 import pgrid.interfaces.basic.PGridP2P;
 
-import java.net.UnknownHostException;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.Vector;
 
@@ -88,28 +91,58 @@ public class DBDataTable extends DataTable {
 
 	/**
 	 * Adds all delivered Data Items.
+	 * <p/>
+	 * The items are inserted with prepared statements in batches of {@link Properties#DATA_TABLE_BATCH_SIZE} items,
+	 * each batch in its own transaction on the transaction connection of the DB manager. Type and host IDs are looked
+	 * up only once per call.
 	 *
 	 * @param collection the Collection.
 	 */
 	public void addAll(Collection collection) {
 		if (collection == null)
-			new NullPointerException();
+			throw new NullPointerException();
 		if (collection.size() == 0)
 			return;
-		String sql = "";
-		for (Iterator it = collection.iterator(); it.hasNext();) {
-			DataItem item = (DataItem)it.next();
-			sql += "insert into " + DBManager.DATA_ITEMS_TABLE + " values " +
-					"(null, '" + item.getGUID().toString() + "', " +
-					addType(item.getType().toString()) + ", '" +
-					item.getKey().toString() + "', " +
-					addHost((PGridHost)item.getPeer()) + ", '" +
-					item.getData().toString() + "');\n";
-
-			sql += "insert into " + DBManager.DATA_TABLE_ITEMS_TABLE + " values (" + mDataTableID + ", identity());\n";
+		int batchSize = Math.max(1, mPGrid.propertyInteger(Properties.DATA_TABLE_BATCH_SIZE));
+		Hashtable typeIDs = new Hashtable();
+		Hashtable hostIDs = new Hashtable();
+		Connection con = transactionConnection();
+		if (con == null)
+			return;
+		synchronized (con) {
+			PreparedStatement itemStmt = null;
+			PreparedStatement tableItemStmt = null;
+			try {
+				itemStmt = con.prepareStatement("insert into " + DBManager.DATA_ITEMS_TABLE + " values (null, ?, ?, ?, ?, ?)");
+				// items already stored for another data table are shared, items already in this data table are skipped
+				tableItemStmt = con.prepareStatement("insert into " + DBManager.DATA_TABLE_ITEMS_TABLE + " select " + mDataTableID + ", DATA_ITEM_ID from " +
+						DBManager.DATA_ITEMS_TABLE + " i where GUID = ? and not exists (select DATA_ITEM_ID from " + DBManager.DATA_TABLE_ITEMS_TABLE +
+						" t where t.DATA_TABLE_ID = " + mDataTableID + " and t.DATA_ITEM_ID = i.DATA_ITEM_ID)");
+				Vector batch = new Vector(Math.min(batchSize, collection.size()));
+				for (Iterator it = collection.iterator(); it.hasNext();) {
+					batch.add(it.next());
+					if ((batch.size() == batchSize) || (!it.hasNext())) {
+						insertBatch(con, batch, itemStmt, tableItemStmt, typeIDs, hostIDs);
+						batch.clear();
+					}
+				}
+			} catch (SQLException e) {
+				rollback(con);
+				System.err.println("problem " + e + "\ninserting data items: error code: " + e.getErrorCode());
+				e.printStackTrace();
+			} finally {
+				try {
+					if (itemStmt != null)
+						itemStmt.close();
+					if (tableItemStmt != null)
+						tableItemStmt.close();
+				} catch (SQLException e) {
+					e.printStackTrace();
+				}
+			}
 		}
-		mDBManager.execSQL(sql);
 		mSignature = null;
+		countModification();
 		if (Constants.TESTS) {
 			int count = count();
 			int countPath = getDataItems(mPGrid.getLocalPath()).size();
@@ -118,6 +151,108 @@ public class DBDataTable extends DataTable {
 		}
 	}
 
+	/**
+	 * Inserts one batch of data items and commits it. If a data item of the batch is already stored, the batch is rolled
+	 * back and inserted item by item, skipping the already stored items.
+	 *
+	 * @param con           the transaction connection.
+	 * @param batch         the data items.
+	 * @param itemStmt      the statement inserting a data item.
+	 * @param tableItemStmt the statement adding a data item to this data table.
+	 * @param typeIDs       the type ID cache.
+	 * @param hostIDs       the host ID cache.
+	 * @throws SQLException if the batch could not be inserted.
+	 */
+	private void insertBatch(Connection con, Vector batch, PreparedStatement itemStmt, PreparedStatement tableItemStmt, Hashtable typeIDs, Hashtable hostIDs) throws SQLException {
+		try {
+			for (Iterator it = batch.iterator(); it.hasNext();) {
+				DataItem item = (DataItem)it.next();
+				setDataItem(itemStmt, item, typeIDs, hostIDs);
+				itemStmt.addBatch();
+				tableItemStmt.setString(1, item.getGUID().toString());
+				tableItemStmt.addBatch();
+			}
+			itemStmt.executeBatch();
+			tableItemStmt.executeBatch();
+			con.commit();
+		} catch (BatchUpdateException e) {
+			// types and hosts are inserted on the shared connection and survive the rollback
+			con.rollback();
+			itemStmt.clearBatch();
+			tableItemStmt.clearBatch();
+			for (Iterator it = batch.iterator(); it.hasNext();) {
+				DataItem item = (DataItem)it.next();
+				setDataItem(itemStmt, item, typeIDs, hostIDs);
+				try {
+					itemStmt.executeUpdate();
+				} catch (SQLException ex) {
+					if (ex.getErrorCode() != -104) //if not UNIQUE constraint violation
+						throw ex;
+				}
+				tableItemStmt.setString(1, item.getGUID().toString());
+				tableItemStmt.executeUpdate();
+			}
+			con.commit();
+		}
+	}
+
+	/**
+	 * Returns the transaction connection of the DB manager.
+	 *
+	 * @return the connection, or <code>null</code> if it could not be opened.
+	 */
+	private Connection transactionConnection() {
+		try {
+			return mDBManager.getTransactionConnection();
+		} catch (SQLException e) {
+			System.err.println("problem " + e + "\nopening transaction connection: error code: " + e.getErrorCode());
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Rolls back the current transaction of the given connection.
+	 *
+	 * @param con the transaction connection.
+	 */
+	private void rollback(Connection con) {
+		try {
+			con.rollback();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Sets the parameters of the statement inserting a data item.
+	 *
+	 * @param ps      the prepared statement.
+	 * @param item    the data item.
+	 * @param typeIDs the type ID cache.
+	 * @param hostIDs the host ID cache.
+	 * @throws SQLException if a parameter could not be set.
+	 */
+	private void setDataItem(PreparedStatement ps, DataItem item, Hashtable typeIDs, Hashtable hostIDs) throws SQLException {
+		String type = item.getType().toString();
+		Integer typeID = (Integer)typeIDs.get(type);
+		if (typeID == null) {
+			typeID = new Integer(addType(type));
+			typeIDs.put(type, typeID);
+		}
+		PGridHost host = (PGridHost)item.getPeer();
+		Integer hostID = (Integer)hostIDs.get(host.getGUID().toString());
+		if (hostID == null) {
+			hostID = new Integer(addHost(host));
+			hostIDs.put(host.getGUID().toString(), hostID);
+		}
+		ps.setString(1, item.getGUID().toString());
+		ps.setInt(2, typeID.intValue());
+		ps.setString(3, item.getKey().toString());
+		ps.setInt(4, hostID.intValue());
+		ps.setString(5, item.getData().toString());
+	}
+
 	/**
 	 * Inserts a DataItem in the DB.
 	 *
@@ -150,6 +285,7 @@ public class DBDataTable extends DataTable {
 			return;
 		}
 		mSignature = null;
+		countModification();
 	}
 
 	/**
@@ -171,6 +307,7 @@ public class DBDataTable extends DataTable {
 			return;
 		}
 		mSignature = null;
+		countModification();
 	}
 
 	/**
@@ -212,21 +349,26 @@ public class DBDataTable extends DataTable {
 	}
 
 	/**
-	 * Returns the SQL statement used to select all data items of this data table.
+	 * Returns the keys, GUIDs, and ids of all data items sorted for the evaluation of {@link DBView}s. The data
+	 * items are not created.
 	 *
-	 * @return the SQL statement.
-	 */
-	String asView() {
-		return asView("");
-	}
-
-	/**
-	 * Returns the SQL statement used to select all data items of this data table.
-	 *
-	 * @return the SQL statement.
-	 */
-	String asView(String prefix) {
-		return "(select DATA_ITEM_ID, KEY from " + getDataItemsAsSQL(prefix) + ")";
+	 * @return the index of the data items.
+	 */
+	KeyIndex keyIndex() {
+		ResultSet rs = mDBManager.execResultSetSQL("select di.DATA_ITEM_ID as DATA_ITEM_ID, di.GUID as dGUID, di.KEY as KEY from " +
+				DBManager.DATA_TABLE_ITEMS_TABLE + " dti, " + DBManager.DATA_ITEMS_TABLE + " di " +
+				"where dti.DATA_TABLE_ID = " + mDataTableID + " and di.DATA_ITEM_ID = dti.DATA_ITEM_ID");
+		if (rs == null)
+			return KeyIndex.EMPTY;
+		Vector entries = new Vector();
+		try {
+			while (rs.next())
+				entries.add(new KeyIndex.Entry(rs.getString("KEY"), rs.getString("dGUID"), rs.getInt("DATA_ITEM_ID"), null));
+			rs.getStatement().close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		return KeyIndex.create((KeyIndex.Entry[])entries.toArray(new KeyIndex.Entry[entries.size()]), entries.size());
 	}
 
 	/**
@@ -235,6 +377,7 @@ public class DBDataTable extends DataTable {
 	synchronized public void clear() {
 		mDBManager.execDeleteSQL("delete from " + DBManager.HOSTS_TABLE + " where HOST_ID in (select HOST_ID from " +
 				DBManager.DATA_TABLES_TABLE + " where DATA_TABLE_ID = " + mDataTableID + ")");
+		countModification();
 	}
 
 	/**
@@ -251,17 +394,23 @@ public class DBDataTable extends DataTable {
 	 */
 	synchronized public void delete() {
 		mDBManager.execDeleteSQL("delete from " + DBManager.DATA_TABLES_TABLE + " where DATA_TABLE_ID = " + mDataTableID);
+		countModification();
 	}
 
 	/**
 	 * Duplicates all data items of this data table for to the given one.
 	 * @param dataTable the data table to extend.
 	 */
-	public void duplicate(DBDataTable dataTable) {
+	public void duplicate(DataTable dataTable) {
+		if (!(dataTable instanceof DBDataTable)) {
+			super.duplicate(dataTable);
+			return;
+		}
 		// duplicate data items from the table
 		String sql = "insert into " + DBManager.DATA_TABLE_ITEMS_TABLE +
-								 " select " + dataTable.getDataTableID() + ", DATA_ITEM_ID from " + getDataItemsAsSQL();
+								 " select " + ((DBDataTable)dataTable).getDataTableID() + ", DATA_ITEM_ID from " + getDataItemsAsSQL();
 		mDBManager.execSQL(sql);
+		dataTable.countModification();
 	}
 
 	/**
@@ -325,28 +474,22 @@ public class DBDataTable extends DataTable {
 	 */
 	private Collection getDataItems(ResultSet rs) {
 		Vector dataitems = new Vector();
-		try {
-			while (rs.next()) {
-				GUID dGuid = GUID.getGUID(rs.getString("dGUID"));
-				Type type = mStorageManager.createType(rs.getString("TYPE"));
-				PGridKey key = new PGridKey(rs.getString("KEY"));
-				PGridHost host = PGridHost.getHost(rs.getString("hGUID"), rs.getString("ADDR"), rs.getString("PORT"));
-				//@todo	try to avoid the resolve but otherwise the IP is null
-				try {
-					host.resolve();
-				} catch (UnknownHostException e) {
-					e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
-				}
-				String data = rs.getString("DATA");
-				p2p.storage.DataItem item = mStorageManager.createDataItem(dGuid, type, key, host, data);
-				dataitems.add(item);
-			}
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
+		for (Iterator it = new DataItemIterator(rs, mStorageManager); it.hasNext();)
+			dataitems.add(it.next());
 		return dataitems;
 	}
 
+	/**
+	 * Returns an iterator over the data items with the given prefix. The data items are read from the DB while
+	 * iterating.
+	 *
+	 * @param prefix the common prefix of the selected data items.
+	 * @return the iterator.
+	 */
+	public Iterator dataItemIterator(String prefix) {
+		return new DataItemIterator(mDBManager.execResultSetSQL(getDataItemsAsSQL(prefix)), mStorageManager);
+	}
+
 	/**
 	 * Returns the SQL statement used to select all data items of this data table.
 	 *
@@ -478,21 +621,79 @@ public class DBDataTable extends DataTable {
 	}
 
 	/**
-	 * Sets the data table to contain only the elements in the view.
+	 * Sets the data table to contain only the elements in the view. The changes run in one transaction on the
+	 * transaction connection of the DB manager, so writes of other threads are never part of it. Only data items read
+	 * from the data table are removed, so items inserted meanwhile by other threads are kept.
 	 *
 	 * @param table the view representing the new elements of the table.
 	 */
 	public void setDataTable(DBView table) {
-		// keep only the items in the table
-		String sql = "delete from " + DBManager.DATA_TABLE_ITEMS_TABLE + " where DATA_ITEM_ID not in (select DATA_ITEM_ID from (" + table.getDataItemsAsSQL() + "))";
-		mDBManager.execDeleteSQL(sql);
-
-		// insert new items from the table
-		sql = "insert into " + DBManager.DATA_TABLE_ITEMS_TABLE +
-								 " select " + mDataTableID + ", DATA_ITEM_ID from " + table.getDataItemsAsSQL() +
-								 " except (select * from DATA_TABLE_ITEMS where DATA_TABLE_ID = " + mDataTableID + ")";
-		mDBManager.execSQL(sql);
+		int batchSize = Math.max(1, mPGrid.propertyInteger(Properties.DATA_TABLE_BATCH_SIZE));
+		Vector newItems = new Vector();
+		Connection con = transactionConnection();
+		if (con == null)
+			return;
+		synchronized (con) {
+			KeyIndex index = table.evaluate();
+			KeyIndex current = keyIndex();
+
+			// items stored in the DB are referenced by their id, other items have to be inserted
+			HashSet ids = new HashSet();
+			for (int i = 0; i < index.size(); i++) {
+				KeyIndex.Entry entry = index.get(i);
+				if (entry.mID >= 0)
+					ids.add(new Integer(entry.mID));
+				else
+					newItems.add(entry.mItem);
+			}
+
+			PreparedStatement deleteStmt = null;
+			PreparedStatement insertStmt = null;
+			try {
+				// remove the items not contained by the view, the item id is tested first to use its index
+				deleteStmt = con.prepareStatement("delete from " + DBManager.DATA_TABLE_ITEMS_TABLE + " where DATA_ITEM_ID = ? and DATA_TABLE_ID = " + mDataTableID);
+				int batch = 0;
+				for (int i = 0; i < current.size(); i++) {
+					Integer id = new Integer(current.get(i).mID);
+					if (!ids.remove(id)) {
+						deleteStmt.setInt(1, id.intValue());
+						deleteStmt.addBatch();
+						if (++batch % batchSize == 0)
+							deleteStmt.executeBatch();
+					}
+				}
+				deleteStmt.executeBatch();
+
+				// add the remaining items of the view
+				insertStmt = con.prepareStatement("insert into " + DBManager.DATA_TABLE_ITEMS_TABLE + " values (" + mDataTableID + ", ?)");
+				batch = 0;
+				for (Iterator it = ids.iterator(); it.hasNext();) {
+					insertStmt.setInt(1, ((Integer)it.next()).intValue());
+					insertStmt.addBatch();
+					if (++batch % batchSize == 0)
+						insertStmt.executeBatch();
+				}
+				insertStmt.executeBatch();
+				con.commit();
+			} catch (SQLException e) {
+				rollback(con);
+				System.err.println("problem " + e + "\nsetting data table: error code: " + e.getErrorCode());
+				e.printStackTrace();
+			} finally {
+				try {
+					if (deleteStmt != null)
+						deleteStmt.close();
+					if (insertStmt != null)
+						insertStmt.close();
+				} catch (SQLException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		if (!newItems.isEmpty())
+			addAll(newItems);
 		mSignature = null;
+		countModification();
 	}
 
 	/**
@@ -618,6 +819,7 @@ public class DBDataTable extends DataTable {
 		mDBManager.execDeleteSQL("delete from " + DBManager.DATA_ITEMS_TABLE + " where GUID = '" + dataItem.getGUID().toString() + "' and DATA_ITEM_ID not in " +
 														 "(select DATA_ITEM_ID from " + DBManager.DATA_TABLE_ITEMS_TABLE + ")");
 		mSignature = null;
+		countModification();
 	}
 
 	/**
@@ -1,31 +1,66 @@
 package pgrid.core.storage;
 
-import pgrid.GUID;
-import pgrid.Type;
-import pgrid.PGridKey;
-import pgrid.PGridHost;
+import pgrid.DataItem;
 import pgrid.interfaces.basic.PGridP2P;
-import pgrid.core.storage.StorageManager;
-import pgrid.core.storage.DBDataTable;
 import pgrid.core.DBManager;
 
 import java.util.Collection;
+import java.util.Hashtable;
+import java.util.Iterator;
 import java.util.Vector;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.net.UnknownHostException;
 
 /**
  * <p>Title: DBView</p>
  * <p/>
  * <p>Description: A utility class to generate a "View" of the tables, i.e.
- * generate SQL queries and subqueries</p>
+ * selections, set differences and unions of data tables and other views.</p>
+ * <p/>
+ * <p>A view is evaluated lazily when its data items are counted or requested. The keys and GUIDs of
+ * the data items are then read once from each data table, and the operations are computed on sorted
+ * {@link KeyIndex}es. The result of each view is memoized, and during an exchange the data table
+ * indexes are also shared by all views of the exchange (see {@link #beginExchange()}). The data items
+ * themselves are only created when they are requested.</p>
  *
  * @author Mark Kornfilt
  * @version 1.0
  */
 public class DBView {
 
+	/**
+	 * A view of a data table.
+	 */
+	private static final int TABLE = 0;
+
+	/**
+	 * A view of given data items.
+	 */
+	private static final int ITEMS = 1;
+
+	/**
+	 * A selection of a view.
+	 */
+	private static final int SELECTION = 2;
+
+	/**
+	 * The set difference of two views.
+	 */
+	private static final int DIFFERENCE = 3;
+
+	/**
+	 * The union of two views.
+	 */
+	private static final int UNION = 4;
+
+	/**
+	 * The number of data items loaded from the DB per query.
+	 */
+	private static final int LOAD_CHUNK_SIZE = 1000;
+
+	/**
+	 * The data table indexes of the exchange processed by the current thread, <code>null</code> outside an exchange.
+	 */
+	private static final ThreadLocal EXCHANGE_INDEXES = new ThreadLocal();
+
 	/**
 	 * The DataBase manager
 	 */
@@ -37,18 +72,178 @@ public class DBView {
 	private StorageManager mStorageManager = null;
 
 	/**
-	 * The Query defining this View
+	 * The operation defining this view.
+	 */
+	private int mOperation = ITEMS;
+
+	/**
+	 * The data table of a table view.
+	 */
+	private DataTable mTable = null;
+
+	/**
+	 * The data items of an items view.
 	 */
-	private String mSQLStatement;
+	private Collection mDataItems = null;
 
 	/**
-	 * Constructs a DBView based on an SQL statement.
+	 * The operand of a selection or the first operand of a set operation.
+	 */
+	private DBView mView1 = null;
+
+	/**
+	 * The second operand of a set operation.
+	 */
+	private DBView mView2 = null;
+
+	/**
+	 * The key prefix of a selection.
+	 */
+	private String mCriteria = null;
+
+	/**
+	 * The evaluated view, <code>null</code> until the view is used.
+	 */
+	private KeyIndex mIndex = null;
+
+	/**
+	 * The number of modifications of the data tables of the view when it was evaluated.
+	 */
+	private long mModifications = 0;
+
+	/**
+	 * Constructs a DBView containing the given data items.
+	 *
+	 * @param dataItems the data items.
+	 */
+	public DBView(Collection dataItems) {
+		mStorageManager = PGridP2P.sharedInstance().getStorageManager();
+		mOperation = ITEMS;
+		mDataItems = dataItems;
+	}
+
+	/**
+	 * Constructs a DBView of the given evaluated entries.
 	 *
-	 * @param sqlStatement the SQL statement.
+	 * @param index the entries.
 	 */
-	public DBView(String sqlStatement) {
+	DBView(KeyIndex index) {
 		mStorageManager = PGridP2P.sharedInstance().getStorageManager();
-		mSQLStatement = sqlStatement;
+		mOperation = ITEMS;
+		mIndex = index;
+	}
+
+	/**
+	 * Constructs a DBView of the given data table.
+	 *
+	 * @param table the data table.
+	 */
+	private DBView(DataTable table) {
+		mStorageManager = PGridP2P.sharedInstance().getStorageManager();
+		mOperation = TABLE;
+		mTable = table;
+	}
+
+	/**
+	 * Constructs a DBView combining other views.
+	 *
+	 * @param operation the operation.
+	 * @param view1     the first operand.
+	 * @param view2     the second operand or <code>null</code>.
+	 * @param criteria  the selection criteria or <code>null</code>.
+	 */
+	private DBView(int operation, DBView view1, DBView view2, String criteria) {
+		mStorageManager = PGridP2P.sharedInstance().getStorageManager();
+		mOperation = operation;
+		mView1 = view1;
+		mView2 = view2;
+		mCriteria = criteria;
+	}
+
+	/**
+	 * Starts an exchange processed by the current thread. Until the exchange ends, each data table is only read
+	 * again by the views after it was modified.
+	 */
+	public static void beginExchange() {
+		EXCHANGE_INDEXES.set(new Hashtable());
+	}
+
+	/**
+	 * Ends the exchange processed by the current thread.
+	 */
+	public static void endExchange() {
+		EXCHANGE_INDEXES.set(null);
+	}
+
+	/**
+	 * Returns the index of the given data table. An index read during the current exchange is reused until the data
+	 * table is modified by any thread.
+	 *
+	 * @param table the data table.
+	 * @return the index.
+	 */
+	private static KeyIndex tableIndex(DataTable table) {
+		Hashtable indexes = (Hashtable)EXCHANGE_INDEXES.get();
+		if (indexes == null)
+			return table.keyIndex();
+		// the modifications are counted before the table is read, a concurrent modification invalidates the index
+		long modifications = table.getModificationCount();
+		TableIndex index = (TableIndex)indexes.get(table);
+		if ((index == null) || (index.mModifications != modifications)) {
+			index = new TableIndex(table.keyIndex(), modifications);
+			indexes.put(table, index);
+		}
+		return index.mIndex;
+	}
+
+	/**
+	 * Returns the number of modifications of the data tables of this view. The sum of the counters changes if any
+	 * data table was modified.
+	 *
+	 * @return the number of modifications.
+	 */
+	private long modifications() {
+		switch (mOperation) {
+			case TABLE:
+				return mTable.getModificationCount();
+			case SELECTION:
+				return mView1.modifications();
+			case DIFFERENCE:
+			case UNION:
+				return mView1.modifications() + mView2.modifications();
+			default:
+				return 0;
+		}
+	}
+
+	/**
+	 * Evaluates the view. The view is evaluated again if one of its data tables was modified since.
+	 *
+	 * @return the evaluated view.
+	 */
+	synchronized KeyIndex evaluate() {
+		long modifications = modifications();
+		if ((mIndex != null) && (mModifications == modifications))
+			return mIndex;
+
+		mModifications = modifications;
+		switch (mOperation) {
+			case TABLE:
+				mIndex = tableIndex(mTable);
+				break;
+			case SELECTION:
+				mIndex = mView1.evaluate().select(mCriteria);
+				break;
+			case DIFFERENCE:
+				mIndex = mView1.evaluate().difference(mView2.evaluate());
+				break;
+			case UNION:
+				mIndex = mView1.evaluate().union(mView2.evaluate());
+				break;
+			default:
+				mIndex = KeyIndex.create(mDataItems);
+		}
+		return mIndex;
 	}
 
 	/**
@@ -57,41 +252,71 @@ public class DBView {
 	 * @return the list of data items.
 	 */
 	public Vector getDataItems() {
-		ResultSet rs = mDBManager.execResultSetSQL("select di.DATA_ITEM_ID as DATA_ITEM_ID, di.GUID as dGUID, t.NAME as TYPE, di.KEY as KEY, h.GUID as hGUID, h.ADDRESS as ADDR, h.PORT as PORT, di.DATA as DATA " +
-				"from " + DBManager.DATA_TABLES_TABLE + " dt, " + DBManager.DATA_TABLE_ITEMS_TABLE + " dti, " +
-				DBManager.DATA_ITEMS_TABLE + " di, " + DBManager.HOSTS_TABLE + " h, " + DBManager.TYPES_TABLE + " t " +
-				"where di.DATA_ITEM_ID in (select DATA_ITEM_ID from " + getDataItemsAsSQL() + ") and dti.DATA_TABLE_ID = dt.DATA_TABLE_ID and dti.DATA_ITEM_ID = di.DATA_ITEM_ID " +
-				"and h.HOST_ID = di.HOST_ID and t.TYPE_ID = di.TYPE_ID");
-		Vector dataitems = new Vector();
-		try {
-			while (rs.next()) {
-				GUID dGuid = GUID.getGUID(rs.getString("dGUID"));
-				Type type = mStorageManager.createType(rs.getString("TYPE"));
-				PGridKey key = new PGridKey(rs.getString("KEY"));
-				PGridHost host = PGridHost.getHost(rs.getString("hGUID"), rs.getString("ADDR"), rs.getString("PORT"));
-				//@todo	try to avoid the resolve but otherwise the IP is null
-				try {
-					host.resolve();
-				} catch (UnknownHostException e) {
-					e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
-				}
-				String data = rs.getString("DATA");
-				p2p.storage.DataItem item = mStorageManager.createDataItem(dGuid, type, key, host, data);
+		KeyIndex index = evaluate();
+		Hashtable loaded = loadDataItems(index);
+		Vector dataitems = new Vector(index.size());
+		for (int i = 0; i < index.size(); i++) {
+			KeyIndex.Entry entry = index.get(i);
+			Object item = (entry.mItem != null ? entry.mItem : loaded.get(entry.mGUID));
+			// the item may have been removed from the DB meanwhile
+			if (item != null)
 				dataitems.add(item);
-			}
-		} catch (SQLException e) {
-			e.printStackTrace();
 		}
 		return dataitems;
 	}
 
 	/**
-	 * Returns the SQL query of this view
+	 * Returns an iterator over the data items of this view.
+	 *
+	 * @return the iterator.
+	 */
+	public Iterator dataItemIterator() {
+		return getDataItems().iterator();
+	}
+
+	/**
+	 * Creates the data items of the index which are only known by their id in the DB.
 	 *
-	 * @return The SQL query
+	 * @param index the index.
+	 * @return the created data items by GUID.
 	 */
-	public String getDataItemsAsSQL() {
-		return mSQLStatement;
+	private Hashtable loadDataItems(KeyIndex index) {
+		Hashtable loaded = new Hashtable();
+		StringBuffer ids = new StringBuffer();
+		int count = 0;
+		for (int i = 0; i < index.size(); i++) {
+			KeyIndex.Entry entry = index.get(i);
+			if (entry.mItem != null)
+				continue;
+			if (count > 0)
+				ids.append(',');
+			ids.append(entry.mID);
+			count++;
+			if (count == LOAD_CHUNK_SIZE) {
+				loadDataItems(ids.toString(), loaded);
+				ids.setLength(0);
+				count = 0;
+			}
+		}
+		if (count > 0)
+			loadDataItems(ids.toString(), loaded);
+		return loaded;
+	}
+
+	/**
+	 * Creates the data items with the given ids in the DB.
+	 *
+	 * @param ids    the comma separated ids.
+	 * @param loaded the created data items by GUID.
+	 */
+	private void loadDataItems(String ids, Hashtable loaded) {
+		String sql = "select di.DATA_ITEM_ID as DATA_ITEM_ID, di.GUID as dGUID, t.NAME as TYPE, di.KEY as KEY, h.GUID as hGUID, h.ADDRESS as ADDR, h.PORT as PORT, di.DATA as DATA " +
+				"from " + DBManager.DATA_ITEMS_TABLE + " di, " + DBManager.HOSTS_TABLE + " h, " + DBManager.TYPES_TABLE + " t " +
+				"where di.DATA_ITEM_ID in (" + ids + ") and h.HOST_ID = di.HOST_ID and t.TYPE_ID = di.TYPE_ID";
+		for (Iterator it = new DataItemIterator(mDBManager.execResultSetSQL(sql), mStorageManager); it.hasNext();) {
+			DataItem item = (DataItem)it.next();
+			loaded.put(item.getGUID().toString(), item);
+		}
 	}
 
 	/**
@@ -100,7 +325,7 @@ public class DBView {
 	 * @return the number of items.
 	 */
 	public int count() {
-		return mDBManager.count(mSQLStatement);
+		return evaluate().size();
 	}
 
 	/**
@@ -110,8 +335,8 @@ public class DBView {
 	 * @param criteria the selection criteria.
 	 * @return the new DBView.
 	 */
-	public static DBView selection(DBDataTable table, String criteria) {
-		return new DBView("(select DATA_ITEM_ID, KEY from " + table.asView() + " where KEY like '" + criteria + "%')");
+	public static DBView selection(DataTable table, String criteria) {
+		return selection(new DBView(table), criteria);
 	}
 
 	/**
@@ -122,7 +347,7 @@ public class DBView {
 	 * @return the new DBView.
 	 */
 	public static DBView selection(DBView table, String criteria) {
-		return new DBView("(select DATA_ITEM_ID, KEY from (" + table.getDataItemsAsSQL() + ") where KEY like '" + criteria + "%')");
+		return new DBView(SELECTION, table, null, criteria);
 	}
 
 	/**
@@ -132,8 +357,8 @@ public class DBView {
 	 * @param table2 the second table.
 	 * @return the new DBView.
 	 */
-	public static DBView setDifference(DBDataTable table1, DBDataTable table2) {
-		return new DBView("(" + table1.asView() + " except " + table2.asView() + ")");
+	public static DBView setDifference(DataTable table1, DataTable table2) {
+		return setDifference(new DBView(table1), new DBView(table2));
 	}
 
 	/**
@@ -143,8 +368,8 @@ public class DBView {
 	 * @param table2 the second table.
 	 * @return the new DBView.
 	 */
-	public static DBView setDifference(DBDataTable table1, DBView table2) {
-		return new DBView("(" + table1.asView() + " except " + table2.getDataItemsAsSQL() + ")");
+	public static DBView setDifference(DataTable table1, DBView table2) {
+		return setDifference(new DBView(table1), table2);
 	}
 
 	/**
@@ -154,8 +379,8 @@ public class DBView {
 	 * @param table2 the second table.
 	 * @return the new DBView.
 	 */
-	public static DBView setDifference(DBView table1, DBDataTable table2) {
-		return new DBView("(" + table1.getDataItemsAsSQL() + " except " + table2.asView() + ")");
+	public static DBView setDifference(DBView table1, DataTable table2) {
+		return setDifference(table1, new DBView(table2));
 	}
 
 	/**
@@ -166,7 +391,7 @@ public class DBView {
 	 * @return the new DBView.
 	 */
 	public static DBView setDifference(DBView table1, DBView table2) {
-		return new DBView("(" + table1.getDataItemsAsSQL() + " except " + table2.getDataItemsAsSQL() + ")");
+		return new DBView(DIFFERENCE, table1, table2, null);
 	}
 
 	/**
@@ -176,8 +401,8 @@ public class DBView {
 	 * @param table2 the second table.
 	 * @return the new DBView.
 	 */
-	public static DBView union(DBDataTable table1, DBDataTable table2) {
-		return new DBView("(" + table1.asView() + " union " + table2.asView() + ")");
+	public static DBView union(DataTable table1, DataTable table2) {
+		return union(new DBView(table1), new DBView(table2));
 	}
 
 	/**
@@ -187,8 +412,8 @@ public class DBView {
 	 * @param table2 the second table.
 	 * @return the new DBView.
 	 */
-	public static DBView union(DBDataTable table1, DBView table2) {
-		return new DBView("(" + table1.asView() + " union " + table2.getDataItemsAsSQL() + ")");
+	public static DBView union(DataTable table1, DBView table2) {
+		return union(new DBView(table1), table2);
 	}
 
 	/**
@@ -198,8 +423,8 @@ public class DBView {
 	 * @param table2 the second table.
 	 * @return the new DBView.
 	 */
-	public static DBView union(DBView table1, DBDataTable table2) {
-		return new DBView("(" + table1.getDataItemsAsSQL() + " union " + table2.asView() + ")");
+	public static DBView union(DBView table1, DataTable table2) {
+		return union(table1, new DBView(table2));
 	}
 
 	/**
@@ -210,7 +435,35 @@ public class DBView {
 	 * @return the new DBView.
 	 */
 	public static DBView union(DBView table1, DBView table2) {
-		return new DBView("(" + table1.getDataItemsAsSQL() + " union " + table2.getDataItemsAsSQL() + ")");
+		return new DBView(UNION, table1, table2, null);
+	}
+
+	/**
+	 * The index of a data table read during an exchange.
+	 */
+	private static class TableIndex {
+
+		/**
+		 * The index.
+		 */
+		private KeyIndex mIndex = null;
+
+		/**
+		 * The number of modifications of the data table before it was read.
+		 */
+		private long mModifications = 0;
+
+		/**
+		 * Creates a new data table index.
+		 *
+		 * @param index         the index.
+		 * @param modifications the number of modifications of the data table before it was read.
+		 */
+		TableIndex(KeyIndex index, long modifications) {
+			mIndex = index;
+			mModifications = modifications;
+		}
+
 	}
 
 }
@@ -0,0 +1,129 @@
+package pgrid.core.storage;
+
+import pgrid.GUID;
+import pgrid.PGridHost;
+import pgrid.PGridKey;
+import pgrid.Type;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>Title: DataItemIterator</p>
+ * <p/>
+ * <p>Description: Iterates over the data items selected by a data table query. Each data item is
+ * created when it is reached instead of creating all data items in advance, the hosts are taken
+ * from the {@link HostCache}. The statement of the result set is closed after the last row.</p>
+ *
+ * @version 1.0
+ */
+class DataItemIterator implements Iterator {
+
+	/**
+	 * The host cache.
+	 */
+	private HostCache mHostCache = HostCache.sharedInstance();
+
+	/**
+	 * The next data item, <code>null</code> if not read yet.
+	 */
+	private p2p.storage.DataItem mNext = null;
+
+	/**
+	 * The result set, <code>null</code> after the last row.
+	 */
+	private ResultSet mResultSet = null;
+
+	/**
+	 * The data item manager.
+	 */
+	private StorageManager mStorageManager = null;
+
+	/**
+	 * Constructs an iterator over the rows of the given result set.
+	 *
+	 * @param rs             the result set, may be <code>null</code> if the query failed.
+	 * @param storageManager the data item manager creating the data items.
+	 */
+	DataItemIterator(ResultSet rs, StorageManager storageManager) {
+		mResultSet = rs;
+		mStorageManager = storageManager;
+	}
+
+	/**
+	 * Closes the result set and its statement.
+	 */
+	void close() {
+		if (mResultSet == null)
+			return;
+		try {
+			Statement st = mResultSet.getStatement();
+			mResultSet.close();
+			if (st != null)
+				st.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+		mResultSet = null;
+	}
+
+	/**
+	 * Returns <tt>true</tt> if the iteration has more data items.
+	 *
+	 * @return <tt>true</tt> if the iterator has more data items.
+	 */
+	public boolean hasNext() {
+		if ((mNext == null) && (mResultSet != null)) {
+			try {
+				if (mResultSet.next())
+					mNext = createDataItem(mResultSet);
+				else
+					close();
+			} catch (SQLException e) {
+				e.printStackTrace();
+				close();
+			}
+		}
+		return (mNext != null);
+	}
+
+	/**
+	 * Returns the next data item in the iteration.
+	 *
+	 * @return the next data item.
+	 */
+	public Object next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		Object item = mNext;
+		mNext = null;
+		return item;
+	}
+
+	/**
+	 * Not supported.
+	 */
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Creates the data item of the current row.
+	 *
+	 * @param rs the result set.
+	 * @return the data item.
+	 * @throws SQLException if a column could not be read.
+	 */
+	private p2p.storage.DataItem createDataItem(ResultSet rs) throws SQLException {
+		GUID dGuid = GUID.getGUID(rs.getString("dGUID"));
+		Type type = mStorageManager.createType(rs.getString("TYPE"));
+		PGridKey key = new PGridKey(rs.getString("KEY"));
+		PGridHost host = mHostCache.getHost(rs.getString("hGUID"), rs.getString("ADDR"), rs.getString("PORT"));
+		String data = rs.getString("DATA");
+		return mStorageManager.createDataItem(dGuid, type, key, host, data);
+	}
+
+}
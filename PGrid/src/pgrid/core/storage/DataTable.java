@@ -25,7 +25,9 @@
 package pgrid.core.storage;
 
 import org.xml.sax.helpers.DefaultHandler;
+import p2p.basic.Peer;
 import pgrid.DataItem;
+import pgrid.PGridHost;
 import pgrid.interfaces.basic.PGridP2P;
 import pgrid.util.Utils;
 
@@ -35,6 +37,7 @@ import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.TreeSet;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class represents the PGridP2P facility.
@@ -74,6 +77,11 @@ public class DataTable extends DefaultHandler {
 	 */
 	protected StorageManager mStorageManager = null;
 
+	/**
+	 * The host owning the data table.
+	 */
+	protected PGridHost mHost = null;
+
 	/**
 	 * The shared files by their key.
 	 */
@@ -94,6 +102,11 @@ public class DataTable extends DefaultHandler {
 	 */
 	protected pgrid.util.Utils mUtils = new pgrid.util.Utils();
 
+	/**
+	 * The number of modifications of the data table.
+	 */
+	private final AtomicLong mModifications = new AtomicLong();
+
 	/**
 	 * Construct a new empty Data Table.
 	 */
@@ -111,6 +124,15 @@ public class DataTable extends DefaultHandler {
 		mStorageManager = PGridP2P.sharedInstance().getStorageManager();
 	}
 
+	/**
+	 * Initialize a data table for the given host.
+	 *
+	 * @param host the host.
+	 */
+	public void init(PGridHost host) {
+		mHost = host;
+	}
+
 	/**
 	 * Set the stat of the data table to unsaved so that next time the save method
 	 * is called the data table will be written down.
@@ -120,6 +142,24 @@ public class DataTable extends DefaultHandler {
 	 */
 	public void touch() {
 		mSignature = null;
+		countModification();
+	}
+
+	/**
+	 * Counts a modification of the data table. Has to be called after each modification, as it invalidates the key
+	 * indexes read before by any thread.
+	 */
+	protected void countModification() {
+		mModifications.incrementAndGet();
+	}
+
+	/**
+	 * Returns the number of modifications of the data table.
+	 *
+	 * @return the number of modifications.
+	 */
+	long getModificationCount() {
+		return mModifications.get();
 	}
 
 	/**
@@ -192,6 +232,7 @@ public class DataTable extends DefaultHandler {
 		mDataItemsByType.put(dataItem.getType(), filesByType);
 
 		mSignature = null;
+		countModification();
 	}
 
 	/**
@@ -203,6 +244,7 @@ public class DataTable extends DefaultHandler {
 		mDataItemsByKey.clear();
 		mDataItemsByType.clear();
 		mSignature = null;
+		countModification();
 	}
 
 	/**
@@ -266,6 +308,35 @@ public class DataTable extends DefaultHandler {
 			return new Vector(mDataItems);
 	}
 
+	/**
+	 * Returns an iterator over all data items.
+	 *
+	 * @return the iterator.
+	 */
+	public Iterator dataItemIterator() {
+		return dataItemIterator("");
+	}
+
+	/**
+	 * Returns an iterator over the data items with the given prefix. Subclasses may create the data items while
+	 * iterating instead of returning a complete list.
+	 *
+	 * @param prefix the common prefix of the selected data items.
+	 * @return the iterator.
+	 */
+	public Iterator dataItemIterator(String prefix) {
+		return getDataItems(prefix).iterator();
+	}
+
+	/**
+	 * Returns the keys and GUIDs of all data items sorted for the evaluation of {@link DBView}s.
+	 *
+	 * @return the index of the data items.
+	 */
+	KeyIndex keyIndex() {
+		return KeyIndex.create(getDataItems());
+	}
+
 	/**
 	 * Returns a list of data types handled by the data table.
 	 *
@@ -324,6 +395,7 @@ public class DataTable extends DefaultHandler {
 				mDataItemsByType.put(dataItem.getType(), items);
 			}
 			mSignature = null;
+			countModification();
 		}
 	}
 
@@ -342,6 +414,154 @@ public class DataTable extends DefaultHandler {
 		}
 	}
 
+	/**
+	 * Removes all given data items owned by peer.
+	 *
+	 * @param items the items to remove.
+	 * @param peer  the owning peer.
+	 */
+	public void removeAll(Collection items, Peer peer) {
+		removeAll(items);
+	}
+
+	/**
+	 * Updates the given Data Item, the item with the same GUID is replaced.
+	 *
+	 * @param dataItem the item to update.
+	 */
+	public synchronized void updateDataItem(DataItem dataItem) {
+		if (dataItem == null)
+			throw new NullPointerException();
+
+		for (Iterator it = getDataItems().iterator(); it.hasNext();) {
+			DataItem item = (DataItem)it.next();
+			if (item.getGUID().equals(dataItem.getGUID()))
+				removeDataItem(item);
+		}
+		addDataItem(dataItem);
+	}
+
+	/**
+	 * Update all given data items.
+	 *
+	 * @param items the items to Update.
+	 */
+	public void updateAll(Collection items) {
+		if (items == null)
+			throw new NullPointerException();
+
+		for (Iterator it = items.iterator(); it.hasNext();) {
+			DataItem item = (DataItem)it.next();
+			updateDataItem(item);
+		}
+	}
+
+	/**
+	 * Update all given data items owned by peer.
+	 *
+	 * @param items the items to update.
+	 * @param peer  the owning peer.
+	 */
+	public void updateAll(Collection items, Peer peer) {
+		updateAll(items);
+	}
+
+	/**
+	 * Returns the list of data items from the host owning the data table.
+	 *
+	 * @return the list of data items.
+	 */
+	public Collection getOwnedDataItems() {
+		Vector result = new Vector();
+		for (Iterator it = getDataItems().iterator(); it.hasNext();) {
+			DataItem item = (DataItem)it.next();
+			if ((mHost != null) && mHost.equals(item.getPeer()))
+				result.add(item);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the list of data items whose data contains the given string.
+	 *
+	 * @param prefix the string contained by the data of the selected data items.
+	 * @return the list of data items.
+	 */
+	public Collection getDataItemsDataPrefixed(String prefix) {
+		Vector result = new Vector();
+		for (Iterator it = getDataItems().iterator(); it.hasNext();) {
+			DataItem item = (DataItem)it.next();
+			if (item.getData().toString().indexOf(prefix) >= 0)
+				result.add(item);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the list of data items whose data is in the given range (both bounds included).
+	 *
+	 * @param lowerPrefix the lower bound.
+	 * @param higherPrefix the higher bound.
+	 * @return the list of data items.
+	 */
+	public Collection getDataItemsDataPrefixed(String lowerPrefix, String higherPrefix) {
+		Vector result = new Vector();
+		for (Iterator it = getDataItems().iterator(); it.hasNext();) {
+			DataItem item = (DataItem)it.next();
+			String data = item.getData().toString();
+			if ((data.compareTo(lowerPrefix) >= 0) && (data.compareTo(higherPrefix) <= 0))
+				result.add(item);
+		}
+		return result;
+	}
+
+	/**
+	 * Duplicates all data items of this data table to the given one.
+	 *
+	 * @param dataTable the data table to extend.
+	 */
+	public void duplicate(DataTable dataTable) {
+		dataTable.addAll(getDataItems());
+	}
+
+	/**
+	 * Sets the data table to contain only the elements in the view.
+	 *
+	 * @param view the view representing the new elements of the table.
+	 */
+	public synchronized void setDataTable(DBView view) {
+		Collection items = view.getDataItems();
+		clear();
+		addAll(items);
+	}
+
+	/**
+	 * Removes the data table.
+	 */
+	public void delete() {
+		clear();
+	}
+
+	/**
+	 * Saves the data table.
+	 */
+	public void save() {
+	}
+
+	/**
+	 * Shuts the data table down.
+	 */
+	public void shutdown() {
+	}
+
+	/**
+	 * Invoked when a type handler has been registered, so that data items of its type can be created.
+	 *
+	 * @param type the type.
+	 */
+	public void typeHandlerRegistered(p2p.storage.Type type) {
+	}
+
 
 	/**
 	 * Selects the elements with the given prefix.
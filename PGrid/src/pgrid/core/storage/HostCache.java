@@ -0,0 +1,221 @@
+/**
+ * Copyright (c) 2002 The P-Grid Team,
+ *                    All Rights Reserved.
+ *
+ * This file is part of the P-Grid package.
+ * P-Grid homepage: http://www.p-grid.org/
+ *
+ * The P-Grid package is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This package is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; see the file LICENSE.
+ * If not you can find the GPL at http://www.gnu.org/copyleft/gpl.html
+ */
+
+package pgrid.core.storage;
+
+import p2p.basic.GUID;
+import pgrid.Constants;
+import pgrid.PGridHost;
+
+import java.net.UnknownHostException;
+import java.util.Hashtable;
+import java.util.Vector;
+import java.util.logging.Level;
+
+/**
+ * This class provides the hosts of the data items read from a data table. Each host is materialized once per GUID
+ * and its address is resolved when it is first used. Afterwards the resolved address is reused for every data item
+ * of the host and refreshed in the background once it is older than the refresh interval. The identity manager
+ * invalidates a host when its address changed, the host then takes the address read next and resolves it again.
+ * <p/>
+ * This class implements the <code>Singleton</code> pattern as defined by
+ * Gamma et.al. As there could only exist one instance of this class, other
+ * clients must use the <code>sharedInstance</code> function to use this class.
+ *
+ * @version 1.0.0
+ */
+public class HostCache extends pgrid.util.WorkerThread {
+
+	/**
+	 * The time after which the address of a host is resolved again.
+	 */
+	private static final long REFRESH_INTERVAL = 1000 * 60 * 10; // 10 min.
+
+	/**
+	 * The reference to the only instance of this class (Singleton
+	 * pattern). This differs from the C++ standard implementation by Gamma
+	 * et.al. since Java ensures the order of static initialization at runtime.
+	 *
+	 * @see <a href="http://www.javaworld.com/javaworld/javatips/jw-javatip67.html">
+	 *      Lazy instantiation - Balancing performance and resource usage</a>
+	 */
+	private static final HostCache SHARED_INSTANCE = new HostCache();
+
+	/**
+	 * The hosts waiting to be resolved again.
+	 */
+	private final Vector mRefreshs = new Vector();
+
+	/**
+	 * The times the addresses of the hosts have been resolved, by host GUID.
+	 */
+	private final Hashtable mResolved = new Hashtable();
+
+	/**
+	 * The invalidated hosts, by host GUID.
+	 */
+	private final Hashtable mInvalidated = new Hashtable();
+
+	/**
+	 * The working thread
+	 */
+	private Thread mThread = null;
+
+	/**
+	 * The constructor must be protected to ensure that only subclasses can
+	 * call it and that only one instance can ever get created. A client that
+	 * tries to instantiate this class will get a compile-time error.
+	 */
+	protected HostCache() {
+		super();
+	}
+
+	/**
+	 * This creates the only instance of this class. This differs from the C++ standard implementation by Gamma et.al.
+	 * since Java ensures the order of static initialization at runtime.
+	 *
+	 * @return the shared instance of this class.
+	 * @see <a href="http://www.javaworld.com/javaworld/javatips/jw-javatip67.html">
+	 *      Lazy instantiation - Balancing performance and resource usage</a>
+	 */
+	public static HostCache sharedInstance() {
+		return SHARED_INSTANCE;
+	}
+
+	/**
+	 * Returns the host for the given values. The address of the host is only resolved if the host is not known yet or
+	 * was invalidated, an outdated address is resolved again in the background.
+	 *
+	 * @param guid the GUID string of the host.
+	 * @param addr the address of the host.
+	 * @param port the port string of the host.
+	 * @return the host.
+	 */
+	public PGridHost getHost(String guid, String addr, String port) {
+		PGridHost host = PGridHost.getHost(guid, addr, port);
+		if (mInvalidated.remove(host.getGUID()) != null) {
+			// the address of the host has changed
+			if (host.setAddress(addr, port))
+				Constants.LOGGER.fine("Address of host '" + guid + "' changed to '" + addr + ":" + port + "'.");
+			resolve(host);
+			return host;
+		}
+		Long resolved = (Long)mResolved.get(host.getGUID());
+		if (resolved == null) {
+			// the address is needed by the caller
+			if (host.getIP() == null)
+				resolve(host);
+			else
+				mResolved.put(host.getGUID(), new Long(System.currentTimeMillis()));
+		} else if (System.currentTimeMillis() - resolved.longValue() > REFRESH_INTERVAL) {
+			// don't queue the host again until the refresh is done
+			mResolved.put(host.getGUID(), new Long(System.currentTimeMillis()));
+			synchronized (mRefreshs) {
+				mRefreshs.add(host);
+			}
+			broadcast();
+		}
+		return host;
+	}
+
+	/**
+	 * Invalidates the cached address of the given host, the host takes the address it is read with next and resolves
+	 * it again.
+	 *
+	 * @param guid the GUID of the host.
+	 */
+	public void invalidate(GUID guid) {
+		mResolved.remove(guid);
+		mInvalidated.put(guid, guid);
+	}
+
+	/**
+	 * Resolves the address of the given host.
+	 *
+	 * @param host the host.
+	 */
+	private void resolve(PGridHost host) {
+		try {
+			host.resolve();
+		} catch (UnknownHostException e) {
+			Constants.LOGGER.fine("Could not resolve host '" + host.getAddressString() + "'.");
+		}
+		// unresolvable hosts are also only tried again after the refresh interval
+		mResolved.put(host.getGUID(), new Long(System.currentTimeMillis()));
+	}
+
+	protected void handleError(Throwable t) {
+		if (t instanceof InterruptedException) {
+			Constants.LOGGER.finer("Host cache interupted.");
+		} else {
+			Constants.LOGGER.log(Level.WARNING, "Error in host cache thread", t);
+		}
+	}
+
+	protected boolean isCondition() {
+		synchronized (mRefreshs) {
+			return !mRefreshs.isEmpty();
+		}
+	}
+
+	protected void prepareWorker() throws Exception {
+		Constants.LOGGER.config("Host cache thread prepared.");
+	}
+
+	protected void releaseWorker() throws Exception {
+		Constants.LOGGER.config("Host cache thread released.");
+	}
+
+	/**
+	 * Starts the thread refreshing the addresses of the hosts.
+	 */
+	synchronized void start() {
+		if (mThread != null)
+			return;
+		Thread thread = new Thread(this, "HostCache");
+		thread.setDaemon(true);
+		mThread = thread;
+		thread.start();
+	}
+
+	/**
+	 * Resolves the queued hosts again.
+	 *
+	 * @throws Exception if an error occurs.
+	 */
+	protected void work() throws Exception {
+		PGridHost host;
+		synchronized (mRefreshs) {
+			host = (PGridHost)mRefreshs.remove(0);
+		}
+		resolve(host);
+	}
+
+	/**
+	 * Shutdowns the host cache.
+	 */
+	synchronized void shutdown() {
+		halt();
+		mThread = null;
+	}
+
+}
@@ -0,0 +1,276 @@
+package pgrid.core.storage;
+
+import pgrid.DataItem;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+
+/**
+ * <p>Title: KeyIndex</p>
+ * <p/>
+ * <p>Description: An immutable set of data item entries sorted by key and GUID, used by {@link DBView}
+ * to evaluate selections and set operations. A selection is a binary search for the range of keys
+ * with the given prefix, set differences and unions merge the sorted entries in linear time. Two
+ * entries are equal if they have the same key and GUID.</p>
+ * <p/>
+ * <p>An entry of a data table stored in the DB only knows the id of the data item in the DB, the
+ * data item is only created when the entries are materialized.</p>
+ *
+ * @version 1.0
+ */
+class KeyIndex {
+
+	/**
+	 * Orders the entries by key and GUID.
+	 */
+	private static final Comparator ENTRY_COMPARATOR = new Comparator() {
+		public int compare(Object o1, Object o2) {
+			return ((Entry)o1).compareTo((Entry)o2);
+		}
+	};
+
+	/**
+	 * The empty index.
+	 */
+	static final KeyIndex EMPTY = new KeyIndex(new Entry[0], 0, 0);
+
+	/**
+	 * The entries, only the range from mFrom to mTo belongs to this index.
+	 */
+	private Entry[] mEntries = null;
+
+	/**
+	 * The first entry of this index.
+	 */
+	private int mFrom = 0;
+
+	/**
+	 * The end of the entries of this index (exclusive).
+	 */
+	private int mTo = 0;
+
+	/**
+	 * Constructs an index of the given sorted entries.
+	 *
+	 * @param entries the sorted entries.
+	 * @param from    the first entry of the index.
+	 * @param to      the end of the entries of the index (exclusive).
+	 */
+	private KeyIndex(Entry[] entries, int from, int to) {
+		mEntries = entries;
+		mFrom = from;
+		mTo = to;
+	}
+
+	/**
+	 * Creates an index of the given entries, the array is sorted in place.
+	 *
+	 * @param entries the entries.
+	 * @param count   the number of used entries of the array.
+	 * @return the index.
+	 */
+	static KeyIndex create(Entry[] entries, int count) {
+		Arrays.sort(entries, 0, count, ENTRY_COMPARATOR);
+		return new KeyIndex(entries, 0, count);
+	}
+
+	/**
+	 * Creates an index of the given data items.
+	 *
+	 * @param items the data items.
+	 * @return the index.
+	 */
+	static KeyIndex create(Collection items) {
+		Entry[] entries = new Entry[items.size()];
+		int i = 0;
+		for (Iterator it = items.iterator(); it.hasNext();) {
+			DataItem item = (DataItem)it.next();
+			entries[i++] = new Entry(item.getKey().toString(), item.getGUID().toString(), -1, item);
+		}
+		return create(entries, i);
+	}
+
+	/**
+	 * Returns the number of entries.
+	 *
+	 * @return the number of entries.
+	 */
+	int size() {
+		return mTo - mFrom;
+	}
+
+	/**
+	 * Returns the entry at the given position.
+	 *
+	 * @param index the position.
+	 * @return the entry.
+	 */
+	Entry get(int index) {
+		return mEntries[mFrom + index];
+	}
+
+	/**
+	 * Returns the entries whose key starts with the given prefix.
+	 *
+	 * @param prefix the prefix.
+	 * @return the selected entries.
+	 */
+	KeyIndex select(String prefix) {
+		if (prefix.length() == 0)
+			return this;
+		// all keys starting with the prefix are sorted between the prefix and the prefix followed by the greatest char
+		return new KeyIndex(mEntries, lowerBound(prefix), lowerBound(prefix + Character.MAX_VALUE));
+	}
+
+	/**
+	 * Returns the entries of this index which are not contained by the given index.
+	 *
+	 * @param index the index to subtract.
+	 * @return the set difference.
+	 */
+	KeyIndex difference(KeyIndex index) {
+		if ((size() == 0) || (index.size() == 0))
+			return this;
+		Entry[] result = new Entry[size()];
+		int count = 0;
+		int i = mFrom;
+		int j = index.mFrom;
+		while (i < mTo) {
+			int cmp = (j < index.mTo ? mEntries[i].compareTo(index.mEntries[j]) : -1);
+			if (cmp < 0) {
+				result[count++] = mEntries[i++];
+			} else if (cmp > 0) {
+				j++;
+			} else {
+				i++;
+				j++;
+			}
+		}
+		return new KeyIndex(result, 0, count);
+	}
+
+	/**
+	 * Returns the entries contained by this or the given index. An entry contained by both indexes is taken
+	 * from this index.
+	 *
+	 * @param index the other index.
+	 * @return the union.
+	 */
+	KeyIndex union(KeyIndex index) {
+		if (index.size() == 0)
+			return this;
+		if (size() == 0)
+			return index;
+		Entry[] result = new Entry[size() + index.size()];
+		int count = 0;
+		int i = mFrom;
+		int j = index.mFrom;
+		while ((i < mTo) || (j < index.mTo)) {
+			int cmp;
+			if (i == mTo)
+				cmp = 1;
+			else if (j == index.mTo)
+				cmp = -1;
+			else
+				cmp = mEntries[i].compareTo(index.mEntries[j]);
+			if (cmp < 0) {
+				result[count++] = mEntries[i++];
+			} else if (cmp > 0) {
+				result[count++] = index.mEntries[j++];
+			} else {
+				result[count++] = mEntries[i++].merge(index.mEntries[j++]);
+			}
+		}
+		return new KeyIndex(result, 0, count);
+	}
+
+	/**
+	 * Returns the position of the first entry whose key is not smaller than the given key.
+	 *
+	 * @param key the key.
+	 * @return the position.
+	 */
+	private int lowerBound(String key) {
+		int low = mFrom;
+		int high = mTo;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (mEntries[mid].mKey.compareTo(key) < 0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	/**
+	 * An entry of the index.
+	 */
+	static class Entry {
+
+		/**
+		 * The key of the data item.
+		 */
+		final String mKey;
+
+		/**
+		 * The GUID of the data item.
+		 */
+		final String mGUID;
+
+		/**
+		 * The id of the data item in the DB, -1 if it is not stored in the DB.
+		 */
+		final int mID;
+
+		/**
+		 * The data item, <code>null</code> if it is stored in the DB and not created yet.
+		 */
+		final DataItem mItem;
+
+		/**
+		 * Creates a new entry.
+		 *
+		 * @param key  the key.
+		 * @param guid the GUID.
+		 * @param id   the id in the DB or -1.
+		 * @param item the data item or <code>null</code>.
+		 */
+		Entry(String key, String guid, int id, DataItem item) {
+			mKey = key;
+			mGUID = guid;
+			mID = id;
+			mItem = item;
+		}
+
+		/**
+		 * Compares the key and GUID of this entry with the given entry.
+		 *
+		 * @param entry the entry.
+		 * @return a negative integer, zero, or a positive integer as this entry is less than, equal to, or greater
+		 *         than the given entry.
+		 */
+		int compareTo(Entry entry) {
+			int cmp = mKey.compareTo(entry.mKey);
+			if (cmp != 0)
+				return cmp;
+			return mGUID.compareTo(entry.mGUID);
+		}
+
+		/**
+		 * Returns an entry for the same data item with the id and data item known by this or the given entry.
+		 *
+		 * @param entry the entry of the same data item.
+		 * @return the merged entry.
+		 */
+		Entry merge(Entry entry) {
+			if (((mID >= 0) || (entry.mID < 0)) && ((mItem != null) || (entry.mItem == null)))
+				return this;
+			return new Entry(mKey, mGUID, (mID >= 0 ? mID : entry.mID), (mItem != null ? mItem : entry.mItem));
+		}
+
+	}
+
+}
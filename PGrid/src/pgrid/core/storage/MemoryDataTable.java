@@ -0,0 +1,781 @@
+package pgrid.core.storage;
+
+import p2p.storage.events.NoSuchTypeException;
+import p2p.storage.events.NoSuchTypeHandlerException;
+import pgrid.DataItem;
+import pgrid.GUID;
+import pgrid.PGridHost;
+import pgrid.PGridKey;
+import pgrid.Type;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>Title: MemoryDataTable</p>
+ * <p/>
+ * <p>Description: DataTable subclass keeping the data items in memory, sorted by their binary key.
+ * A prefix selection is a range scan over the sorted keys, secondary indexes on the GUIDs of the
+ * data items and of their hosts are used for removals, updates and the owned data items.</p>
+ * <p/>
+ * <p>A persistent data table appends every modification to a log which is compacted into a snapshot
+ * once it contains more than the given number of records. The data items are loaded on first use. Records
+ * of types without a registered type handler are kept aside and indexed once their type handler is
+ * registered.</p>
+ *
+ * @version 1.0
+ */
+public class MemoryDataTable extends DataTable {
+
+	/**
+	 * The logger.
+	 */
+	private static final Logger LOGGER = StorageManager.LOGGER;
+
+	/**
+	 * Separates the key and the GUID of a data item in the sorted index.
+	 */
+	private static final char SEPARATOR = '\u0000';
+
+	/**
+	 * The first bytes of a snapshot file.
+	 */
+	private static final int SNAPSHOT_MAGIC = 0x50474454;
+
+	/**
+	 * Log record adding or replacing a data item.
+	 */
+	private static final byte OP_ADD = 1;
+
+	/**
+	 * Log record removing a data item.
+	 */
+	private static final byte OP_REMOVE = 2;
+
+	/**
+	 * Log record removing all data items.
+	 */
+	private static final byte OP_CLEAR = 3;
+
+	/**
+	 * The data items sorted by key and GUID.
+	 */
+	private final ConcurrentSkipListMap mItemsByKey = new ConcurrentSkipListMap();
+
+	/**
+	 * The index keys of the data items sorted by their GUID.
+	 */
+	private final ConcurrentSkipListMap mKeysByGUID = new ConcurrentSkipListMap();
+
+	/**
+	 * The data items by the GUID of their host.
+	 */
+	private final ConcurrentHashMap mItemsByHost = new ConcurrentHashMap();
+
+	/**
+	 * The persisted records of data items without a registered type handler by the GUID of the data item.
+	 */
+	private final ConcurrentHashMap mUnknownRecords = new ConcurrentHashMap();
+
+	/**
+	 * The snapshot file, <code>null</code> if the data table is not persistent.
+	 */
+	private File mSnapshotFile = null;
+
+	/**
+	 * The log file, <code>null</code> if the data table is not persistent.
+	 */
+	private File mLogFile = null;
+
+	/**
+	 * The log output stream.
+	 */
+	private DataOutputStream mLog = null;
+
+	/**
+	 * The number of records written to the log since the last snapshot.
+	 */
+	private int mLogRecords = 0;
+
+	/**
+	 * The number of log records triggering a new snapshot.
+	 */
+	private int mSnapshotThreshold = 0;
+
+	/**
+	 * Set if the persisted data items have been loaded.
+	 */
+	private volatile boolean mLoaded = false;
+
+	/**
+	 * Construct a transient data table for the given host.
+	 *
+	 * @param host the host.
+	 */
+	public MemoryDataTable(PGridHost host) {
+		this(host, null, 0);
+	}
+
+	/**
+	 * Construct a data table for the given host.
+	 *
+	 * @param host              the host.
+	 * @param directory         the directory of the snapshot and log files or <code>null</code> for a transient data table.
+	 * @param snapshotThreshold the number of log records triggering a new snapshot, 0 to write snapshots only when the data table is saved.
+	 */
+	public MemoryDataTable(PGridHost host, File directory, int snapshotThreshold) {
+		if (directory != null) {
+			directory.mkdirs();
+			mSnapshotFile = new File(directory, "DataTable.snapshot");
+			mLogFile = new File(directory, "DataTable.log");
+		} else {
+			mLoaded = true;
+		}
+		mSnapshotThreshold = snapshotThreshold;
+		init(host);
+	}
+
+	/**
+	 * Adds all delivered Data Items.
+	 *
+	 * @param collection the Collection.
+	 */
+	public synchronized void addAll(Collection collection) {
+		if (collection == null)
+			throw new NullPointerException();
+		load();
+		for (Iterator it = collection.iterator(); it.hasNext();) {
+			DataItem item = (DataItem)it.next();
+			if (item != null) {
+				index(item);
+				logAdd(item);
+			}
+		}
+		modified();
+	}
+
+	/**
+	 * Adds a Data Item.
+	 *
+	 * @param dataItem the data item.
+	 */
+	public synchronized void addDataItem(DataItem dataItem) {
+		if (dataItem == null)
+			throw new NullPointerException();
+		load();
+		index(dataItem);
+		logAdd(dataItem);
+		modified();
+	}
+
+	/**
+	 * Updates a Data Item, nothing is done if no data item with the same GUID exists.
+	 *
+	 * @param dataItem the data item.
+	 */
+	public synchronized void updateDataItem(DataItem dataItem) {
+		if (dataItem == null)
+			throw new NullPointerException();
+		load();
+		if (mKeysByGUID.containsKey(dataItem.getGUID().toString())) {
+			index(dataItem);
+			logAdd(dataItem);
+			modified();
+		}
+	}
+
+	/**
+	 * Update all given data items.
+	 *
+	 * @param items the items to Update.
+	 */
+	public synchronized void updateAll(Collection items) {
+		if (items == null)
+			throw new NullPointerException();
+		load();
+		for (Iterator it = items.iterator(); it.hasNext();) {
+			DataItem item = (DataItem)it.next();
+			if (mKeysByGUID.containsKey(item.getGUID().toString())) {
+				index(item);
+				logAdd(item);
+			}
+		}
+		modified();
+	}
+
+	/**
+	 * Removes the given Data Item.
+	 *
+	 * @param dataItem the item to remove.
+	 */
+	public synchronized void removeDataItem(DataItem dataItem) {
+		if (dataItem == null)
+			throw new NullPointerException();
+		load();
+		if (unindex(dataItem.getGUID().toString()) != null) {
+			logRemove(dataItem.getGUID().toString());
+			modified();
+		}
+	}
+
+	/**
+	 * Removes all given data items.
+	 *
+	 * @param items the items to remove.
+	 */
+	public synchronized void removeAll(Collection items) {
+		if (items == null)
+			throw new NullPointerException();
+		load();
+		for (Iterator it = items.iterator(); it.hasNext();) {
+			String guid = ((DataItem)it.next()).getGUID().toString();
+			if (unindex(guid) != null)
+				logRemove(guid);
+		}
+		modified();
+	}
+
+	/**
+	 * Removes all Data Items.
+	 */
+	public synchronized void clear() {
+		clearIndexes();
+		if (mLogFile != null) {
+			try {
+				getLog().writeByte(OP_CLEAR);
+				mLogRecords++;
+			} catch (IOException e) {
+				logFailed(e);
+			}
+		}
+		modified();
+	}
+
+	/**
+	 * Sets the data table to contain only the elements in the view.
+	 *
+	 * @param view the view representing the new elements of the table.
+	 */
+	public synchronized void setDataTable(DBView view) {
+		load();
+		Collection items = view.getDataItems();
+
+		// remove the data items not contained by the view
+		HashSet guids = new HashSet();
+		for (Iterator it = items.iterator(); it.hasNext();)
+			guids.add(((DataItem)it.next()).getGUID().toString());
+		for (Iterator it = mKeysByGUID.keySet().iterator(); it.hasNext();) {
+			String guid = (String)it.next();
+			if (!guids.contains(guid)) {
+				unindex(guid);
+				logRemove(guid);
+			}
+		}
+
+		// add the new data items
+		for (Iterator it = items.iterator(); it.hasNext();) {
+			DataItem item = (DataItem)it.next();
+			if (!mKeysByGUID.containsKey(item.getGUID().toString())) {
+				index(item);
+				logAdd(item);
+			}
+		}
+		modified();
+	}
+
+	/**
+	 * Returns the number of locally managed DataItems.
+	 *
+	 * @return the number of DataItems.
+	 */
+	public int count() {
+		load();
+		return mKeysByGUID.size();
+	}
+
+	/**
+	 * Returns the list of all Data Items.
+	 *
+	 * @return the list of all data items.
+	 */
+	public Collection getDataItems() {
+		load();
+		return new Vector(mItemsByKey.values());
+	}
+
+	/**
+	 * Returns the list of data items with the given key prefix.
+	 *
+	 * @param prefix the common prefix of the selected data items.
+	 * @return the list of data items.
+	 */
+	public Collection getDataItems(String prefix) {
+		if (prefix == null)
+			throw new NullPointerException();
+		load();
+		if (prefix.length() == 0)
+			return new Vector(mItemsByKey.values());
+		return new Vector(mItemsByKey.subMap(prefix, prefix + Character.MAX_VALUE).values());
+	}
+
+	/**
+	 * Returns the list of data items of given type.
+	 *
+	 * @param type the requested data item type.
+	 * @return the list of data items of given type.
+	 */
+	public Collection getDataItems(p2p.storage.Type type) {
+		if (type == null)
+			throw new NullPointerException();
+		Vector result = new Vector();
+		for (Iterator it = getDataItems().iterator(); it.hasNext();) {
+			DataItem item = (DataItem)it.next();
+			if (type.equals(item.getType()))
+				result.add(item);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a list of data types handled by the data table.
+	 *
+	 * @return a list of data types.
+	 */
+	public Collection getDataTypes() {
+		HashSet types = new HashSet();
+		for (Iterator it = getDataItems().iterator(); it.hasNext();)
+			types.add(((DataItem)it.next()).getType());
+		return types;
+	}
+
+	/**
+	 * Selects the elements with the given prefix.
+	 *
+	 * @param prefix the prefix.
+	 * @return the selected data items.
+	 */
+	public Collection selectData(String prefix) {
+		return getDataItems(prefix);
+	}
+
+	/**
+	 * Returns the list of data items from the host owning the data table.
+	 *
+	 * @return the list of data items.
+	 */
+	public Collection getOwnedDataItems() {
+		load();
+		if (mHost == null)
+			return new Vector();
+		Map items = (Map)mItemsByHost.get(mHost.getGUID().toString());
+		if (items == null)
+			return new Vector();
+		return new Vector(items.values());
+	}
+
+	/**
+	 * Returns the signature for the data items.
+	 *
+	 * @return the signature.
+	 */
+	public Signature getSignature() {
+		if (mSignature != null)
+			return mSignature;
+		load();
+
+		// same signature as for data items stored in the DB: the GUIDs in ascending order
+		StringBuffer signStr = new StringBuffer(mKeysByGUID.size() * 40);
+		for (Iterator it = mKeysByGUID.keySet().iterator(); it.hasNext();) {
+			signStr.append((String)it.next() + "\n");
+		}
+		mSignature = mUtils.signature(signStr.toString(), Signature.DEFAULT_PAGE_SIZE, Signature.DEFAULT_SIGN_LENGTH);
+		return mSignature;
+	}
+
+	/**
+	 * Indexes the kept aside data items of a type once its type handler is registered.
+	 *
+	 * @param type the type.
+	 */
+	public synchronized void typeHandlerRegistered(p2p.storage.Type type) {
+		if (mUnknownRecords.isEmpty())
+			return;
+
+		int count = mKeysByGUID.size();
+		for (Iterator it = new Vector(mUnknownRecords.values()).iterator(); it.hasNext();) {
+			byte[] record = (byte[])it.next();
+			try {
+				DataItem item = readDataItem(new DataInputStream(new ByteArrayInputStream(record, 1, record.length - 1)));
+				if (item != null)
+					index(item);
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Could not read a kept aside data item!", e);
+			}
+		}
+		if (mKeysByGUID.size() != count) {
+			LOGGER.fine("Indexed " + (mKeysByGUID.size() - count) + " data items of type '" + type + "'.");
+			modified();
+		}
+	}
+
+	/**
+	 * Writes a snapshot of the data table.
+	 */
+	public synchronized void save() {
+		if (mLoaded)
+			writeSnapshot();
+	}
+
+	/**
+	 * Saves the data table and closes the log.
+	 */
+	public synchronized void shutdown() {
+		save();
+		closeLog();
+	}
+
+	/**
+	 * Adds a data item to the indexes, replacing the data item with the same GUID.
+	 *
+	 * @param item the data item.
+	 */
+	private void index(DataItem item) {
+		String guid = item.getGUID().toString();
+		unindex(guid);
+		mUnknownRecords.remove(guid);
+
+		String key = item.getKey().toString() + SEPARATOR + guid;
+		mItemsByKey.put(key, item);
+		mKeysByGUID.put(guid, key);
+
+		String hostGUID = ((PGridHost)item.getPeer()).getGUID().toString();
+		Map hostItems = (Map)mItemsByHost.get(hostGUID);
+		if (hostItems == null) {
+			hostItems = new ConcurrentHashMap();
+			mItemsByHost.put(hostGUID, hostItems);
+		}
+		hostItems.put(guid, item);
+	}
+
+	/**
+	 * Removes a data item from the indexes.
+	 *
+	 * @param guid the GUID of the data item.
+	 * @return the removed data item or <code>null</code> if no data item has the given GUID.
+	 */
+	private DataItem unindex(String guid) {
+		mUnknownRecords.remove(guid);
+		String key = (String)mKeysByGUID.remove(guid);
+		if (key == null)
+			return null;
+
+		DataItem item = (DataItem)mItemsByKey.remove(key);
+		Map hostItems = (Map)mItemsByHost.get(((PGridHost)item.getPeer()).getGUID().toString());
+		if (hostItems != null)
+			hostItems.remove(guid);
+		return item;
+	}
+
+	/**
+	 * Removes all data items from the indexes, including the kept aside records.
+	 */
+	private void clearIndexes() {
+		mItemsByKey.clear();
+		mKeysByGUID.clear();
+		mItemsByHost.clear();
+		mUnknownRecords.clear();
+	}
+
+	/**
+	 * Invalidates the signature and flushes the log after a modification.
+	 */
+	private void modified() {
+		mSignature = null;
+		countModification();
+		if (mLog == null)
+			return;
+
+		try {
+			mLog.flush();
+		} catch (IOException e) {
+			logFailed(e);
+		}
+		if ((mSnapshotThreshold > 0) && (mLogRecords >= mSnapshotThreshold) && mLoaded)
+			writeSnapshot();
+	}
+
+	/**
+	 * Loads the persisted data items if they have not been loaded yet. The data items added before are
+	 * contained by the log and are therefore loaded as well. Records of types without a registered type
+	 * handler are kept aside, so they are neither lost nor read again.
+	 */
+	private void load() {
+		if (mLoaded)
+			return;
+
+		synchronized (this) {
+			if (mLoaded)
+				return;
+
+			clearIndexes();
+			try {
+				if (mLog != null)
+					mLog.flush();
+				boolean complete = read(mSnapshotFile, true);
+				complete &= read(mLogFile, false);
+				mLoaded = true;
+				LOGGER.fine("Loaded " + mKeysByGUID.size() + " data items.");
+				if (!mUnknownRecords.isEmpty())
+					LOGGER.fine(mUnknownRecords.size() + " data items kept aside, their type handler is not registered yet.");
+
+				// further records must not be appended to an incomplete record
+				if (!complete)
+					writeSnapshot();
+			} catch (IOException e) {
+				LOGGER.log(Level.SEVERE, "Could not load the data items from '" + mSnapshotFile + "'!", e);
+				mLoaded = true;
+			}
+		}
+	}
+
+	/**
+	 * Replays a snapshot or log file.
+	 *
+	 * @param file     the file.
+	 * @param snapshot <code>true</code> if the file is a snapshot.
+	 * @return <code>false</code> if the last record of the file is incomplete.
+	 * @throws IOException if the file could not be read.
+	 */
+	private boolean read(File file, boolean snapshot) throws IOException {
+		if (!file.exists())
+			return true;
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (snapshot && (in.readInt() != SNAPSHOT_MAGIC))
+				throw new IOException("'" + file + "' is not a data table snapshot!");
+			if (!snapshot)
+				mLogRecords = 0;
+
+			while (true) {
+				int op = in.read();
+				if (op == -1)
+					break;
+				if (op == OP_ADD) {
+					DataItem item = readDataItem(in);
+					if (item != null)
+						index(item);
+				} else if (op == OP_REMOVE) {
+					unindex(in.readUTF());
+				} else if (op == OP_CLEAR) {
+					clearIndexes();
+				} else {
+					throw new IOException("Unknown record " + op + " in '" + file + "'!");
+				}
+				if (!snapshot)
+					mLogRecords++;
+			}
+		} catch (EOFException e) {
+			// the last record was not completely written
+			LOGGER.warning("Incomplete record at the end of '" + file + "' ignored.");
+			return false;
+		} finally {
+			in.close();
+		}
+		return true;
+	}
+
+	/**
+	 * Reads a data item. A data item without a registered type handler is kept aside.
+	 *
+	 * @param in the input stream.
+	 * @return the data item or <code>null</code> if it was kept aside.
+	 * @throws IOException if the data item could not be read.
+	 */
+	private DataItem readDataItem(DataInputStream in) throws IOException {
+		String guid = in.readUTF();
+		String type = in.readUTF();
+		String key = in.readUTF();
+		String hostGUID = in.readUTF();
+		String hostAddress = in.readUTF();
+		int hostPort = in.readInt();
+		byte[] data = new byte[in.readInt()];
+		in.readFully(data);
+
+		try {
+			PGridHost host = HostCache.sharedInstance().getHost(hostGUID, hostAddress, String.valueOf(hostPort));
+			return (DataItem)mStorageManager.createDataItem(GUID.getGUID(guid), mStorageManager.createType(type), new PGridKey(key), host, new String(data, "UTF-8"));
+		} catch (NoSuchTypeException e) {
+			// the record is kept as it is, so it can be written to a snapshot and indexed later
+		} catch (NoSuchTypeHandlerException e) {
+		}
+		unindex(guid);
+		ByteArrayOutputStream record = new ByteArrayOutputStream(data.length + 128);
+		writeRecord(new DataOutputStream(record), guid, type, key, hostGUID, hostAddress, hostPort, data);
+		mUnknownRecords.put(guid, record.toByteArray());
+		return null;
+	}
+
+	/**
+	 * Writes a data item.
+	 *
+	 * @param out  the output stream.
+	 * @param item the data item.
+	 * @throws IOException if the data item could not be written.
+	 */
+	private void writeDataItem(DataOutputStream out, DataItem item) throws IOException {
+		PGridHost host = (PGridHost)item.getPeer();
+		writeRecord(out, item.getGUID().toString(), item.getType().toString(), item.getKey().toString(), host.getGUID().toString(),
+				host.getAddressString(), host.getPort(), item.getData().toString().getBytes("UTF-8"));
+	}
+
+	/**
+	 * Writes the record adding a data item.
+	 *
+	 * @param out         the output stream.
+	 * @param guid        the GUID of the data item.
+	 * @param type        the type of the data item.
+	 * @param key         the key of the data item.
+	 * @param hostGUID    the GUID of the host of the data item.
+	 * @param hostAddress the address of the host.
+	 * @param hostPort    the port of the host.
+	 * @param data        the data of the data item.
+	 * @throws IOException if the record could not be written.
+	 */
+	private void writeRecord(DataOutputStream out, String guid, String type, String key, String hostGUID, String hostAddress, int hostPort, byte[] data) throws IOException {
+		out.writeByte(OP_ADD);
+		out.writeUTF(guid);
+		out.writeUTF(type);
+		out.writeUTF(key);
+		out.writeUTF(hostGUID);
+		out.writeUTF(hostAddress);
+		out.writeInt(hostPort);
+		out.writeInt(data.length);
+		out.write(data);
+	}
+
+	/**
+	 * Logs an added data item.
+	 *
+	 * @param item the data item.
+	 */
+	private void logAdd(DataItem item) {
+		if (mLogFile == null)
+			return;
+
+		try {
+			writeDataItem(getLog(), item);
+			mLogRecords++;
+		} catch (IOException e) {
+			logFailed(e);
+		}
+	}
+
+	/**
+	 * Logs a removed data item.
+	 *
+	 * @param guid the GUID of the data item.
+	 */
+	private void logRemove(String guid) {
+		if (mLogFile == null)
+			return;
+
+		try {
+			DataOutputStream log = getLog();
+			log.writeByte(OP_REMOVE);
+			log.writeUTF(guid);
+			mLogRecords++;
+		} catch (IOException e) {
+			logFailed(e);
+		}
+	}
+
+	/**
+	 * Returns the log output stream, the log is opened if required.
+	 *
+	 * @return the log output stream.
+	 * @throws IOException if the log could not be opened.
+	 */
+	private DataOutputStream getLog() throws IOException {
+		if (mLog == null)
+			mLog = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mLogFile, true)));
+		return mLog;
+	}
+
+	/**
+	 * Closes the log.
+	 */
+	private void closeLog() {
+		if (mLog == null)
+			return;
+
+		try {
+			mLog.close();
+		} catch (IOException e) {
+			logFailed(e);
+		}
+		mLog = null;
+	}
+
+	/**
+	 * Reports a failed log write.
+	 *
+	 * @param e the exception.
+	 */
+	private void logFailed(IOException e) {
+		LOGGER.log(Level.WARNING, "Could not write to data table log '" + mLogFile + "'!", e);
+	}
+
+	/**
+	 * Writes all data items to a new snapshot and truncates the log.
+	 */
+	private void writeSnapshot() {
+		if (mSnapshotFile == null)
+			return;
+
+		File tmpFile = new File(mSnapshotFile.getPath() + ".tmp");
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+			try {
+				out.writeInt(SNAPSHOT_MAGIC);
+				for (Iterator it = mItemsByKey.values().iterator(); it.hasNext();)
+					writeDataItem(out, (DataItem)it.next());
+				for (Iterator it = mUnknownRecords.values().iterator(); it.hasNext();)
+					out.write((byte[])it.next());
+			} finally {
+				out.close();
+			}
+
+			// the log is only needed until the snapshot has replaced the old one
+			closeLog();
+			if (!tmpFile.renameTo(mSnapshotFile)) {
+				mSnapshotFile.delete();
+				if (!tmpFile.renameTo(mSnapshotFile))
+					throw new IOException("Could not rename '" + tmpFile + "'!");
+			}
+			mLogFile.delete();
+			mLogRecords = 0;
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Could not write data table snapshot '" + mSnapshotFile + "'!", e);
+		}
+	}
+
+}
@@ -0,0 +1,361 @@
+/**
+ * Copyright (c) 2002 The P-Grid Team,
+ *                    All Rights Reserved.
+ *
+ * This file is part of the P-Grid package.
+ * P-Grid homepage: http://www.p-grid.org/
+ *
+ * The P-Grid package is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This package is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; see the file LICENSE.
+ * If not you can find the GPL at http://www.gnu.org/copyleft/gpl.html
+ */
+
+package pgrid.core.storage;
+
+import java.util.Collection;
+import java.util.Vector;
+
+/**
+ * This class represents the page signature of the data items below a path. The data items are split into pages by
+ * the bits of their keys following the path, and each page is signed by the hashes of the GUIDs of its data items.
+ * Two hosts comparing the page signatures of their data tables only have to exchange the data items of the pages
+ * with different signatures, because the data items of all other pages are already known by the receiving host.
+ * Keys shorter than the path and the page bits are padded with <code>0</code>.
+ *
+ * @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
+ * @version 1.0.0
+ */
+public class PageSignature {
+
+	/**
+	 * The maximal amount of key bits used to split the data items into pages.
+	 */
+	public static final int MAX_DEPTH = 8;
+
+	/**
+	 * The intended amount of data items per page.
+	 */
+	private static final int PAGE_ITEMS = 32;
+
+	/**
+	 * The separator between the path and the page signatures.
+	 */
+	private static final String PATH_SEPARATOR = "/";
+
+	/**
+	 * The separator between two page signatures.
+	 */
+	private static final String PAGE_SEPARATOR = ":";
+
+	/**
+	 * The path of the signed data items.
+	 */
+	private String mPath = null;
+
+	/**
+	 * The amount of key bits used to split the data items into pages.
+	 */
+	private int mDepth = 0;
+
+	/**
+	 * The signatures of all pages.
+	 */
+	private long[] mPages = null;
+
+	/**
+	 * Creates a new page signature with the given signatures of all pages.
+	 *
+	 * @param path  the path of the signed data items.
+	 * @param pages the signatures of all pages, the amount has to be a power of two.
+	 */
+	public PageSignature(String path, long[] pages) {
+		if ((path == null) || (pages == null))
+			throw new NullPointerException();
+		int depth = 0;
+		while ((1 << depth) < pages.length)
+			depth++;
+		if ((depth > MAX_DEPTH) || ((1 << depth) != pages.length))
+			throw new IllegalArgumentException("illegal amount of pages " + pages.length + "!");
+		mPath = path;
+		mDepth = depth;
+		mPages = pages;
+	}
+
+	/**
+	 * Creates a new page signature for the given string.
+	 *
+	 * @param signature the signature string.
+	 */
+	public PageSignature(String signature) {
+		this(parsePath(signature), parsePages(signature));
+	}
+
+	/**
+	 * Creates the page signature of the data items of the given table below the given path. The amount of pages
+	 * depends on the amount of data items.
+	 *
+	 * @param table the data table.
+	 * @param path  the path of the signed data items.
+	 * @return the page signature.
+	 */
+	public static PageSignature create(DataTable table, String path) {
+		KeyIndex index = DBView.selection(table, path).evaluate();
+		int depth = 0;
+		while ((depth < MAX_DEPTH) && ((index.size() >> depth) > PAGE_ITEMS))
+			depth++;
+		return create(index, path, depth);
+	}
+
+	/**
+	 * Creates the page signature of the data items of the given table split into the same pages as the given page
+	 * signature.
+	 *
+	 * @param table  the data table.
+	 * @param layout the page signature defining the path and the pages.
+	 * @return the page signature.
+	 */
+	public static PageSignature create(DataTable table, PageSignature layout) {
+		return create(DBView.selection(table, layout.mPath).evaluate(), layout.mPath, layout.mDepth);
+	}
+
+	/**
+	 * Creates the page signature of the given entries.
+	 *
+	 * @param index the entries below the path.
+	 * @param path  the path of the entries.
+	 * @param depth the amount of key bits used to split the entries into pages.
+	 * @return the page signature.
+	 */
+	private static PageSignature create(KeyIndex index, String path, int depth) {
+		long[] pages = new long[1 << depth];
+		for (int i = 0; i < index.size(); i++) {
+			KeyIndex.Entry entry = index.get(i);
+			pages[page(entry.mKey, path.length(), depth)] ^= hash(entry.mGUID);
+		}
+		return new PageSignature(path, pages);
+	}
+
+	/**
+	 * Returns the data items of the given table below the path, which belong to pages with a different signature in
+	 * the given page signature. If no page signature is given, all data items below the path are returned.
+	 *
+	 * @param table  the data table.
+	 * @param remote the page signature to compare with, or <code>null</code>.
+	 * @return the data items of all different pages.
+	 */
+	public Collection getDifferentDataItems(DataTable table, PageSignature remote) {
+		return getDataItems(table, remote, false);
+	}
+
+	/**
+	 * Returns the data items of the given table below the path, which belong to pages with the same signature in the
+	 * given page signature.
+	 *
+	 * @param table  the data table.
+	 * @param remote the page signature to compare with.
+	 * @return the data items of all equal pages.
+	 */
+	public Collection getEqualDataItems(DataTable table, PageSignature remote) {
+		if (remote == null)
+			return new Vector();
+		return getDataItems(table, remote, true);
+	}
+
+	/**
+	 * Returns the data items of the given table below the path, which belong to pages with the same, or with a
+	 * different signature in the given page signature.
+	 *
+	 * @param table  the data table.
+	 * @param remote the page signature to compare with, or <code>null</code>.
+	 * @param equal  <code>true</code> to return the data items of the equal pages.
+	 * @return the data items.
+	 */
+	private Collection getDataItems(DataTable table, PageSignature remote, boolean equal) {
+		DBView selection = DBView.selection(table, mPath);
+		if ((remote == null) || (!isComparable(remote)))
+			return (equal ? new Vector() : selection.getDataItems());
+		KeyIndex index = selection.evaluate();
+		KeyIndex.Entry[] entries = new KeyIndex.Entry[index.size()];
+		int count = 0;
+		for (int i = 0; i < index.size(); i++) {
+			KeyIndex.Entry entry = index.get(i);
+			int page = page(entry.mKey, mPath.length(), mDepth);
+			if ((mPages[page] == remote.mPages[page]) == equal)
+				entries[count++] = entry;
+		}
+		return new DBView(KeyIndex.create(entries, count)).getDataItems();
+	}
+
+	/**
+	 * Returns the amount of pages with the same signature in the given page signature.
+	 *
+	 * @param remote the page signature to compare with.
+	 * @return the amount of equal pages.
+	 */
+	public int countEqualPages(PageSignature remote) {
+		if (!isComparable(remote))
+			return 0;
+		int count = 0;
+		for (int i = 0; i < mPages.length; i++)
+			if (mPages[i] == remote.mPages[i])
+				count++;
+		return count;
+	}
+
+	/**
+	 * Tests if the given page signature signs the same path with the same pages.
+	 *
+	 * @param remote the page signature to compare with.
+	 * @return <code>true</code> if the pages can be compared, <code>false</code> otherwise.
+	 */
+	public boolean isComparable(PageSignature remote) {
+		return (remote != null) && (mPath.equals(remote.mPath)) && (mDepth == remote.mDepth);
+	}
+
+	/**
+	 * Returns the path of the signed data items.
+	 *
+	 * @return the path.
+	 */
+	public String getPath() {
+		return mPath;
+	}
+
+	/**
+	 * Returns the amount of pages.
+	 *
+	 * @return the amount of pages.
+	 */
+	public int getPages() {
+		return mPages.length;
+	}
+
+	/**
+	 * Returns the signature of the given page.
+	 *
+	 * @param page the page.
+	 * @return the signature value.
+	 */
+	public long getSignature(int page) {
+		return mPages[page];
+	}
+
+	/**
+	 * Returns the page of the given key.
+	 *
+	 * @param key   the key.
+	 * @param from  the first key bit used for the page.
+	 * @param depth the amount of key bits used for the page.
+	 * @return the page.
+	 */
+	private static int page(String key, int from, int depth) {
+		int page = 0;
+		for (int i = from; i < from + depth; i++) {
+			page <<= 1;
+			if ((i < key.length()) && (key.charAt(i) == '1'))
+				page |= 1;
+		}
+		return page;
+	}
+
+	/**
+	 * Returns a 64 bit hash of the given GUID string.
+	 *
+	 * @param guid the GUID string.
+	 * @return the hash value.
+	 */
+	private static long hash(String guid) {
+		// FNV-1a followed by a final mix, so similar GUIDs do not cancel out in the page signature
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < guid.length(); i++) {
+			hash ^= guid.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	/**
+	 * Returns the path of a signature string.
+	 *
+	 * @param signature the signature string.
+	 * @return the path.
+	 */
+	private static String parsePath(String signature) {
+		int idx = signature.indexOf(PATH_SEPARATOR);
+		if (idx < 0)
+			throw new IllegalArgumentException("illegal page signature '" + signature + "'!");
+		return signature.substring(0, idx);
+	}
+
+	/**
+	 * Returns the page signatures of a signature string.
+	 *
+	 * @param signature the signature string.
+	 * @return the page signatures.
+	 */
+	private static long[] parsePages(String signature) {
+		String[] pages = pgrid.util.Tokenizer.tokenize(signature.substring(signature.indexOf(PATH_SEPARATOR) + 1), PAGE_SEPARATOR);
+		long[] values = new long[pages.length];
+		for (int i = 0; i < pages.length; i++) {
+			// the values are unsigned, so the upper half is parsed separately
+			String page = pages[i];
+			int split = Math.max(0, page.length() - 8);
+			long high = (split > 0 ? Long.parseLong(page.substring(0, split), 16) : 0);
+			values[i] = (high << 32) | Long.parseLong(page.substring(split), 16);
+		}
+		return values;
+	}
+
+	/**
+	 * Tests if the given object equals this one.
+	 *
+	 * @param o the object to compare.
+	 * @return <TT>true</TT> if equal, <TT>false</TT> otherwise.
+	 */
+	public boolean equals(Object o) {
+		if ((o == null) || (o.getClass() != this.getClass()))
+			return false;
+		PageSignature sign = (PageSignature)o;
+		return (isComparable(sign)) && (countEqualPages(sign) == mPages.length);
+	}
+
+	/**
+	 * Returns a hash code value for the object.
+	 *
+	 * @return a hash code value for this object.
+	 */
+	public int hashCode() {
+		return toString().hashCode();
+	}
+
+	/**
+	 * Returns a string represantation of the page signature.
+	 *
+	 * @return a string represantation of the page signature.
+	 */
+	public String toString() {
+		StringBuffer buff = new StringBuffer(mPath.length() + 1 + mPages.length * 17);
+		buff.append(mPath);
+		buff.append(PATH_SEPARATOR);
+		for (int i = 0; i < mPages.length; i++) {
+			if (i > 0)
+				buff.append(PAGE_SEPARATOR);
+			buff.append(Long.toHexString(mPages[i]).toUpperCase());
+		}
+		return buff.toString();
+	}
+
+}
@@ -67,6 +67,15 @@ public class Signature {
 		mSignatures = new long[pages][length];
 	}
 
+	/**
+	 * Creates a new signature with the given signature values of all pages.
+	 *
+	 * @param signatures the signature values of all pages.
+	 */
+	public Signature(long[][] signatures) {
+		mSignatures = signatures;
+	}
+
 	/**
 	 * Creates a new signature for the given string.
 	 *
@@ -138,6 +147,36 @@ public class Signature {
 		return toString().hashCode();
 	}
 
+	/**
+	 * Returns the amount of signed pages.
+	 *
+	 * @return the amount of pages.
+	 */
+	public int getPages() {
+		return mSignatures.length;
+	}
+
+	/**
+	 * Returns the amount of signature values of the given page.
+	 *
+	 * @param page the page.
+	 * @return the amount of signature values.
+	 */
+	public int getLength(int page) {
+		return mSignatures[page].length;
+	}
+
+	/**
+	 * Returns the signature for the given page and index.
+	 *
+	 * @param page  the page.
+	 * @param index the index.
+	 * @return the signature value.
+	 */
+	public long getSignature(int page, int index) {
+		return mSignatures[page][index];
+	}
+
 	/**
 	 * Sets the signature for the given page and index.
 	 *
@@ -42,6 +42,7 @@ import pgrid.network.protocol.XMLDataTable;
 import pgrid.util.logging.LogFormatter;
 
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -77,19 +78,29 @@ public class StorageManager{
 	protected Hashtable mDataTypes = new Hashtable();
 
 	/**
-	 * The Data Table.
+	 * Data table backend storing the data items in the DB.
 	 */
-	private DBDataTable mDBDataTable = null;
+	public static final String DB_BACKEND = "DB";
 
 	/**
-	 * The Database manager.
+	 * Data table backend keeping the data items in memory.
 	 */
-	private DBManager mDBManager = null;
+	public static final String MEMORY_BACKEND = "Memory";
 
 	/**
 	 * The Data Table.
 	 */
-	private LocalDataTable mDataTable = null;
+	private DataTable mDataTable = null;
+
+	/**
+	 * The used data table backend.
+	 */
+	private String mDataTableBackend = DB_BACKEND;
+
+	/**
+	 * The Database manager.
+	 */
+	private DBManager mDBManager = null;
 
 	/**
 	 * The data distributor.
@@ -306,7 +317,12 @@ public class StorageManager{
 		mDBManager = DBManager.sharedInstance();
 		mDBManager.init();
 
-		mDBDataTable = new DBDataTable(host);
+		mDataTableBackend = mPGridP2P.propertyString(pgrid.Properties.DATA_TABLE_BACKEND);
+		if (MEMORY_BACKEND.equalsIgnoreCase(mDataTableBackend)) {
+			mDataTable = new MemoryDataTable(host, new File(Constants.DATA_DIR + "DataTable"), mPGridP2P.propertyInteger(pgrid.Properties.DATA_TABLE_SNAPSHOT_THRESHOLD));
+		} else {
+			mDataTable = new DBDataTable(host);
+		}
 
 		//if (Constants.TESTS)
 		//	mDataTable = new LocalDataTable(file, host.getPath());
@@ -316,6 +332,21 @@ public class StorageManager{
 		Thread distributorThread = new Thread(mDistributor, "Distributor");
 		distributorThread.setDaemon(true);
 		distributorThread.start();
+
+		// start the thread refreshing the host addresses
+		HostCache.sharedInstance().start();
+	}
+
+	/**
+	 * Creates a data table for the given host using the configured backend.
+	 *
+	 * @param host the host.
+	 * @return the data table.
+	 */
+	public DataTable createDataTable(PGridHost host) {
+		if (MEMORY_BACKEND.equalsIgnoreCase(mDataTableBackend))
+			return new MemoryDataTable(host);
+		return new DBDataTable(host);
 	}
 
 	/**
@@ -323,7 +354,7 @@ public class StorageManager{
 	 * @param items the items to insert.
 	 */
 	public void insertDataItems(Collection items) {
-		mDBDataTable.addAll(items);
+		mDataTable.addAll(items);
 		/*
 		if (Constants.TESTS) {
 			mPGridP2P.getStatistics().DataItemsManaged = mPGridP2P.getStorageManager().getDataTable().count();
@@ -410,12 +441,12 @@ public class StorageManager{
 					// Those data items will be remove from the local host and send
 					// to their responsable host
 					remote.add(itemTemp);
-					mDBDataTable.removeDataItem((DataItem)item);
+					mDataTable.removeDataItem((DataItem)item);
 					LOGGER.finest("Local peer not responsible anymore of the updated data item. Old key:"+
 							item.getKey()+" new key:"+itemTemp.getKey());
 				}
 				else {
-					mDBDataTable.updateDataItem((DataItem)item);
+					mDataTable.updateDataItem((DataItem)item);
 					LOGGER.finest("Local peer still responsible of the updated data item. key: "+itemTemp.getKey());
 				}
 			}
@@ -485,7 +516,7 @@ public class StorageManager{
 		}
 		// update local data
 		if (!local.isEmpty())
-			mDBDataTable.removeAll(local, mPGridP2P.getLocalPeer());
+			mDataTable.removeAll(local, mPGridP2P.getLocalPeer());
 
 		Enumeration en = inform.keys();
 		while (en.hasMoreElements()) {
@@ -547,7 +578,7 @@ public class StorageManager{
 	 * @return the signature.
 	 */
 	public Signature getDataSignature() {
-		return mDBDataTable.getSignature();
+		return mDataTable.getSignature();
 	}
 
 	/**
@@ -555,8 +586,8 @@ public class StorageManager{
 	 *
 	 * @return the Data Table.
 	 */
-	public DBDataTable getDataTable() {
-		return mDBDataTable;
+	public DataTable getDataTable() {
+		return mDataTable;
 	}
 
 	/**
@@ -565,7 +596,7 @@ public class StorageManager{
 	 * @param table the new data table.
 	 */
 	public void setDataTable(DBView table) {
-		mDBDataTable.setDataTable(table);
+		mDataTable.setDataTable(table);
 	}
 
 	/**
@@ -589,6 +620,8 @@ public class StorageManager{
 	public void registerTypeHandler(p2p.storage.Type type, TypeHandler handler) throws NoSuchTypeException {
 		checkType(type);
 		mDataTypeHandlers.put(type.toString(), handler);
+		if (mDataTable != null)
+			mDataTable.typeHandlerRegistered(type);
 	}
 
 	/**
@@ -621,8 +654,11 @@ public class StorageManager{
 			writeDataTable();
 		//		mDataTable.shutdown();
 		}
+		if (mDataTable instanceof MemoryDataTable)
+			mDataTable.shutdown();
 		mDBManager.shutdown();
 		mDistributor.shutdown();
+		HostCache.sharedInstance().shutdown();
 	}
 
 	/**
@@ -631,7 +667,7 @@ public class StorageManager{
 	 */
 	public void writeDataTable() {
 		// TESTS used for testing only
-		XMLDataTable xmlDataTable = new XMLDataTable(mDBDataTable);
+		XMLDataTable xmlDataTable = new XMLDataTable(mDataTable);
 		try {
 			FileWriter file = new FileWriter(Constants.DATA_DIR+"DataTable.xml");
 			BufferedWriter out = new BufferedWriter(file);
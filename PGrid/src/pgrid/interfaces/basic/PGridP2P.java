@@ -266,9 +266,6 @@ public class PGridP2P implements P2P {
 
 		// Router
 		mRouter = new Router();
-		Thread router = new Thread(mRouter, "Router");
-		router.setDaemon(true);
-		router.start();
 
 		// Storage Manager
 		Constants.LOGGER.config("starting Storage Manager ...");
@@ -313,9 +310,6 @@ public class PGridP2P implements P2P {
 		// Search Manager
 		Constants.LOGGER.config("starting Search Manager ...");
 		mSearchManager.init();
-		Thread searchThread = new Thread(mSearchManager, "Search Manager");
-		searchThread.setDaemon(true);
-		searchThread.start();
 
 		// Load ReplicationBalancer
 		mBalancer = new pgrid.core.maintenance.ReplicationBalancer();
@@ -338,8 +332,13 @@ public class PGridP2P implements P2P {
 	if (key == null)
 	  throw new NullPointerException();
 
-	String compath = Utils.commonPrefix(key.toString(), getLocalPath());
-	if ((compath.length() == key.size()) || (compath.length() == getLocalPath().length()) || getLocalPath().length() == 0)
+	String localPath = getLocalPath();
+	int compath;
+	if (key instanceof PGridKey)
+	  compath = ((PGridKey)key).commonPrefixLength(localPath);
+	else
+	  compath = Utils.commonPrefix(key.toString(), localPath).length();
+	if ((compath == key.size()) || (compath == localPath.length()) || localPath.length() == 0)
 	  return true;
 	else
 	  return false;
@@ -97,7 +97,10 @@ public class PGridP2PFactory extends P2PFactory {
 	 * @see p2p.basic.P2PFactory#generateKey(java.lang.Object)
 	 */
 	public Key generateKey(Object obj) {
-		return new PGridKey(mHasher.findKey((String)obj));
+		PGridKey key = mHasher.createKey((String)obj);
+		if (key == null)
+			return new PGridKey((String)null);
+		return key;
 	}
 
 	/**
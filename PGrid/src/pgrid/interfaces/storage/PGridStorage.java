@@ -24,6 +24,7 @@
 
 package pgrid.interfaces.storage;
 
+import p2p.basic.GUID;
 import p2p.basic.P2P;
 import p2p.basic.events.NoRouteToKeyException;
 import p2p.storage.Query;
@@ -205,6 +206,28 @@ public class PGridStorage implements Storage {
 		mSearchManager.search(query, listener);
 	}
 
+	/**
+	 * Search the network for the items matching a batch of exact
+	 * queries. The queries are grouped by the next peer on their
+	 * route and each group is sent as one message. Callback is
+	 * notified for the results of each query by its GUID, and
+	 * when the batch is finished if it is a
+	 * {@link p2p.storage.events.BatchSearchListener}.
+	 *
+	 * @param queries  the exact queries of the batch
+	 * @param listener an object to notify when results arrive
+	 * @return the GUID of the batch.
+	 * @throws NoSuchTypeException if the provided Type is unknown.
+   * @throws NoRouteToKeyException if the queries cannot be routed to responsible peers.
+	 */
+	public GUID search(Collection queries, SearchListener listener) throws NoSuchTypeException, NoRouteToKeyException {
+		if ((queries == null) || (listener == null))
+			throw new NullPointerException();
+
+		// forward the request to the search manager
+		return mSearchManager.search(queries, listener);
+	}
+
 	/**
 	 * Updates the dataitems into the network, if the items with such ID's already
 	 * exist, they will be rewritten
@@ -30,7 +30,6 @@ import pgrid.interfaces.basic.PGridP2P;
 import pgrid.network.protocol.InitMessage;
 import pgrid.network.protocol.InitResponseMessage;
 
-import java.io.IOException;
 import java.util.zip.Deflater;
 
 /**
@@ -68,15 +67,6 @@ class Acceptor implements Runnable {
 	 */
 	private PGridP2P mPGridP2P = PGridP2P.sharedInstance();
 
-	/**
-	 * Creates a new worker for a delivered socket.
-	 *
-	 * @param conn the connection to handle.
-	 */
-	Acceptor(Connection conn) {
-		mConn = conn;
-	}
-
 	/**
 	 * Creates a new worker for a delivered socket.
 	 *
@@ -89,66 +79,56 @@ class Acceptor implements Runnable {
 	}
 
 	/**
-	 * Starts to decide the used protocol and start the corresponding worker.
+	 * Decides the used protocol by the received greeting and answers it. Invoked by a worker thread of the
+	 * Connection Manager, once the reader of the connection has received the complete greeting.
 	 */
 	public void run() {
-		try {
-			ConnectionReader reader = new ConnectionReader(mConn.getSocket().getInputStream());
-			ConnectionWriter writer = new ConnectionWriter(mConn.getSocket().getOutputStream());
-
-			// read and check greeting
-			if (mGreeting == null)
-				mGreeting = reader.readGreeting();
-			if (mGreeting == null) {
-				mConn.setStatus(Connection.STATUS_ERROR, "Timeout");
+		if (mGreeting.startsWith(PGRID_GREETING)) {
+			// P-Grid
+			InitMessage msgInit = new InitMessage(mGreeting);
+			if (!msgInit.isValid()) {
+				mConn.setStatus(Connection.STATUS_ERROR, "Invalid");
 				mConnMgr.acceptanceFinished(mConn);
 				return;
 			}
-			if (mGreeting.startsWith(PGRID_GREETING)) {
-				// P-Grid
-				InitMessage msgInit = new InitMessage(mGreeting);
-				if (!msgInit.isValid()) {
-					mConn.setStatus(Connection.STATUS_ERROR, "Invalid");
-					mConnMgr.acceptanceFinished(mConn);
-					return;
-				}
-				// write response
-				InitResponseMessage msgInitResp = new InitResponseMessage(mPGridP2P.getLocalHost().getGUID());
-				boolean compression = (msgInit.getHeaderField(InitMessage.HEADER_COMPRESSION).toLowerCase().equals("yes") ? true : false);
-				if ((mPGridP2P.propertyInteger(Properties.COMPRESSION_LEVEL) != Deflater.NO_COMPRESSION) && (compression)) {
-					msgInitResp.setHeaderField(InitResponseMessage.HEADER_COMPRESSION, "yes");
-					mConn.setCompression(true);
-				} else {
-					msgInitResp.setHeaderField(InitResponseMessage.HEADER_COMPRESSION, "no");
-					mConn.setCompression(false);
-				}
+			// write response
+			InitResponseMessage msgInitResp = new InitResponseMessage(mPGridP2P.getLocalHost().getGUID());
+			boolean compression = (msgInit.getHeaderField(InitMessage.HEADER_COMPRESSION).toLowerCase().equals("yes") ? true : false);
+			if ((mPGridP2P.propertyInteger(Properties.COMPRESSION_LEVEL) != Deflater.NO_COMPRESSION) && (compression)) {
 				msgInitResp.setHeaderField(InitResponseMessage.HEADER_COMPRESSION, "yes");
-				// Constants.LOGGER.finest("Init response message:\n" + msgInitResp.toXMLString());
-				writer.write(msgInitResp.getBytes());
-				mConn.setStatus(Connection.STATUS_CONNECTED);
-				mConn.setProtocolString(msgInit.getVersion());
-				PGridHost host = PGridHost.getHost(pgrid.GUID.getGUID(msgInit.getHeaderField(InitMessage.HEADER_GUID)), mConn.getSocket().getInetAddress(), Integer.parseInt(msgInit.getHeaderField(InitMessage.HEADER_PORT)));
-				mConn.setHost(host);
-				//mConn.setPeer(XMLPGridHost.getPeer(pgrid.GUID.getGUID(msgInit.getHeaderField(InitMessage.HEADER_GUID)), mConn.getSocket().getIP(), Integer.parseInt(msgInit.getHeaderField(InitMessage.HEADER_PORT))));
-				mConnMgr.acceptanceFinished(mConn);
+				mConn.setCompression(true);
 			} else {
-				mConn.setStatus(Connection.STATUS_ERROR, "Invalid");
+				msgInitResp.setHeaderField(InitResponseMessage.HEADER_COMPRESSION, "no");
+				mConn.setCompression(false);
+			}
+			msgInitResp.setHeaderField(InitResponseMessage.HEADER_COMPRESSION, "yes");
+			if ((InitMessage.CODEC_BINARY.equalsIgnoreCase(mPGridP2P.propertyString(Properties.WIRE_PROTOCOL))) &&
+					(InitMessage.CODEC_BINARY.equalsIgnoreCase(msgInit.getHeaderField(InitMessage.HEADER_CODEC)))) {
+				msgInitResp.setHeaderField(InitResponseMessage.HEADER_CODEC, InitMessage.CODEC_BINARY);
+				mConn.setBinary(true);
+				if ((mConn.isCompressed()) && (mPGridP2P.propertyBoolean(Properties.FAST_COMPRESSION)) &&
+						(InitMessage.FAST_COMPRESSION_LZ4.equalsIgnoreCase(msgInit.getHeaderField(InitMessage.HEADER_FAST_COMPRESSION)))) {
+					msgInitResp.setHeaderField(InitResponseMessage.HEADER_FAST_COMPRESSION, InitMessage.FAST_COMPRESSION_LZ4);
+					mConn.setFastCompression(true);
+				}
+			} else {
+				mConn.setBinary(false);
+			}
+			// Constants.LOGGER.finest("Init response message:\n" + msgInitResp.toXMLString());
+			if (!mConn.getWriter().write(msgInitResp.getBytes())) {
 				mConnMgr.acceptanceFinished(mConn);
 				return;
 			}
-		} catch (ConnectionClosedException e) {
-			mConn.setStatus(Connection.STATUS_ERROR, "Invalid");
+			mConn.setStatus(Connection.STATUS_CONNECTED);
+			mConn.setProtocolString(msgInit.getVersion());
+			PGridHost host = PGridHost.getHost(pgrid.GUID.getGUID(msgInit.getHeaderField(InitMessage.HEADER_GUID)), mConn.getSocket().getInetAddress(), Integer.parseInt(msgInit.getHeaderField(InitMessage.HEADER_PORT)));
+			mConn.setHost(host);
+			//mConn.setPeer(XMLPGridHost.getPeer(pgrid.GUID.getGUID(msgInit.getHeaderField(InitMessage.HEADER_GUID)), mConn.getSocket().getIP(), Integer.parseInt(msgInit.getHeaderField(InitMessage.HEADER_PORT))));
 			mConnMgr.acceptanceFinished(mConn);
-			return;
-		} catch (ConnectionTimeoutException e) {
-			mConn.setStatus(Connection.STATUS_ERROR, "Timeout");
-			mConnMgr.acceptanceFinished(mConn);
-			return;
-		} catch (IOException e) {
-			mConn.setStatus(Connection.STATUS_ERROR);
+		} else {
+			mConn.setStatus(Connection.STATUS_ERROR, "Invalid");
 			mConnMgr.acceptanceFinished(mConn);
-			return;
 		}
 	}
 
-}
\ No newline at end of file
+}
@@ -29,6 +29,7 @@ import pgrid.PGridHost;
 
 import java.io.IOException;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 
 /**
  * This class represents a connection.
@@ -63,11 +64,21 @@ public class Connection {
 	 */
 	public static final short STATUS_NOT_CONNECTED = 0;
 
+	/**
+	 * If the binary message format should be used for this connection.
+	 */
+	private boolean mBinaryFlag = false;
+
 	/**
 	 * If compression should be used for this connection.
 	 */
 	private boolean mCompressionFlag = false;
 
+	/**
+	 * If the fast compression may be used for exchanges over this connection.
+	 */
+	private boolean mFastCompressionFlag = false;
+
 	/**
 	 * The start time of the connection.
 	 */
@@ -83,6 +94,11 @@ public class Connection {
 	 */
 	private int mDroppedCount = 0;
 
+	/**
+	 * The connector establishing this connection, if it is an outgoing connection.
+	 */
+	private Connector mConnector = null;
+
 	/**
 	 * The connected host.
 	 */
@@ -93,6 +109,11 @@ public class Connection {
 	 */
 	private pgrid.GUID mGUID = null;
 
+	/**
+	 * The time of the last received data or of the registration of the connection.
+	 */
+	private long mLastActivity = 0;
+
 	/**
 	 * The last status message.
 	 */
@@ -108,6 +129,11 @@ public class Connection {
 	 */
 	private String mProtocolString = null;
 
+	/**
+	 * The reader of this connection.
+	 */
+	private PGridReader mReader = null;
+
 	/**
 	 * The number of received bytes.
 	 */
@@ -118,6 +144,11 @@ public class Connection {
 	 */
 	private int mReceivedCount = 0;
 
+	/**
+	 * The selector handling the channel of this connection.
+	 */
+	private ConnectionSelector mSelector = null;
+
 	/**
 	 * The number of sent bytes.
 	 */
@@ -129,15 +160,25 @@ public class Connection {
 	private int mSentCount = 0;
 
 	/**
-	 * The socket.
+	 * The socket channel.
 	 */
-	private Socket mSocket = null;
+	private SocketChannel mChannel = null;
 
 	/**
 	 * The status of the connection.
 	 */
 	private short mStatus = -1;
 
+	/**
+	 * The time in milliseconds after which the connection is closed if no data was received.
+	 */
+	private long mTimeout = 0;
+
+	/**
+	 * The writer of this connection.
+	 */
+	private PGridWriter mWriter = null;
+
 	/**
 	 * Creates a new Connection.
 	 *
@@ -151,30 +192,53 @@ public class Connection {
 	/**
 	 * Creates a new Connection.
 	 *
-	 * @param socket the socket.
+	 * @param channel the socket channel.
 	 */
-	public Connection(Socket socket) {
+	public Connection(SocketChannel channel) {
 		mGUID = new pgrid.GUID();
-		mSocket = socket;
+		mChannel = channel;
 	}
 
 	/**
 	 * Closes the connection and all streams.
 	 */
 	public void close() {
-		if (mSocket != null) {
+		closeChannel();
+		setStatus(Connection.STATUS_NOT_CONNECTED, "Closed");
+	}
+
+	/**
+	 * Closes the channel of the connection, without changing the status. Senders waiting for space in the write
+	 * queue are released.
+	 */
+	void closeChannel() {
+		if (mChannel != null) {
 			try {
-				mSocket.shutdownInput();
-				mSocket.shutdownOutput();
-				mSocket.close();
-				mSocket = null;
-			} catch (NullPointerException e) {
-				// do nothing
+				mChannel.close();
 			} catch (IOException e) {
 				// do nothing
 			}
 		}
-		setStatus(Connection.STATUS_NOT_CONNECTED, "Closed");
+		if (mWriter != null)
+			mWriter.closed();
+	}
+
+	/**
+	 * Tests if the connection uses the binary message format.
+	 *
+	 * @return <code>true</code> if the binary format is used, <code>false</code> if XML is used.
+	 */
+	public boolean isBinary() {
+		return mBinaryFlag;
+	}
+
+	/**
+	 * Sets if the connection uses the binary message format.
+	 *
+	 * @param flag <code>true</code> if the binary format is used, <code>false</code> if XML is used.
+	 */
+	public void setBinary(boolean flag) {
+		mBinaryFlag = flag;
 	}
 
 	/**
@@ -195,13 +259,31 @@ public class Connection {
 		mCompressionFlag = flag;
 	}
 
+	/**
+	 * Tests if the fast compression may be used for exchanges over this connection.
+	 *
+	 * @return <code>true</code> if the fast compression may be used, <code>false</code> otherwise.
+	 */
+	public boolean isFastCompressed() {
+		return mFastCompressionFlag;
+	}
+
+	/**
+	 * Sets if the fast compression may be used for exchanges over this connection.
+	 *
+	 * @param flag <code>true</code> if the fast compression may be used, <code>false</code> otherwise.
+	 */
+	public void setFastCompression(boolean flag) {
+		mFastCompressionFlag = flag;
+	}
+
 	/**
 	 * Tests if connected or not.
 	 *
 	 * @return <code>true</code> if connected, <code>false</code> otherwise.
 	 */
 	public boolean isConnected() {
-		if ((mSocket != null) && (mSocket.isConnected()))
+		if ((mChannel != null) && (mChannel.isConnected()))
 			return true;
 		else
 			return false;
@@ -355,16 +437,125 @@ public class Connection {
 	 * @return the socket.
 	 */
 	public Socket getSocket() {
-		return mSocket;
+		if (mChannel == null)
+			return null;
+		return mChannel.socket();
+	}
+
+	/**
+	 * Returns the socket channel.
+	 *
+	 * @return the socket channel.
+	 */
+	public SocketChannel getChannel() {
+		return mChannel;
+	}
+
+	/**
+	 * Sets the socket channel.
+	 *
+	 * @param channel the socket channel.
+	 */
+	void setChannel(SocketChannel channel) {
+		mChannel = channel;
+	}
+
+	/**
+	 * Returns the connector establishing this connection.
+	 *
+	 * @return the connector, or <code>null</code> for incoming connections.
+	 */
+	Connector getConnector() {
+		return mConnector;
+	}
+
+	/**
+	 * Sets the connector establishing this connection.
+	 *
+	 * @param connector the connector.
+	 */
+	void setConnector(Connector connector) {
+		mConnector = connector;
+	}
+
+	/**
+	 * Returns the reader of this connection.
+	 *
+	 * @return the reader.
+	 */
+	PGridReader getReader() {
+		return mReader;
+	}
+
+	/**
+	 * Sets the reader of this connection.
+	 *
+	 * @param reader the reader.
+	 */
+	void setReader(PGridReader reader) {
+		mReader = reader;
+	}
+
+	/**
+	 * Returns the selector handling the channel of this connection.
+	 *
+	 * @return the selector.
+	 */
+	ConnectionSelector getSelector() {
+		return mSelector;
+	}
+
+	/**
+	 * Sets the selector handling the channel of this connection.
+	 *
+	 * @param selector the selector.
+	 */
+	void setSelector(ConnectionSelector selector) {
+		mSelector = selector;
+	}
+
+	/**
+	 * Returns the writer of this connection.
+	 *
+	 * @return the writer.
+	 */
+	PGridWriter getWriter() {
+		return mWriter;
+	}
+
+	/**
+	 * Sets the writer of this connection.
+	 *
+	 * @param writer the writer.
+	 */
+	void setWriter(PGridWriter writer) {
+		mWriter = writer;
+	}
+
+	/**
+	 * Sets the time in milliseconds after which the connection is closed if no data was received.
+	 *
+	 * @param timeout the timeout.
+	 */
+	void setTimeout(long timeout) {
+		mTimeout = timeout;
+	}
+
+	/**
+	 * Records that data was received, or that the connection was registered.
+	 */
+	void touch() {
+		mLastActivity = System.currentTimeMillis();
 	}
 
 	/**
-	 * Sets the socket.
+	 * Tests if no data was received during the timeout of the connection.
 	 *
-	 * @param socket the socket.
+	 * @param now the current time.
+	 * @return <code>true</code> if the connection has timed out.
 	 */
-	public void setSocket(Socket socket) {
-		mSocket = socket;
+	boolean isTimedOut(long now) {
+		return ((mTimeout > 0) && (now - mLastActivity > mTimeout));
 	}
 
 	/**
@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2002 The P-Grid Team,
+ *                    All Rights Reserved.
+ *
+ * This file is part of the P-Grid package.
+ * P-Grid homepage: http://www.p-grid.org/
+ *
+ * The P-Grid package is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This package is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; see the file LICENSE.
+ * If not you can find the GPL at http://www.gnu.org/copyleft/gpl.html
+ */
+
+package pgrid.network;
+
+import pgrid.PGridHost;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The result of an asynchronous connection attempt started by
+ * {@link ConnectionManager#connectAsync(pgrid.PGridHost)}. All callers connecting to the same host at the same time
+ * share one future. The result is the established {@link Connection}, or a connection in the error state if the host
+ * could not be reached. Connection attempts cannot be cancelled.
+ *
+ * @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
+ * @version 1.0.0
+ */
+public class ConnectionFuture implements Future {
+
+	/**
+	 * The resulting connection.
+	 */
+	private Connection mConn = null;
+
+	/**
+	 * If the connection attempt has finished.
+	 */
+	private boolean mDone = false;
+
+	/**
+	 * The host to connect.
+	 */
+	private PGridHost mHost = null;
+
+	/**
+	 * Creates a new future for a connection attempt.
+	 *
+	 * @param host the host to connect.
+	 */
+	ConnectionFuture(PGridHost host) {
+		mHost = host;
+	}
+
+	/**
+	 * Creates a new future for an already existing connection.
+	 *
+	 * @param host the connected host.
+	 * @param conn the connection.
+	 */
+	ConnectionFuture(PGridHost host, Connection conn) {
+		mHost = host;
+		mConn = conn;
+		mDone = true;
+	}
+
+	/**
+	 * Connection attempts cannot be cancelled.
+	 *
+	 * @param mayInterruptIfRunning ignored.
+	 * @return always <code>false</code>.
+	 */
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	/**
+	 * Sets the result of the connection attempt and wakes up all waiting threads.
+	 *
+	 * @param conn the connection.
+	 */
+	synchronized void done(Connection conn) {
+		if (mDone)
+			return;
+		mConn = conn;
+		mDone = true;
+		notifyAll();
+	}
+
+	/**
+	 * Waits until the connection attempt has finished.
+	 *
+	 * @return the connection.
+	 * @throws InterruptedException if the current thread was interrupted while waiting.
+	 */
+	public synchronized Object get() throws InterruptedException {
+		while (!mDone)
+			wait();
+		return mConn;
+	}
+
+	/**
+	 * Waits at most the given time until the connection attempt has finished.
+	 *
+	 * @param timeout the maximum time to wait.
+	 * @param unit    the unit of the timeout.
+	 * @return the connection.
+	 * @throws InterruptedException if the current thread was interrupted while waiting.
+	 * @throws TimeoutException     if the connection attempt has not finished in time.
+	 */
+	public synchronized Object get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+		long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+		while (!mDone) {
+			long wait = deadline - System.currentTimeMillis();
+			if (wait <= 0)
+				throw new TimeoutException("Connecting to host '" + mHost.toHostString() + "' timed out.");
+			wait(wait);
+		}
+		return mConn;
+	}
+
+	/**
+	 * Returns the host to connect.
+	 *
+	 * @return the host.
+	 */
+	public PGridHost getHost() {
+		return mHost;
+	}
+
+	/**
+	 * Connection attempts cannot be cancelled.
+	 *
+	 * @return always <code>false</code>.
+	 */
+	public boolean isCancelled() {
+		return false;
+	}
+
+	/**
+	 * Tests if the connection attempt has finished.
+	 *
+	 * @return <code>true</code> if the connection attempt has finished.
+	 */
+	public synchronized boolean isDone() {
+		return mDone;
+	}
+
+}
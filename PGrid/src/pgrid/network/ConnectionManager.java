@@ -30,15 +30,31 @@ import pgrid.PGridHost;
 import pgrid.Properties;
 import pgrid.core.maintenance.identity.IdentityManager;
 import pgrid.network.protocol.PGridMessage;
+import pgrid.util.NamedThreadFactory;
 
-import java.net.Socket;
-import java.net.SocketException;
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.Collection;
 import java.util.Hashtable;
 import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
 
 /**
  * The Communication Manager adminstrates all connection to other hosts.
+ * <p/>
+ * The sockets of all connections are non-blocking and multiplexed by a few {@link ConnectionSelector}s. Resolving
+ * hosts and handling handshakes is done by a small pool of worker threads, received messages are handled by a pool
+ * of reader threads, and offline periods of hosts are tracked by a single timer thread. The number of threads does
+ * therefore not depend on the number of connections.
  *
  * @author @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
  * @version 1.0.0
@@ -52,14 +68,20 @@ public class ConnectionManager {
 	private static final int OFFLINE_PERIOD = 1000 * 60 * 2; // 5m.
 
 	/**
-	 * Timout to wait for a connection.
+	 * Timout to wait for a connection. Connectors give up after their own timeout already, this only guards against
+	 * a challenge of the remote host that does not finish.
 	 */
-	private static final int CONNECT_TIMEOUT = 1000 * 60 * 4; // ~ 2m.
+	private static final int CONNECT_TIMEOUT = 1000 * 60; // 1m.
 
 	/**
-	 * Timout to wait for a connection.
+	 * The number of threads handling received messages.
 	 */
-	private static final int CONNECTING_TIMEOUT = 1000 * 20; // ~ 20.
+	private static final int READER_THREADS = 16;
+
+	/**
+	 * The number of selectors multiplexing the connections.
+	 */
+	private static final int SELECTORS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
 
 	/**
 	 * The reference to the only instance of this class (Singleton
@@ -77,19 +99,19 @@ public class ConnectionManager {
 	private static final int SO_TIMEOUT = 30000; // ~ 10 sec.
 
 	/**
-	 * List of accepting connections.
+	 * The number of threads resolving hosts and handling handshakes.
 	 */
-	private Vector mAcceptances = new Vector();
+	private static final int WORKER_THREADS = 4;
 
 	/**
-	 * List of connecting connections.
+	 * List of accepting connections.
 	 */
-	private Hashtable mConnectings = new Hashtable();
+	private Vector mAcceptances = new Vector();
 
 	/**
-	 * List of waiters on connections.
+	 * List of connecting connections, i.e. the futures of the connection attempts by host.
 	 */
-	private Hashtable mConnectingWaiter = new Hashtable();
+	private Hashtable mConnectings = new Hashtable();
 
 	/**
 	 * The Message Manager.
@@ -101,6 +123,31 @@ public class ConnectionManager {
 	 */
 	private Hashtable mConnections = new Hashtable();
 
+	/**
+	 * The index of the selector for the next connection.
+	 */
+	private int mNextSelector = 0;
+
+	/**
+	 * The thread pool handling received messages.
+	 */
+	private ExecutorService mReaders = Executors.newFixedThreadPool(READER_THREADS, new NamedThreadFactory("P-Grid Reader"));
+
+	/**
+	 * The selectors multiplexing the connections.
+	 */
+	private ConnectionSelector[] mSelectors = null;
+
+	/**
+	 * The timer thread resetting offline hosts.
+	 */
+	private ScheduledExecutorService mTimer = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("P-Grid Offline Timer"));
+
+	/**
+	 * The thread pool resolving hosts and handling handshakes.
+	 */
+	private ExecutorService mWorkers = Executors.newFixedThreadPool(WORKER_THREADS, new NamedThreadFactory("P-Grid Connection Worker"));
+
 	/**
 	 * Hashtable of all Writers, by Host GUID.
 	 */
@@ -154,42 +201,53 @@ public class ConnectionManager {
 	/**
 	 * Processes an incoming connection accepted by the CommListener.
 	 *
-	 * @param socket the socket.
+	 * @param channel the socket channel.
 	 */
-	void accept(Socket socket) {
-		try {
-			socket.setSoTimeout(SO_TIMEOUT);
-			socket.setTcpNoDelay(true);
-		} catch (SocketException e) {
-			// do nothing
-		}                                                 
-		Connection conn = new Connection(socket);
-		conn.setStatus(Connection.STATUS_ACCEPTING);
-		mAcceptances.add(conn);
-		Thread t = new Thread(new Acceptor(conn), "Acceptor");
-		t.setDaemon(true);
-		t.start();
+	void accept(SocketChannel channel) {
+		Connection conn = newAcceptance(channel);
+		if (conn != null)
+			register(conn, SelectionKey.OP_READ, conn);
 	}
 
 	/**
 	 * Processes an incoming connection.
 	 *
-	 * @param socket   the socket.
+	 * @param channel  the socket channel.
 	 * @param greeting the already received greeting.
 	 */
-	public void accept(Socket socket, String greeting) {
+	public void accept(SocketChannel channel, String greeting) {
+		Connection conn = newAcceptance(channel);
+		if (conn == null)
+			return;
+		// the reader waits for the end of the handshake
+		register(conn, 0, conn);
+		conn.getReader().skipGreeting();
+		execute(new Acceptor(conn, greeting));
+	}
+
+	/**
+	 * Creates a new accepting connection for an incoming socket channel.
+	 *
+	 * @param channel the socket channel.
+	 * @return the connection, or <code>null</code> if the channel could not be configured.
+	 */
+	private Connection newAcceptance(SocketChannel channel) {
 		try {
-			socket.setSoTimeout(SO_TIMEOUT);
-			socket.setTcpNoDelay(true);
-		} catch (SocketException e) {
-			// do nothing
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+		} catch (IOException e) {
+			try {
+				channel.close();
+			} catch (IOException e1) {
+				// do nothing
+			}
+			return null;
 		}
-		Connection conn = new Connection(socket);
+		Connection conn = new Connection(channel);
 		conn.setStatus(Connection.STATUS_ACCEPTING);
+		conn.setTimeout(SO_TIMEOUT);
 		mAcceptances.add(conn);
-		Thread t = new Thread(new Acceptor(conn, greeting), "Acceptor");
-		t.setDaemon(true);
-		t.start();
+		return conn;
 	}
 
 	/**
@@ -209,93 +267,60 @@ public class ConnectionManager {
 				return;
 			}
 			mConnections.put(conn.getHost().getGUID(), conn);
-			mWriters.put(conn.getHost().getGUID(), new PGridWriter(conn));
-			Thread t = new Thread(new PGridReader(conn, mMsgMgr), "Reader for '" + conn.getHost().toHostString() + "' - " + conn.hashCode());
-			t.setDaemon(true);
-			t.start();
+			mWriters.put(conn.getHost().getGUID(), conn.getWriter());
+			conn.getReader().start();
+		} else {
+			conn.closeChannel();
 		}
 	}
 
 	/**
-	 * Connects the host with the given protocol.
+	 * Connects the host with the given protocol. The calling thread waits until the connection is established or
+	 * has failed.
 	 *
 	 * @param host the host.
 	 * @return the connection.
 	 */
 	public Connection connect(PGridHost host) {
-		Connection conn;
-		Object waiter = null;
-		Object connectingWaiter = null;
-		boolean stop = false;
-
-		// try to find existing connection, if a PGrid connection is requested and the host is no bootstrap host
-		// create a queue if needed
-		synchronized (host) {
-			connectingWaiter = (Object)mConnectingWaiter.get(host);
-			// give the coin to only one thread
-			if (connectingWaiter == null) {
-				connectingWaiter = new Object();
-				mConnectingWaiter.put(host, connectingWaiter);
-			}
+		try {
+			return (Connection)connectAsync(host).get(CONNECT_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			return null;
+		} catch (ExecutionException e) {
+			return null;
+		} catch (TimeoutException e) {
+			return null;
 		}
-		synchronized (connectingWaiter) {
-			// if the thread does not have the coin, wait
-			while (!stop) {
-				if ((host != null) && (host.getGUID() != null)) {
-					conn = (Connection)mConnections.get(host.getGUID());
-
-					if (conn != null) {
-						return conn;
-					}
-				}
-
-				waiter = mConnectings.get(host);
-				if (waiter != null) {
-					try {
-						connectingWaiter.wait(CONNECTING_TIMEOUT);
-					} catch (InterruptedException e) {
-						// do nothing here
-					}
-					if (host.getState() != PGridHost.HOST_OK) {
-						return null;
-					}
-				} else {
-					//give the coin to only one thread
-					waiter = new Object();
-					mConnectings.put(host, waiter);
-					stop = true;
-				}
+	}
 
+	/**
+	 * Connects the host without waiting for the connection. If a connection to the host exists already, the
+	 * returned future is done. Callers connecting to a host at the same time share the same connection attempt.
+	 *
+	 * @param host the host.
+	 * @return the future delivering the connection.
+	 */
+	public Future connectAsync(PGridHost host) {
+		ConnectionFuture future;
+		synchronized (mConnectings) {
+			// try to find existing connection
+			if (host.getGUID() != null) {
+				Connection conn = (Connection)mConnections.get(host.getGUID());
+				if (conn != null)
+					return new ConnectionFuture(host, conn);
 			}
-
+			future = (ConnectionFuture)mConnectings.get(host);
+			if (future != null)
+				return future;
+			future = new ConnectionFuture(host);
+			mConnectings.put(host, future);
 		}
 
 		// establish new connection
-		conn = new Connection(host);
+		Connection conn = new Connection(host);
 		conn.setStatus(Connection.STATUS_CONNECTING);
-		Thread t = new Thread(new Connector(conn), "Connect to '" + host.toHostString() + "' - " + conn.hashCode());
-		t.setDaemon(true);
-		t.start();
-		// wait for established connection
-
-		synchronized (waiter) {
-			while(conn.getStatus() == Connection.STATUS_CONNECTING) {
-				try {
-					waiter.wait(CONNECT_TIMEOUT);
-				} catch (InterruptedException e) {
-				}
-			}
-		}
-		Connection newConn = null;
-
-		if (host.getGUID() != null)
-			newConn = (Connection)mConnections.get(host.getGUID());
-
-		synchronized (connectingWaiter) {
-			mConnectings.remove(host);
-			connectingWaiter.notifyAll();
-		}
-		return (newConn == null ? conn : newConn);
+		execute(new Connector(conn));
+		return future;
 	}
 
 	/**
@@ -308,7 +333,6 @@ public class ConnectionManager {
 		boolean challengeSucceeded = true;
 		boolean bootstrap = false;
 		PGridHost host = conn.getHost();
-		Thread readerThread = null;
 
 		// if the host uses a temp. GUID (because it was not know before) => set the correct guid
 		// INFO (Roman): I changed it to guid only because the GUID is temp. for bootstrap requests
@@ -321,10 +345,8 @@ public class ConnectionManager {
 				bootstrap = true;
 				host.setGUID(guid);
 			}
-			mWriters.put(host.getGUID(), new PGridWriter(conn));
-			readerThread = new Thread(new PGridReader(conn, mMsgMgr), "Reader for '" + host.toHostString() + "' - " + conn.hashCode());
-			readerThread.setDaemon(true);
-			readerThread.start();
+			mWriters.put(host.getGUID(), conn.getWriter());
+			conn.getReader().start();
 			if (mSecuredConnection && !bootstrap) {
 				Constants.LOGGER.fine("Challenging host " + host.toHostString() + "...");
 				if (!mIdentMgr.challengeHost(host, conn)) {
@@ -363,7 +385,6 @@ public class ConnectionManager {
 			//FIXME: planetlab
 
 			// save the time stamp for a timeout.
-			// TODO: add a single working thread to do the work.
 			if (host.getState() == PGridHost.HOST_OFFLINE) {
 				host.incOfflineTime();
 				final long time = OFFLINE_PERIOD * host.getOfflineTime();
@@ -371,21 +392,12 @@ public class ConnectionManager {
 
 				final PGridHost curHost = host;
 				// start a timer
-
-				Thread sleeper = new Thread("Offline timer for '" + host.toHostString() + "' - " + host.hashCode()) {
+				mTimer.schedule(new Runnable() {
 					public void run() {
-						try {
-							Thread.sleep(time);
-						} catch (Exception e) {
-							curHost.setState(PGridHost.HOST_OK);
-						}
 						curHost.setState(PGridHost.HOST_OK);
 						curHost.resetMappingAttemps();
 					}
-				};
-
-				sleeper.setDaemon(true);
-				sleeper.start();
+				}, time, TimeUnit.MILLISECONDS);
 			}
 
 
@@ -413,28 +425,58 @@ public class ConnectionManager {
 		} 
         
         
-		// inform waiting thread that the connection is established
-		synchronized (mConnectingWaiter.get(host)) {
-			Object t = mConnectings.get(host);
-
-			if (t != null) {
-				synchronized (t) {
-					t.notify();
-				}
-			}
+		// inform waiting threads that the connection is established
+		ConnectionFuture future;
+		synchronized (mConnectings) {
+			future = (ConnectionFuture)mConnectings.remove(host);
+		}
+		if (future != null) {
+			Connection newConn = null;
+			if (host.getGUID() != null)
+				newConn = (Connection)mConnections.get(host.getGUID());
+			future.done(newConn == null ? conn : newConn);
 		}
 	}
 
+	/**
+	 * Hands a received message to a reader thread.
+	 *
+	 * @param reader the reader of the connection.
+	 */
+	void dispatch(PGridReader reader) {
+		mReaders.execute(reader);
+	}
+
+	/**
+	 * Runs the given task by a worker thread.
+	 *
+	 * @param task the task.
+	 */
+	void execute(Runnable task) {
+		mWorkers.execute(task);
+	}
+
 	/**
 	 * Initializes the Connection Manager.
 	 *
 	 * @param startListener <tt>true</tt> if the connection listener should be started, <tt>false</tt> otherwise.
 	 */
 	synchronized public void init(boolean startListener) {
+		if (mSelectors == null) {
+			ConnectionSelector[] selectors = new ConnectionSelector[SELECTORS];
+			try {
+				for (int i = 0; i < selectors.length; i++)
+					selectors[i] = new ConnectionSelector("P-Grid Selector " + (i + 1));
+			} catch (IOException e) {
+				Constants.LOGGER.log(Level.SEVERE, null, e);
+				System.exit(-1);
+			}
+			mSelectors = selectors;
+		}
 		if (startListener) {
-			Thread t = new Thread(new Listener(), "P-Grid Listener");
-			t.setDaemon(true);
-			t.start();
+			Listener listener = new Listener();
+			ServerSocketChannel socket = listener.open();
+			mSelectors[0].register(socket, SelectionKey.OP_ACCEPT, listener);
 		}
 		mMsgMgr = MessageManager.sharedInstance();
 		mSecuredConnection = PGridP2P.sharedInstance().propertyBoolean(Properties.IDENTITY_CHALLENGE);
@@ -454,25 +496,36 @@ public class ConnectionManager {
 	private Connection reconnect(PGridHost host) {
 		Constants.LOGGER.fine("try to reconnect '" + host.toHostString() + "' ...");
 		
-		// establish new connection
+		// establish new connection in this thread, the worker threads may all be busy
 		Connection conn = new Connection(host);
 		conn.setStatus(Connection.STATUS_CONNECTING);
-		Connector myConnector = new Connector(conn);
-		//myConnector.run();
-		Thread t = new Thread(new Connector(conn), "Reconnect to '" + host.toHostString() + "' - " + conn.hashCode());
-		t.setDaemon(true);
-		t.start();
-
-		synchronized (t) {
-			try {
-				t.join();
-			} catch (InterruptedException e) {
-			}
-		}
+		Connector connector = new Connector(conn);
+		pgrid.GUID guid = connector.connectAndWait();
+		connectingFinished(conn, guid);
 
 		return conn;
 	}
 
+	/**
+	 * Registers the channel of a connection with one of the selectors, and creates its reader and writer.
+	 *
+	 * @param conn       the connection.
+	 * @param ops        the interest operations.
+	 * @param attachment the attachment of the channel.
+	 */
+	void register(Connection conn, int ops, Object attachment) {
+		ConnectionSelector selector;
+		synchronized (this) {
+			selector = mSelectors[mNextSelector];
+			mNextSelector = (mNextSelector + 1) % mSelectors.length;
+		}
+		conn.setSelector(selector);
+		conn.setReader(new PGridReader(conn, mMsgMgr));
+		conn.setWriter(new PGridWriter(conn));
+		conn.touch();
+		selector.register(conn.getChannel(), ops, attachment);
+	}
+
 	/**
 	 * The socket of the delivered connection was closed by the remote host.
 	 *
@@ -480,11 +533,29 @@ public class ConnectionManager {
 	 */
 	//FIXME: add a bool to notify connection
 	public void socketClosed(Connection conn) {
+		// a connection attempt in progress has failed
+		if (conn.getConnector() != null)
+			conn.getConnector().connectFailed("Closed");
 		conn.close();
 
 		mAcceptances.remove(conn);
-		mConnections.remove(conn.getHost().getGUID());
+		if ((conn.getHost() != null) && (conn.getHost().getGUID() != null) && (mConnections.get(conn.getHost().getGUID()) == conn))
+			mConnections.remove(conn.getHost().getGUID());
+
+	}
 
+	/**
+	 * No data was received from the delivered connection during its timeout.
+	 *
+	 * @param conn the connection.
+	 */
+	void timedOut(Connection conn) {
+		if ((conn.getConnector() != null) && (!conn.getConnector().isFinished())) {
+			conn.getConnector().connectFailed("Timeout");
+		} else {
+			conn.setStatus(Connection.STATUS_ERROR, "Timeout");
+			socketClosed(conn);
+		}
 	}
 
 	/**
@@ -0,0 +1,280 @@
+/**
+ * Copyright (c) 2002 The P-Grid Team,
+ *                    All Rights Reserved.
+ *
+ * This file is part of the P-Grid package.
+ * P-Grid homepage: http://www.p-grid.org/
+ *
+ * The P-Grid package is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This package is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; see the file LICENSE.
+ * If not you can find the GPL at http://www.gnu.org/copyleft/gpl.html
+ */
+
+package pgrid.network;
+
+import pgrid.Constants;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.logging.Level;
+
+/**
+ * A connection selector multiplexes the sockets of many connections on a single thread. It accepts incoming
+ * connections for the {@link Listener}, finishes outgoing connections for the {@link Connector}s, and reads and
+ * writes the data of established connections with their {@link PGridReader} and {@link PGridWriter}.
+ * <p/>
+ * All changes of the registered channels are done by the selector thread. Other threads post them as tasks with
+ * {@link #execute(Runnable)}.
+ *
+ * @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
+ * @version 1.0.0
+ */
+class ConnectionSelector implements Runnable {
+
+	/**
+	 * The period to check the connections for timeouts.
+	 */
+	private static final int CHECK_PERIOD = 1000; // 1s.
+
+	/**
+	 * The time of the last check for timeouts.
+	 */
+	private long mLastCheck = 0;
+
+	/**
+	 * The NIO selector.
+	 */
+	private Selector mSelector = null;
+
+	/**
+	 * The tasks to run by the selector thread.
+	 */
+	private LinkedList mTasks = new LinkedList();
+
+	/**
+	 * The selector thread.
+	 */
+	private Thread mThread = null;
+
+	/**
+	 * Creates and starts a new connection selector.
+	 *
+	 * @param name the name of the selector thread.
+	 * @throws IOException if the selector cannot be opened.
+	 */
+	ConnectionSelector(String name) throws IOException {
+		mSelector = Selector.open();
+		mThread = new Thread(this, name);
+		mThread.setDaemon(true);
+		mThread.start();
+	}
+
+	/**
+	 * Runs the given task by the selector thread.
+	 *
+	 * @param task the task.
+	 */
+	void execute(Runnable task) {
+		synchronized (mTasks) {
+			mTasks.add(task);
+		}
+		if (Thread.currentThread() != mThread)
+			mSelector.wakeup();
+	}
+
+	/**
+	 * Tests if the current thread is the selector thread.
+	 *
+	 * @return <code>true</code> if the selector thread is the current thread.
+	 */
+	boolean inSelectorThread() {
+		return (Thread.currentThread() == mThread);
+	}
+
+	/**
+	 * Registers a channel with the given operations and attachment, i.e., a {@link Listener}, a
+	 * {@link Connector} or a {@link Connection}.
+	 *
+	 * @param channel    the channel.
+	 * @param ops        the interest operations.
+	 * @param attachment the attachment.
+	 */
+	void register(final SelectableChannel channel, final int ops, final Object attachment) {
+		execute(new Runnable() {
+			public void run() {
+				try {
+					channel.register(mSelector, ops, attachment);
+				} catch (IOException e) {
+					failed(attachment);
+				} catch (CancelledKeyException e) {
+					failed(attachment);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Adds or removes interest operations of the channel of a connection.
+	 *
+	 * @param conn the connection.
+	 * @param ops  the operations.
+	 * @param set  <code>true</code> to add, <code>false</code> to remove the operations.
+	 */
+	void setInterest(final Connection conn, final int ops, final boolean set) {
+		if (inSelectorThread()) {
+			changeInterest(conn, ops, set);
+		} else {
+			execute(new Runnable() {
+				public void run() {
+					changeInterest(conn, ops, set);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Adds or removes interest operations of the channel of a connection. Must be called by the selector thread.
+	 *
+	 * @param conn the connection.
+	 * @param ops  the operations.
+	 * @param set  <code>true</code> to add, <code>false</code> to remove the operations.
+	 */
+	private void changeInterest(Connection conn, int ops, boolean set) {
+		if (conn.getChannel() == null)
+			return;
+		SelectionKey key = conn.getChannel().keyFor(mSelector);
+		if ((key == null) || (!key.isValid()))
+			return;
+		key.interestOps(set ? key.interestOps() | ops : key.interestOps() & ~ops);
+	}
+
+	/**
+	 * Invoked if a channel could not be registered.
+	 *
+	 * @param attachment the attachment of the channel.
+	 */
+	private void failed(Object attachment) {
+		if (attachment instanceof Connector)
+			((Connector)attachment).connectFailed("Not available");
+		else if (attachment instanceof Connection)
+			ConnectionManager.sharedInstance().socketClosed((Connection)attachment);
+	}
+
+	/**
+	 * Runs the selector loop.
+	 */
+	public void run() {
+		while (true) {
+			try {
+				mSelector.select(CHECK_PERIOD);
+			} catch (IOException e) {
+				Constants.LOGGER.log(Level.WARNING, null, e);
+				continue;
+			}
+
+			// run pending tasks
+			while (true) {
+				Runnable task;
+				synchronized (mTasks) {
+					if (mTasks.isEmpty())
+						break;
+					task = (Runnable)mTasks.removeFirst();
+				}
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					Constants.LOGGER.log(Level.WARNING, null, e);
+				}
+			}
+
+			// handle ready channels
+			for (Iterator it = mSelector.selectedKeys().iterator(); it.hasNext();) {
+				SelectionKey key = (SelectionKey)it.next();
+				it.remove();
+				try {
+					handle(key);
+				} catch (CancelledKeyException e) {
+					// the connection was closed meanwhile
+				} catch (RuntimeException e) {
+					Constants.LOGGER.log(Level.WARNING, null, e);
+				}
+			}
+
+			// close connections without received data
+			long now = System.currentTimeMillis();
+			if (now - mLastCheck >= CHECK_PERIOD) {
+				mLastCheck = now;
+				checkTimeouts(now);
+			}
+		}
+	}
+
+	/**
+	 * Closes all connections which have not received data during their timeout.
+	 *
+	 * @param now the current time.
+	 */
+	private void checkTimeouts(long now) {
+		LinkedList timedOut = new LinkedList();
+		for (Iterator it = mSelector.keys().iterator(); it.hasNext();) {
+			SelectionKey key = (SelectionKey)it.next();
+			if (!key.isValid())
+				continue;
+			Object attachment = key.attachment();
+			Connection conn = null;
+			if (attachment instanceof Connector)
+				conn = ((Connector)attachment).getConnection();
+			else if (attachment instanceof Connection)
+				conn = (Connection)attachment;
+			if ((conn != null) && (conn.isTimedOut(now)))
+				timedOut.add(conn);
+		}
+		for (Iterator it = timedOut.iterator(); it.hasNext();) {
+			try {
+				ConnectionManager.sharedInstance().timedOut((Connection)it.next());
+			} catch (RuntimeException e) {
+				Constants.LOGGER.log(Level.WARNING, null, e);
+			}
+		}
+	}
+
+	/**
+	 * Handles a ready channel.
+	 *
+	 * @param key the selection key of the channel.
+	 */
+	private void handle(SelectionKey key) {
+		if (!key.isValid())
+			return;
+		Object attachment = key.attachment();
+		if (attachment instanceof Listener) {
+			((Listener)attachment).acceptConnections((ServerSocketChannel)key.channel());
+		} else if (attachment instanceof Connector) {
+			if (key.isConnectable())
+				((Connector)attachment).finishConnect(key);
+		} else {
+			Connection conn = (Connection)attachment;
+			if (key.isReadable())
+				conn.getReader().read();
+			if (key.isValid() && key.isWritable())
+				conn.getWriter().flush();
+		}
+	}
+
+}
@@ -31,12 +31,17 @@ import pgrid.network.protocol.InitResponseMessage;
 
 import java.io.IOException;
 import java.net.InetAddress;
-import java.net.Socket;
-import java.net.SocketException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
 import java.util.zip.Deflater;
 
 /**
  * The Communication Connector establishes a connections to a remote host.
+ * <p/>
+ * The connector resolves the host and opens a non-blocking channel in a worker thread of the Connection Manager.
+ * Finishing the connection, sending the greeting and receiving the response are done by the selector of the
+ * connection, so no thread waits for the remote host.
  *
  * @author @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
  * @version 1.0.0
@@ -44,10 +49,15 @@ import java.util.zip.Deflater;
 class Connector implements Runnable {
 
 	/**
-	 * Timout to wait for a message to receive.
+	 * Timout to establish the connection and, afterwards, to wait for a message to receive.
 	 */
 	private static int SO_TIMEOUT = 10000; // ~ 10 sec.
 
+	/**
+	 * If compression was offered to the remote host.
+	 */
+	private boolean mCompression = false;
+
 	/**
 	 * The Communication Manager.
 	 */
@@ -59,34 +69,35 @@ class Connector implements Runnable {
 	private Connection mConn = null;
 
 	/**
-	 * The address of the host to connect.
+	 * If establishing the connection has finished.
 	 */
-	private InetAddress mInetAddr = null;
+	private boolean mFinished = false;
 
 	/**
-	 * The PGridP2P facility.
+	 * The GUID of the connected host.
 	 */
-	private PGridP2P mPGridP2P = PGridP2P.sharedInstance();
+	private pgrid.GUID mGUID = null;
 
 	/**
-	 * The port of the host to connect.
+	 * If the thread establishing the connection waits for the result instead of the Connection Manager being
+	 * informed.
 	 */
-	private int mPort = -1;
+	private boolean mInline = false;
 
 	/**
-	 * The Communication Reader.
+	 * The address of the host to connect.
 	 */
-	private ConnectionReader mReader = null;
+	private InetAddress mInetAddr = null;
 
 	/**
-	 * The socket to the host.
+	 * The PGridP2P facility.
 	 */
-	private Socket mSocket = null;
+	private PGridP2P mPGridP2P = PGridP2P.sharedInstance();
 
 	/**
-	 * The Communication Writer.
+	 * The port of the host to connect.
 	 */
-	private ConnectionWriter mWriter = null;
+	private int mPort = -1;
 
 	/**
 	 * Creates a new worker to establish the connection.
@@ -97,140 +108,185 @@ class Connector implements Runnable {
 		mConn = conn;
 		mInetAddr = conn.getHost().getIP();
 		mPort = conn.getHost().getPort();
+		conn.setConnector(this);
 	}
 
 	/**
-	 * Connect with Gridella protocol.
+	 * Establishes the connection in the current thread and waits until the handshake has finished. The Connection
+	 * Manager is not informed, this is left to the caller.
 	 *
-	 * @return the GUID of the connected host.
+	 * @return the GUID of the connected host, or <code>null</code> if the connection failed.
 	 */
-	private pgrid.GUID handshakePGrid() {
-		try {
-			// send greeting
-			InitMessage msgInit = new InitMessage(mPGridP2P.getLocalHost().getGUID(), mPGridP2P.getLocalHost().getPort());
-			if (mPGridP2P.propertyInteger(Properties.COMPRESSION_LEVEL) != Deflater.NO_COMPRESSION)
-				msgInit.setHeaderField(InitMessage.HEADER_COMPRESSION, "yes");
-			else
-				msgInit.setHeaderField(InitMessage.HEADER_COMPRESSION, "no");
-			// Constants.LOGGER.finest("Init message:\n" + msgInit.toXMLString());
-			mWriter.write(msgInit.getBytes());
-
-			// receive response
-			String response = mReader.readGreeting();
-			if (response == null) {
-				mConn.setStatus(Connection.STATUS_ERROR, "Timeout");
-				mConnMgr.connectingFinished(mConn, null);
-				return null;
-			}
-			InitResponseMessage msg = new InitResponseMessage(response);
-			if (!msg.isValid()) {
-				mConn.setStatus(Connection.STATUS_ERROR, "Invalid");
-				mConnMgr.connectingFinished(mConn, null);
-				return null;
+	pgrid.GUID connectAndWait() {
+		synchronized (this) {
+			mInline = true;
+		}
+		run();
+		synchronized (this) {
+			while (!mFinished) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					break;
+				}
 			}
-			mConn.setCompression((msgInit.getHeaderField(InitMessage.HEADER_COMPRESSION).toLowerCase().equals("yes") ? true : false));
-			pgrid.GUID returnGUID = pgrid.GUID.getGUID(msg.getHeaderField(InitResponseMessage.HEADER_GUID));
-			return returnGUID;
-		} catch (IllegalArgumentException e) {
-			return null;
-		} catch (ConnectionClosedException e) {
-			mConn.setStatus(Connection.STATUS_ERROR, "Refused");
-			mConnMgr.connectingFinished(mConn, null);
-			return null;
-		} catch (ConnectionTimeoutException e) {
-			mConn.setStatus(Connection.STATUS_ERROR, "Timeout");
-			mConnMgr.connectingFinished(mConn, null);
-			return null;
-		} catch (IOException e) {
-			mConn.setStatus(Connection.STATUS_ERROR);
-			mConnMgr.connectingFinished(mConn, null);
-			return null;
+			return mGUID;
 		}
 	}
 
 	/**
-	 * Opens a socket to the remote host delivered by its name and port.
+	 * Sends the greeting to the remote host, once the channel is connected.
+	 */
+	private void connected() {
+		InitMessage msgInit = new InitMessage(mPGridP2P.getLocalHost().getGUID(), mPGridP2P.getLocalHost().getPort());
+		mCompression = (mPGridP2P.propertyInteger(Properties.COMPRESSION_LEVEL) != Deflater.NO_COMPRESSION);
+		if (mCompression)
+			msgInit.setHeaderField(InitMessage.HEADER_COMPRESSION, "yes");
+		else
+			msgInit.setHeaderField(InitMessage.HEADER_COMPRESSION, "no");
+		if (InitMessage.CODEC_BINARY.equalsIgnoreCase(mPGridP2P.propertyString(Properties.WIRE_PROTOCOL))) {
+			msgInit.setHeaderField(InitMessage.HEADER_CODEC, InitMessage.CODEC_BINARY);
+			if (mCompression && mPGridP2P.propertyBoolean(Properties.FAST_COMPRESSION))
+				msgInit.setHeaderField(InitMessage.HEADER_FAST_COMPRESSION, InitMessage.FAST_COMPRESSION_LZ4);
+		}
+		// Constants.LOGGER.finest("Init message:\n" + msgInit.toXMLString());
+		if (!mConn.getWriter().write(msgInit.getBytes()))
+			connectFailed("Refused");
+	}
+
+	/**
+	 * Invoked if the connection could not be established. Closes the channel and finishes the connection attempt.
 	 *
-	 * @return <code>true</code> if the socket was created successful.
+	 * @param msg the status message.
 	 */
-	private boolean openSocket() {
-		if (mPort < 0) {
-			mConn.setStatus(Connection.STATUS_ERROR, "Not available");
-			mConnMgr.connectingFinished(mConn, null);
-			return false;
+	void connectFailed(String msg) {
+		synchronized (this) {
+			if (mFinished)
+				return;
 		}
+		mConn.closeChannel();
+		mConn.setStatus(Connection.STATUS_ERROR, msg);
+		finished(null);
+	}
 
-		Thread timeoutThread = new Thread() {
+	/**
+	 * Finishes the connection attempt and informs the waiting thread or the Connection Manager.
+	 *
+	 * @param guid the GUID of the connected host, or <code>null</code> if the connection failed.
+	 */
+	private void finished(final pgrid.GUID guid) {
+		synchronized (this) {
+			if (mFinished)
+				return;
+			mFinished = true;
+			mGUID = guid;
+			if (mInline) {
+				notifyAll();
+				return;
+			}
+		}
+		mConnMgr.execute(new Runnable() {
 			public void run() {
-				try {
-					Thread.sleep(10000);
-				} catch (InterruptedException e) {
-					return;
-				}
-				if ((mSocket == null) && (mConn.getStatus() != Connection.STATUS_ERROR)) {
-					mConn.setStatus(Connection.STATUS_ERROR, "Timeout");
-					mConnMgr.connectingFinished(mConn, null);
-				}
+				mConnMgr.connectingFinished(mConn, guid);
 			}
-		};
-		timeoutThread.setDaemon(true);
-		timeoutThread.start();
+		});
+	}
+
+	/**
+	 * Finishes connecting the channel. Invoked by the selector thread if the channel is connectable.
+	 *
+	 * @param key the selection key of the channel.
+	 */
+	void finishConnect(SelectionKey key) {
 		try {
-			if (mInetAddr == null) {
-				mConn.getHost().resolve();
-				mInetAddr = mConn.getHost().getIP();
-				if (mInetAddr == null) {
-					mConn.setStatus(Connection.STATUS_ERROR, "Not available");
-					mConnMgr.connectingFinished(mConn, null);
-					return false;
-				}
-			}
-			mSocket = new Socket(mInetAddr, mPort);
-			mSocket.setSoTimeout(SO_TIMEOUT);
-			mSocket.setTcpNoDelay(true);
-			timeoutThread.interrupt();
-			if (mConn.getStatus() == Connection.STATUS_ERROR) return false;
-
-		} catch (SocketException e) {
-			if (timeoutThread.isAlive()) {
-				timeoutThread.interrupt();
-				mConn.setStatus(Connection.STATUS_ERROR, "Not available");
-				mConnMgr.connectingFinished(mConn, null);
-			}
-			return false;
+			if (!((SocketChannel)key.channel()).finishConnect())
+				return;
 		} catch (IOException e) {
-			if (timeoutThread.isAlive()) {
-				timeoutThread.interrupt();
-				mConn.setStatus(Connection.STATUS_ERROR, "Not available");
-				mConnMgr.connectingFinished(mConn, null);
-			}
-			return false;
+			connectFailed("Not available");
+			return;
 		}
-		mConn.setSocket(mSocket);
-		return true;
+		key.attach(mConn);
+		key.interestOps(SelectionKey.OP_READ);
+		mConn.touch();
+		connected();
 	}
 
 	/**
-	 * Starts the worker. The handshake between the hosts is done, and the
-	 * decided protocol is stored for the remote host.
+	 * Returns the connection.
+	 *
+	 * @return the connection.
 	 */
-	public void run() {
-		if (!openSocket())
+	Connection getConnection() {
+		return mConn;
+	}
+
+	/**
+	 * Invoked by the reader of the connection with the response to the greeting. The decided protocol is stored for
+	 * the connection.
+	 *
+	 * @param response the received response.
+	 */
+	void greetingReceived(String response) {
+		InitResponseMessage msg = new InitResponseMessage(response);
+		if (!msg.isValid()) {
+			connectFailed("Invalid");
 			return;
+		}
+		pgrid.GUID guid;
 		try {
-			mReader = new ConnectionReader(mSocket.getInputStream());
-			mWriter = new ConnectionWriter(mSocket.getOutputStream());
-		} catch (IOException e) {
-			mConn.setStatus(Connection.STATUS_ERROR);
-			mConnMgr.connectingFinished(mConn, null);
+			guid = pgrid.GUID.getGUID(msg.getHeaderField(InitResponseMessage.HEADER_GUID));
+		} catch (IllegalArgumentException e) {
+			connectFailed("Invalid");
 			return;
 		}
+		mConn.setCompression(mCompression);
+		// hosts not knowing the binary codec do not answer with a codec header and keep using XML
+		mConn.setBinary(InitMessage.CODEC_BINARY.equalsIgnoreCase(msg.getHeaderField(InitResponseMessage.HEADER_CODEC)));
+		mConn.setFastCompression(mConn.isBinary() && InitMessage.FAST_COMPRESSION_LZ4.equalsIgnoreCase(msg.getHeaderField(InitResponseMessage.HEADER_FAST_COMPRESSION)));
+		mConn.setStatus(Connection.STATUS_CONNECTED);
+		finished(guid);
+	}
 
-		pgrid.GUID guid;
-		if ((guid = handshakePGrid()) == null)
+	/**
+	 * Tests if establishing the connection has finished.
+	 *
+	 * @return <code>true</code> if establishing the connection has finished.
+	 */
+	synchronized boolean isFinished() {
+		return mFinished;
+	}
+
+	/**
+	 * Starts the worker. The host is resolved if necessary, and a non-blocking channel is opened to it.
+	 */
+	public void run() {
+		if (mPort < 0) {
+			connectFailed("Not available");
 			return;
-		mConn.setStatus(Connection.STATUS_CONNECTED);
-		mConnMgr.connectingFinished(mConn, guid);
+		}
+		try {
+			if (mInetAddr == null) {
+				mConn.getHost().resolve();
+				mInetAddr = mConn.getHost().getIP();
+				if (mInetAddr == null) {
+					connectFailed("Not available");
+					return;
+				}
+			}
+			SocketChannel channel = SocketChannel.open();
+			mConn.setChannel(channel);
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			mConn.setTimeout(SO_TIMEOUT);
+			if (channel.connect(new InetSocketAddress(mInetAddr, mPort))) {
+				mConnMgr.register(mConn, SelectionKey.OP_READ, mConn);
+				connected();
+			} else {
+				mConnMgr.register(mConn, SelectionKey.OP_CONNECT, this);
+			}
+		} catch (IOException e) {
+			connectFailed("Not available");
+		}
 	}
 
 }
\ No newline at end of file
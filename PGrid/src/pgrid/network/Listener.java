@@ -29,22 +29,19 @@ import pgrid.interfaces.basic.PGridP2P;
 
 import java.io.IOException;
 import java.net.BindException;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.logging.Level;
 
 /**
  * The communication listener accepts new incoming connections from remote
- * hosts.
+ * hosts. The listening socket is served by a {@link ConnectionSelector}.
  *
  * @author @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
  * @version 1.0.0
  */
-class Listener implements Runnable {
-
-	/**
-	 * The listen flag.
-	 */
-	private boolean listening = true;
+class Listener {
 
 	/**
 	 * The PGridP2P facility.
@@ -54,7 +51,7 @@ class Listener implements Runnable {
 	/**
 	 * The socket to listen.
 	 */
-	private ServerSocket mSocket;
+	private ServerSocketChannel mSocket;
 
 	/**
 	 * Creates a new listener.
@@ -63,41 +60,46 @@ class Listener implements Runnable {
 	}
 
 	/**
-	 * Starts the listener. A new socket is created at a definied port (config
-	 * facility).
+	 * Opens a non-blocking socket at a definied port (config facility).
+	 *
+	 * @return the listening socket.
 	 */
-	public void run() {
+	ServerSocketChannel open() {
 		int port = mPGridP2P.getLocalHost().getPort();
-		while (true) {
-			try {
-				mSocket = new ServerSocket(port);
-			} catch (BindException e) {
-				Constants.LOGGER.warning("Port " + String.valueOf(mPGridP2P.getLocalHost().getPort()) + " is already used by another application!");
-				System.exit(-1);
-				continue;
-			} catch (IOException e) {
-				Constants.LOGGER.log(Level.SEVERE, null, e);
-				System.exit(-1);
-			}
-			break;
+		try {
+			mSocket = ServerSocketChannel.open();
+			mSocket.socket().bind(new InetSocketAddress(port));
+			mSocket.configureBlocking(false);
+		} catch (BindException e) {
+			Constants.LOGGER.warning("Port " + String.valueOf(mPGridP2P.getLocalHost().getPort()) + " is already used by another application!");
+			System.exit(-1);
+		} catch (IOException e) {
+			Constants.LOGGER.log(Level.SEVERE, null, e);
+			System.exit(-1);
 		}
-		
-		ConnectionManager connMgr = ConnectionManager.sharedInstance();
 		Constants.LOGGER.info("start listening for incoming connections at port " + String.valueOf(mPGridP2P.getLocalHost().getPort()) + " ...");
-		while (listening) {
+		return mSocket;
+	}
+
+	/**
+	 * Accepts all pending incoming connections. Invoked by the selector if the listening socket is ready.
+	 *
+	 * @param socket the listening socket.
+	 */
+	void acceptConnections(ServerSocketChannel socket) {
+		ConnectionManager connMgr = ConnectionManager.sharedInstance();
+		while (true) {
+			SocketChannel channel;
 			try {
-				connMgr.accept(mSocket.accept());
+				channel = socket.accept();
 			} catch (IOException e) {
 				Constants.LOGGER.log(Level.WARNING, null, e);
-				listening = false;
+				return;
 			}
-		}
-		try {
-			mSocket.close();
-		} catch (IOException e) {
-			Constants.LOGGER.log(Level.SEVERE, null, e);
-			System.exit(-1);
+			if (channel == null)
+				return;
+			connMgr.accept(channel);
 		}
 	}
 
-}
\ No newline at end of file
+}
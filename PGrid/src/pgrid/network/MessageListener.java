@@ -92,6 +92,20 @@ public interface MessageListener {
 	 */
 	public void newMessage(QueryReplyMessage queryReply);
 
+	/**
+	 * Invoked when a new query batch message was received.
+	 *
+	 * @param queryBatch the query batch message.
+	 */
+	public void newMessage(QueryBatchMessage queryBatch);
+
+	/**
+	 * Invoked when a new query batch reply message was received.
+	 *
+	 * @param queryBatchReply the query batch reply message.
+	 */
+	public void newMessage(QueryBatchReplyMessage queryBatchReply);
+
 	/**
 	 * Invoked when a new search path message was received.
 	 *
@@ -32,6 +32,7 @@ import pgrid.interfaces.basic.PGridP2P;
 import pgrid.network.protocol.*;
 import pgrid.network.router.AcknowledgmentWaiter;
 import pgrid.network.router.MessageWaiter;
+import pgrid.network.router.QueryBatchReplyWaiter;
 import pgrid.network.router.QueryReplyWaiter;
 import pgrid.network.router.PeerLookupReplyWaiter;
 
@@ -201,6 +202,28 @@ public class MessageManager implements MessageListener {
 		waiter.newQueryReply(queryReply);
 	}
 
+	/**
+	 * Invoked when a new query batch message was received.
+	 *
+	 * @param queryBatch the query batch message.
+	 */
+	public void newMessage(QueryBatchMessage queryBatch) {
+		mSearchManager.remoteSearch(queryBatch, queryBatch.getHeader().getHost());
+	}
+
+	/**
+	 * Invoked when a new query batch reply message was received.
+	 *
+	 * @param queryBatchReply the query batch reply message.
+	 */
+	synchronized public void newMessage(QueryBatchReplyMessage queryBatchReply) {
+		QueryBatchReplyWaiter waiter = (QueryBatchReplyWaiter)mWaiters.get(queryBatchReply.getGUID());
+		if (waiter == null)
+			Constants.LOGGER.fine("No waiter found for query batch reply (" + queryBatchReply.getGUID() + ")!");
+		else
+			waiter.newQueryBatchReply(queryBatchReply);
+	}
+
 	/**
 	 * @see pgrid.network.MessageListener
 	 */
@@ -362,6 +385,26 @@ public class MessageManager implements MessageListener {
 		col.add(Thread.currentThread());
 	}
 
+	/**
+	 * Registers a waiter for the responses with the given GUID, which are not replies to a message sent by the local
+	 * peer.
+	 *
+	 * @param guid   Unique identifier representing the responses
+	 * @param waiter the waiter to notify
+	 */
+	public void addWaiter(GUID guid, MessageWaiter waiter) {
+		mWaiters.put(guid, waiter);
+	}
+
+	/**
+	 * Removes the waiter for the responses with the given GUID.
+	 *
+	 * @param guid Unique identifier representing the responses
+	 */
+	public void removeWaiter(GUID guid) {
+		mWaiters.remove(guid);
+	}
+
 	/**
 	 * Return a waiting thread
 	 *
@@ -40,23 +40,102 @@ import javax.xml.parsers.ParserConfigurationException;
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.util.logging.Level;
 import java.util.zip.DataFormatException;
+import java.util.LinkedList;
 import java.util.Vector;
 import java.util.Iterator;
 
 /**
  * This class reads a P-Grid messages from the Input Stream.
+ * <p/>
+ * The selector of the connection reads the available bytes of the non-blocking channel and splits them into the
+ * greeting and complete messages. Messages are queued and handed to a reader thread of the Connection Manager,
+ * which parses them and calls the message listener. Only one thread handles the messages of a connection at a time,
+ * so they are delivered in the order they were received.
  *
  * @author @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
  * @version 1.0.0
  */
 public class PGridReader implements Runnable {
 
+	/**
+	 * The maximum length of a greeting or of a line of a message header.
+	 */
+	private static final int MAX_LINE_LENGTH = 1024 * 64;
+
+	/**
+	 * The maximum number of queued messages before reading from the channel is suspended.
+	 */
+	private static final int MAX_QUEUED_MESSAGES = 256;
+
+	/**
+	 * The reader waits for the greeting.
+	 */
+	private static final int STATE_GREETING = 0;
+
+	/**
+	 * The reader waits for the handshake to finish.
+	 */
+	private static final int STATE_HANDSHAKE = 1;
+
+	/**
+	 * The reader reads messages.
+	 */
+	private static final int STATE_MESSAGES = 2;
+
 	/**
 	 *  A vector of PGridWriterListener. Use for testing and debuging purpose
 	 */
 	static private Vector mListener = new Vector();
 
+	/**
+	 * The buffer holding received bytes not yet processed.
+	 */
+	private ByteBuffer mBuffer = ByteBuffer.allocate(1024 * 4);
+
+	/**
+	 * The leading part of the header of the current XML message, if it has been read already.
+	 */
+	private MessageHeader mHeader = null;
+
+	/**
+	 * The length of the leading part of the header of the current XML message.
+	 */
+	private int mHeaderSize = 0;
+
+	/**
+	 * The received messages not yet handled.
+	 */
+	private LinkedList mInbox = new LinkedList();
+
+	/**
+	 * The number of bytes needed to complete the current message.
+	 */
+	private int mNeeded = 0;
+
+	/**
+	 * If reading from the channel is suspended because too many messages are queued.
+	 */
+	private boolean mPaused = false;
+
+	/**
+	 * If a reader thread handles the queued messages.
+	 */
+	private boolean mScheduled = false;
+
+	/**
+	 * If a newline left over from the greeting has to be skipped. Greetings end with an additional empty line.
+	 */
+	private boolean mSkipNewline = true;
+
+	/**
+	 * The state of the reader.
+	 */
+	private int mState = STATE_GREETING;
+
 	/**
 	 * The Communication Manager.
 	 */
@@ -73,31 +152,15 @@ public class PGridReader implements Runnable {
 	private MessageListener mMsgListener = null;
 
 	/**
-	 * The SAX Parser.
+	 * The SAX Parser of this reader.
 	 */
-	private static XMLReader mParser = null;
+	private XMLReader mParser = null;
 
 	/**
 	 * The PGridP2P facility.
 	 */
 	private PGridP2P mPGridP2P = PGridP2P.sharedInstance();
 
-	/**
-	 * The Communication reader.
-	 */
-	private ConnectionReader mReader = null;
-
-	static {
-		try {
-			SAXParserFactory spf = SAXParserFactory.newInstance();
-			mParser = spf.newSAXParser().getXMLReader();//XMLReaderFactory.createXMLReader();
-		} catch (SAXException e) {
-			e.printStackTrace();
-		} catch (ParserConfigurationException e) {
-			e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
-		}
-	}
-
 	/**
 	 * Register a P-Grid Reader listener. This listener will be called just after
 	 * the processing of the message.
@@ -121,46 +184,292 @@ public class PGridReader implements Runnable {
 	}
 
 	/**
-	 * Reads a PGridP2P message from the Input Stream and calls the Message Handler.
+	 * Reads the available bytes from the channel. Invoked by the selector thread if the channel is readable.
+	 */
+	void read() {
+		int count;
+		try {
+			if (!mBuffer.hasRemaining())
+				grow(mBuffer.capacity() * 2);
+			count = mConn.getChannel().read(mBuffer);
+		} catch (IOException e) {
+			count = -1;
+		}
+		if (count < 0) {
+			failed("Closed");
+			return;
+		}
+		if (count == 0)
+			return;
+		mConn.touch();
+		process();
+	}
+
+	/**
+	 * Invoked if the connection was closed or the remote host sent invalid data.
+	 *
+	 * @param msg the status message.
+	 */
+	private void failed(String msg) {
+		mConn.setStatus(Connection.STATUS_ERROR, msg);
+		mConnMgr.socketClosed(mConn);
+	}
+
+	/**
+	 * Enlarges the buffer to the given capacity.
+	 *
+	 * @param capacity the new capacity.
+	 */
+	private void grow(int capacity) {
+		ByteBuffer buffer = ByteBuffer.allocate(capacity);
+		mBuffer.flip();
+		buffer.put(mBuffer);
+		mBuffer = buffer;
+	}
+
+	/**
+	 * Returns the position of the next newline.
 	 *
-	 * @throws ConnectionClosedException  the connection was closed by the remote host.
-	 * @throws ConnectionTimeoutException the connection has timed out.
+	 * @param data the data.
+	 * @param pos  the position to start.
+	 * @param end  the end of the data.
+	 * @return the position of the newline, or <code>-1</code> if there is none.
+	 */
+	private static int indexOfNewline(byte[] data, int pos, int end) {
+		for (int i = pos; i < end; i++)
+			if (data[i] == (byte)'\n')
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Splits the buffered bytes into the greeting and messages, as long as complete ones are available.
 	 */
-	private void readMsg() throws ConnectionClosedException, ConnectionTimeoutException {
-		// read message header (leading part)
-		StringBuffer buffer = new StringBuffer();
-		buffer.append(mReader.readLine());
-		buffer.append(mReader.readLine());
-		buffer.append(MessageHeader.CLOSING_TAG);
+	private void process() {
+		byte[] data = mBuffer.array();
+		int end = mBuffer.position();
+		int pos = 0;
+		mNeeded = 0;
+		while ((mState != STATE_HANDSHAKE) && (pos < end)) {
+			int len;
+			if (mState == STATE_GREETING) {
+				len = readGreeting(data, pos, end);
+			} else if (mSkipNewline) {
+				mSkipNewline = false;
+				len = (data[pos] == (byte)'\n' ? 1 : 0);
+				if (len == 0)
+					continue;
+			} else if (mConn.isBinary()) {
+				len = readBinaryFrame(data, pos, end);
+			} else {
+				len = readXMLFrame(data, pos, end);
+			}
+			if (len < 0) {
+				failed("Invalid");
+				return;
+			}
+			if (len == 0)
+				break;
+			pos += len;
+		}
+		// keep the remaining bytes
+		System.arraycopy(data, pos, data, 0, end - pos);
+		mBuffer.position(end - pos);
+		if (mNeeded > mBuffer.capacity())
+			grow(mNeeded);
+	}
 
-		MessageHeader msgHeader = new MessageHeader();
+	/**
+	 * Reads the greeting, or the response to it, and hands it to the {@link Connector} or a new {@link Acceptor}.
+	 * Reading is suspended until the handshake has finished.
+	 *
+	 * @param data the data.
+	 * @param pos  the position to start.
+	 * @param end  the end of the data.
+	 * @return the length of the greeting, <code>0</code> if it is incomplete, or <code>-1</code> if it is invalid.
+	 */
+	private int readGreeting(byte[] data, int pos, int end) {
+		int i = pos;
+		int len = 0;
+		while (true) {
+			int newline = indexOfNewline(data, i, end);
+			if (newline < 0)
+				return (end - pos > MAX_LINE_LENGTH ? -1 : 0);
+			// the greeting ends with an empty line
+			if (new String(data, i, newline - i).trim().length() == 0) {
+				len = newline + 1 - pos;
+				break;
+			}
+			i = newline + 1;
+		}
+		String greeting;
 		try {
-			synchronized (mParser) {
-				mParser.setContentHandler(msgHeader);
-				mParser.parse(new InputSource(new StringReader(buffer.toString())));
+			greeting = new String(data, pos, len, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			return -1;
+		}
+		mState = STATE_HANDSHAKE;
+		mConn.getSelector().setInterest(mConn, SelectionKey.OP_READ, false);
+		if (mConn.getConnector() != null)
+			mConn.getConnector().greetingReceived(greeting);
+		else
+			mConnMgr.execute(new Acceptor(mConn, greeting));
+		return len;
+	}
+
+	/**
+	 * Reads a binary frame.
+	 *
+	 * @param data the data.
+	 * @param pos  the position to start.
+	 * @param end  the end of the data.
+	 * @return the length of the frame, <code>0</code> if it is incomplete, or <code>-1</code> if it is invalid.
+	 */
+	private int readBinaryFrame(byte[] data, int pos, int end) {
+		// frame length as variable length integer
+		int len = 0;
+		int i = pos;
+		for (int shift = 0; ; shift += 7) {
+			if (shift >= 35)
+				return -1;
+			if (i == end)
+				return 0;
+			int b = data[i++] & 0xFF;
+			len |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				break;
+		}
+		if ((len < 1) || (len > BinaryCodec.MAX_FRAME_LENGTH))
+			return -1;
+		if (end - i < len) {
+			mNeeded = i - pos + len;
+			return 0;
+		}
+		byte[] frame = new byte[len];
+		System.arraycopy(data, i, frame, 0, len);
+		enqueue(new Frame(null, frame, 0));
+		return i - pos + len;
+	}
+
+	/**
+	 * Reads a XML message, consisting of the leading part of the header, the content and the closing tag.
+	 *
+	 * @param data the data.
+	 * @param pos  the position to start.
+	 * @param end  the end of the data.
+	 * @return the length of the message, <code>0</code> if it is incomplete, or <code>-1</code> if it is invalid.
+	 */
+	private int readXMLFrame(byte[] data, int pos, int end) {
+		if (mHeader == null) {
+			// read message header (leading part)
+			int newline1 = indexOfNewline(data, pos, end);
+			int newline2 = (newline1 < 0 ? -1 : indexOfNewline(data, newline1 + 1, end));
+			if (newline2 < 0)
+				return (end - pos > MAX_LINE_LENGTH * 2 ? -1 : 0);
+			MessageHeader msgHeader = new MessageHeader();
+			try {
+				String headerElement = new String(data, pos, newline1 - pos, "UTF-8");
+				String hostElement = new String(data, newline1 + 1, newline2 - newline1 - 1, "UTF-8");
+				if (!msgHeader.parseLeadingPart(headerElement, hostElement)) {
+					// skip the line and try to synchronize again with the next one
+					mConn.incDroppedCount();
+					return newline1 + 1 - pos;
+				}
+			} catch (UnsupportedEncodingException e) {
+				return -1;
 			}
-		} catch (SAXException e) {
-			mConn.incDroppedCount();
-			return;
-		} catch (IOException e) {
+			if ((msgHeader.getContentLen() < 0) || (msgHeader.getContentLen() > BinaryCodec.MAX_FRAME_LENGTH))
+				return -1;
+			mHeader = msgHeader;
+			mHeaderSize = newline2 + 1 - pos;
+		}
+
+		// message content and header (ending part)
+		int contentLen = mHeader.getContentLen();
+		int contentEnd = pos + mHeaderSize + contentLen;
+		if (end < contentEnd) {
+			mNeeded = mHeaderSize + contentLen + MessageHeader.CLOSING_TAG.length() + 1;
+			return 0;
+		}
+		int newline = indexOfNewline(data, contentEnd, end);
+		if (newline < 0)
+			return (end - contentEnd > MAX_LINE_LENGTH ? -1 : 0);
+		MessageHeader msgHeader = mHeader;
+		int headerSize = mHeaderSize;
+		mHeader = null;
+		mHeaderSize = 0;
+		if (!new String(data, contentEnd, newline - contentEnd).equals(MessageHeader.CLOSING_TAG)) {
 			mConn.incDroppedCount();
-			return;
+		} else {
+			byte[] content = new byte[contentLen];
+			System.arraycopy(data, pos + headerSize, content, 0, contentLen);
+			enqueue(new Frame(msgHeader, content, headerSize + newline + 1 - contentEnd));
 		}
-		mConn.incReceivedBytes(msgHeader.getSize());
+		return newline + 1 - pos;
+	}
 
+	/**
+	 * Queues a received message and schedules a reader thread to handle it.
+	 *
+	 * @param frame the message.
+	 */
+	private void enqueue(Frame frame) {
+		synchronized (mInbox) {
+			mInbox.add(frame);
+			if ((mInbox.size() >= MAX_QUEUED_MESSAGES) && (!mPaused)) {
+				mPaused = true;
+				mConn.getSelector().setInterest(mConn, SelectionKey.OP_READ, false);
+			}
+			if (mScheduled)
+				return;
+			mScheduled = true;
+		}
+		mConnMgr.dispatch(this);
+	}
+
+	/**
+	 * Skips reading the greeting, because it was received already by the caller. Reading is suspended until the
+	 * handshake has finished.
+	 */
+	void skipGreeting() {
+		mState = STATE_HANDSHAKE;
+	}
+
+	/**
+	 * Starts reading messages once the handshake has finished.
+	 */
+	void start() {
+		mConn.getSelector().execute(new Runnable() {
+			public void run() {
+				if (mState != STATE_HANDSHAKE)
+					return;
+				mState = STATE_MESSAGES;
+				mConn.getSelector().setInterest(mConn, SelectionKey.OP_READ, true);
+				process();
+			}
+		});
+	}
+
+	/**
+	 * Parses a PGridP2P message and calls the Message Handler.
+	 *
+	 * @param msgHeader  the leading part of the message header.
+	 * @param msgContent the message content.
+	 * @param headerSize the size of the message header.
+	 */
+	private void readMsg(MessageHeader msgHeader, byte[] msgContent, int headerSize) {
 		if (!msgHeader.isValid()) {
 			mConn.incDroppedCount();
 			return;
 		}
+		mConn.incReceivedBytes(headerSize);
 
-		// read message content
-		byte[] msgContent = mReader.readBytes(msgHeader.getContentLen());
 		StringBuffer msg = new StringBuffer(msgContent.length);
 		// decompress the bytes if necessary
 		if (mConn.isCompressed()) {
 			byte[] byteArray;
 			try {
-				byteArray = Compression.decompress(msgContent, 0, msgContent.length);
+				byteArray = Compression.decompress(msgContent, 0, msgContent.length, BinaryCodec.MAX_FRAME_LENGTH);
 			} catch (DataFormatException e) {
 				e.printStackTrace();
 				return;
@@ -180,13 +489,6 @@ public class PGridReader implements Runnable {
 		}
 		mConn.incReceivedBytes(msgContent.length);
 
-		// read message header (ending part)
-		String endingHeader = mReader.readLine();
-		if (!endingHeader.equals(MessageHeader.CLOSING_TAG)) {
-			mConn.incDroppedCount();
-			return;
-		}
-
 		String msgString = msg.toString().trim();
 		if (msgString.length() == 0) {
 			return;
@@ -194,128 +496,138 @@ public class PGridReader implements Runnable {
 
 		PGridMessage recvMsg = null;
 		try {
-			synchronized (mParser) {
-				// run the garbage collector if not enough free memory
-				//if (Runtime.getRuntime().freeMemory() < msgString.length())
-				// System.gc();
-				if ((msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + BootstrapMessage.XML_BOOTSTRAP + XMLizable.XML_ELEMENT_END_CLOSE)) ||
-						(msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + BootstrapMessage.XML_BOOTSTRAP + XMLizable.XML_ELEMENT_CLOSE))) {
-					recvMsg = new BootstrapMessage(msgHeader);
-					mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
-					mParser.setContentHandler((BootstrapMessage)recvMsg);
-					mParser.parse(new InputSource(new StringReader(msgString)));
-					mMsgListener.newMessage((BootstrapMessage)recvMsg);
-				} else if ((msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + BootstrapReplyMessage.XML_BOOTSTRAP_REPLY + XMLizable.XML_ELEMENT_CLOSE)) ||
-					(msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + BootstrapReplyMessage.XML_BOOTSTRAP_REPLY + XMLizable.XML_SPACE))) {
-					recvMsg = new BootstrapReplyMessage(msgHeader);
-					mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
-					mParser.setContentHandler((BootstrapReplyMessage)recvMsg);
-					mParser.parse(new InputSource(new StringReader(msgString)));
-					mMsgListener.newMessage((BootstrapReplyMessage)recvMsg);
-				} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + ExchangeInvitationMessage.XML_EXCHANGE_INVITATION + XMLizable.XML_SPACE)) {
-					recvMsg = new ExchangeInvitationMessage(msgHeader);
-					mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
-					mParser.setContentHandler((ExchangeInvitationMessage)recvMsg);
-					mParser.parse(new InputSource(new StringReader(msgString)));
-					mConn.getHost().setPort(recvMsg.getHeader().getHost().getPort());
-					mMsgListener.newMessage((ExchangeInvitationMessage)recvMsg);
-				} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + ExchangeMessage.XML_EXCHANGE + XMLizable.XML_SPACE)) {
-					recvMsg = new ExchangeMessage(msgHeader);
-					mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
-					mParser.setContentHandler((ExchangeMessage)recvMsg);
-					mParser.parse(new InputSource(new StringReader(msgString)));
-					mConn.getHost().setPort(recvMsg.getHeader().getHost().getPort());
-					mMsgListener.newMessage((ExchangeMessage)recvMsg);
-				} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + ExchangeReplyMessage.XML_EXCHANGE_REPLY + XMLizable.XML_SPACE)) {
-					recvMsg = new ExchangeReplyMessage(msgHeader);
-					mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
-					mParser.setContentHandler((ExchangeReplyMessage)recvMsg);
-					mParser.parse(new InputSource(new StringReader(msgString)));
-					mMsgListener.newMessage((ExchangeReplyMessage)recvMsg);
-				} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + QueryMessage.XML_QUERY + XMLizable.XML_SPACE)) {
-					recvMsg = new QueryMessage(msgHeader);
-					mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
-					mParser.setContentHandler((QueryMessage)recvMsg);
-					mParser.parse(new InputSource(new StringReader(msgString)));
-					mMsgListener.newMessage((QueryMessage)recvMsg);
-				} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + RangeQueryMessage.XML_QUERY + XMLizable.XML_SPACE)) {
-					recvMsg = new RangeQueryMessage(msgHeader);
-					mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
-					mParser.setContentHandler((RangeQueryMessage)recvMsg);
-					mParser.parse(new InputSource(new StringReader(msgString)));
-					// todo Move the hops count. It has nothing to do here!!!
-					//add 1 to the number of Hops
-					((RangeQueryMessage)recvMsg).incHops();
-					mMsgListener.newMessage((RangeQueryMessage)recvMsg);
-				} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + QueryReplyMessage.XML_QUERY_REPLY + XMLizable.XML_SPACE)) {
-					recvMsg = new QueryReplyMessage(msgHeader);
-					mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
-					mParser.setContentHandler((QueryReplyMessage)recvMsg);
-					mParser.parse(new InputSource(new StringReader(msgString)));
-					mMsgListener.newMessage((QueryReplyMessage)recvMsg);
-				} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + SearchPathMessage.XML_SEARCH_PATH + XMLizable.XML_SPACE)) {
-					recvMsg = new SearchPathMessage(msgHeader);
-					mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
-					mParser.setContentHandler((SearchPathMessage)recvMsg);
-					mParser.parse(new InputSource(new StringReader(msgString)));
-					mMsgListener.newMessage((SearchPathMessage)recvMsg);
-				} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + SearchPathReplyMessage.XML_SEARCH_PATH_REPLY + XMLizable.XML_SPACE)) {
-					recvMsg = new SearchPathReplyMessage(msgHeader);
-					mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
-					mParser.setContentHandler((SearchPathReplyMessage)recvMsg);
-					mParser.parse(new InputSource(new StringReader(msgString)));
-					mMsgListener.newMessage((SearchPathReplyMessage)recvMsg);
-				} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + ACKMessage.XML_ACK + XMLizable.XML_SPACE)) {
-					recvMsg = new ACKMessage(msgHeader);
-					mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
-					mParser.setContentHandler((ACKMessage)recvMsg);
-					mParser.parse(new InputSource(new StringReader(msgString)));
-					mMsgListener.newMessage((ACKMessage)recvMsg);
-				} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + PeerLookupMessage.XML_PEERLOOKUP + XMLizable.XML_SPACE)) {
-					recvMsg = new PeerLookupMessage(msgHeader);
-					mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
-					mParser.setContentHandler((PeerLookupMessage)recvMsg);
-					mParser.parse(new InputSource(new StringReader(msgString)));
-					//add 1 to the number of Hops
-					((PeerLookupMessage)recvMsg).incHops();
-					mMsgListener.newMessage((PeerLookupMessage)recvMsg);
-				} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + PeerLookupReplyMessage.XML_PEERLOOKUP + XMLizable.XML_SPACE)) {
-					recvMsg = new PeerLookupReplyMessage(msgHeader);
-					mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
-					mParser.setContentHandler((PeerLookupReplyMessage)recvMsg);
-					mParser.parse(new InputSource(new StringReader(msgString)));
-					mMsgListener.newMessage((PeerLookupReplyMessage)recvMsg);
-				} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + DataModifierMessage.XML_DATAMODIFIER + XMLizable.XML_SPACE)) {
-					recvMsg = new DataModifierMessage(msgHeader);
-					mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
-					mParser.setContentHandler((DataModifierMessage)recvMsg);
-					mParser.parse(new InputSource(new StringReader(msgString)));
-					mMsgListener.newMessage((DataModifierMessage)recvMsg);
-				} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + GenericMessage.XML_GENERIC + XMLizable.XML_SPACE)) {
-					recvMsg = new GenericMessage(msgHeader);
-					mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
-					mParser.setContentHandler((GenericMessage)recvMsg);
-					mParser.parse(new InputSource(new StringReader(msgString)));
-					mMsgListener.newMessage((GenericMessage)recvMsg);
-				} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + ReplicateMessage.XML_REPLICATE + XMLizable.XML_SPACE)) {
-					recvMsg = new ReplicateMessage(msgHeader);
-					mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
-					mParser.setContentHandler((ReplicateMessage)recvMsg);
-					mParser.parse(new InputSource(new StringReader(msgString)));
-					mMsgListener.newMessage((ReplicateMessage)recvMsg);
-				} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + ChallengeMessage.XML_CHALLENGE + XMLizable.XML_SPACE)) {
-					recvMsg = new ChallengeMessage(msgHeader);
-					mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
-					mParser.setContentHandler((ChallengeMessage)recvMsg);
-					mParser.parse(new InputSource(new StringReader(msgString)));
-					mMsgListener.newMessage((ChallengeMessage)recvMsg);
-				} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + ChallengeReplyMessage.XML_CHALLENGE_REPLY + XMLizable.XML_SPACE)) {
-					recvMsg = new ChallengeReplyMessage(msgHeader);
-					mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
-					mParser.setContentHandler((ChallengeReplyMessage)recvMsg);
-					mParser.parse(new InputSource(new StringReader(msgString)));
-					mMsgListener.newMessage((ChallengeReplyMessage)recvMsg);
-				}
+			// run the garbage collector if not enough free memory
+			//if (Runtime.getRuntime().freeMemory() < msgString.length())
+			// System.gc();
+			if ((msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + BootstrapMessage.XML_BOOTSTRAP + XMLizable.XML_ELEMENT_END_CLOSE)) ||
+					(msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + BootstrapMessage.XML_BOOTSTRAP + XMLizable.XML_ELEMENT_CLOSE))) {
+				recvMsg = new BootstrapMessage(msgHeader);
+				mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
+				mParser.setContentHandler((BootstrapMessage)recvMsg);
+				mParser.parse(new InputSource(new StringReader(msgString)));
+				mMsgListener.newMessage((BootstrapMessage)recvMsg);
+			} else if ((msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + BootstrapReplyMessage.XML_BOOTSTRAP_REPLY + XMLizable.XML_ELEMENT_CLOSE)) ||
+				(msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + BootstrapReplyMessage.XML_BOOTSTRAP_REPLY + XMLizable.XML_SPACE))) {
+				recvMsg = new BootstrapReplyMessage(msgHeader);
+				mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
+				mParser.setContentHandler((BootstrapReplyMessage)recvMsg);
+				mParser.parse(new InputSource(new StringReader(msgString)));
+				mMsgListener.newMessage((BootstrapReplyMessage)recvMsg);
+			} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + ExchangeInvitationMessage.XML_EXCHANGE_INVITATION + XMLizable.XML_SPACE)) {
+				recvMsg = new ExchangeInvitationMessage(msgHeader);
+				mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
+				mParser.setContentHandler((ExchangeInvitationMessage)recvMsg);
+				mParser.parse(new InputSource(new StringReader(msgString)));
+				mConn.getHost().setPort(recvMsg.getHeader().getHost().getPort());
+				mMsgListener.newMessage((ExchangeInvitationMessage)recvMsg);
+			} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + ExchangeMessage.XML_EXCHANGE + XMLizable.XML_SPACE)) {
+				recvMsg = new ExchangeMessage(msgHeader);
+				mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
+				mParser.setContentHandler((ExchangeMessage)recvMsg);
+				mParser.parse(new InputSource(new StringReader(msgString)));
+				mConn.getHost().setPort(recvMsg.getHeader().getHost().getPort());
+				mMsgListener.newMessage((ExchangeMessage)recvMsg);
+			} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + ExchangeReplyMessage.XML_EXCHANGE_REPLY + XMLizable.XML_SPACE)) {
+				recvMsg = new ExchangeReplyMessage(msgHeader);
+				mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
+				mParser.setContentHandler((ExchangeReplyMessage)recvMsg);
+				mParser.parse(new InputSource(new StringReader(msgString)));
+				mMsgListener.newMessage((ExchangeReplyMessage)recvMsg);
+			} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + QueryMessage.XML_QUERY + XMLizable.XML_SPACE)) {
+				recvMsg = new QueryMessage(msgHeader);
+				mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
+				mParser.setContentHandler((QueryMessage)recvMsg);
+				mParser.parse(new InputSource(new StringReader(msgString)));
+				mMsgListener.newMessage((QueryMessage)recvMsg);
+			} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + RangeQueryMessage.XML_QUERY + XMLizable.XML_SPACE)) {
+				recvMsg = new RangeQueryMessage(msgHeader);
+				mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
+				mParser.setContentHandler((RangeQueryMessage)recvMsg);
+				mParser.parse(new InputSource(new StringReader(msgString)));
+				// todo Move the hops count. It has nothing to do here!!!
+				//add 1 to the number of Hops
+				((RangeQueryMessage)recvMsg).incHops();
+				mMsgListener.newMessage((RangeQueryMessage)recvMsg);
+			} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + QueryReplyMessage.XML_QUERY_REPLY + XMLizable.XML_SPACE)) {
+				recvMsg = new QueryReplyMessage(msgHeader);
+				mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
+				mParser.setContentHandler((QueryReplyMessage)recvMsg);
+				mParser.parse(new InputSource(new StringReader(msgString)));
+				mMsgListener.newMessage((QueryReplyMessage)recvMsg);
+			} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + QueryBatchMessage.XML_QUERY_BATCH + XMLizable.XML_SPACE)) {
+				recvMsg = new QueryBatchMessage(msgHeader);
+				mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
+				mParser.setContentHandler((QueryBatchMessage)recvMsg);
+				mParser.parse(new InputSource(new StringReader(msgString)));
+				mMsgListener.newMessage((QueryBatchMessage)recvMsg);
+			} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + QueryBatchReplyMessage.XML_QUERY_BATCH_REPLY + XMLizable.XML_SPACE)) {
+				recvMsg = new QueryBatchReplyMessage(msgHeader);
+				mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
+				mParser.setContentHandler((QueryBatchReplyMessage)recvMsg);
+				mParser.parse(new InputSource(new StringReader(msgString)));
+				mMsgListener.newMessage((QueryBatchReplyMessage)recvMsg);
+			} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + SearchPathMessage.XML_SEARCH_PATH + XMLizable.XML_SPACE)) {
+				recvMsg = new SearchPathMessage(msgHeader);
+				mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
+				mParser.setContentHandler((SearchPathMessage)recvMsg);
+				mParser.parse(new InputSource(new StringReader(msgString)));
+				mMsgListener.newMessage((SearchPathMessage)recvMsg);
+			} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + SearchPathReplyMessage.XML_SEARCH_PATH_REPLY + XMLizable.XML_SPACE)) {
+				recvMsg = new SearchPathReplyMessage(msgHeader);
+				mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
+				mParser.setContentHandler((SearchPathReplyMessage)recvMsg);
+				mParser.parse(new InputSource(new StringReader(msgString)));
+				mMsgListener.newMessage((SearchPathReplyMessage)recvMsg);
+			} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + ACKMessage.XML_ACK + XMLizable.XML_SPACE)) {
+				recvMsg = new ACKMessage(msgHeader);
+				mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
+				mParser.setContentHandler((ACKMessage)recvMsg);
+				mParser.parse(new InputSource(new StringReader(msgString)));
+				mMsgListener.newMessage((ACKMessage)recvMsg);
+			} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + PeerLookupMessage.XML_PEERLOOKUP + XMLizable.XML_SPACE)) {
+				recvMsg = new PeerLookupMessage(msgHeader);
+				mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
+				mParser.setContentHandler((PeerLookupMessage)recvMsg);
+				mParser.parse(new InputSource(new StringReader(msgString)));
+				//add 1 to the number of Hops
+				((PeerLookupMessage)recvMsg).incHops();
+				mMsgListener.newMessage((PeerLookupMessage)recvMsg);
+			} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + PeerLookupReplyMessage.XML_PEERLOOKUP + XMLizable.XML_SPACE)) {
+				recvMsg = new PeerLookupReplyMessage(msgHeader);
+				mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
+				mParser.setContentHandler((PeerLookupReplyMessage)recvMsg);
+				mParser.parse(new InputSource(new StringReader(msgString)));
+				mMsgListener.newMessage((PeerLookupReplyMessage)recvMsg);
+			} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + DataModifierMessage.XML_DATAMODIFIER + XMLizable.XML_SPACE)) {
+				recvMsg = new DataModifierMessage(msgHeader);
+				mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
+				mParser.setContentHandler((DataModifierMessage)recvMsg);
+				mParser.parse(new InputSource(new StringReader(msgString)));
+				mMsgListener.newMessage((DataModifierMessage)recvMsg);
+			} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + GenericMessage.XML_GENERIC + XMLizable.XML_SPACE)) {
+				recvMsg = new GenericMessage(msgHeader);
+				mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
+				mParser.setContentHandler((GenericMessage)recvMsg);
+				mParser.parse(new InputSource(new StringReader(msgString)));
+				mMsgListener.newMessage((GenericMessage)recvMsg);
+			} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + ReplicateMessage.XML_REPLICATE + XMLizable.XML_SPACE)) {
+				recvMsg = new ReplicateMessage(msgHeader);
+				mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
+				mParser.setContentHandler((ReplicateMessage)recvMsg);
+				mParser.parse(new InputSource(new StringReader(msgString)));
+				mMsgListener.newMessage((ReplicateMessage)recvMsg);
+			} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + ChallengeMessage.XML_CHALLENGE + XMLizable.XML_SPACE)) {
+				recvMsg = new ChallengeMessage(msgHeader);
+				mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
+				mParser.setContentHandler((ChallengeMessage)recvMsg);
+				mParser.parse(new InputSource(new StringReader(msgString)));
+				mMsgListener.newMessage((ChallengeMessage)recvMsg);
+			} else if (msgString.startsWith(XMLizable.XML_ELEMENT_OPEN + ChallengeReplyMessage.XML_CHALLENGE_REPLY + XMLizable.XML_SPACE)) {
+				recvMsg = new ChallengeReplyMessage(msgHeader);
+				mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
+				mParser.setContentHandler((ChallengeReplyMessage)recvMsg);
+				mParser.parse(new InputSource(new StringReader(msgString)));
+				mMsgListener.newMessage((ChallengeReplyMessage)recvMsg);
 			}
 			Constants.LOGGER.finer("PGrid " + recvMsg.getDescString() + " Message received from " + mConn.getHost().toHostString());
 			if (Constants.DEBUG)
@@ -325,8 +637,8 @@ public class PGridReader implements Runnable {
 			if (Constants.TESTS) {
 				// statistics
 				mPGridP2P.getStatistics().Messages[recvMsg.getDesc()]++;
-				mPGridP2P.getStatistics().Bandwidth[recvMsg.getDesc()] += msgHeader.getSize() + msgContent.length;
-				mPGridP2P.getStatistics().BandwidthUncompr[recvMsg.getDesc()] += msgHeader.getSize() + msg.length();
+				mPGridP2P.getStatistics().Bandwidth[recvMsg.getDesc()] += headerSize + msgContent.length;
+				mPGridP2P.getStatistics().BandwidthUncompr[recvMsg.getDesc()] += headerSize + msg.length();
 
 				Iterator it = mListener.iterator();
 
@@ -348,41 +660,176 @@ public class PGridReader implements Runnable {
 	}
 
 	/**
-	 * Starts the P-Grid reader.
+	 * Decodes a binary P-Grid message and calls the Message Handler.
+	 *
+	 * @param frame the binary frame.
 	 */
-	public void run() {
-		if (mConn.getSocket() == null) {
-			mConnMgr.socketClosed(mConn);
-			return;
-		}
+	private void readBinaryMsg(byte[] frame) {
+		int len = frame.length;
+		mConn.incReceivedBytes(len);
+
+		BinaryMessage recvMsg;
 		try {
-			mReader = new ConnectionReader(mConn.getSocket().getInputStream());
-		} catch (NullPointerException e) {
-			mConnMgr.socketClosed(mConn);
-			return;
+			recvMsg = BinaryCodec.decode(frame, 0, len);
 		} catch (IOException e) {
-			mConnMgr.socketClosed(mConn);
+			Constants.LOGGER.warning("Could not decode binary message! (" + e.getMessage() + ")");
+			mConn.incDroppedCount();
 			return;
 		}
-		if (mParser == null)
-			return;
+		deliver(recvMsg);
+
+		Constants.LOGGER.finer("PGrid " + recvMsg.getDescString() + " Message received from " + mConn.getHost().toHostString());
+		if (Constants.DEBUG)
+			Constants.LOGGER.finest("Message Content:\n" + recvMsg.getHeader().toXMLString(MessageHeader.LEADING_PART) + recvMsg.toXMLString() + recvMsg.getHeader().toXMLString(MessageHeader.ENDING_PART));
+		mConn.incReceivedCount();
 
-		while (mConn.isConnected()) {
-			// receive a new message
+		if (Constants.TESTS) {
+			// statistics, the uncompressed size of binary messages is not known at this point
+			mPGridP2P.getStatistics().Messages[recvMsg.getDesc()]++;
+			mPGridP2P.getStatistics().Bandwidth[recvMsg.getDesc()] += len;
+			mPGridP2P.getStatistics().BandwidthUncompr[recvMsg.getDesc()] += len;
+
+			Iterator it = mListener.iterator();
+
+			for(;it.hasNext();) {
+				((PGridWriterListener)it.next()).messageWritten(recvMsg);
+			}
+		}
+	}
+
+	/**
+	 * Delivers a decoded binary message to the message listener.
+	 *
+	 * @param msg the message.
+	 */
+	private void deliver(BinaryMessage msg) {
+		if (msg instanceof BootstrapMessage) {
+			mMsgListener.newMessage((BootstrapMessage)msg);
+		} else if (msg instanceof BootstrapReplyMessage) {
+			mMsgListener.newMessage((BootstrapReplyMessage)msg);
+		} else if (msg instanceof ExchangeInvitationMessage) {
+			mConn.getHost().setPort(msg.getHeader().getHost().getPort());
+			mMsgListener.newMessage((ExchangeInvitationMessage)msg);
+		} else if (msg instanceof ExchangeMessage) {
+			mConn.getHost().setPort(msg.getHeader().getHost().getPort());
+			mMsgListener.newMessage((ExchangeMessage)msg);
+		} else if (msg instanceof ExchangeReplyMessage) {
+			mMsgListener.newMessage((ExchangeReplyMessage)msg);
+		} else if (msg instanceof QueryMessage) {
+			mMsgListener.newMessage((QueryMessage)msg);
+		} else if (msg instanceof RangeQueryMessage) {
+			//add 1 to the number of Hops
+			((RangeQueryMessage)msg).incHops();
+			mMsgListener.newMessage((RangeQueryMessage)msg);
+		} else if (msg instanceof QueryReplyMessage) {
+			mMsgListener.newMessage((QueryReplyMessage)msg);
+		} else if (msg instanceof QueryBatchMessage) {
+			mMsgListener.newMessage((QueryBatchMessage)msg);
+		} else if (msg instanceof QueryBatchReplyMessage) {
+			mMsgListener.newMessage((QueryBatchReplyMessage)msg);
+		} else if (msg instanceof SearchPathMessage) {
+			mMsgListener.newMessage((SearchPathMessage)msg);
+		} else if (msg instanceof SearchPathReplyMessage) {
+			mMsgListener.newMessage((SearchPathReplyMessage)msg);
+		} else if (msg instanceof ACKMessage) {
+			mMsgListener.newMessage((ACKMessage)msg);
+		} else if (msg instanceof PeerLookupMessage) {
+			//add 1 to the number of Hops
+			((PeerLookupMessage)msg).incHops();
+			mMsgListener.newMessage((PeerLookupMessage)msg);
+		} else if (msg instanceof PeerLookupReplyMessage) {
+			mMsgListener.newMessage((PeerLookupReplyMessage)msg);
+		} else if (msg instanceof DataModifierMessage) {
+			mMsgListener.newMessage((DataModifierMessage)msg);
+		} else if (msg instanceof GenericMessage) {
+			mMsgListener.newMessage((GenericMessage)msg);
+		} else if (msg instanceof ReplicateMessage) {
+			mMsgListener.newMessage((ReplicateMessage)msg);
+		} else if (msg instanceof ChallengeMessage) {
+			mMsgListener.newMessage((ChallengeMessage)msg);
+		} else if (msg instanceof ChallengeReplyMessage) {
+			mMsgListener.newMessage((ChallengeReplyMessage)msg);
+		}
+	}
+
+	/**
+	 * Handles the queued messages. Invoked by a reader thread of the Connection Manager.
+	 */
+	public void run() {
+		if ((mParser == null) && (!mConn.isBinary())) {
 			try {
-				readMsg();
-			} catch (ConnectionClosedException e) {
-				mConn.setStatus(Connection.STATUS_ERROR, "Closed");
-				break;
-			} catch (ConnectionTimeoutException e) {
-				if (mConn.isConnected()) {
-					mConn.setStatus(Connection.STATUS_ERROR, "Timeout");
-					break;
+				mParser = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+			} catch (SAXException e) {
+				e.printStackTrace();
+				mConnMgr.socketClosed(mConn);
+				return;
+			} catch (ParserConfigurationException e) {
+				e.printStackTrace();
+				mConnMgr.socketClosed(mConn);
+				return;
+			}
+		}
+
+		while (true) {
+			Frame frame;
+			synchronized (mInbox) {
+				if (mInbox.isEmpty()) {
+					mScheduled = false;
+					return;
 				}
+				frame = (Frame)mInbox.removeFirst();
+				if ((mPaused) && (mInbox.size() < MAX_QUEUED_MESSAGES / 2)) {
+					mPaused = false;
+					mConn.getSelector().setInterest(mConn, SelectionKey.OP_READ, true);
+				}
+			}
+			if (!mConn.isConnected())
 				continue;
+			try {
+				if (frame.mHeader == null)
+					readBinaryMsg(frame.mData);
+				else
+					readMsg(frame.mHeader, frame.mData, frame.mHeaderSize);
+			} catch (RuntimeException e) {
+				Constants.LOGGER.log(Level.WARNING, "Could not handle message from " + mConn.getHost().toHostString() + "!", e);
+				mConn.incDroppedCount();
 			}
 		}
-		mConnMgr.socketClosed(mConn);
+	}
+
+	/**
+	 * A received message not yet handled.
+	 */
+	private static class Frame {
+
+		/**
+		 * The binary frame or the content of the XML message.
+		 */
+		private byte[] mData = null;
+
+		/**
+		 * The leading part of the header of a XML message, or <code>null</code> for a binary frame.
+		 */
+		private MessageHeader mHeader = null;
+
+		/**
+		 * The size of the header of a XML message.
+		 */
+		private int mHeaderSize = 0;
+
+		/**
+		 * Creates a new received message.
+		 *
+		 * @param header     the leading part of the header of a XML message, or <code>null</code> for a binary frame.
+		 * @param data       the binary frame or the content of the XML message.
+		 * @param headerSize the size of the header of a XML message.
+		 */
+		Frame(MessageHeader header, byte[] data, int headerSize) {
+			mHeader = header;
+			mData = data;
+			mHeaderSize = headerSize;
+		}
+
 	}
 
 }
\ No newline at end of file
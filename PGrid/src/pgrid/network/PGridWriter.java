@@ -26,23 +26,50 @@ package pgrid.network;
 
 //import test.planetlab.RangeQueryTester;
 import pgrid.Constants;
+import pgrid.Properties;
 import pgrid.interfaces.basic.PGridP2P;
+import pgrid.network.protocol.BinaryCodec;
+import pgrid.network.protocol.BinaryMessage;
+import pgrid.network.protocol.BinaryWriter;
 import pgrid.network.protocol.MessageHeader;
 import pgrid.network.protocol.PGridMessage;
 import pgrid.util.Compression;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.util.LinkedList;
 import java.util.Vector;
 import java.util.Iterator;
+import java.util.zip.Deflater;
 
 /**
  * This class writes Gridella messages at the Output Stream.
+ * <p/>
+ * Messages are written directly to the non-blocking channel of the connection. What the channel does not accept
+ * at once is queued and written by the selector of the connection as soon as the channel is writable again. The
+ * queue is bounded, senders wait for free space if the remote host does not read fast enough.
  *
  * @author @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
  * @version 1.0.0
  */
 public class PGridWriter {
 
+	/**
+	 * The maximum number of queued bytes per connection.
+	 */
+	private static final int MAX_QUEUED_BYTES = 1024 * 1024 * 4; // 4MB.
+
+	/**
+	 * The maximal length of the frame length prefix of binary messages.
+	 */
+	private static final int MAX_PREFIX_LENGTH = 5;
+
+	/**
+	 * Timout to wait for free space in the write queue.
+	 */
+	private static final int WRITE_TIMEOUT = 1000 * 30; // 30s.
+
 	/**
 	 * The Communication Manager.
 	 */
@@ -64,9 +91,14 @@ public class PGridWriter {
 	static private Vector mListener = new Vector();
 
 	/**
-	 * The Communication writer.
+	 * The queued byte buffers not yet written to the channel.
 	 */
-	private ConnectionWriter mWriter = null;
+	private LinkedList mQueue = new LinkedList();
+
+	/**
+	 * The number of queued bytes.
+	 */
+	private int mQueuedBytes = 0;
 
 	/**
 	 * Register a P-Grid Writer listener. This listener will be called just before
@@ -84,11 +116,116 @@ public class PGridWriter {
 	 */
 	PGridWriter(Connection conn) {
 		mConn = conn;
-		try {
-			mWriter = new ConnectionWriter(conn.getSocket().getOutputStream());
-		} catch (IOException e) {
-			// do nothing
+	}
+
+	/**
+	 * Invoked when the connection was closed. Drops the queued bytes and releases waiting senders.
+	 */
+	void closed() {
+		synchronized (mQueue) {
+			mQueue.clear();
+			mQueuedBytes = 0;
+			mQueue.notifyAll();
+		}
+	}
+
+	/**
+	 * Invoked if writing to the channel failed.
+	 *
+	 * @param msg the status message.
+	 */
+	private void failed(String msg) {
+		mConn.setStatus(Connection.STATUS_ERROR, msg);
+		mConnMgr.socketClosed(mConn);
+	}
+
+	/**
+	 * Writes the queued bytes to the channel. Invoked by the selector thread if the channel is writable.
+	 */
+	void flush() {
+		boolean failed = false;
+		synchronized (mQueue) {
+			try {
+				while (!mQueue.isEmpty()) {
+					ByteBuffer buffer = (ByteBuffer)mQueue.getFirst();
+					mQueuedBytes -= mConn.getChannel().write(buffer);
+					if (buffer.hasRemaining())
+						break;
+					mQueue.removeFirst();
+				}
+			} catch (IOException e) {
+				failed = true;
+			}
+			if (mQueue.isEmpty())
+				mConn.getSelector().setInterest(mConn, SelectionKey.OP_WRITE, false);
+			mQueue.notifyAll();
 		}
+		if (failed)
+			failed("Closed");
+	}
+
+	/**
+	 * Writes an array of bytes to the channel, or queues them if the channel does not accept them at once.
+	 *
+	 * @param data the array of bytes.
+	 * @return <code>true</code> if the bytes were written or queued, <code>false</code> if the connection failed.
+	 */
+	boolean write(byte[] data) {
+		return write(new ByteBuffer[] {ByteBuffer.wrap(data)});
+	}
+
+	/**
+	 * Writes the remaining bytes of the given buffers with one gathering write to the channel, or queues them if the
+	 * channel does not accept them at once. The buffers must not be modified afterwards.
+	 *
+	 * @param data the buffers.
+	 * @return <code>true</code> if the bytes were written or queued, <code>false</code> if the connection failed.
+	 */
+	boolean write(ByteBuffer[] data) {
+		int length = 0;
+		for (int i = 0; i < data.length; i++)
+			length += data[i].remaining();
+		String error = null;
+		synchronized (mQueue) {
+			// the selector thread must never wait, it is the one emptying the queue
+			if (!mConn.getSelector().inSelectorThread()) {
+				long deadline = System.currentTimeMillis() + WRITE_TIMEOUT;
+				while ((mQueuedBytes > 0) && (mQueuedBytes + length > MAX_QUEUED_BYTES) && (mConn.isConnected())) {
+					long wait = deadline - System.currentTimeMillis();
+					if (wait <= 0)
+						break;
+					try {
+						mQueue.wait(wait);
+					} catch (InterruptedException e) {
+						break;
+					}
+				}
+			}
+			if (!mConn.isConnected()) {
+				return false;
+			} else if ((mQueuedBytes > 0) && (mQueuedBytes + length > MAX_QUEUED_BYTES) && (!mConn.getSelector().inSelectorThread())) {
+				error = "Timeout";
+			} else {
+				try {
+					boolean empty = mQueue.isEmpty();
+					if (empty)
+						mConn.getChannel().write(data);
+					for (int i = 0; i < data.length; i++) {
+						if (data[i].hasRemaining()) {
+							mQueue.add(data[i]);
+							mQueuedBytes += data[i].remaining();
+						}
+					}
+					if (empty && !mQueue.isEmpty())
+						mConn.getSelector().setInterest(mConn, SelectionKey.OP_WRITE, true);
+					return true;
+				} catch (IOException e) {
+					error = "Closed";
+				}
+			}
+		}
+		failed(error);
+		return false;
 	}
 
 	/**
@@ -99,14 +236,22 @@ public class PGridWriter {
 	void sendMsg(PGridMessage msg) {
 		MessageHeader header = msg.getHeader();
 		header.setHost(mPGridP2P.getLocalHost());
+		if (mConn.isBinary() && (msg instanceof BinaryMessage)) {
+			sendBinaryMsg((BinaryMessage)msg);
+			return;
+		}
 		byte[] content = msg.getBytes();
 		byte[] msgContent;
+		int msgLength;
 		// compress the bytes if necessary
-		if (mConn.isCompressed())
-			msgContent = Compression.compress(content, 0, content.length);
-		else
+		if (mConn.isCompressed()) {
+			msgContent = new byte[Compression.maxCompressedLength(content.length)];
+			msgLength = Compression.compress(content, 0, content.length, Deflater.DEFAULT_COMPRESSION, msgContent, 0);
+		} else {
 			msgContent = content;
-		header.setContentLen(msgContent.length);
+			msgLength = content.length;
+		}
+		header.setContentLen(msgLength);
 
 		//Constants.LOGGER.finer("PGrid " + msg.getDescString() + " Message sent to " + mConn.getPeer());
 		Constants.LOGGER.finer("PGrid " + msg.getDescString() + " Message sent to " + mConn.getHost().toHostString());
@@ -116,7 +261,7 @@ public class PGridWriter {
 		if (Constants.TESTS) {
 			// statistics
 			mPGridP2P.getStatistics().Messages[msg.getDesc()]++;
-			mPGridP2P.getStatistics().Bandwidth[msg.getDesc()] += msgContent.length + header.getSize();
+			mPGridP2P.getStatistics().Bandwidth[msg.getDesc()] += msgLength + header.getSize();
 			mPGridP2P.getStatistics().BandwidthUncompr[msg.getDesc()] += content.length + header.getSize();
 
 			Iterator it = mListener.iterator();
@@ -125,17 +270,71 @@ public class PGridWriter {
 				((PGridWriterListener)it.next()).messageWritten(msg);
 			}
 		}
-		try {
-			mWriter.write(msg.getHeader().getBytes(MessageHeader.LEADING_PART));
-			mWriter.write(msgContent);
-			mWriter.write(msg.getHeader().getBytes(MessageHeader.ENDING_PART));
-		} catch (IOException e) {
-			mConn.setStatus(Connection.STATUS_ERROR);
-			mConnMgr.socketClosed(mConn);
+		// the whole message is written at once, so messages of concurrent senders are not interleaved
+		ByteBuffer[] data = new ByteBuffer[] {
+			ByteBuffer.wrap(msg.getHeader().getBytes(MessageHeader.LEADING_PART)),
+			ByteBuffer.wrap(msgContent, 0, msgLength),
+			ByteBuffer.wrap(msg.getHeader().getBytes(MessageHeader.ENDING_PART))
+		};
+		if (!write(data))
 			return;
+		mConn.incSentCount();
+		mConn.incSentBytes(msgLength + header.getSize());
+	}
+
+	/**
+	 * Writes a P-Grid message as binary frame to the Output Stream.
+	 *
+	 * @param msg the msg to write.
+	 */
+	private void sendBinaryMsg(BinaryMessage msg) {
+		// exchanges use the fast compression if negotiated, small messages are not worth compressing
+		int compression = 0;
+		if (mConn.isFastCompressed() && ((msg.getDesc() == PGridMessage.DESC_EXCHANGE) || (msg.getDesc() == PGridMessage.DESC_EXCHANGE_REPLY)))
+			compression = BinaryCodec.FLAG_LZ4;
+		else if (mConn.isCompressed())
+			compression = BinaryCodec.FLAG_COMPRESSED;
+
+		// space for the length prefix is reserved in front of the frame, so the buffer is sent without copying it
+		BinaryWriter out = new BinaryWriter();
+		for (int i = 0; i < MAX_PREFIX_LENGTH; i++)
+			out.writeByte(0);
+		int rawLen = BinaryCodec.encode(msg, out, compression, mPGridP2P.propertyInteger(Properties.COMPRESSION_THRESHOLD));
+		int len = out.size() - MAX_PREFIX_LENGTH;
+
+		Constants.LOGGER.finer("PGrid " + msg.getDescString() + " Message sent to " + mConn.getHost().toHostString());
+		if (Constants.DEBUG)
+			Constants.LOGGER.finest("Message Content:\n" + msg.getHeader().toXMLString(MessageHeader.LEADING_PART) + msg.toXMLString() + msg.getHeader().toXMLString(MessageHeader.ENDING_PART));
+
+		if (Constants.TESTS) {
+			// statistics
+			mPGridP2P.getStatistics().Messages[msg.getDesc()]++;
+			mPGridP2P.getStatistics().Bandwidth[msg.getDesc()] += len;
+			mPGridP2P.getStatistics().BandwidthUncompr[msg.getDesc()] += rawLen;
+
+			Iterator it = mListener.iterator();
+
+			for(;it.hasNext();) {
+				((PGridWriterListener)it.next()).messageWritten(msg);
+			}
 		}
+		// frame length as variable length integer, followed by the frame
+		int prefix = 1;
+		for (int value = len; (value & ~0x7F) != 0; value >>>= 7)
+			prefix++;
+		byte[] data = out.getBuffer();
+		int start = MAX_PREFIX_LENGTH - prefix;
+		int pos = start;
+		int value = len;
+		while ((value & ~0x7F) != 0) {
+			data[pos++] = (byte)((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		data[pos] = (byte)value;
+		if (!write(new ByteBuffer[] {ByteBuffer.wrap(data, start, prefix + len)}))
+			return;
 		mConn.incSentCount();
-		mConn.incSentBytes(msgContent.length + header.getSize());
+		mConn.incSentBytes(len);
 	}
 
 }
\ No newline at end of file
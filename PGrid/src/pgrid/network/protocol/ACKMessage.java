@@ -31,6 +31,7 @@ import pgrid.Constants;
 import pgrid.XMLizable;
 import pgrid.interfaces.basic.PGridP2P;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 
 /**
@@ -39,7 +40,7 @@ import java.io.UnsupportedEncodingException;
  * @author Renault John
  * @version 1.0.0
  */
-public class ACKMessage extends pgrid.util.LexicalDefaultHandler implements PGridMessage, XMLizable {
+public class ACKMessage extends pgrid.util.LexicalDefaultHandler implements BinaryMessage, XMLizable {
 
 	/**
 	 * The acknowledgment code "message already seen".
@@ -136,6 +137,29 @@ public class ACKMessage extends pgrid.util.LexicalDefaultHandler implements PGri
 		mMsg = msg;
 	}
 
+	/**
+	 * Reads the values of this message from a binary message.
+	 *
+	 * @param in the binary reader.
+	 * @throws IOException if the message is malformed.
+	 */
+	public void decode(BinaryReader in) throws IOException {
+		mGUID = in.readGUID();
+		mCode = in.readSignedVarInt();
+		mMsg = in.readString();
+	}
+
+	/**
+	 * Writes the values of this message for a binary message.
+	 *
+	 * @param out the binary writer.
+	 */
+	public void encode(BinaryWriter out) {
+		out.writeGUID(mGUID);
+		out.writeSignedVarInt(mCode);
+		out.writeString(((mMsg == null) || (mMsg.length() == 0)) ? null : mMsg);
+	}
+
 	/**
 	 * Returns the exchange message as array of bytes.
 	 *
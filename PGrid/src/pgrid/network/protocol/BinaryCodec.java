@@ -0,0 +1,228 @@
+/**
+ * Copyright (c) 2002 The P-Grid Team,
+ *                    All Rights Reserved.
+ *
+ * This file is part of the P-Grid package.
+ * P-Grid homepage: http://www.p-grid.org/
+ *
+ * The P-Grid package is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This package is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; see the file LICENSE.
+ * If not you can find the GPL at http://www.gnu.org/copyleft/gpl.html
+ */
+
+package pgrid.network.protocol;
+
+import pgrid.util.Compression;
+import pgrid.util.LZ4Compression;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+
+/**
+ * This class encodes and decodes P-Grid messages in the binary message format. A binary message is sent as one frame
+ * prefixed by its length as variable length integer:
+ * <pre>
+ * frame   = descriptor flags header body
+ * header  = version host
+ * </pre>
+ * The descriptor is one of the <code>DESC_*</code> values of {@link PGridMessage}, the flags mark a compressed body.
+ * A body compressed with LZ4 is prefixed by its uncompressed length as variable length integer.
+ * The content length of the header is given by the length of the body and therefore not written.
+ *
+ * @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
+ * @version 1.0.0
+ */
+public class BinaryCodec {
+
+	/**
+	 * Marks a compressed message body.
+	 */
+	public static final int FLAG_COMPRESSED = 0x01;
+
+	/**
+	 * Marks a message body compressed with LZ4.
+	 */
+	public static final int FLAG_LZ4 = 0x02;
+
+	/**
+	 * The maximal accepted length of a frame.
+	 */
+	public static final int MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+
+	/**
+	 * Creates an empty message for the given descriptor.
+	 *
+	 * @param desc   the message descriptor.
+	 * @param header the message header.
+	 * @return the message, or <code>null</code> if the descriptor is unknown.
+	 */
+	static BinaryMessage createMessage(int desc, MessageHeader header) {
+		switch (desc) {
+			case PGridMessage.DESC_ACK:
+				return new ACKMessage(header);
+			case PGridMessage.DESC_BOOTSTRAP:
+				return new BootstrapMessage(header);
+			case PGridMessage.DESC_BOOTSTRAP_REPLY:
+				return new BootstrapReplyMessage(header);
+			case PGridMessage.DESC_CHALLENGE:
+				return new ChallengeMessage(header);
+			case PGridMessage.DESC_CHALLENGE_REPLY:
+				return new ChallengeReplyMessage(header);
+			case PGridMessage.DESC_EXCHANGE:
+				return new ExchangeMessage(header);
+			case PGridMessage.DESC_EXCHANGE_INVITATION:
+				return new ExchangeInvitationMessage(header);
+			case PGridMessage.DESC_EXCHANGE_REPLY:
+				return new ExchangeReplyMessage(header);
+			case PGridMessage.DESC_GENERIC:
+				return new GenericMessage(header);
+			case PGridMessage.DESC_MODIFIER:
+				return new DataModifierMessage(header);
+			case PGridMessage.DESC_PEERLOOKUP:
+				return new PeerLookupMessage(header);
+			case PGridMessage.DESC_PEERLOOKUP_REPLY:
+				return new PeerLookupReplyMessage(header);
+			case PGridMessage.DESC_QUERY:
+				return new QueryMessage(header);
+			case PGridMessage.DESC_QUERY_REPLY:
+				return new QueryReplyMessage(header);
+			case PGridMessage.DESC_QUERY_BATCH:
+				return new QueryBatchMessage(header);
+			case PGridMessage.DESC_QUERY_BATCH_REPLY:
+				return new QueryBatchReplyMessage(header);
+			case PGridMessage.DESC_RANGE_QUERY:
+				return new RangeQueryMessage(header);
+			case PGridMessage.DESC_REPLICATE:
+				return new ReplicateMessage(header);
+			case PGridMessage.DESC_SEARCH_PATH:
+				return new SearchPathMessage(header);
+			case PGridMessage.DESC_SEARCH_PATH_REPLY:
+				return new SearchPathReplyMessage(header);
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Encodes the given message with its header as frame without the length prefix. The content length of the header
+	 * is set to the length of the written, possibly compressed, body.
+	 *
+	 * @param msg      the message.
+	 * @param out      the writer for the frame.
+	 * @param compress <code>true</code> if the body should be compressed.
+	 * @return the length of the frame before compression.
+	 */
+	public static int encode(BinaryMessage msg, BinaryWriter out, boolean compress) {
+		return encode(msg, out, compress ? FLAG_COMPRESSED : 0, 0);
+	}
+
+	/**
+	 * Encodes the given message with its header as frame without the length prefix. The body is compressed with the
+	 * given method if it is at least <code>threshold</code> bytes long and gets smaller by the compression. The body
+	 * is compressed directly behind itself in the buffer of the writer and moved down afterwards. The content length of
+	 * the header is set to the length of the written, possibly compressed, body.
+	 *
+	 * @param msg         the message.
+	 * @param out         the writer for the frame.
+	 * @param compression the compression method ({@link #FLAG_COMPRESSED}, {@link #FLAG_LZ4} or 0 for none).
+	 * @param threshold   the minimum length of a body to compress.
+	 * @return the length of the frame before compression.
+	 */
+	public static int encode(BinaryMessage msg, BinaryWriter out, int compression, int threshold) {
+		MessageHeader header = msg.getHeader();
+		int start = out.size();
+		out.writeByte(msg.getDesc());
+		int flagsPos = out.size();
+		out.writeByte(0);
+		header.encode(out);
+		int body = out.size();
+		msg.encode(out);
+		int bodyLen = out.size() - body;
+		int rawLen = out.size() - start;
+		if ((compression != 0) && (bodyLen >= threshold) && (bodyLen > 0)) {
+			int len = -1;
+			if (compression == FLAG_LZ4) {
+				out.ensureCapacity(5 + LZ4Compression.maxCompressedLength(bodyLen));
+				out.writeVarInt(bodyLen);
+				byte[] buffer = out.getBuffer();
+				int pos = out.size();
+				len = LZ4Compression.compress(buffer, body, bodyLen, buffer, pos);
+				len += pos - (body + bodyLen);
+			} else if (compression == FLAG_COMPRESSED) {
+				out.ensureCapacity(Compression.maxCompressedLength(bodyLen));
+				byte[] buffer = out.getBuffer();
+				len = Compression.compress(buffer, body, bodyLen, Deflater.DEFAULT_COMPRESSION, buffer, body + bodyLen);
+			}
+			// only send the compressed body if it is actually smaller
+			if ((len >= 0) && (len < bodyLen)) {
+				byte[] buffer = out.getBuffer();
+				System.arraycopy(buffer, body + bodyLen, buffer, body, len);
+				buffer[flagsPos] = (byte)compression;
+				out.setSize(body + len);
+			} else {
+				out.setSize(body + bodyLen);
+			}
+		}
+		header.setContentLen(out.size() - body);
+		return rawLen;
+	}
+
+	/**
+	 * Decodes a message from the given frame without the length prefix.
+	 *
+	 * @param frame  the buffer containing the frame.
+	 * @param offset the first byte of the frame.
+	 * @param len    the length of the frame.
+	 * @return the message.
+	 * @throws IOException if the frame does not contain a valid message.
+	 */
+	public static BinaryMessage decode(byte[] frame, int offset, int len) throws IOException {
+		BinaryReader in = new BinaryReader(frame, offset, len);
+		int desc = in.readByte();
+		int flags = in.readByte();
+		if (((flags & ~(FLAG_COMPRESSED | FLAG_LZ4)) != 0) || (flags == (FLAG_COMPRESSED | FLAG_LZ4)))
+			throw new IOException("unknown message flags " + flags + "!");
+		MessageHeader header = new MessageHeader();
+		header.decode(in);
+		header.setContentLen(in.remaining());
+		if (!header.isValid())
+			throw new IOException("invalid message header!");
+		BinaryMessage msg = createMessage(desc, header);
+		if (msg == null)
+			throw new IOException("unknown message descriptor " + desc + "!");
+		if ((flags & FLAG_COMPRESSED) != 0) {
+			try {
+				in = new BinaryReader(Compression.decompress(frame, in.getPosition(), in.remaining(), MAX_FRAME_LENGTH));
+			} catch (DataFormatException e) {
+				throw new IOException("invalid compressed message: " + e.getMessage());
+			}
+		} else if ((flags & FLAG_LZ4) != 0) {
+			int rawLen = in.readVarInt();
+			if ((rawLen < 0) || (rawLen > MAX_FRAME_LENGTH))
+				throw new IOException("invalid compressed message length " + rawLen + "!");
+			byte[] raw = new byte[rawLen];
+			try {
+				LZ4Compression.decompress(frame, in.getPosition(), in.remaining(), raw, 0, rawLen);
+			} catch (DataFormatException e) {
+				throw new IOException("invalid compressed message: " + e.getMessage());
+			}
+			in = new BinaryReader(raw);
+		}
+		msg.decode(in);
+		if (in.remaining() != 0)
+			throw new IOException(in.remaining() + " trailing bytes after " + msg.getDescString() + " message!");
+		return msg;
+	}
+
+}
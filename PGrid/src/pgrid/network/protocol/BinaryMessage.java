@@ -0,0 +1,52 @@
+/**
+ * Copyright (c) 2002 The P-Grid Team,
+ *                    All Rights Reserved.
+ *
+ * This file is part of the P-Grid package.
+ * P-Grid homepage: http://www.p-grid.org/
+ *
+ * The P-Grid package is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This package is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; see the file LICENSE.
+ * If not you can find the GPL at http://www.gnu.org/copyleft/gpl.html
+ */
+
+package pgrid.network.protocol;
+
+import java.io.IOException;
+
+/**
+ * This interface represents a P-Grid message, which can be sent in the binary message format instead of XML.
+ * The header of the message is written by the sender and read before the message is created, a message only
+ * writes and reads its own values.
+ *
+ * @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
+ * @version 1.0.0
+ */
+public interface BinaryMessage extends PGridMessage {
+
+	/**
+	 * Writes the values of this message.
+	 *
+	 * @param out the binary writer.
+	 */
+	public void encode(BinaryWriter out);
+
+	/**
+	 * Reads the values of this message.
+	 *
+	 * @param in the binary reader.
+	 * @throws IOException if the message is malformed.
+	 */
+	public void decode(BinaryReader in) throws IOException;
+
+}
@@ -0,0 +1,441 @@
+/**
+ * Copyright (c) 2002 The P-Grid Team,
+ *                    All Rights Reserved.
+ *
+ * This file is part of the P-Grid package.
+ * P-Grid homepage: http://www.p-grid.org/
+ *
+ * The P-Grid package is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This package is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; see the file LICENSE.
+ * If not you can find the GPL at http://www.gnu.org/copyleft/gpl.html
+ */
+
+package pgrid.network.protocol;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import p2p.storage.events.NoSuchTypeException;
+import pgrid.BinaryDataItem;
+import pgrid.DataItem;
+import pgrid.GUID;
+import pgrid.PGridHost;
+import pgrid.PGridKey;
+import pgrid.core.storage.PageSignature;
+import pgrid.core.storage.Signature;
+import pgrid.core.storage.StorageManager;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * This class reads the values of a binary P-Grid message written by a {@link BinaryWriter} from a byte buffer.
+ * A truncated buffer results in an {@link EOFException}, all other malformed values in an {@link IOException}.
+ *
+ * @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
+ * @version 1.0.0
+ */
+public class BinaryReader {
+
+	/**
+	 * The buffer.
+	 */
+	private byte[] mBuffer = null;
+
+	/**
+	 * The end of the readable bytes.
+	 */
+	private int mLimit = 0;
+
+	/**
+	 * The current read position.
+	 */
+	private int mPos = 0;
+
+	/**
+	 * Creates a new reader for all bytes of the given buffer.
+	 *
+	 * @param buffer the buffer.
+	 */
+	public BinaryReader(byte[] buffer) {
+		this(buffer, 0, buffer.length);
+	}
+
+	/**
+	 * Creates a new reader for a part of the given buffer.
+	 *
+	 * @param buffer the buffer.
+	 * @param offset the first byte to read.
+	 * @param len    the amount of readable bytes.
+	 */
+	public BinaryReader(byte[] buffer, int offset, int len) {
+		if ((offset < 0) || (len < 0) || (offset + len > buffer.length))
+			throw new IllegalArgumentException("offset " + offset + " and length " + len + " are illegal!");
+		mBuffer = buffer;
+		mPos = offset;
+		mLimit = offset + len;
+	}
+
+	/**
+	 * Returns the current read position in the buffer.
+	 *
+	 * @return the read position.
+	 */
+	public int getPosition() {
+		return mPos;
+	}
+
+	/**
+	 * Returns the amount of bytes not yet read.
+	 *
+	 * @return the amount of remaining bytes.
+	 */
+	public int remaining() {
+		return mLimit - mPos;
+	}
+
+	/**
+	 * Checks that the given amount of bytes can be read.
+	 *
+	 * @param len the amount of bytes.
+	 * @throws EOFException if less bytes are remaining.
+	 */
+	private void require(int len) throws EOFException {
+		if ((len < 0) || (len > mLimit - mPos))
+			throw new EOFException("message truncated at position " + mPos + "!");
+	}
+
+	/**
+	 * Reads a boolean.
+	 *
+	 * @return the value.
+	 * @throws IOException if the value could not be read.
+	 */
+	public boolean readBoolean() throws IOException {
+		return readByte() != 0;
+	}
+
+	/**
+	 * Reads an unsigned byte.
+	 *
+	 * @return the value between 0 and 255.
+	 * @throws IOException if the value could not be read.
+	 */
+	public int readByte() throws IOException {
+		require(1);
+		return mBuffer[mPos++] & 0xFF;
+	}
+
+	/**
+	 * Reads the given amount of bytes.
+	 *
+	 * @param len the amount of bytes.
+	 * @return the bytes.
+	 * @throws IOException if the bytes could not be read.
+	 */
+	public byte[] readBytes(int len) throws IOException {
+		require(len);
+		byte[] bytes = new byte[len];
+		System.arraycopy(mBuffer, mPos, bytes, 0, len);
+		mPos += len;
+		return bytes;
+	}
+
+	/**
+	 * Reads an array of bytes written with its length.
+	 *
+	 * @return the array of bytes, or <code>null</code>.
+	 * @throws IOException if the bytes could not be read.
+	 */
+	public byte[] readByteArray() throws IOException {
+		int len = readVarInt();
+		if (len == 0)
+			return null;
+		return readBytes(len - 1);
+	}
+
+	/**
+	 * Reads a double.
+	 *
+	 * @return the value.
+	 * @throws IOException if the value could not be read.
+	 */
+	public double readDouble() throws IOException {
+		return Double.longBitsToDouble(readLong());
+	}
+
+	/**
+	 * Reads a long written as its eight bytes.
+	 *
+	 * @return the value.
+	 * @throws IOException if the value could not be read.
+	 */
+	public long readLong() throws IOException {
+		require(8);
+		long value = 0;
+		for (int i = 0; i < 8; i++)
+			value = (value << 8) | (mBuffer[mPos++] & 0xFF);
+		return value;
+	}
+
+	/**
+	 * Reads a non negative variable length integer.
+	 *
+	 * @return the value.
+	 * @throws IOException if the value could not be read.
+	 */
+	public int readVarInt() throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = readByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				if (value < 0)
+					throw new IOException("variable length integer out of range!");
+				return value;
+			}
+		}
+		throw new IOException("variable length integer too long!");
+	}
+
+	/**
+	 * Reads a zigzag encoded variable length integer.
+	 *
+	 * @return the value.
+	 * @throws IOException if the value could not be read.
+	 */
+	public int readSignedVarInt() throws IOException {
+		long value = readVarLong();
+		if ((value < Integer.MIN_VALUE) || (value > Integer.MAX_VALUE))
+			throw new IOException("variable length integer out of range!");
+		return (int)value;
+	}
+
+	/**
+	 * Reads a zigzag encoded variable length long.
+	 *
+	 * @return the value.
+	 * @throws IOException if the value could not be read.
+	 */
+	public long readVarLong() throws IOException {
+		long zigzag = 0;
+		for (int shift = 0; shift < 70; shift += 7) {
+			int b = readByte();
+			zigzag |= (long)(b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return (zigzag >>> 1) ^ -(zigzag & 1);
+		}
+		throw new IOException("variable length integer too long!");
+	}
+
+	/**
+	 * Reads a string.
+	 *
+	 * @return the string, or <code>null</code>.
+	 * @throws IOException if the string could not be read.
+	 */
+	public String readString() throws IOException {
+		int len = readVarInt();
+		if (len == 0)
+			return null;
+		return readUTF8(len - 1);
+	}
+
+	/**
+	 * Reads the given amount of bytes as UTF-8 string.
+	 *
+	 * @param len the amount of bytes.
+	 * @return the string.
+	 * @throws IOException if the string could not be read.
+	 */
+	private String readUTF8(int len) throws IOException {
+		require(len);
+		String value = new String(mBuffer, mPos, len, "UTF-8");
+		mPos += len;
+		return value;
+	}
+
+	/**
+	 * Reads a string of bits, e.g., a path or key.
+	 *
+	 * @return the bit string, or <code>null</code>.
+	 * @throws IOException if the string could not be read.
+	 */
+	public String readBits() throws IOException {
+		int header = readVarInt();
+		if (header == 0)
+			return null;
+		header--;
+		int len = header >>> 1;
+		if ((header & 1) == 0)
+			return readUTF8(len);
+		require((len + 7) >> 3);
+		char[] chars = new char[len];
+		for (int i = 0; i < len; i++)
+			chars[i] = ((mBuffer[mPos + (i >> 3)] & (0x80 >>> (i & 7))) != 0) ? '1' : '0';
+		mPos += (len + 7) >> 3;
+		return new String(chars);
+	}
+
+	/**
+	 * Reads a key.
+	 *
+	 * @return the key, or <code>null</code>.
+	 * @throws IOException if the key could not be read.
+	 */
+	public PGridKey readKey() throws IOException {
+		String key = readBits();
+		return (key == null ? null : new PGridKey(key));
+	}
+
+	/**
+	 * Reads a GUID.
+	 *
+	 * @return the GUID, or <code>null</code>.
+	 * @throws IOException if the GUID could not be read.
+	 */
+	public GUID readGUID() throws IOException {
+		byte[] bytes = readByteArray();
+		return (bytes == null ? null : new GUID(bytes));
+	}
+
+	/**
+	 * Reads a host. Already known hosts are taken from the host cache.
+	 *
+	 * @param checkTimestamp <code>true</code> if the path should only be set if it is newer than the known path.
+	 * @return the host, or <code>null</code>.
+	 * @throws IOException if the host could not be read.
+	 */
+	public PGridHost readHost(boolean checkTimestamp) throws IOException {
+		int flags = readByte();
+		if ((flags & BinaryWriter.HOST_PRESENT) == 0)
+			return null;
+		GUID guid = readGUID();
+		int port = readSignedVarInt();
+		String addr = readString();
+		if (guid == null)
+			throw new IOException("host without GUID!");
+		PGridHost host = PGridHost.getHost(guid, addr, port);
+		if ((flags & BinaryWriter.HOST_PATH) != 0) {
+			String path = readBits();
+			long timestamp = readVarLong();
+			if (checkTimestamp)
+				host.setPath(path, timestamp);
+			else
+				host.setPath(path);
+		}
+		return host;
+	}
+
+	/**
+	 * Reads a data table signature.
+	 *
+	 * @return the signature, or <code>null</code>.
+	 * @throws IOException if the signature could not be read.
+	 */
+	public Signature readSignature() throws IOException {
+		int pages = readVarInt();
+		if (pages == 0)
+			return null;
+		pages--;
+		require(pages);
+		long[][] values = new long[pages][];
+		for (int page = 0; page < pages; page++) {
+			int len = readVarInt();
+			require(len * 8);
+			values[page] = new long[len];
+			for (int i = 0; i < len; i++)
+				values[page][i] = readLong();
+		}
+		return new Signature(values);
+	}
+
+	/**
+	 * Reads a page signature.
+	 *
+	 * @return the page signature, or <code>null</code>.
+	 * @throws IOException if the page signature could not be read.
+	 */
+	public PageSignature readPageSignature() throws IOException {
+		int pages = readVarInt();
+		if (pages == 0)
+			return null;
+		pages--;
+		if ((pages < 1) || (pages > (1 << PageSignature.MAX_DEPTH)) || ((pages & (pages - 1)) != 0))
+			throw new IOException("illegal amount of pages " + pages + "!");
+		String path = readBits();
+		if (path == null)
+			throw new IOException("page signature without path!");
+		require(pages * 8);
+		long[] values = new long[pages];
+		for (int page = 0; page < pages; page++)
+			values[page] = readLong();
+		return new PageSignature(path, values);
+	}
+
+	/**
+	 * Reads a data item written with its type.
+	 *
+	 * @return the data item.
+	 * @throws IOException if the data item could not be read.
+	 */
+	public DataItem readDataItem() throws IOException {
+		String type = readString();
+		int encoding = readByte();
+		DataItem item;
+		try {
+			item = (DataItem)StorageManager.getInstance().createDataItem(type);
+		} catch (NoSuchTypeException e) {
+			throw new IOException("unknown data item type '" + type + "'!");
+		}
+		if (item == null)
+			throw new IOException("data item type '" + type + "' cannot be created!");
+		if (encoding == BinaryWriter.DATA_ITEM_BINARY) {
+			if (!(item instanceof BinaryDataItem))
+				throw new IOException("data item type '" + type + "' has no binary encoding!");
+			item.setType(StorageManager.getInstance().getTypeByString(type));
+			((BinaryDataItem)item).decode(this);
+		} else if (encoding == BinaryWriter.DATA_ITEM_XML) {
+			parseDataItem(item, readString());
+		} else {
+			throw new IOException("unknown data item encoding " + encoding + "!");
+		}
+		return item;
+	}
+
+	/**
+	 * Parses a data item written as XML string.
+	 *
+	 * @param item the data item to fill.
+	 * @param xml  the XML string.
+	 * @throws IOException if the XML string could not be parsed.
+	 */
+	private static void parseDataItem(DataItem item, String xml) throws IOException {
+		if (xml == null)
+			throw new IOException("data item without XML string!");
+		try {
+			XMLReader parser = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+			parser.setContentHandler(item);
+			parser.setProperty("http://xml.org/sax/properties/lexical-handler", item);
+			parser.parse(new InputSource(new StringReader(xml)));
+		} catch (SAXException e) {
+			throw new IOException("invalid data item: " + e.getMessage());
+		} catch (ParserConfigurationException e) {
+			throw new IOException("invalid data item: " + e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,452 @@
+/**
+ * Copyright (c) 2002 The P-Grid Team,
+ *                    All Rights Reserved.
+ *
+ * This file is part of the P-Grid package.
+ * P-Grid homepage: http://www.p-grid.org/
+ *
+ * The P-Grid package is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This package is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; see the file LICENSE.
+ * If not you can find the GPL at http://www.gnu.org/copyleft/gpl.html
+ */
+
+package pgrid.network.protocol;
+
+import p2p.basic.GUID;
+import p2p.basic.Key;
+import pgrid.BinaryDataItem;
+import pgrid.DataItem;
+import pgrid.PGridHost;
+import pgrid.XMLDataItem;
+import pgrid.XMLizable;
+import pgrid.core.storage.PageSignature;
+import pgrid.core.storage.Signature;
+
+/**
+ * This class writes the values of a binary P-Grid message to a growing byte buffer. Counts and lengths are written as
+ * variable length integers (7 bits per byte, least significant group first), signed values are zigzag encoded before,
+ * so that small negative values stay short as well. Strings are encoded as UTF-8 directly from their characters and
+ * keys and paths consisting only of '0' and '1' are packed into bits.
+ * <p/>
+ * Nullable values are prefixed by their length plus one, a zero marks a <code>null</code> value.
+ * The values are read again by a {@link BinaryReader} in the same order.
+ *
+ * @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
+ * @version 1.0.0
+ */
+public class BinaryWriter {
+
+	/**
+	 * Marks a data item encoded by itself.
+	 */
+	static final int DATA_ITEM_BINARY = 1;
+
+	/**
+	 * Marks a data item encoded as XML string.
+	 */
+	static final int DATA_ITEM_XML = 0;
+
+	/**
+	 * Marks a host with a path and path timestamp.
+	 */
+	static final int HOST_PATH = 0x02;
+
+	/**
+	 * Marks a present host.
+	 */
+	static final int HOST_PRESENT = 0x01;
+
+	/**
+	 * The buffer.
+	 */
+	private byte[] mBuffer = null;
+
+	/**
+	 * The amount of written bytes.
+	 */
+	private int mSize = 0;
+
+	/**
+	 * Creates a new writer with a default initial capacity.
+	 */
+	public BinaryWriter() {
+		this(256);
+	}
+
+	/**
+	 * Creates a new writer with the given initial capacity.
+	 *
+	 * @param capacity the initial capacity in bytes.
+	 */
+	public BinaryWriter(int capacity) {
+		mBuffer = new byte[Math.max(capacity, 16)];
+	}
+
+	/**
+	 * Ensures that the given amount of bytes can be appended without growing the buffer again. The buffer may be
+	 * replaced, so {@link #getBuffer()} has to be called afterwards.
+	 *
+	 * @param len the amount of bytes.
+	 */
+	public void ensureCapacity(int len) {
+		if (mSize + len <= mBuffer.length)
+			return;
+		byte[] tmp = new byte[Math.max(mBuffer.length * 2, mSize + len)];
+		System.arraycopy(mBuffer, 0, tmp, 0, mSize);
+		mBuffer = tmp;
+	}
+
+	/**
+	 * Returns the buffer, only the first {@link #size()} bytes are valid.
+	 *
+	 * @return the buffer.
+	 */
+	public byte[] getBuffer() {
+		return mBuffer;
+	}
+
+	/**
+	 * Returns the amount of written bytes.
+	 *
+	 * @return the amount of written bytes.
+	 */
+	public int size() {
+		return mSize;
+	}
+
+	/**
+	 * Discards all bytes written after the given amount of bytes.
+	 *
+	 * @param size the new amount of written bytes.
+	 */
+	public void setSize(int size) {
+		if ((size < 0) || (size > mSize))
+			throw new IllegalArgumentException("size " + size + " is illegal!");
+		mSize = size;
+	}
+
+	/**
+	 * Returns a copy of the written bytes.
+	 *
+	 * @return the written bytes.
+	 */
+	public byte[] toByteArray() {
+		byte[] bytes = new byte[mSize];
+		System.arraycopy(mBuffer, 0, bytes, 0, mSize);
+		return bytes;
+	}
+
+	/**
+	 * Writes a boolean as one byte.
+	 *
+	 * @param value the value.
+	 */
+	public void writeBoolean(boolean value) {
+		writeByte(value ? 1 : 0);
+	}
+
+	/**
+	 * Writes the lowest eight bits of the given value.
+	 *
+	 * @param value the value.
+	 */
+	public void writeByte(int value) {
+		ensureCapacity(1);
+		mBuffer[mSize++] = (byte)value;
+	}
+
+	/**
+	 * Writes a part of an array of bytes without a length.
+	 *
+	 * @param data   the array of bytes.
+	 * @param offset the first byte to write.
+	 * @param len    the amount of bytes to write.
+	 */
+	public void writeBytes(byte[] data, int offset, int len) {
+		ensureCapacity(len);
+		System.arraycopy(data, offset, mBuffer, mSize, len);
+		mSize += len;
+	}
+
+	/**
+	 * Writes an array of bytes with its length.
+	 *
+	 * @param data the array of bytes, can be <code>null</code>.
+	 */
+	public void writeByteArray(byte[] data) {
+		if (data == null) {
+			writeVarInt(0);
+			return;
+		}
+		writeVarInt(data.length + 1);
+		writeBytes(data, 0, data.length);
+	}
+
+	/**
+	 * Writes a double as its eight IEEE 754 bytes.
+	 *
+	 * @param value the value.
+	 */
+	public void writeDouble(double value) {
+		writeLong(Double.doubleToLongBits(value));
+	}
+
+	/**
+	 * Writes a long as its eight bytes.
+	 *
+	 * @param value the value.
+	 */
+	public void writeLong(long value) {
+		ensureCapacity(8);
+		for (int i = 56; i >= 0; i -= 8)
+			mBuffer[mSize++] = (byte)(value >>> i);
+	}
+
+	/**
+	 * Writes a non negative integer as variable length integer.
+	 *
+	 * @param value the value.
+	 */
+	public void writeVarInt(int value) {
+		if (value < 0)
+			throw new IllegalArgumentException("value " + value + " is negative!");
+		ensureCapacity(5);
+		while ((value & ~0x7F) != 0) {
+			mBuffer[mSize++] = (byte)((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		mBuffer[mSize++] = (byte)value;
+	}
+
+	/**
+	 * Writes an integer, which may be negative, as zigzag encoded variable length integer.
+	 *
+	 * @param value the value.
+	 */
+	public void writeSignedVarInt(int value) {
+		writeVarLong(value);
+	}
+
+	/**
+	 * Writes a long, which may be negative, as zigzag encoded variable length integer.
+	 *
+	 * @param value the value.
+	 */
+	public void writeVarLong(long value) {
+		long zigzag = (value << 1) ^ (value >> 63);
+		ensureCapacity(10);
+		while ((zigzag & ~0x7FL) != 0) {
+			mBuffer[mSize++] = (byte)((zigzag & 0x7F) | 0x80);
+			zigzag >>>= 7;
+		}
+		mBuffer[mSize++] = (byte)zigzag;
+	}
+
+	/**
+	 * Writes a string as UTF-8 with its length in bytes.
+	 *
+	 * @param value the string, can be <code>null</code>.
+	 */
+	public void writeString(String value) {
+		if (value == null) {
+			writeVarInt(0);
+			return;
+		}
+		writeVarInt(utf8Length(value) + 1);
+		writeUTF8(value);
+	}
+
+	/**
+	 * Returns the length of the given string encoded as UTF-8.
+	 *
+	 * @param value the string.
+	 * @return the length in bytes.
+	 */
+	private static int utf8Length(String value) {
+		int len = value.length();
+		int bytes = len;
+		for (int i = 0; i < len; i++) {
+			char c = value.charAt(i);
+			if (c >= 0x800) {
+				if (Character.isHighSurrogate(c) && (i + 1 < len) && Character.isLowSurrogate(value.charAt(i + 1))) {
+					bytes += 2;
+					i++;
+				} else {
+					bytes += 2;
+				}
+			} else if (c >= 0x80) {
+				bytes++;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Writes the characters of the given string as UTF-8.
+	 *
+	 * @param value the string.
+	 */
+	private void writeUTF8(String value) {
+		int len = value.length();
+		ensureCapacity(len * 3);
+		byte[] buf = mBuffer;
+		int pos = mSize;
+		for (int i = 0; i < len; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				buf[pos++] = (byte)c;
+			} else if (c < 0x800) {
+				buf[pos++] = (byte)(0xC0 | (c >> 6));
+				buf[pos++] = (byte)(0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && (i + 1 < len) && Character.isLowSurrogate(value.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, value.charAt(++i));
+				buf[pos++] = (byte)(0xF0 | (cp >> 18));
+				buf[pos++] = (byte)(0x80 | ((cp >> 12) & 0x3F));
+				buf[pos++] = (byte)(0x80 | ((cp >> 6) & 0x3F));
+				buf[pos++] = (byte)(0x80 | (cp & 0x3F));
+			} else {
+				buf[pos++] = (byte)(0xE0 | (c >> 12));
+				buf[pos++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+				buf[pos++] = (byte)(0x80 | (c & 0x3F));
+			}
+		}
+		mSize = pos;
+	}
+
+	/**
+	 * Writes a string of bits, e.g., a path or key. Strings consisting only of '0' and '1' are packed into eight
+	 * bits per byte, all other strings are written as UTF-8.
+	 *
+	 * @param value the bit string, can be <code>null</code>.
+	 */
+	public void writeBits(String value) {
+		if (value == null) {
+			writeVarInt(0);
+			return;
+		}
+		int len = value.length();
+		for (int i = 0; i < len; i++) {
+			char c = value.charAt(i);
+			if ((c != '0') && (c != '1')) {
+				writeVarInt((utf8Length(value) << 1) + 1);
+				writeUTF8(value);
+				return;
+			}
+		}
+		writeVarInt(((len << 1) | 1) + 1);
+		int bytes = (len + 7) >> 3;
+		ensureCapacity(bytes);
+		for (int i = 0; i < bytes; i++)
+			mBuffer[mSize + i] = 0;
+		for (int i = 0; i < len; i++) {
+			if (value.charAt(i) == '1')
+				mBuffer[mSize + (i >> 3)] |= (byte)(0x80 >>> (i & 7));
+		}
+		mSize += bytes;
+	}
+
+	/**
+	 * Writes a key.
+	 *
+	 * @param key the key, can be <code>null</code>.
+	 */
+	public void writeKey(Key key) {
+		writeBits(key == null ? null : key.toString());
+	}
+
+	/**
+	 * Writes the bytes of a GUID.
+	 *
+	 * @param guid the GUID, can be <code>null</code>.
+	 */
+	public void writeGUID(GUID guid) {
+		writeByteArray(guid == null ? null : guid.getBytes());
+	}
+
+	/**
+	 * Writes a host.
+	 *
+	 * @param host the host, can be <code>null</code>.
+	 * @param path <code>true</code> if the path and the path timestamp should be written.
+	 */
+	public void writeHost(PGridHost host, boolean path) {
+		if (host == null) {
+			writeByte(0);
+			return;
+		}
+		writeByte(HOST_PRESENT | (path ? HOST_PATH : 0));
+		writeGUID(host.getGUID());
+		writeSignedVarInt(host.getPort());
+		writeString(host.getAddressString());
+		if (path) {
+			writeBits(host.getPath());
+			writeVarLong(Math.min(host.getPathTimestamp(), System.currentTimeMillis()));
+		}
+	}
+
+	/**
+	 * Writes a data table signature.
+	 *
+	 * @param signature the signature, can be <code>null</code>.
+	 */
+	public void writeSignature(Signature signature) {
+		if (signature == null) {
+			writeVarInt(0);
+			return;
+		}
+		int pages = signature.getPages();
+		writeVarInt(pages + 1);
+		for (int page = 0; page < pages; page++) {
+			int len = signature.getLength(page);
+			writeVarInt(len);
+			for (int i = 0; i < len; i++)
+				writeLong(signature.getSignature(page, i));
+		}
+	}
+
+	/**
+	 * Writes a page signature.
+	 *
+	 * @param signature the page signature, can be <code>null</code>.
+	 */
+	public void writePageSignature(PageSignature signature) {
+		if (signature == null) {
+			writeVarInt(0);
+			return;
+		}
+		int pages = signature.getPages();
+		writeVarInt(pages + 1);
+		writeBits(signature.getPath());
+		for (int page = 0; page < pages; page++)
+			writeLong(signature.getSignature(page));
+	}
+
+	/**
+	 * Writes a data item with its type. Data items implementing {@link BinaryDataItem} write their own values, all
+	 * other data items are written as XML string.
+	 *
+	 * @param item      the data item.
+	 * @param signature <code>true</code> if the signature of the data item should be written.
+	 */
+	public void writeDataItem(DataItem item, boolean signature) {
+		writeString(item.getTypeString());
+		if (item instanceof BinaryDataItem) {
+			writeByte(DATA_ITEM_BINARY);
+			((BinaryDataItem)item).encode(this, signature);
+		} else {
+			writeByte(DATA_ITEM_XML);
+			writeString(((XMLDataItem)item).toXMLString("", XMLizable.XML_NEW_LINE, signature));
+		}
+	}
+
+}
@@ -32,6 +32,7 @@ import pgrid.PGridHost;
 import pgrid.XMLizable;
 import pgrid.core.XMLRoutingTable;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 
 /**
@@ -40,7 +41,7 @@ import java.io.UnsupportedEncodingException;
  * @author @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
  * @version 1.0.0
  */
-public class BootstrapMessage extends pgrid.util.LexicalDefaultHandler implements PGridMessage, XMLizable {
+public class BootstrapMessage extends pgrid.util.LexicalDefaultHandler implements BinaryMessage, XMLizable {
 
 	/**
 	 * A part of the XML string.
@@ -91,6 +92,30 @@ public class BootstrapMessage extends pgrid.util.LexicalDefaultHandler implement
 		mRoutingTable = routingTable;
 	}
 
+	/**
+	 * Reads the values of this message from a binary message.
+	 *
+	 * @param in the binary reader.
+	 * @throws IOException if the message is malformed.
+	 */
+	public void decode(BinaryReader in) throws IOException {
+		if (in.readBoolean()) {
+			mRoutingTable = new XMLRoutingTable();
+			mRoutingTable.decode(in);
+		}
+	}
+
+	/**
+	 * Writes the values of this message for a binary message.
+	 *
+	 * @param out the binary writer.
+	 */
+	public void encode(BinaryWriter out) {
+		out.writeBoolean(mRoutingTable != null);
+		if (mRoutingTable != null)
+			mRoutingTable.encode(out, true, false, false);
+	}
+
 	/**
 	 * Returns the exchange message as array of bytes.
 	 *
@@ -32,6 +32,7 @@ import pgrid.XMLizable;
 import pgrid.PGridHost;
 import pgrid.core.XMLRoutingTable;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 
 /**
@@ -40,7 +41,7 @@ import java.io.UnsupportedEncodingException;
  * @author @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
  * @version 1.0.0
  */
-public class BootstrapReplyMessage extends pgrid.util.LexicalDefaultHandler implements PGridMessage, XMLizable {
+public class BootstrapReplyMessage extends pgrid.util.LexicalDefaultHandler implements BinaryMessage, XMLizable {
 
 	/**
 	 * A part of the XML string.
@@ -117,6 +118,35 @@ public class BootstrapReplyMessage extends pgrid.util.LexicalDefaultHandler impl
 		mReplicationDelay = replicationDelay;
 	}
 
+	/**
+	 * Reads the values of this message from a binary message.
+	 *
+	 * @param in the binary reader.
+	 * @throws IOException if the message is malformed.
+	 */
+	public void decode(BinaryReader in) throws IOException {
+		mReplicationDelay = in.readVarLong();
+		mConstructionDelay = in.readVarLong();
+		mRoutingTable = new XMLRoutingTable();
+		mRoutingTable.decode(in);
+	}
+
+	/**
+	 * Writes the values of this message for a binary message.
+	 *
+	 * @param out the binary writer.
+	 */
+	public void encode(BinaryWriter out) {
+		if ((mConstructionDelay != -1) && (mReplicationDelay != -1)) {
+			out.writeVarLong(mReplicationDelay);
+			out.writeVarLong(mConstructionDelay);
+		} else {
+			out.writeVarLong(-1);
+			out.writeVarLong(-1);
+		}
+		mRoutingTable.encode(out, true, false, false);
+	}
+
 	/**
 	 * Returns the exchange message as array of bytes.
 	 *
@@ -148,7 +178,7 @@ public class BootstrapReplyMessage extends pgrid.util.LexicalDefaultHandler impl
 	 * @return the message descriptor.
 	 */
 	public int getDesc() {
-		return PGridMessage.DESC_BOOTSTRAP;
+		return PGridMessage.DESC_BOOTSTRAP_REPLY;
 	}
 
 	/**
@@ -157,7 +187,7 @@ public class BootstrapReplyMessage extends pgrid.util.LexicalDefaultHandler impl
 	 * @return the message descriptor string.
 	 */
 	public String getDescString() {
-		return PGridMessage.DESC_BOOTSTRAP_STRING;
+		return PGridMessage.DESC_BOOTSTRAP_REPLY_STRING;
 	}
 
 	/**
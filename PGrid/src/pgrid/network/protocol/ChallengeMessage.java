@@ -31,6 +31,7 @@ import pgrid.Constants;
 import pgrid.interfaces.basic.PGridP2P;
 import pgrid.XMLizable;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 
 /**
@@ -39,7 +40,7 @@ import java.io.UnsupportedEncodingException;
  * @author Renault John
  * @version 1.0.0
  */
-public class ChallengeMessage extends pgrid.util.LexicalDefaultHandler implements PGridMessage, XMLizable {
+public class ChallengeMessage extends pgrid.util.LexicalDefaultHandler implements BinaryMessage, XMLizable {
 
 	/**
 	 * A part of the XML string.
@@ -102,6 +103,27 @@ public class ChallengeMessage extends pgrid.util.LexicalDefaultHandler implement
 		mChallenge = challenge;
 	}
 
+	/**
+	 * Reads the values of this message from a binary message.
+	 *
+	 * @param in the binary reader.
+	 * @throws IOException if the message is malformed.
+	 */
+	public void decode(BinaryReader in) throws IOException {
+		mGUID = in.readGUID();
+		mChallenge = in.readString();
+	}
+
+	/**
+	 * Writes the values of this message for a binary message.
+	 *
+	 * @param out the binary writer.
+	 */
+	public void encode(BinaryWriter out) {
+		out.writeGUID(mGUID);
+		out.writeString(mChallenge);
+	}
+
 	/**
 	 * Returns the exchange message as array of bytes.
 	 *
@@ -32,6 +32,7 @@ import pgrid.interfaces.basic.PGridP2P;
 import pgrid.XMLizable;
 import pgrid.util.LexicalDefaultHandler;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 
 /**
@@ -40,7 +41,7 @@ import java.io.UnsupportedEncodingException;
  * @author Renault John
  * @version 1.0.0
  */
-public class ChallengeReplyMessage extends LexicalDefaultHandler implements PGridMessage, XMLizable {
+public class ChallengeReplyMessage extends LexicalDefaultHandler implements BinaryMessage, XMLizable {
 
 	/**
 	 * A part of the XML string.
@@ -93,6 +94,27 @@ public class ChallengeReplyMessage extends LexicalDefaultHandler implements PGri
 		mResponse = challenge;
 	}
 
+	/**
+	 * Reads the values of this message from a binary message.
+	 *
+	 * @param in the binary reader.
+	 * @throws IOException if the message is malformed.
+	 */
+	public void decode(BinaryReader in) throws IOException {
+		mGUID = in.readGUID();
+		mResponse = in.readString();
+	}
+
+	/**
+	 * Writes the values of this message for a binary message.
+	 *
+	 * @param out the binary writer.
+	 */
+	public void encode(BinaryWriter out) {
+		out.writeGUID(mGUID);
+		out.writeString(mResponse);
+	}
+
 	/**
 	 * Returns the exchange message as array of bytes.
 	 *
@@ -29,6 +29,7 @@ import org.xml.sax.SAXException;
 import p2p.basic.GUID;
 import p2p.basic.Key;
 import pgrid.Constants;
+import pgrid.DataItem;
 import pgrid.PGridHost;
 import pgrid.PGridKey;
 import pgrid.XMLDataItem;
@@ -36,6 +37,7 @@ import pgrid.XMLizable;
 import pgrid.core.storage.StorageManager;
 import pgrid.interfaces.basic.PGridP2P;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Vector;
@@ -47,7 +49,7 @@ import java.io.UnsupportedEncodingException;
  * @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
  * @version 1.0.0
  */
-public class DataModifierMessage extends pgrid.util.LexicalDefaultHandler implements PGridMessage, XMLizable {
+public class DataModifierMessage extends pgrid.util.LexicalDefaultHandler implements BinaryMessage, XMLizable {
 
 	/**
 	 * A part of the XML string.
@@ -153,6 +155,54 @@ public class DataModifierMessage extends pgrid.util.LexicalDefaultHandler implem
 		mMode = mode;
 	}
 
+	/**
+	 * Reads the values of this message from a binary message.
+	 *
+	 * @param in the binary reader.
+	 * @throws IOException if the message is malformed.
+	 */
+	public void decode(BinaryReader in) throws IOException {
+		mGUID = in.readGUID();
+		mKey = in.readKey();
+		mMode = (short)in.readSignedVarInt();
+		int count = in.readVarInt();
+		if (count > 0) {
+			mReplicas = new Vector();
+			for (int i = 1; i < count; i++) {
+				PGridHost host = in.readHost(false);
+				if ((host != null) && (host.isValid()))
+					mReplicas.add(host);
+			}
+		}
+		count = in.readVarInt();
+		for (int i = 0; i < count; i++)
+			mDataItems.add(in.readDataItem());
+	}
+
+	/**
+	 * Writes the values of this message for a binary message.
+	 *
+	 * @param out the binary writer.
+	 */
+	public void encode(BinaryWriter out) {
+		out.writeGUID(mGUID);
+		out.writeKey(mKey);
+		out.writeSignedVarInt(mMode);
+		if (mReplicas == null) {
+			out.writeVarInt(0);
+		} else {
+			Object[] replicas = mReplicas.toArray();
+			out.writeVarInt(replicas.length + 1);
+			for (int i = 0; i < replicas.length; i++)
+				out.writeHost((PGridHost)replicas[i], false);
+		}
+		// add a signature to all data items
+		Object[] items = mDataItems.toArray();
+		out.writeVarInt(items.length);
+		for (int i = 0; i < items.length; i++)
+			out.writeDataItem((DataItem)items[i], true);
+	}
+
 	/**
 	 * Returns the data modifier message as array of bytes.
 	 *
@@ -30,9 +30,11 @@ import pgrid.Constants;
 import pgrid.GUID;
 import pgrid.XMLizable;
 import pgrid.util.LexicalDefaultHandler;
+import pgrid.core.storage.PageSignature;
 import pgrid.core.storage.Signature;
 import pgrid.interfaces.basic.PGridP2P;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 
 /**
@@ -41,7 +43,7 @@ import java.io.UnsupportedEncodingException;
  * @author @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
  * @version 1.0.0
  */
-public class ExchangeInvitationMessage extends LexicalDefaultHandler implements PGridMessage, XMLizable {
+public class ExchangeInvitationMessage extends LexicalDefaultHandler implements BinaryMessage, XMLizable {
 
 	/**
 	 * A part of the XML string.
@@ -73,6 +75,11 @@ public class ExchangeInvitationMessage extends LexicalDefaultHandler implements
 	 */
 	private static final String XML_EXCHANGE_INVITATION_SIGNATURE = "Signature";
 
+	/**
+	 * A part of the XML string.
+	 */
+	private static final String XML_EXCHANGE_INVITATION_PAGE_SIGNATURE = "PageSignature";
+
 	/**
 	 * The common length of pathes for recusive exchanges.
 	 */
@@ -103,6 +110,11 @@ public class ExchangeInvitationMessage extends LexicalDefaultHandler implements
 	 */
 	private Signature mSignature = null;
 
+	/**
+	 * The page signature of the data items below the path of the requesting host.
+	 */
+	private PageSignature mPageSignature = null;
+
 	/**
 	 * The temp signature string.
 	 */
@@ -124,14 +136,55 @@ public class ExchangeInvitationMessage extends LexicalDefaultHandler implements
 	 * @param sign the data table signature of the requesting host.
 	 */
 	public ExchangeInvitationMessage(String path, Signature sign, int recursion, int currentLen) {
+		this(path, sign, null, recursion, currentLen);
+	}
+
+	/**
+	 * Creates a new exchange invitation message with given values.
+	 *
+	 * @param path     the path of the requesting host.
+	 * @param sign     the data table signature of the requesting host.
+	 * @param pageSign the page signature of the data items below the path, or <code>null</code>.
+	 */
+	public ExchangeInvitationMessage(String path, Signature sign, PageSignature pageSign, int recursion, int currentLen) {
 		mHeader = new MessageHeader(Constants.PGRID_PROTOCOL_VERSION, -1, PGridP2P.sharedInstance().getLocalHost());
 		mGUID = GUID.getGUID();
 		mPath = path;
 		mSignature = sign;
+		mPageSignature = pageSign;
 		mRecursion = recursion;
 		mCurrentLen = currentLen;
 	}
 
+	/**
+	 * Reads the values of this message from a binary message.
+	 *
+	 * @param in the binary reader.
+	 * @throws IOException if the message is malformed.
+	 */
+	public void decode(BinaryReader in) throws IOException {
+		mGUID = in.readGUID();
+		mPath = in.readBits();
+		mRecursion = in.readSignedVarInt();
+		mCurrentLen = in.readSignedVarInt();
+		mSignature = in.readSignature();
+		mPageSignature = in.readPageSignature();
+	}
+
+	/**
+	 * Writes the values of this message for a binary message.
+	 *
+	 * @param out the binary writer.
+	 */
+	public void encode(BinaryWriter out) {
+		out.writeGUID(mGUID);
+		out.writeBits(mPath);
+		out.writeSignedVarInt(mRecursion);
+		out.writeSignedVarInt(mCurrentLen);
+		out.writeSignature(mSignature);
+		out.writePageSignature(mPageSignature);
+	}
+
 	/**
 	 * Returns the update message as array of bytes.
 	 *
@@ -229,6 +282,15 @@ public class ExchangeInvitationMessage extends LexicalDefaultHandler implements
 		return mSignature;
 	}
 
+	/**
+	 * Returns the page signature of the data items below the path of the requesting host.
+	 *
+	 * @return the page signature, or <code>null</code> if not sent.
+	 */
+	public PageSignature getPageSignature() {
+		return mPageSignature;
+	}
+
 	/**
 	 * Returns the message length.
 	 *
@@ -333,6 +395,14 @@ public class ExchangeInvitationMessage extends LexicalDefaultHandler implements
 				mCurrentLen = 0;
 			else
 				mCurrentLen = Integer.parseInt(currLenStr);
+			String pageSignStr = attrs.getValue(XML_EXCHANGE_INVITATION_PAGE_SIGNATURE);
+			if (pageSignStr != null) {
+				try {
+					mPageSignature = new PageSignature(pageSignStr);
+				} catch (IllegalArgumentException e) {
+					throw new SAXException(e);
+				}
+			}
 		}
 	}
 
@@ -359,6 +429,8 @@ public class ExchangeInvitationMessage extends LexicalDefaultHandler implements
 		strBuff.append(XML_SPACE + XML_EXCHANGE_INVITATION_PATH + XML_ATTR_OPEN + mPath + XML_ATTR_CLOSE); // _Path="PATH"
 		strBuff.append(XML_SPACE + XML_EXCHANGE_INVITATION_RECURSION + XML_ATTR_OPEN + mRecursion + XML_ATTR_CLOSE); // _Recursion="RECURSION"
 		strBuff.append(XML_SPACE + XML_EXCHANGE_INVITATION_CURRENT_LEN + XML_ATTR_OPEN + mCurrentLen + XML_ATTR_CLOSE); // _CurrentLength="CURRENT_LEN"
+		if (mPageSignature != null)
+			strBuff.append(XML_SPACE + XML_EXCHANGE_INVITATION_PAGE_SIGNATURE + XML_ATTR_OPEN + mPageSignature.toString() + XML_ATTR_CLOSE); // _PageSignature="PAGE_SIGNATURE"
 		strBuff.append(XML_ELEMENT_CLOSE + newLine); // >{newLine}
 
 		strBuff.append(prefix + XML_TAB + XML_ELEMENT_OPEN + XML_EXCHANGE_INVITATION_SIGNATURE + XML_ELEMENT_CLOSE); // {prefix}\t<Signature>
@@ -32,9 +32,11 @@ import pgrid.Exchange;
 import pgrid.PGridHost;
 import pgrid.XMLizable;
 import pgrid.core.XMLRoutingTable;
-import pgrid.core.storage.DBDataTable;
+import pgrid.core.storage.PageSignature;
+import pgrid.core.storage.StorageManager;
 import pgrid.core.storage.Signature;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.io.UnsupportedEncodingException;
 
@@ -44,7 +46,7 @@ import java.io.UnsupportedEncodingException;
  * @author @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
  * @version 1.0.0
  */
-public class ExchangeMessage extends Exchange implements PGridMessage, XMLizable {
+public class ExchangeMessage extends Exchange implements BinaryMessage, XMLizable {
 
 	/**
 	 * A part of the XML string.
@@ -81,6 +83,11 @@ public class ExchangeMessage extends Exchange implements PGridMessage, XMLizable
 	 */
 	private static final String XML_EXCHANGE_REPLICA_ESTIMATE = "ReplicaEstimate";
 
+	/**
+	 * A part of the XML string.
+	 */
+	private static final String XML_EXCHANGE_PAGE_SIGNATURE = "PageSignature";
+
 	/**
 	 * The message header.
 	 */
@@ -121,9 +128,71 @@ public class ExchangeMessage extends Exchange implements PGridMessage, XMLizable
 	 */
 	public ExchangeMessage(GUID guid, PGridHost host, int recursion, int lCurrent, int minStorage, double replicaEst,
 						   XMLRoutingTable routingTable, Collection dataItems, Signature sign) {
+		this(guid, host, recursion, lCurrent, minStorage, replicaEst, routingTable, dataItems, sign, null, null);
+	}
+
+	/**
+	 * Creates a new exchange message with given values.
+	 *
+	 * @param guid         the message guid.
+	 * @param host         the message creating host.
+	 * @param recursion    the recursion.
+	 * @param lCurrent     the current common length.
+	 * @param replicaEst   the replication estimate.
+	 * @param routingTable the Routing Table for this host.
+	 * @param dataItems    the list of data items.
+	 * @param sign         the signature of the data table.
+	 * @param dataPages    the page signature of the data items if data items of pages signed equally by the receiving
+	 *                     host are left out, or <code>null</code>.
+	 * @param pageSign     the page signature of the data items below the local path, or <code>null</code>.
+	 */
+	public ExchangeMessage(GUID guid, PGridHost host, int recursion, int lCurrent, int minStorage, double replicaEst,
+						   XMLRoutingTable routingTable, Collection dataItems, Signature sign,
+						   PageSignature dataPages, PageSignature pageSign) {
 		super(guid, host, recursion, lCurrent, minStorage, replicaEst, routingTable, null);
 		mHeader = new MessageHeader(Constants.PGRID_PROTOCOL_VERSION, -1, host);
-		mXMLDataTable = new XMLDataTable(dataItems, sign);
+		mXMLDataTable = new XMLDataTable(dataItems, sign, dataPages);
+		mDataTablePages = dataPages;
+		mPageSignature = pageSign;
+	}
+
+	/**
+	 * Reads the values of this message from a binary message.
+	 *
+	 * @param in the binary reader.
+	 * @throws IOException if the message is malformed.
+	 */
+	public void decode(BinaryReader in) throws IOException {
+		mGUID = in.readGUID();
+		mRandomNumber = in.readDouble();
+		mRecursion = in.readSignedVarInt();
+		mLenCurrent = in.readSignedVarInt();
+		mMinStorage = in.readSignedVarInt();
+		mReplicateEstimate = in.readDouble();
+		mRoutingTable = new XMLRoutingTable();
+		mRoutingTable.decode(in);
+		mDataTable = StorageManager.getInstance().createDataTable(mHost);
+		mXMLDataTable = new XMLDataTable(mDataTable);
+		mXMLDataTable.decode(in);
+		mDataTablePages = mXMLDataTable.getPageSignature();
+		mPageSignature = in.readPageSignature();
+	}
+
+	/**
+	 * Writes the values of this message for a binary message.
+	 *
+	 * @param out the binary writer.
+	 */
+	public void encode(BinaryWriter out) {
+		out.writeGUID(mGUID);
+		out.writeDouble(mRandomNumber);
+		out.writeSignedVarInt(mRecursion);
+		out.writeSignedVarInt(mLenCurrent);
+		out.writeSignedVarInt(mMinStorage);
+		out.writeDouble(mReplicateEstimate);
+		mRoutingTable.encode(out, true, true, true);
+		mXMLDataTable.encode(out);
+		out.writePageSignature(mPageSignature);
 	}
 
 	/**
@@ -225,6 +294,7 @@ public class ExchangeMessage extends Exchange implements PGridMessage, XMLizable
 		} else if (qName.equals(XMLDataTable.XML_DATA_TABLE)) {
 			mParsedObject.endElement(uri, lName, qName);
 			mParsedObject = null;
+			mDataTablePages = mXMLDataTable.getPageSignature();
 		} else if (mParsedObject != null) {
 			mParsedObject.endElement(uri, lName, qName);
 		}
@@ -273,12 +343,20 @@ public class ExchangeMessage extends Exchange implements PGridMessage, XMLizable
 				mReplicateEstimate = 0;
 			else
 				mReplicateEstimate = Double.parseDouble(replicaEstStr);
+			String pageSignStr = attrs.getValue(XML_EXCHANGE_PAGE_SIGNATURE);
+			if (pageSignStr != null) {
+				try {
+					mPageSignature = new PageSignature(pageSignStr);
+				} catch (IllegalArgumentException e) {
+					throw new SAXException(e);
+				}
+			}
 		} else if (qName.equals(XMLRoutingTable.XML_ROUTING_TABLE)) {
 			mRoutingTable = new XMLRoutingTable();
 			mRoutingTable.startElement(uri, lName, qName, attrs);
 			mParsedObject = mRoutingTable;
 		} else if (qName.equals(XMLDataTable.XML_DATA_TABLE)) {
-			mDataTable = new DBDataTable(mHost);
+			mDataTable = StorageManager.getInstance().createDataTable(mHost);
 			mXMLDataTable = new XMLDataTable(mDataTable);
 			mXMLDataTable.startElement(uri, lName, qName, attrs);
 			mParsedObject = mXMLDataTable;
@@ -317,6 +395,8 @@ public class ExchangeMessage extends Exchange implements PGridMessage, XMLizable
 		strBuff.append(XML_SPACE + XML_EXCHANGE_LEN_CURRENT + XML_ATTR_OPEN + mLenCurrent + XML_ATTR_CLOSE); // _CurrentLength="LEN_CURRENT"
 		strBuff.append(XML_SPACE + XML_EXCHANGE_MINSTORAGE + XML_ATTR_OPEN + mMinStorage + XML_ATTR_CLOSE); // _MinStorage="MinStorage"
 		strBuff.append(XML_SPACE + XML_EXCHANGE_REPLICA_ESTIMATE + XML_ATTR_OPEN + mReplicateEstimate + XML_ATTR_CLOSE); // _ReplicaEstimate="REPLICA_ESTIMATE"
+		if (mPageSignature != null)
+			strBuff.append(XML_SPACE + XML_EXCHANGE_PAGE_SIGNATURE + XML_ATTR_OPEN + mPageSignature.toString() + XML_ATTR_CLOSE); // _PageSignature="PAGE_SIGNATURE"
 		strBuff.append(XML_ELEMENT_CLOSE + newLine); // >{newLine}
 
 		// routing table
@@ -33,6 +33,7 @@ import pgrid.interfaces.basic.PGridP2P;
 import pgrid.*;
 import pgrid.util.LexicalDefaultHandler;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 
 /**
@@ -41,7 +42,7 @@ import java.io.UnsupportedEncodingException;
  * @author @author <a href="mailto:Roman Schmidt <Renault.John@epfl.ch>">Renault John</a>
  * @version 1.0.0
  */
-public class GenericMessage extends LexicalDefaultHandler implements PGridMessage, RoutableMessage, XMLizable {
+public class GenericMessage extends LexicalDefaultHandler implements BinaryMessage, RoutableMessage, XMLizable {
 
 	/**
 	 * A part of the XML string.
@@ -167,6 +168,36 @@ public class GenericMessage extends LexicalDefaultHandler implements PGridMessag
 		return bytes;
 	}
 
+	/**
+	 * Reads the values of this message from a binary message.
+	 *
+	 * @param in the binary reader.
+	 * @throws IOException if the message is malformed.
+	 */
+	public void decode(BinaryReader in) throws IOException {
+		mGUID = in.readGUID();
+		mKeyRange = new PGridKeyRange(in.readKey(), in.readKey());
+		mIndex = in.readSignedVarInt();
+		PGridHost host = in.readHost(false);
+		mHost = (host == null ? null : new XMLPGridHost(host));
+		mData = in.readByteArray();
+		mDataString = (mData == null ? null : new String(mData, "UTF-8"));
+	}
+
+	/**
+	 * Writes the values of this message for a binary message.
+	 *
+	 * @param out the binary writer.
+	 */
+	public void encode(BinaryWriter out) {
+		out.writeGUID(mGUID);
+		out.writeKey(mKeyRange.getMin());
+		out.writeKey(mKeyRange.getMax());
+		out.writeSignedVarInt(mIndex);
+		out.writeHost(mHost == null ? null : mHost.getHost(), false);
+		out.writeByteArray(getData());
+	}
+
 	/**
 	 * Returns a desricptor for the type of message.
 	 *
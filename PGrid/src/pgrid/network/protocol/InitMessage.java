@@ -50,11 +50,36 @@ public class InitMessage implements PGridMessage, XMLizable {
 	 */
 	private static final String COLON_SPACE = ": ";
 
+	/**
+	 * The message codec header.
+	 */
+	public static final String HEADER_CODEC = "Codec";
+
+	/**
+	 * The binary message codec.
+	 */
+	public static final String CODEC_BINARY = "binary";
+
+	/**
+	 * The XML message codec.
+	 */
+	public static final String CODEC_XML = "xml";
+
 	/**
 	 * A part of the XML string.
 	 */
 	public static final String HEADER_COMPRESSION = "Compression";
 
+	/**
+	 * The fast compression header, offered for binary connections in addition to the default compression.
+	 */
+	public static final String HEADER_FAST_COMPRESSION = "Fast-Compression";
+
+	/**
+	 * The LZ4 fast compression.
+	 */
+	public static final String FAST_COMPRESSION_LZ4 = "lz4";
+
 	/**
 	 * A part of the XML string.
 	 */
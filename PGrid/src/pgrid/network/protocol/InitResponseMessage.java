@@ -49,11 +49,21 @@ public class InitResponseMessage implements PGridMessage, XMLizable {
 	 */
 	private static final String COLON_SPACE = ": ";
 
+	/**
+	 * The message codec header.
+	 */
+	public static final String HEADER_CODEC = "Codec";
+
 	/**
 	 * A part of the XML string.
 	 */
 	public static final String HEADER_COMPRESSION = "Compression";
 
+	/**
+	 * The fast compression header.
+	 */
+	public static final String HEADER_FAST_COMPRESSION = "Fast-Compression";
+
 	/**
 	 * A part of the XML string.
 	 */
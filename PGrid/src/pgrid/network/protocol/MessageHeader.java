@@ -29,7 +29,9 @@ import org.xml.sax.SAXException;
 import p2p.basic.GUID;
 import pgrid.XMLizable;
 import pgrid.PGridHost;
+import pgrid.util.XMLTools;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 
 /**
@@ -104,6 +106,29 @@ public class MessageHeader extends pgrid.util.LexicalDefaultHandler implements P
 		mHost = new XMLPGridHost(host);
 	}
 
+	/**
+	 * Reads the protocol version and the host of a binary message header. The content length is given by the length
+	 * of the binary message.
+	 *
+	 * @param in the binary reader.
+	 * @throws IOException if the header is malformed.
+	 */
+	public void decode(BinaryReader in) throws IOException {
+		mVersion = in.readString();
+		PGridHost host = in.readHost(true);
+		mHost = (host == null ? null : new XMLPGridHost(host));
+	}
+
+	/**
+	 * Writes the protocol version and the host of this header for a binary message.
+	 *
+	 * @param out the binary writer.
+	 */
+	public void encode(BinaryWriter out) {
+		out.writeString(mVersion);
+		out.writeHost(mHost == null ? null : mHost.getHost(), false);
+	}
+
 	/**
 	 * Returns the message header as array of bytes.
 	 *
@@ -278,6 +303,31 @@ public class MessageHeader extends pgrid.util.LexicalDefaultHandler implements P
 		}
 	}
 
+	/**
+	 * Reads the leading part of the header, i.e., the opening element and the host element, without using a XML
+	 * parser.
+	 *
+	 * @param element the opening header element.
+	 * @param host    the host element.
+	 * @return <code>true</code> if the leading part could be read.
+	 */
+	public boolean parseLeadingPart(String element, String host) {
+		String tag = element.trim();
+		if (!tag.startsWith(XML_ELEMENT_OPEN + XML_PGRID + XML_SPACE))
+			return false;
+		try {
+			mVersion = XMLTools.getAttribute(tag, XML_HEADER_VERSION);
+			String contentLen = XMLTools.getAttribute(tag, XML_HEADER_CONTENT_LENGTH);
+			if (contentLen == null)
+				return false;
+			mContentLen = Integer.parseInt(contentLen);
+			mHost = XMLPGridHost.parseXMLHost(host, true);
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+		return true;
+	}
+
 	/**
 	 * Sets the content length for the message.
 	 *
@@ -115,6 +115,16 @@ public interface PGridMessage extends Message {
 	 */
 	public static final int DESC_QUERY_REPLY = 13;
 
+	/**
+	 * The Query Batch descriptor.
+	 */
+	public static final int DESC_QUERY_BATCH = 21;
+
+	/**
+	 * The Query Batch Reply descriptor.
+	 */
+	public static final int DESC_QUERY_BATCH_REPLY = 22;
+
 	/**
 	 * The range query descriptor.
 	 */
@@ -230,6 +240,16 @@ public interface PGridMessage extends Message {
 	 */
 	public static final String DESC_QUERY_REPLY_STRING = "Query Reply";
 
+	/**
+	 * The string representation of the Query Batch descriptor.
+	 */
+	public static final String DESC_QUERY_BATCH_STRING = "Query Batch";
+
+	/**
+	 * The string representation of the Query Batch Reply descriptor.
+	 */
+	public static final String DESC_QUERY_BATCH_REPLY_STRING = "Query Batch Reply";
+
 	/**
 	 * The string representation of the Query descriptor.
 	 */
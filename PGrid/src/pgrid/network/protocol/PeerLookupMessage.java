@@ -32,6 +32,7 @@ import pgrid.interfaces.basic.PGridP2P;
 import pgrid.XMLizable;
 import pgrid.PGridHost;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 
 /**
@@ -40,7 +41,7 @@ import java.io.UnsupportedEncodingException;
  * @author Renault John
  * @version 1.0.0
  */
-public class PeerLookupMessage extends pgrid.util.LexicalDefaultHandler implements PGridMessage, XMLizable {
+public class PeerLookupMessage extends pgrid.util.LexicalDefaultHandler implements BinaryMessage, XMLizable {
 	/**
 	 * A part of the XML string.
 	 */
@@ -137,6 +138,36 @@ public class PeerLookupMessage extends pgrid.util.LexicalDefaultHandler implemen
 		mHops = 0;
 	}
 
+	/**
+	 * Reads the values of this message from a binary message.
+	 *
+	 * @param in the binary reader.
+	 * @throws IOException if the message is malformed.
+	 */
+	public void decode(BinaryReader in) throws IOException {
+		mGUID = in.readGUID();
+		mPath = in.readBits();
+		mMode = in.readByte();
+		mIndex = in.readSignedVarInt();
+		mHops = in.readSignedVarInt();
+		PGridHost host = in.readHost(false);
+		mInitialHost = (host == null ? null : new XMLPGridHost(host));
+	}
+
+	/**
+	 * Writes the values of this message for a binary message.
+	 *
+	 * @param out the binary writer.
+	 */
+	public void encode(BinaryWriter out) {
+		out.writeGUID(mGUID);
+		out.writeBits(mPath);
+		out.writeByte(mMode);
+		out.writeSignedVarInt(mIndex);
+		out.writeSignedVarInt(mHops);
+		out.writeHost(mInitialHost == null ? null : mInitialHost.getHost(), false);
+	}
+
 	/**
 	 * Returns the exchange message as array of bytes.
 	 *
@@ -33,6 +33,7 @@ import pgrid.XMLizable;
 import pgrid.PGridHost;
 import pgrid.util.LexicalDefaultHandler;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 
 /**
@@ -41,7 +42,7 @@ import java.io.UnsupportedEncodingException;
  * @author Renault John
  * @version 1.0.0
  */
-public class PeerLookupReplyMessage extends LexicalDefaultHandler implements PGridMessage, XMLizable {
+public class PeerLookupReplyMessage extends LexicalDefaultHandler implements BinaryMessage, XMLizable {
 	/**
 	 * A part of the XML string.
 	 */
@@ -135,6 +136,32 @@ public class PeerLookupReplyMessage extends LexicalDefaultHandler implements PGr
 		mHops = hops;
 	}
 
+	/**
+	 * Reads the values of this message from a binary message.
+	 *
+	 * @param in the binary reader.
+	 * @throws IOException if the message is malformed.
+	 */
+	public void decode(BinaryReader in) throws IOException {
+		mGUID = in.readGUID();
+		mCode = in.readSignedVarInt();
+		mHops = in.readSignedVarInt();
+		PGridHost host = in.readHost(false);
+		mHost = (host == null ? null : new XMLPGridHost(host));
+	}
+
+	/**
+	 * Writes the values of this message for a binary message.
+	 *
+	 * @param out the binary writer.
+	 */
+	public void encode(BinaryWriter out) {
+		out.writeGUID(mGUID);
+		out.writeSignedVarInt(mCode);
+		out.writeSignedVarInt(mHops);
+		out.writeHost(mHost == null ? null : mHost.getHost(), false);
+	}
+
 	/**
 	 * Returns the exchange message as array of bytes.
 	 *
@@ -0,0 +1,347 @@
+/**
+ * Copyright (c) 2002 The P-Grid Team,
+ *                    All Rights Reserved.
+ *
+ * This file is part of the P-Grid package.
+ * P-Grid homepage: http://www.p-grid.org/
+ *
+ * The P-Grid package is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This package is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; see the file LICENSE.
+ * If not you can find the GPL at http://www.gnu.org/copyleft/gpl.html
+ */
+
+package pgrid.network.protocol;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import p2p.basic.GUID;
+import pgrid.Constants;
+import pgrid.XMLizable;
+import pgrid.interfaces.basic.PGridP2P;
+import pgrid.util.LexicalDefaultHandler;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Vector;
+
+/**
+ * This class represents the replies of a peer to the queries of a batch it is responsible for.
+ *
+ * @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
+ * @version 1.0.0
+ */
+public class QueryBatchReplyMessage extends LexicalDefaultHandler implements BinaryMessage, XMLizable {
+
+	/**
+	 * A part of the XML string.
+	 */
+	public static final String XML_QUERY_BATCH_REPLY = "QueryBatchReply";
+
+	/**
+	 * A part of the XML string.
+	 */
+	private static final String XML_QUERY_BATCH_REPLY_GUID = "GUID";
+
+	/**
+	 * The GUID of the batch search.
+	 */
+	private pgrid.GUID mGUID = null;
+
+	/**
+	 * The message header.
+	 */
+	private MessageHeader mHeader = null;
+
+	/**
+	 * The temporary variable during parsing.
+	 */
+	private QueryReplyMessage mParsedObject = null;
+
+	/**
+	 * The query reply messages.
+	 */
+	private Collection mReplies = new Vector();
+
+	/**
+	 * Creates an empty query batch reply message.
+	 *
+	 * @param header the message header.
+	 */
+	public QueryBatchReplyMessage(MessageHeader header) {
+		mHeader = header;
+	}
+
+	/**
+	 * Creates a new query batch reply message with given values.
+	 *
+	 * @param guid    the GUID of the batch search.
+	 * @param replies the query reply messages.
+	 */
+	public QueryBatchReplyMessage(GUID guid, Collection replies) {
+		mHeader = new MessageHeader(Constants.PGRID_PROTOCOL_VERSION, -1, PGridP2P.sharedInstance().getLocalHost());
+		mGUID = (pgrid.GUID)guid;
+		mReplies = replies;
+	}
+
+	/**
+	 * Reads the values of this message from a binary message.
+	 *
+	 * @param in the binary reader.
+	 * @throws IOException if the message is malformed.
+	 */
+	public void decode(BinaryReader in) throws IOException {
+		mGUID = in.readGUID();
+		int count = in.readVarInt();
+		for (int i = 0; i < count; i++) {
+			QueryReplyMessage reply = new QueryReplyMessage(mHeader);
+			reply.decode(in);
+			mReplies.add(reply);
+		}
+	}
+
+	/**
+	 * Writes the values of this message for a binary message.
+	 *
+	 * @param out the binary writer.
+	 */
+	public void encode(BinaryWriter out) {
+		out.writeGUID(mGUID);
+		Object[] replies = mReplies.toArray();
+		out.writeVarInt(replies.length);
+		for (int i = 0; i < replies.length; i++)
+			((QueryReplyMessage)replies[i]).encode(out);
+	}
+
+	/**
+	 * Returns the query batch reply message as array of bytes.
+	 *
+	 * @return the message bytes.
+	 */
+	public byte[] getBytes() {
+		byte[] bytes = null;
+
+		try {
+			bytes = toXMLString().getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			e.printStackTrace();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Get the message content.
+	 *
+	 * @return a binary representation of the message
+	 */
+	public byte[] getData() {
+		return new byte[0];
+	}
+
+	/**
+	 * Returns a desricptor for the type of message.
+	 *
+	 * @return the message descriptor.
+	 */
+	public int getDesc() {
+		return PGridMessage.DESC_QUERY_BATCH_REPLY;
+	}
+
+	/**
+	 * Returns the representation string for a descriptor of a message.
+	 *
+	 * @return the message descriptor string.
+	 */
+	public String getDescString() {
+		return PGridMessage.DESC_QUERY_BATCH_REPLY_STRING;
+	}
+
+	/**
+	 * Returns the GUID of the batch search.
+	 *
+	 * @return the batch GUID.
+	 */
+	public GUID getGUID() {
+		return mGUID;
+	}
+
+	/**
+	 * Returns the message header.
+	 *
+	 * @return the header.
+	 */
+	public MessageHeader getHeader() {
+		return mHeader;
+	}
+
+	/**
+	 * Returns the query reply messages.
+	 *
+	 * @return the replies.
+	 */
+	public Collection getReplies() {
+		return mReplies;
+	}
+
+	/**
+	 * Returns the message length.
+	 *
+	 * @return the message length.
+	 */
+	public int getSize() {
+		return toXMLString().length();
+	}
+
+	/**
+	 * Tests if this query batch reply message is valid.
+	 *
+	 * @return <code>true</code> if valid.
+	 */
+	public boolean isValid() {
+		if (mHeader == null) {
+			return false;
+		} else {
+			if (!mHeader.isValid()) {
+				return false;
+			}
+		}
+		if (mGUID == null)
+			return false;
+		if ((mReplies == null) || (mReplies.size() == 0))
+			return false;
+		for (Iterator it = mReplies.iterator(); it.hasNext();) {
+			if (!((QueryReplyMessage)it.next()).isValid())
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Sets the message header.
+	 *
+	 * @param header the header.
+	 */
+	public void setHeader(MessageHeader header) {
+		mHeader = header;
+	}
+
+	/**
+	 * The Parser will call this method to report each chunk of character data. SAX parsers may return all contiguous
+	 * character data in a single chunk, or they may split it into several chunks; however, all of the characters in any
+	 * single event must come from the same external entity so that the Locator provides useful information.
+	 *
+	 * @param ch     the characters from the XML document.
+	 * @param start  the start position in the array.
+	 * @param length the number of characters to read from the array.
+	 * @throws SAXException any SAX exception, possibly wrapping another exception.
+	 */
+	public void characters(char[] ch, int start, int length) throws SAXException {
+		if (mParsedObject != null)
+			mParsedObject.characters(ch, start, length);
+	}
+
+	/**
+	 * The SAX parser will invoke this method at the end of every element in the XML document; there will be a
+	 * corresponding startElement event for every endElement event (even when the element is empty).
+	 *
+	 * @param uri   the Namespace URI.
+	 * @param lName the local name (without prefix), or the empty string if Namespace processing is not being performed.
+	 * @param qName the qualified name (with prefix), or the empty string if qualified names are not available.
+	 * @throws SAXException any SAX exception, possibly wrapping another exception.
+	 */
+	public void endElement(String uri, String lName, String qName) throws SAXException {
+		if (mParsedObject == null)
+			return;
+		if (qName.equals(QueryReplyMessage.XML_QUERY_REPLY)) {
+			mReplies.add(mParsedObject);
+			mParsedObject = null;
+		} else {
+			mParsedObject.endElement(uri, lName, qName);
+		}
+	}
+
+	/**
+	 * The Parser will invoke this method at the beginning of every element in the XML document; there will be a
+	 * corresponding endElement event for every startElement event (even when the element is empty). All of the element's
+	 * content will be reported, in order, before the corresponding endElement event.
+	 *
+	 * @param uri   the Namespace URI.
+	 * @param lName the local name (without prefix), or the empty string if Namespace processing is not being performed.
+	 * @param qName the qualified name (with prefix), or the empty string if qualified names are not available.
+	 * @param attrs the attributes attached to the element. If there are no attributes, it shall be an empty Attributes
+	 *              object.
+	 * @throws SAXException any SAX exception, possibly wrapping another exception.
+	 */
+	public void startElement(String uri, String lName, String qName, Attributes attrs) throws SAXException {
+		if (qName.equals(XML_QUERY_BATCH_REPLY)) {
+			mGUID = new pgrid.GUID(attrs.getValue(XML_QUERY_BATCH_REPLY_GUID));
+		} else if (qName.equals(QueryReplyMessage.XML_QUERY_REPLY)) {
+			mParsedObject = new QueryReplyMessage(mHeader);
+			mParsedObject.startElement(uri, lName, qName, attrs);
+		} else if (mParsedObject != null) {
+			mParsedObject.startElement(uri, lName, qName, attrs);
+		}
+	}
+
+	/**
+	 * Returns a string represantation of this message.
+	 *
+	 * @return a string represantation of this message.
+	 */
+	public String toXMLString() {
+		return toXMLString(XML_TAB, XML_NEW_LINE);
+	}
+
+	/**
+	 * Returns the XML representation of this object.
+	 *
+	 * @param prefix  the XML prefix before each element in a new line.
+	 * @param newLine the new line string.
+	 * @return the XML string.
+	 */
+	public String toXMLString(String prefix, String newLine) {
+		StringBuffer strBuff = new StringBuffer(mReplies.size() * 200 + 100);
+		strBuff.append(prefix + XML_ELEMENT_OPEN + XML_QUERY_BATCH_REPLY); // {prefix}<QueryBatchReply
+		strBuff.append(XML_SPACE + XML_QUERY_BATCH_REPLY_GUID + XML_ATTR_OPEN + mGUID.toString() + XML_ATTR_CLOSE); // _GUID="GUID"
+		strBuff.append(XML_ELEMENT_CLOSE + newLine); // >{newLine}
+		for (Iterator it = mReplies.iterator(); it.hasNext();) {
+			strBuff.append(((QueryReplyMessage)it.next()).toXMLString(prefix + XML_TAB, newLine)); // {prefix}\t<QueryReply ...>{newLine}
+		}
+		strBuff.append(prefix + XML_ELEMENT_OPEN_END + XML_QUERY_BATCH_REPLY + XML_ELEMENT_CLOSE + newLine); // {prefix}</QueryBatchReply>{newLine}
+		return strBuff.toString();
+	}
+
+	/**
+	 * Report the start of a CDATA section.
+	 *
+	 * @throws SAXException The application may raise an exception.
+	 * @see #endCDATA
+	 */
+	public void startCDATA() throws SAXException {
+		mCDataSection = true;
+		if (mParsedObject != null) mParsedObject.startCDATA();
+	}
+
+	/**
+	 * Report the end of a CDATA section.
+	 *
+	 * @throws SAXException The application may raise an exception.
+	 * @see #startCDATA
+	 */
+	public void endCDATA() throws SAXException {
+		mCDataSection = false;
+		if (mParsedObject != null) mParsedObject.endCDATA();
+	}
+
+}
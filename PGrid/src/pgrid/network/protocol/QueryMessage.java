@@ -32,6 +32,7 @@ import pgrid.*;
 import pgrid.core.storage.StorageManager;
 import pgrid.interfaces.basic.PGridP2P;
 
+import java.io.IOException;
 import java.util.Iterator;
 import java.util.Vector;
 import java.io.UnsupportedEncodingException;
@@ -42,7 +43,7 @@ import java.io.UnsupportedEncodingException;
  * @author @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
  * @version 1.0.0
  */
-public class QueryMessage extends Query implements PGridMessage, RoutableMessage, XMLizable {
+public class QueryMessage extends Query implements BinaryMessage, RoutableMessage, XMLizable {
 
 	/**
 	 * A part of the XML string.
@@ -136,6 +137,57 @@ public class QueryMessage extends Query implements PGridMessage, RoutableMessage
 		mHeader = new MessageHeader(Constants.PGRID_PROTOCOL_VERSION, -1, PGridP2P.sharedInstance().getLocalHost());
 	}
 
+	/**
+	 * Reads the values of this message from a binary message.
+	 *
+	 * @param in the binary reader.
+	 * @throws IOException if the message is malformed.
+	 */
+	public void decode(BinaryReader in) throws IOException {
+		mGUID = in.readGUID();
+		mType = StorageManager.getInstance().getTypeByString(in.readString());
+		mIndex = in.readSignedVarInt();
+		mKey = new PGridKeyRange(in.readKey(), in.readKey());
+		mMinSpeed = in.readSignedVarInt();
+		mHops = in.readSignedVarInt();
+		mRequestingHost = in.readHost(false);
+		int count = in.readVarInt();
+		if (count > 0) {
+			mReplicas = new Vector();
+			for (int i = 1; i < count; i++) {
+				PGridHost host = in.readHost(false);
+				if ((host != null) && (host.isValid()))
+					mReplicas.add(new XMLPGridHost(host));
+			}
+		}
+		mQueryString = in.readString();
+	}
+
+	/**
+	 * Writes the values of this message for a binary message.
+	 *
+	 * @param out the binary writer.
+	 */
+	public void encode(BinaryWriter out) {
+		out.writeGUID(mGUID);
+		out.writeString(getTypeString());
+		out.writeSignedVarInt(mIndex);
+		out.writeKey(mKey.getMin());
+		out.writeKey(mKey.getMax());
+		out.writeSignedVarInt(mMinSpeed);
+		out.writeSignedVarInt(mHops);
+		out.writeHost(mRequestingHost, false);
+		if (mReplicas == null) {
+			out.writeVarInt(0);
+		} else {
+			Object[] replicas = mReplicas.toArray();
+			out.writeVarInt(replicas.length + 1);
+			for (int i = 0; i < replicas.length; i++)
+				out.writeHost(((XMLPGridHost)replicas[i]).getHost(), false);
+		}
+		out.writeString(mQueryString);
+	}
+
 	/**
 	 * Returns the query message as array of bytes.
 	 *
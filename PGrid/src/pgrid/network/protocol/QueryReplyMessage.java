@@ -27,12 +27,14 @@ package pgrid.network.protocol;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import pgrid.Constants;
+import pgrid.DataItem;
 import pgrid.QueryReply;
 import pgrid.XMLDataItem;
 import pgrid.XMLizable;
 import pgrid.core.storage.StorageManager;
 import pgrid.interfaces.basic.PGridP2P;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Vector;
@@ -44,7 +46,7 @@ import java.io.UnsupportedEncodingException;
  * @author @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
  * @version 1.0.0
  */
-public class QueryReplyMessage extends QueryReply implements PGridMessage, XMLizable {
+public class QueryReplyMessage extends QueryReply implements BinaryMessage, XMLizable {
 
 	/**
 	 * The Query Hit reply code Bad Request.
@@ -122,6 +124,49 @@ public class QueryReplyMessage extends QueryReply implements PGridMessage, XMLiz
 			mCode = CODE_OK;
 		else if (type == TYPE_NOT_FOUND)
 			mCode = CODE_NOT_FOUND;
+		else if (type == TYPE_BAD_REQUEST)
+			mCode = CODE_BAD_REQUEST;
+	}
+
+	/**
+	 * Reads the values of this message from a binary message.
+	 *
+	 * @param in the binary reader.
+	 * @throws IOException if the message is malformed.
+	 */
+	public void decode(BinaryReader in) throws IOException {
+		mGUID = in.readGUID();
+		mCode = in.readSignedVarInt();
+		if (mCode == CODE_OK)
+			mType = TYPE_OK;
+		else if (mCode == CODE_NOT_FOUND)
+			mType = TYPE_NOT_FOUND;
+		else if (mCode == CODE_BAD_REQUEST)
+			mType = TYPE_BAD_REQUEST;
+		int count = in.readVarInt();
+		if (count > 0) {
+			mResultSet = new Vector();
+			for (int i = 1; i < count; i++)
+				mResultSet.add(in.readDataItem());
+		}
+	}
+
+	/**
+	 * Writes the values of this message for a binary message.
+	 *
+	 * @param out the binary writer.
+	 */
+	public void encode(BinaryWriter out) {
+		out.writeGUID(mGUID);
+		out.writeSignedVarInt(mCode);
+		if (mResultSet == null) {
+			out.writeVarInt(0);
+		} else {
+			Object[] items = mResultSet.toArray();
+			out.writeVarInt(items.length + 1);
+			for (int i = 0; i < items.length; i++)
+				out.writeDataItem((DataItem)items[i], false);
+		}
 	}
 
 	/**
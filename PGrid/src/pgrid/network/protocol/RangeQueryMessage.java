@@ -36,6 +36,7 @@ import pgrid.XMLizable;
 import pgrid.PGridHost;
 import pgrid.core.storage.StorageManager;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 
 /**
@@ -43,7 +44,7 @@ import java.io.UnsupportedEncodingException;
  *
  * @author <a href="mailto:Renault JOHN <renault.john@epfl.ch>">Renault JOHN</a>
  */
-public class RangeQueryMessage extends RangeQuery implements PGridMessage, RoutableMessage,
+public class RangeQueryMessage extends RangeQuery implements BinaryMessage, RoutableMessage,
 		XMLizable {
 
 	/**
@@ -155,6 +156,46 @@ public class RangeQueryMessage extends RangeQuery implements PGridMessage, Routa
 		mPrefix = prefix;
 	}
 
+	/**
+	 * Reads the values of this message from a binary message.
+	 *
+	 * @param in the binary reader.
+	 * @throws IOException if the message is malformed.
+	 */
+	public void decode(BinaryReader in) throws IOException {
+		mGUID = in.readGUID();
+		mType = StorageManager.getInstance().getTypeByString(in.readString());
+		mHops = in.readSignedVarInt();
+		mAlgorithm = in.readString();
+		mIndex = in.readSignedVarInt();
+		mPrefix = in.readBits();
+		mBoundsKeys = new PGridKeyRange(in.readKey(), in.readKey());
+		mMinSpeed = in.readSignedVarInt();
+		setInitialHost(in.readHost(false));
+		mFirstQueryString = in.readString();
+		mSecondQueryString = in.readString();
+	}
+
+	/**
+	 * Writes the values of this message for a binary message.
+	 *
+	 * @param out the binary writer.
+	 */
+	public void encode(BinaryWriter out) {
+		out.writeGUID(mGUID);
+		out.writeString(getTypeString());
+		out.writeSignedVarInt(getHops());
+		out.writeString(mAlgorithm);
+		out.writeSignedVarInt(mIndex);
+		out.writeBits(mPrefix);
+		out.writeKey(mBoundsKeys.getMin());
+		out.writeKey(mBoundsKeys.getMax());
+		out.writeSignedVarInt(mMinSpeed);
+		out.writeHost(getInitialHost(), false);
+		out.writeString(mFirstQueryString);
+		out.writeString(mSecondQueryString);
+	}
+
 	/**
 	 * Returns the query message as array of bytes.
 	 *
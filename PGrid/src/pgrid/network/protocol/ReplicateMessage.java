@@ -28,12 +28,14 @@ import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import p2p.basic.GUID;
 import pgrid.Constants;
+import pgrid.DataItem;
 import pgrid.interfaces.basic.PGridP2P;
 import pgrid.XMLDataItem;
 import pgrid.XMLizable;
 import pgrid.util.LexicalDefaultHandler;
 import pgrid.core.storage.StorageManager;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Vector;
@@ -45,7 +47,7 @@ import java.io.UnsupportedEncodingException;
  * @author @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
  * @version 1.0.0
  */
-public class ReplicateMessage extends LexicalDefaultHandler implements PGridMessage, XMLizable {
+public class ReplicateMessage extends LexicalDefaultHandler implements BinaryMessage, XMLizable {
 
 	/**
 	 * A part of the XML string.
@@ -104,6 +106,32 @@ public class ReplicateMessage extends LexicalDefaultHandler implements PGridMess
 		mDataItems = dataItems;
 	}
 
+	/**
+	 * Reads the values of this message from a binary message.
+	 *
+	 * @param in the binary reader.
+	 * @throws IOException if the message is malformed.
+	 */
+	public void decode(BinaryReader in) throws IOException {
+		mGUID = in.readGUID();
+		int count = in.readVarInt();
+		for (int i = 0; i < count; i++)
+			mDataItems.add(in.readDataItem());
+	}
+
+	/**
+	 * Writes the values of this message for a binary message.
+	 *
+	 * @param out the binary writer.
+	 */
+	public void encode(BinaryWriter out) {
+		out.writeGUID(mGUID);
+		Object[] items = mDataItems.toArray();
+		out.writeVarInt(items.length);
+		for (int i = 0; i < items.length; i++)
+			out.writeDataItem((DataItem)items[i], false);
+	}
+
 	/**
 	 * Returns the update message as array of bytes.
 	 *
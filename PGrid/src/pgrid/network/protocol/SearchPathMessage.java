@@ -31,6 +31,7 @@ import pgrid.Constants;
 import pgrid.interfaces.basic.PGridP2P;
 import pgrid.XMLizable;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 
 /**
@@ -39,7 +40,7 @@ import java.io.UnsupportedEncodingException;
  * @author @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
  * @version 1.0.0
  */
-public class SearchPathMessage extends pgrid.util.LexicalDefaultHandler implements PGridMessage, XMLizable {
+public class SearchPathMessage extends pgrid.util.LexicalDefaultHandler implements BinaryMessage, XMLizable {
 
 	/**
 	 * A part of the XML string.
@@ -114,6 +115,29 @@ public class SearchPathMessage extends pgrid.util.LexicalDefaultHandler implemen
 		mCommonLen = commonLen;
 	}
 
+	/**
+	 * Reads the values of this message from a binary message.
+	 *
+	 * @param in the binary reader.
+	 * @throws IOException if the message is malformed.
+	 */
+	public void decode(BinaryReader in) throws IOException {
+		mGUID = in.readGUID();
+		mPath = in.readBits();
+		mCommonLen = in.readSignedVarInt();
+	}
+
+	/**
+	 * Writes the values of this message for a binary message.
+	 *
+	 * @param out the binary writer.
+	 */
+	public void encode(BinaryWriter out) {
+		out.writeGUID(mGUID);
+		out.writeBits(mPath);
+		out.writeSignedVarInt(mCommonLen);
+	}
+
 	/**
 	 * Returns the query message as array of bytes.
 	 *
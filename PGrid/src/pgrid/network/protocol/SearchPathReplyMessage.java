@@ -29,12 +29,13 @@ import org.xml.sax.SAXException;
 import p2p.basic.GUID;
 import pgrid.Constants;
 import pgrid.XMLizable;
-import pgrid.core.storage.DBDataTable;
 import pgrid.core.storage.DataTable;
+import pgrid.core.storage.StorageManager;
 import pgrid.core.RoutingTable;
 import pgrid.core.XMLRoutingTable;
 import pgrid.interfaces.basic.PGridP2P;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 
 /**
@@ -43,7 +44,7 @@ import java.io.UnsupportedEncodingException;
  * @author @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
  * @version 1.0.0
  */
-public class SearchPathReplyMessage extends pgrid.util.LexicalDefaultHandler implements PGridMessage, XMLizable {
+public class SearchPathReplyMessage extends pgrid.util.LexicalDefaultHandler implements BinaryMessage, XMLizable {
 
 	/**
 	 * The search path reply code Path Changed.
@@ -83,7 +84,7 @@ public class SearchPathReplyMessage extends pgrid.util.LexicalDefaultHandler imp
 	/**
 	 * The data table.
 	 */
-	private DBDataTable mDataTable = null;
+	private DataTable mDataTable = null;
 
 	/**
 	 * The message GUID.
@@ -143,7 +144,7 @@ public class SearchPathReplyMessage extends pgrid.util.LexicalDefaultHandler imp
 	 * @param routingTable the routing table of the host.
 	 * @param dataTable    the dataTable items of the host.
 	 */
-	public SearchPathReplyMessage(GUID guid, String path, XMLRoutingTable routingTable, DBDataTable dataTable) {
+	public SearchPathReplyMessage(GUID guid, String path, XMLRoutingTable routingTable, DataTable dataTable) {
 		mHeader = new MessageHeader(Constants.PGRID_PROTOCOL_VERSION, -1, PGridP2P.sharedInstance().getLocalHost());
 		mGUID = guid;
 		mPath = path;
@@ -153,6 +154,46 @@ public class SearchPathReplyMessage extends pgrid.util.LexicalDefaultHandler imp
 		mCode = CODE_OK;
 	}
 
+	/**
+	 * Reads the values of this message from a binary message.
+	 *
+	 * @param in the binary reader.
+	 * @throws IOException if the message is malformed.
+	 */
+	public void decode(BinaryReader in) throws IOException {
+		mGUID = in.readGUID();
+		mPath = in.readBits();
+		mCode = in.readSignedVarInt();
+		if (in.readBoolean()) {
+			mRoutingTable = new XMLRoutingTable();
+			mRoutingTable.decode(in);
+		}
+		if (in.readBoolean()) {
+			mDataTable = StorageManager.getInstance().createDataTable(mHeader.getHost());
+			mXMLDataTable = new XMLDataTable(mDataTable);
+			mXMLDataTable.decode(in);
+		}
+	}
+
+	/**
+	 * Writes the values of this message for a binary message.
+	 *
+	 * @param out the binary writer.
+	 */
+	public void encode(BinaryWriter out) {
+		out.writeGUID(mGUID);
+		out.writeBits(mPath);
+		out.writeSignedVarInt(mCode);
+		// routing table
+		out.writeBoolean((mCode == CODE_OK) && (mRoutingTable != null));
+		if ((mCode == CODE_OK) && (mRoutingTable != null))
+			mRoutingTable.encode(out, true, true, true);
+		// data table
+		out.writeBoolean((mCode == CODE_OK) && (mDataTable != null));
+		if ((mCode == CODE_OK) && (mDataTable != null))
+			mXMLDataTable.encode(out);
+	}
+
 	/**
 	 * Returns the pong message as array of bytes.
 	 *
@@ -192,7 +233,7 @@ public class SearchPathReplyMessage extends pgrid.util.LexicalDefaultHandler imp
 	 *
 	 * @param dataTable the data items.
 	 */
-	public void setDataItems(DBDataTable dataTable) {
+	public void setDataItems(DataTable dataTable) {
 		mDataTable = dataTable;
 	}
 
@@ -378,7 +419,7 @@ public class SearchPathReplyMessage extends pgrid.util.LexicalDefaultHandler imp
 			mRoutingTable.startElement(uri, lName, qName, attrs);
 			mParsedObject = mRoutingTable;
 		} else if (qName.equals(XMLDataTable.XML_DATA_TABLE)) {
-			mDataTable = new DBDataTable(mHeader.getHost());
+			mDataTable = StorageManager.getInstance().createDataTable(mHeader.getHost());
 			mXMLDataTable = new XMLDataTable(mDataTable);
 			mXMLDataTable.startElement(uri, lName, qName, attrs);
 			mParsedObject = mXMLDataTable;
@@ -25,13 +25,16 @@ package pgrid.network.protocol;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
+import pgrid.DataItem;
 import pgrid.XMLDataItem;
 import pgrid.XMLizable;
-import pgrid.core.storage.DBDataTable;
+import pgrid.core.storage.DataTable;
+import pgrid.core.storage.PageSignature;
 import pgrid.core.storage.Signature;
 import pgrid.core.storage.StorageManager;
 import pgrid.interfaces.basic.PGridP2P;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Vector;
@@ -55,6 +58,11 @@ public class XMLDataTable implements XMLizable {
 	 */
 	private static final String XML_DATA_TABLE_SIGNATURE = "Signature";
 
+	/**
+	 * A part of the XML string.
+	 */
+	private static final String XML_DATA_TABLE_PAGES = "Pages";
+
 	/**
 	 * The represented data table.
 	 */
@@ -68,7 +76,7 @@ public class XMLDataTable implements XMLizable {
 	/**
 	 * The data table.
 	 */
-	private DBDataTable mDataTable = null;
+	private DataTable mDataTable = null;
 
 	/**
 	 * The temporary variable during parsing.
@@ -80,6 +88,11 @@ public class XMLDataTable implements XMLizable {
 	 */
 	private Signature mSignature = null;
 
+	/**
+	 * The page signature of the data items, if data items of equal pages are left out.
+	 */
+	private PageSignature mPages = null;
+
 	/**
 	 * The temporary variable during parsing.
 	 */
@@ -89,7 +102,7 @@ public class XMLDataTable implements XMLizable {
 	 * Construct a new Data Table.
 	 * @param dataTable the data table.
 	 */
-	public XMLDataTable(DBDataTable dataTable) {
+	public XMLDataTable(DataTable dataTable) {
 		mStorageManager = PGridP2P.sharedInstance().getStorageManager();
 		mDataTable = dataTable;
 		mDataItems = mDataTable.getDataItems();
@@ -102,9 +115,31 @@ public class XMLDataTable implements XMLizable {
 	 * @param sign the data table signature.
 	 */
 	public XMLDataTable(Collection dataItems, Signature sign) {
+		this(dataItems, sign, null);
+	}
+
+	/**
+	 * Creates a new data table for the given data items, which lacks the data items of pages signed equally by the
+	 * receiving host.
+	 *
+	 * @param dataItems the data items.
+	 * @param sign      the signature of the data table.
+	 * @param pages     the page signature of the data items, or <code>null</code> if the data items are complete.
+	 */
+	public XMLDataTable(Collection dataItems, Signature sign, PageSignature pages) {
 		mStorageManager = PGridP2P.sharedInstance().getStorageManager();
 		mDataItems = dataItems;
 		mSignature = sign;
+		mPages = pages;
+	}
+
+	/**
+	 * Returns the page signature of the data items.
+	 *
+	 * @return the page signature, or <code>null</code> if the data items are complete.
+	 */
+	public PageSignature getPageSignature() {
+		return mPages;
 	}
 
 	/**
@@ -122,6 +157,45 @@ public class XMLDataTable implements XMLizable {
 			mParsedObject.characters(ch, start, length);
 	}
 
+	/**
+	 * Reads the signature and the data items of a data table written by {@link #encode(BinaryWriter)} and adds them
+	 * to the data table.
+	 *
+	 * @param in the binary reader.
+	 * @throws IOException if the data table is malformed.
+	 */
+	public void decode(BinaryReader in) throws IOException {
+		Signature sign = in.readSignature();
+		if (sign != null)
+			mSignature = sign;
+		mPages = in.readPageSignature();
+		int count = in.readVarInt();
+		Vector items = new Vector(Math.min(count, in.remaining()));
+		for (int i = 0; i < count; i++)
+			items.add(in.readDataItem());
+		mDataTable.addAll(items);
+		mDataItems = items;
+		mDataTable.setSignature(mSignature);
+	}
+
+	/**
+	 * Writes the signature and the data items of this data table for a binary message.
+	 *
+	 * @param out the binary writer.
+	 */
+	public void encode(BinaryWriter out) {
+		out.writeSignature(mSignature);
+		out.writePageSignature(mPages);
+		if (mDataItems == null) {
+			out.writeVarInt(0);
+			return;
+		}
+		Object[] items = mDataItems.toArray();
+		out.writeVarInt(items.length);
+		for (int i = 0; i < items.length; i++)
+			out.writeDataItem((DataItem)items[i], false);
+	}
+
 	/**
 	 * The SAX parser will invoke this method at the end of every element in the XML document; there will be a
 	 * corresponding startElement event for every endElement event (even when the element is empty).
@@ -163,6 +237,14 @@ public class XMLDataTable implements XMLizable {
 			String sign = attrs.getValue(XML_DATA_TABLE_SIGNATURE);
 			if (sign != null)
 				mSignature = new Signature(sign);
+			String pages = attrs.getValue(XML_DATA_TABLE_PAGES);
+			if (pages != null) {
+				try {
+					mPages = new PageSignature(pages);
+				} catch (IllegalArgumentException e) {
+					throw new SAXException(e);
+				}
+			}
 			mTmpDataItems = new Vector();
 		} else if (qName.equals(XMLDataItem.XML_DATA_ITEM)) {
 			// a Data Item
@@ -203,6 +285,8 @@ public class XMLDataTable implements XMLizable {
 
 		strBuff.append(prefix + XML_ELEMENT_OPEN + XML_DATA_TABLE); // {prefix}<DataTable
 		strBuff.append(XML_SPACE + XML_DATA_TABLE_SIGNATURE + XML_ATTR_OPEN + mSignature.toString() + XML_ATTR_CLOSE); // _Signature="SIGNATURE"
+		if (mPages != null)
+			strBuff.append(XML_SPACE + XML_DATA_TABLE_PAGES + XML_ATTR_OPEN + mPages.toString() + XML_ATTR_CLOSE); // _Pages="PAGES"
 
 		if ((mDataItems != null) && (mDataItems.size() > 0)) {
 			strBuff.append(XML_ELEMENT_CLOSE + newLine); // >{newLine}
@@ -28,6 +28,7 @@ import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import pgrid.PGridHost;
 import pgrid.XMLizable;
+import pgrid.util.XMLTools;
 
 /**
  * This class extends the {@link pgrid.PGridHost} with XML functionality.
@@ -222,6 +223,35 @@ public class XMLPGridHost implements XMLizable {
 		}
 	}
 
+	/**
+	 * Returns a XMLPGridHost for a single host element, e.g., of a message header, without using a XML parser.
+	 *
+	 * @param element        the host element.
+	 * @param checkTimestamp if the timestamp of the path should be used.
+	 * @return a XMLPGridHost for the given XML string, or <code>null</code> if it is no valid host element.
+	 */
+	public static XMLPGridHost parseXMLHost(String element, boolean checkTimestamp) {
+		String tag = element.trim();
+		if (!tag.startsWith(XML_ELEMENT_OPEN + XML_HOST + XML_SPACE))
+			return null;
+		String guid = XMLTools.getAttribute(tag, XML_HOST_GUID);
+		String address = XMLTools.getAttribute(tag, XML_HOST_ADDRESS);
+		String port = XMLTools.getAttribute(tag, XML_HOST_PORT);
+		if ((guid == null) || (address == null) || (port == null))
+			return null;
+		PGridHost host = PGridHost.getHost(guid, address, port);
+		String path = XMLTools.getAttribute(tag, XML_HOST_PATH);
+		if (path != null) {
+			String timestamp = (checkTimestamp ? XMLTools.getAttribute(tag, XML_HOST_TIMESTAMP) : null);
+			if (timestamp != null) {
+				host.setPath(path, Long.parseLong(timestamp));
+			} else {
+				host.setPath(path);
+			}
+		}
+		return toXMLHost(host);
+	}
+
 	/**
 	 * Returns an XMLPGridHost for the host object.
 	 *
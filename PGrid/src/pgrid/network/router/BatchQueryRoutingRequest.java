@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2002 The P-Grid Team,
+ *                    All Rights Reserved.
+ *
+ * This file is part of the P-Grid package.
+ * P-Grid homepage: http://www.p-grid.org/
+ *
+ * The P-Grid package is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This package is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; see the file LICENSE.
+ * If not you can find the GPL at http://www.gnu.org/copyleft/gpl.html
+ */
+
+package pgrid.network.router;
+
+import p2p.basic.GUID;
+import p2p.storage.Query;
+import p2p.storage.events.SearchListener;
+import pgrid.PGridHost;
+import pgrid.util.TimerManager;
+
+import java.util.Collection;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.Vector;
+
+/**
+ * A routing request for a batch of exact queries. Batches started locally keep the queries not answered yet.
+ *
+ * @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
+ * @version 1.0.0
+ */
+class BatchQueryRoutingRequest implements Request {
+
+	private GUID mGUID = null;
+
+	private Collection mQueries = null;
+
+	private SearchListener mSearchListener = null;
+
+	private PGridHost mInitialHost = null;
+
+	private boolean mLocal = false;
+
+	private Hashtable mPending = new Hashtable();
+
+	private long mStartTime = 0;
+
+	private TimerManager.TimerElement mTimer = null;
+
+	public BatchQueryRoutingRequest(GUID guid, Collection queries, SearchListener listener, PGridHost initialHost, boolean local) {
+		mGUID = guid;
+		mQueries = queries;
+		mSearchListener = listener;
+		mInitialHost = initialHost;
+		mLocal = local;
+		if (local) {
+			for (Iterator it = queries.iterator(); it.hasNext();) {
+				Query query = (Query)it.next();
+				mPending.put(query.getGUID(), query);
+			}
+		}
+	}
+
+	public GUID getGUID() {
+		return mGUID;
+	}
+
+	public Collection getQueries() {
+		return mQueries;
+	}
+
+	public SearchListener getSearchListener() {
+		return mSearchListener;
+	}
+
+	public PGridHost getInitialHost() {
+		return mInitialHost;
+	}
+
+	public boolean isLocal() {
+		return mLocal;
+	}
+
+	public void startProcessing() {
+		mStartTime = System.currentTimeMillis();
+	}
+
+	public long getStartTime() {
+		return mStartTime;
+	}
+
+	public synchronized void setTimer(TimerManager.TimerElement timer) {
+		mTimer = timer;
+	}
+
+	public synchronized void cancelTimer() {
+		if (mTimer != null) {
+			mTimer.cancel();
+			mTimer = null;
+		}
+	}
+
+	/**
+	 * Marks the query with the given GUID as answered.
+	 *
+	 * @param guid the GUID of the query.
+	 * @return <code>true</code> if the query was not answered before.
+	 */
+	public boolean complete(GUID guid) {
+		return mPending.remove(guid) != null;
+	}
+
+	public boolean isFinished() {
+		return mPending.isEmpty();
+	}
+
+	public Collection getPending() {
+		return new Vector(mPending.keySet());
+	}
+
+	public String getRoutingStrategyName() {
+		return pgrid.network.router.BatchQueryRoutingStrategy.STRATEGY_NAME;
+	}
+}
@@ -0,0 +1,488 @@
+/**
+ * Copyright (c) 2002 The P-Grid Team,
+ *                    All Rights Reserved.
+ *
+ * This file is part of the P-Grid package.
+ * P-Grid homepage: http://www.p-grid.org/
+ *
+ * The P-Grid package is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This package is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; see the file LICENSE.
+ * If not you can find the GPL at http://www.gnu.org/copyleft/gpl.html
+ */
+
+package pgrid.network.router;
+
+import p2p.basic.GUID;
+import p2p.basic.events.NoRouteToKeyException;
+import p2p.storage.events.BatchSearchListener;
+import p2p.storage.events.NoSuchTypeException;
+import p2p.storage.events.SearchDeadlineListener;
+import p2p.storage.events.SearchListener;
+import pgrid.Constants;
+import pgrid.PGridHost;
+import pgrid.Properties;
+import pgrid.Query;
+import pgrid.QueryReply;
+import pgrid.interfaces.basic.PGridP2P;
+import pgrid.network.MessageManager;
+import pgrid.network.protocol.ACKMessage;
+import pgrid.network.protocol.QueryBatchMessage;
+import pgrid.network.protocol.QueryBatchReplyMessage;
+import pgrid.network.protocol.QueryMessage;
+import pgrid.network.protocol.QueryReplyMessage;
+import pgrid.util.TimerManager;
+
+import java.util.Collection;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.Vector;
+
+/**
+ * The Batch Query Router routes batches of exact queries in the network. At each peer the queries of a batch are
+ * grouped by the routing table level responsible for their keys, and each group is sent as one batch message to a host
+ * of its level. The queries the peer is responsible for are answered together in one batch reply to the initial host.
+ * The search listener of the initial host is informed for every query of the batch, and when the whole batch is
+ * finished.
+ *
+ * @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
+ * @version 1.0.0
+ */
+class BatchQueryRoutingStrategy extends RoutingStrategy implements QueryBatchReplyWaiter, pgrid.util.TimerListener {
+
+	/**
+	 * Stategy name
+	 */
+	public static String STRATEGY_NAME = "Batch query routing";
+
+	/**
+	 * The timer manager
+	 */
+	protected TimerManager timerManager = TimerManager.sharedInstance();
+
+	/**
+	 * The batches started locally and not finished yet.
+	 */
+	private Hashtable mBatches = new Hashtable();
+
+	/**
+	 * The sent batch messages waiting for an acknowledgment.
+	 */
+	private Hashtable mMessages = new Hashtable();
+
+	/**
+	 * The timers removing the batch messages not acknowledged in time.
+	 */
+	private Hashtable mTimers = new Hashtable();
+
+	/**
+	 * The message manager.
+	 */
+	protected MessageManager mMsgMgr = MessageManager.sharedInstance();
+
+	/**
+	 * The P2P facility.
+	 */
+	protected PGridP2P mPGridP2P = PGridP2P.sharedInstance();
+
+	/**
+	 * default constructor
+	 *
+	 * @param router
+	 */
+	public BatchQueryRoutingStrategy(Router router) {
+		super(router);
+	}
+
+	/**
+	 * Routes the queries of a batch to the responsible peers.
+	 *
+	 * @param routingRequest the batch query route request.
+	 */
+	public void route(Request routingRequest) {
+		if (!(routingRequest instanceof BatchQueryRoutingRequest)) {
+			return;
+		}
+
+		BatchQueryRoutingRequest request = (BatchQueryRoutingRequest)routingRequest;
+		request.startProcessing();
+		if (request.isLocal()) {
+			mBatches.put(request.getGUID(), request);
+			mMsgMgr.addWaiter(request.getGUID(), this);
+			if (request.isFinished()) {
+				finish(request);
+				return;
+			}
+			request.setTimer(timerManager.register(mPGridP2P.propertyLong(Properties.QUERY_DEADLINE), request.getGUID(), this, false));
+		}
+
+		// split the batch into the queries answered locally and the queries per routing table level
+		PGridHost localHost = mPGridP2P.getLocalHost();
+		Vector local = new Vector();
+		Hashtable levels = new Hashtable();
+		for (Iterator it = request.getQueries().iterator(); it.hasNext();) {
+			Query query = (Query)it.next();
+			if (query.isHostResponsible(localHost)) {
+				local.add(query);
+				continue;
+			}
+
+			QueryMessage msg;
+			int level = getRouter().getLevel(query.getKeyRange().getMin());
+			if (query instanceof QueryMessage) {
+				// the query is already a message => simply forward it
+				msg = (QueryMessage)query;
+				msg.setIndex(level);
+				msg.incHops();
+			} else {
+				msg = new QueryMessage(query.getGUID(), query.getType(), query.getLowerBound(), query.getKeyRange().getMin(), level, 0, localHost, 0, null);
+			}
+			Integer key = new Integer(level);
+			Vector group = (Vector)levels.get(key);
+			if (group == null) {
+				group = new Vector();
+				levels.put(key, group);
+			}
+			group.add(msg);
+		}
+
+		// answer the local queries
+		if (!local.isEmpty()) {
+			Router.LOGGER.fine("Match " + local.size() + " queries of batch (" + request.getGUID().toString() + ") locally.");
+			new ReplyCollector(request.getGUID(), request.getInitialHost(), local).start();
+		}
+
+		// send one message per routing table level
+		for (Iterator it = levels.keySet().iterator(); it.hasNext();) {
+			Integer level = (Integer)it.next();
+			send(request, level.intValue(), (Vector)levels.get(level));
+		}
+	}
+
+	/**
+	 * Sends the given queries of a batch to a host of the routing table level. The queries are answered with bad
+	 * requests if no host is available.
+	 *
+	 * @param request the batch query request.
+	 * @param level   the routing table level.
+	 * @param queries the query messages.
+	 */
+	private void send(BatchQueryRoutingRequest request, int level, Vector queries) {
+		QueryBatchMessage msg = new QueryBatchMessage(request.getGUID(), queries);
+		mMessages.put(msg.getGUID(), msg);
+		mTimers.put(msg.getGUID(), timerManager.register(Constants.QUERY_PROCESSING_TIMEOUT, msg, this, false));
+
+		Router.LOGGER.fine("Send " + queries.size() + " queries of batch (" + request.getGUID().toString() + ") to level " + level + ".");
+		boolean sent;
+		try {
+			sent = getRouter().routeAtLevel(msg, level, this);
+		} catch (NoRouteToKeyException e) {
+			sent = false;
+		}
+		if (!sent) {
+			remove(msg.getGUID());
+			failed(request.getGUID(), request.getInitialHost(), queries);
+		}
+	}
+
+	/**
+	 * Answers the given queries with bad requests.
+	 *
+	 * @param guid        the GUID of the batch.
+	 * @param initialHost the initial host of the batch.
+	 * @param queries     the failed queries.
+	 */
+	private void failed(GUID guid, PGridHost initialHost, Collection queries) {
+		Router.LOGGER.fine(queries.size() + " queries of batch (" + guid.toString() + ") cannot be routed.");
+		Vector replies = new Vector(queries.size());
+		for (Iterator it = queries.iterator(); it.hasNext();)
+			replies.add(new QueryReplyMessage(((Query)it.next()).getGUID(), QueryReply.TYPE_BAD_REQUEST, null));
+		reply(guid, initialHost, replies);
+	}
+
+	/**
+	 * Sends the replies for queries of a batch to the initial host, or delivers them if the batch was started locally.
+	 *
+	 * @param guid        the GUID of the batch.
+	 * @param initialHost the initial host of the batch.
+	 * @param replies     the query reply messages.
+	 */
+	private void reply(GUID guid, PGridHost initialHost, Vector replies) {
+		QueryBatchReplyMessage msg = new QueryBatchReplyMessage(guid, replies);
+		if (mBatches.containsKey(guid) || initialHost.equals(mPGridP2P.getLocalHost()))
+			newQueryBatchReply(msg);
+		else
+			mMsgMgr.sendMessage(initialHost, msg);
+	}
+
+	/**
+	 * Removes a sent batch message.
+	 *
+	 * @param guid the GUID of the batch message.
+	 * @return the removed batch message.
+	 */
+	private QueryBatchMessage remove(GUID guid) {
+		TimerManager.TimerElement timer = (TimerManager.TimerElement)mTimers.remove(guid);
+		if (timer != null)
+			timer.cancel();
+		return (QueryBatchMessage)mMessages.remove(guid);
+	}
+
+	/**
+	 * Removes a finished batch and informs the search listener.
+	 *
+	 * @param request the batch query request.
+	 */
+	private void finish(BatchQueryRoutingRequest request) {
+		if (mBatches.remove(request.getGUID()) == null)
+			return;
+		request.cancelTimer();
+		mMsgMgr.removeWaiter(request.getGUID());
+		Router.LOGGER.fine("Batch (" + request.getGUID().toString() + ") finished after " + (System.currentTimeMillis() - request.getStartTime()) + " ms.");
+		if (request.getSearchListener() instanceof BatchSearchListener)
+			((BatchSearchListener)request.getSearchListener()).batchFinished(request.getGUID());
+	}
+
+	/**
+	 * Informs the search listener about the queries of a batch not answered in time.
+	 *
+	 * @param guid the GUID of the batch.
+	 */
+	private void deadlineExceeded(GUID guid) {
+		BatchQueryRoutingRequest request = (BatchQueryRoutingRequest)mBatches.get(guid);
+		if (request == null)
+			return;
+
+		Router.LOGGER.fine("Deadline for batch (" + guid.toString() + ") exceeded.");
+		SearchListener listener = request.getSearchListener();
+		for (Iterator it = request.getPending().iterator(); it.hasNext();) {
+			GUID query = (GUID)it.next();
+			if (!request.complete(query))
+				continue;
+			PGridP2P.sharedInstance().getStatistics().QueryTimeout++;
+			if (listener instanceof SearchDeadlineListener)
+				((SearchDeadlineListener)listener).searchDeadlineExceeded(query);
+			else
+				listener.searchFailed(query);
+		}
+		finish(request);
+	}
+
+	/**
+	 * A new query batch reply was received.
+	 *
+	 * @param message the reply message.
+	 */
+	public void newQueryBatchReply(QueryBatchReplyMessage message) {
+		BatchQueryRoutingRequest request = (BatchQueryRoutingRequest)mBatches.get(message.getGUID());
+		if (request == null) {
+			Router.LOGGER.fine("Unknown query batch reply message (" + message.getGUID() + ").");
+			return;
+		}
+
+		SearchListener listener = request.getSearchListener();
+		Router.LOGGER.fine("Response for batch (" + message.getGUID().toString() + ") from " + message.getHeader().getHost().toHostString() + " received with " + message.getReplies().size() + " replies.");
+		for (Iterator it = message.getReplies().iterator(); it.hasNext();) {
+			QueryReplyMessage reply = (QueryReplyMessage)it.next();
+			if (!request.complete(reply.getGUID()))
+				continue;
+			if (reply.getType() == QueryReply.TYPE_OK) {
+				listener.newSearchResult(reply.getGUID(), reply.getResultSet());
+				listener.searchFinished(reply.getGUID());
+			} else if (reply.getType() == QueryReply.TYPE_BAD_REQUEST) {
+				PGridP2P.sharedInstance().getStatistics().QueryBadRequest++;
+				listener.searchFailed(reply.getGUID());
+			} else if (reply.getType() == QueryReply.TYPE_NOT_FOUND) {
+				PGridP2P.sharedInstance().getStatistics().QueryNotFound++;
+				listener.noResultsFound(reply.getGUID());
+				listener.searchFinished(reply.getGUID());
+			}
+		}
+		if (request.isFinished())
+			finish(request);
+	}
+
+	/**
+	 * A new ACK response was received.
+	 *
+	 * @param message the response message.
+	 */
+	public void newAcknowledgment(ACKMessage message) {
+		QueryBatchMessage msg = (QueryBatchMessage)mMessages.get(message.getGUID());
+		if (msg == null) return;
+
+		short status = getRouter().checkAcknowledgment(message);
+		if (status == Router.ROUTE_OK) {
+			remove(message.getGUID());
+			BatchQueryRoutingRequest request = (BatchQueryRoutingRequest)mBatches.get(msg.getBatchGUID());
+			if (request != null) {
+				for (Iterator it = msg.getQueries().iterator(); it.hasNext();)
+					request.getSearchListener().searchStarted(((QueryMessage)it.next()).getGUID(), message.getMessage());
+			}
+		} else if (status == Router.ROUTE_FAILED) {
+			if (remove(message.getGUID()) != null)
+				failed(msg.getBatchGUID(), ((QueryMessage)msg.getQueries().iterator().next()).getInitialHost(), msg.getQueries());
+		}
+	}
+
+	/**
+	 * Timer triggered callback method. The id is the GUID of a batch at its deadline, or a batch message not
+	 * acknowledged in time.
+	 *
+	 * @param id
+	 */
+	public void timerTriggered(Object id) {
+		if (id instanceof GUID) {
+			deadlineExceeded((GUID)id);
+			return;
+		}
+
+		GUID guid = ((QueryBatchMessage)id).getGUID();
+		synchronized (mMessages) {
+			if (mMessages.get(guid) != id)
+				return;
+			remove(guid);
+		}
+		Router.LOGGER.finest("[" + guid + "]: Removing batch message reference.");
+	}
+
+	public String getStrategyName() {
+		return STRATEGY_NAME;
+	}
+
+	/**
+	 * The queries of a dropped local batch are reported as failed. A dropped remote batch is only logged, as it was
+	 * handed over by a connection thread which must not send messages.
+	 *
+	 * @param routingRequest the dropped request.
+	 */
+	public void dropped(Request routingRequest) {
+		if (!(routingRequest instanceof BatchQueryRoutingRequest))
+			return;
+
+		BatchQueryRoutingRequest request = (BatchQueryRoutingRequest)routingRequest;
+		Router.LOGGER.fine("Batch (" + request.getGUID().toString() + ") dropped.");
+		if (!request.isLocal())
+			return;
+
+		SearchListener listener = request.getSearchListener();
+		for (Iterator it = request.getPending().iterator(); it.hasNext();) {
+			GUID query = (GUID)it.next();
+			if (request.complete(query))
+				listener.searchFailed(query);
+		}
+		if (listener instanceof BatchSearchListener)
+			((BatchSearchListener)listener).batchFinished(request.getGUID());
+	}
+
+	/**
+	 * Collects the results of the queries of a batch matched locally, and replies them in one message.
+	 */
+	private class ReplyCollector implements SearchListener {
+
+		/**
+		 * The GUID of the batch.
+		 */
+		private GUID mGUID = null;
+
+		/**
+		 * The initial host of the batch.
+		 */
+		private PGridHost mInitialHost = null;
+
+		/**
+		 * The queries to match.
+		 */
+		private Collection mQueries = null;
+
+		/**
+		 * The queries not answered yet.
+		 */
+		private Hashtable mPending = new Hashtable();
+
+		/**
+		 * The replies of the answered queries.
+		 */
+		private Vector mReplies = new Vector();
+
+		/**
+		 * Creates a new collector for the given queries.
+		 *
+		 * @param guid        the GUID of the batch.
+		 * @param initialHost the initial host of the batch.
+		 * @param queries     the queries to match.
+		 */
+		ReplyCollector(GUID guid, PGridHost initialHost, Collection queries) {
+			mGUID = guid;
+			mInitialHost = initialHost;
+			mQueries = queries;
+			for (Iterator it = queries.iterator(); it.hasNext();) {
+				Query query = (Query)it.next();
+				mPending.put(query.getGUID(), query);
+			}
+		}
+
+		/**
+		 * Matches the queries with the local data items.
+		 */
+		void start() {
+			for (Iterator it = mQueries.iterator(); it.hasNext();) {
+				Query query = (Query)it.next();
+				try {
+					mPGridP2P.getStorageManager().matchLocalItems(query, this);
+				} catch (NoSuchTypeException e) {
+					searchFailed(query.getGUID());
+				}
+			}
+		}
+
+		/**
+		 * Adds the reply for a query, and sends all replies when the last query was answered.
+		 *
+		 * @param guid    the GUID of the query.
+		 * @param type    the query reply type.
+		 * @param results the found data items.
+		 */
+		private void complete(GUID guid, int type, Collection results) {
+			synchronized (this) {
+				if (mPending.remove(guid) == null)
+					return;
+				mReplies.add(new QueryReplyMessage(guid, type, results));
+				if (!mPending.isEmpty())
+					return;
+			}
+			reply(mGUID, mInitialHost, mReplies);
+		}
+
+		public void newSearchResult(GUID guid, Collection results) {
+			complete(guid, QueryReply.TYPE_OK, results);
+		}
+
+		public void noResultsFound(GUID guid) {
+			complete(guid, QueryReply.TYPE_NOT_FOUND, null);
+		}
+
+		public void searchFailed(GUID guid) {
+			complete(guid, QueryReply.TYPE_BAD_REQUEST, null);
+		}
+
+		public void searchFinished(GUID guid) {
+			// the reply is added by the first notification
+		}
+
+		public void searchStarted(GUID guid, String message) {
+			// do nothing
+		}
+
+	}
+
+}
@@ -27,6 +27,7 @@ package pgrid.network.router;
 import p2p.basic.Key;
 import pgrid.core.storage.DistributionListener;
 import pgrid.network.protocol.PGridMessage;
+import pgrid.util.TimerManager;
 
 /**
  * A routing request for an insert/update/delete message.
@@ -45,6 +46,8 @@ class DistributionRequest implements Request {
 
 	private long mStartTime=0;
 
+	private TimerManager.TimerElement mTimer = null;
+
 	public DistributionRequest(Key key, PGridMessage msg, DistributionListener listener) {
 		mKey = key;
 		mMsg = msg;
@@ -74,4 +77,15 @@ class DistributionRequest implements Request {
 	public long getStartTime() {
 		return mStartTime;
 	}
+
+	public synchronized void setTimer(TimerManager.TimerElement timer) {
+		mTimer = timer;
+	}
+
+	public synchronized void cancelTimer() {
+		if (mTimer != null) {
+			mTimer.cancel();
+			mTimer = null;
+		}
+	}
 }
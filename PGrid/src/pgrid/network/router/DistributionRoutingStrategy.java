@@ -34,8 +34,6 @@ import pgrid.Constants;
 import pgrid.util.TimerManager;
 
 import java.util.Hashtable;
-import java.util.Vector;
-import java.util.Iterator;
 
 /**
  * The Distribution Router routes insert/update/delete messages in the network.
@@ -68,7 +66,6 @@ class DistributionRoutingStrategy extends pgrid.network.router.RoutingStrategy i
 	 */
 	public DistributionRoutingStrategy(Router router) {
 		super(router);
-		timerManager.register(Constants.DISTRIBUTION_PROCESSING_TIMEOUT, null, this, true);
 	}
 
 
@@ -92,6 +89,7 @@ class DistributionRoutingStrategy extends pgrid.network.router.RoutingStrategy i
 		if (sent) {
 			// INFO: requests should be added here only but sent is sometimes false though a message was sent successfully
 			// mRequests.put(request.getMessage().getGUID(), request);
+			request.setTimer(timerManager.register(Constants.DISTRIBUTION_PROCESSING_TIMEOUT, request, this, false));
 		} else {
 			request.getDistributionListener().distributionFailed(request.getMessage().getGUID());
 			mRequests.remove(request.getMessage().getGUID());
@@ -109,6 +107,7 @@ class DistributionRoutingStrategy extends pgrid.network.router.RoutingStrategy i
 			Router.getLogger().info("No Distribution request found for ACK message.");
 			return;
 		}
+		request.cancelTimer();
 		DistributionListener listener = request.getDistributionListener();
 		short status = getRouter().checkAcknowledgment(message);
 		if (status == Router.ROUTE_OK) {
@@ -124,32 +123,20 @@ class DistributionRoutingStrategy extends pgrid.network.router.RoutingStrategy i
 	}
 
 	/**
-	 * Timer triggered callback method. This method will remove all routing attempts older then a
+	 * Timer triggered callback method. This method will remove a distribution request not acknowledged in a
 	 * certain amount of time.
 	 *
-	 * @param id
+	 * @param id the distribution request
 	 */
 	public void timerTriggered(Object id) {
-		Iterator it = mRequests.values().iterator();
-		Vector guids = new Vector();
-		long currentTime = System.currentTimeMillis();
-		DistributionRequest request;
-
-		while(it.hasNext()) {
-			request = (DistributionRequest)it.next();
-			if (request.getStartTime()+Constants.DISTRIBUTION_PROCESSING_TIMEOUT < currentTime)
-				guids.add(request.getMessage().getGUID());
+		DistributionRequest request = (DistributionRequest)id;
+		synchronized (mRequests) {
+			if (mRequests.get(request.getMessage().getGUID()) != request)
+				return;
+			mRequests.remove(request.getMessage().getGUID());
 		}
 
-		if (!guids.isEmpty()) {
-			it = guids.iterator();
-			while(it.hasNext()) {
-				request = (DistributionRequest)mRequests.remove(it.next());
-				if (request != null) {
-					Router.getLogger().fine("["+request.getMessage().getGUID()+"]: Removing distribution request reference.");
-					request.getDistributionListener().distributionFailed(request.getMessage().getGUID());
-				}
-			}
-		}
+		Router.getLogger().fine("["+request.getMessage().getGUID()+"]: Removing distribution request reference.");
+		request.getDistributionListener().distributionFailed(request.getMessage().getGUID());
 	}
 }
\ No newline at end of file
@@ -24,9 +24,14 @@
 
 package pgrid.network.router;
 
+import p2p.basic.GUID;
+import p2p.basic.Key;
+import p2p.basic.events.NoRouteToKeyException;
 import p2p.storage.Query;
+import p2p.storage.events.SearchDeadlineListener;
 import p2p.storage.events.SearchListener;
 import pgrid.PGridHost;
+import pgrid.Properties;
 import pgrid.QueryReply;
 import pgrid.Constants;
 import pgrid.util.TimerManager;
@@ -37,11 +42,12 @@ import pgrid.network.protocol.QueryMessage;
 import pgrid.network.protocol.QueryReplyMessage;
 
 import java.util.Hashtable;
-import java.util.Iterator;
-import java.util.Vector;
 
 /**
  * The Query Router routes query messages in the network.
+ * Queries started locally are sent to a second replica if no reply was received after the usual reply time of the
+ * routing table level (hedged requests), the first reply is taken. The search listener is informed if no reply was
+ * received before the query deadline. Queries forwarded for other peers are forgotten after the query processing timeout.
  *
  * @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
  * @version 1.0.0
@@ -63,6 +69,11 @@ class ExactQueryRoutingStrategy extends pgrid.network.router.RoutingStrategy imp
 	 */
 	private Hashtable mQueries = new Hashtable();
 
+	/**
+	 * The recent reply times per routing table level.
+	 */
+	private Hashtable mReplyTimes = new Hashtable();
+
 	/**
 	 * The P2P facility.
 	 */
@@ -75,7 +86,6 @@ class ExactQueryRoutingStrategy extends pgrid.network.router.RoutingStrategy imp
 	 */
 	public ExactQueryRoutingStrategy(Router router) {
 		super(router);
-		timerManager.register(1000*60*1, null, this, true);
 	}
 
 	/**
@@ -90,11 +100,19 @@ class ExactQueryRoutingStrategy extends pgrid.network.router.RoutingStrategy imp
 		}
 
 		QueryRoutingRequest request = (QueryRoutingRequest)routingRequest;
+		if (request.getMessage() != null) {
+			// the query was already sent and is routed again to hedge
+			hedge(request);
+			return;
+		}
 
 		// add query to the already seen queries list
 		request.startProcessing();
 		Query query = request.getQuery();
-		mQueries.put(request.getQuery().getGUID(), request);
+		QueryRoutingRequest previous = (QueryRoutingRequest)mQueries.put(request.getQuery().getGUID(), request);
+		if (previous != null)
+			previous.cancelTimers();
+		boolean local = !(query instanceof QueryMessage);
 
 		QueryMessage msg = null;
 		if (query instanceof QueryMessage) {
@@ -111,12 +129,104 @@ class ExactQueryRoutingStrategy extends pgrid.network.router.RoutingStrategy imp
 
 
 		// send query message
-		boolean sent = getRouter().route(query.getKeyRange().getMin(), msg, this);
+		Key key = query.getKeyRange().getMin();
+		request.setMessage(msg);
+		request.setLevel(getRouter().getLevel(key));
+		// the replies of forwarded queries are sent to the initial host, a reply may arrive before the message is sent
+		request.setLocal(local);
+		boolean sent = getRouter().route(key, msg, this, request.getSentHosts());
 		if (!sent) {
+			mQueries.remove(query.getGUID());
 			request.getSearchListener().searchFailed(query.getGUID());
+		} else if (local) {
+			long delay = getHedgeDelay(request.getLevel());
+			if (delay > 0)
+				request.setHedgeTimer(timerManager.register(delay, request, this, false));
+			request.setDeadlineTimer(timerManager.register(mPGridP2P.propertyLong(Properties.QUERY_DEADLINE), query.getGUID(), this, false));
+		} else {
+			request.setDeadlineTimer(timerManager.register(Constants.QUERY_PROCESSING_TIMEOUT, query.getGUID(), this, false));
+		}
+	}
+
+	/**
+	 * Returns the time to wait for a reply before a query is sent to another replica of the given level.
+	 *
+	 * @param level the routing table level.
+	 * @return the time in ms, or 0 if hedging is disabled.
+	 */
+	private long getHedgeDelay(int level) {
+		long delay = mPGridP2P.propertyLong(Properties.QUERY_HEDGE_DELAY);
+		if (delay <= 0)
+			return 0;
+		long percentile = getReplyTimes(level).percentile(mPGridP2P.propertyInteger(Properties.QUERY_HEDGE_PERCENTILE));
+		if (percentile < 0)
+			return delay;
+		return Math.max(1, percentile);
+	}
+
+	/**
+	 * Returns the recent reply times of the given routing table level.
+	 *
+	 * @param level the routing table level.
+	 * @return the reply times.
+	 */
+	private ReplyTimes getReplyTimes(int level) {
+		synchronized (mReplyTimes) {
+			Integer key = new Integer(level);
+			ReplyTimes times = (ReplyTimes)mReplyTimes.get(key);
+			if (times == null) {
+				times = new ReplyTimes();
+				mReplyTimes.put(key, times);
+			}
+			return times;
 		}
 	}
 
+	/**
+	 * Sends an unanswered query to another replica of the routing table level.
+	 *
+	 * @param request the query request.
+	 */
+	private void hedge(QueryRoutingRequest request) {
+		Query query = request.getQuery();
+		if (mQueries.get(query.getGUID()) != request)
+			return;
+
+		Router.LOGGER.fine("No reply for query (" + query.getGUID().toString() + ") after " + (System.currentTimeMillis() - request.getStartTime()) + " ms, send it to another replica.");
+		// the hedge replaces the attempt of the first host, its acknowledgment may arrive before the message is sent
+		request.setHedged();
+		try {
+			if (!getRouter().route(query.getKeyRange().getMin(), request.getMessage(), this, request.getSentHosts()))
+				Router.LOGGER.fine("No other replica for query (" + query.getGUID().toString() + ") available.");
+		} catch (NoRouteToKeyException e) {
+			Router.LOGGER.fine("No route for query (" + query.getGUID().toString() + ") available.");
+		}
+	}
+
+	/**
+	 * Informs the search listener that a query was not answered in time, or forgets a query forwarded for another peer.
+	 *
+	 * @param guid the GUID of the query.
+	 */
+	private void deadlineExceeded(GUID guid) {
+		QueryRoutingRequest request = (QueryRoutingRequest)mQueries.remove(guid);
+		if (request == null)
+			return;
+		request.cancelTimers();
+		if (!request.isLocal()) {
+			Router.LOGGER.finest("["+guid+"]: Removing  query request reference.");
+			return;
+		}
+
+		PGridP2P.sharedInstance().getStatistics().QueryTimeout++;
+		Router.LOGGER.fine("Deadline for query (" + guid.toString() + ") exceeded.");
+		SearchListener listener = request.getSearchListener();
+		if (listener instanceof SearchDeadlineListener)
+			((SearchDeadlineListener)listener).searchDeadlineExceeded(guid);
+		else
+			listener.searchFailed(guid);
+	}
+
 	/**
 	 * A new ACK response was received.
 	 *
@@ -128,9 +238,12 @@ class ExactQueryRoutingStrategy extends pgrid.network.router.RoutingStrategy imp
 			Router.LOGGER.fine("Unknown query reply message (" + message.getGUID() + ").");
 			return;
 		}
+		request.cancelTimers();
 
 		Query query = request.getQuery();
 		SearchListener listener = request.getSearchListener();
+		if (request.isLocal())
+			getReplyTimes(request.getLevel()).add(System.currentTimeMillis() - request.getStartTime());
 
 		Router.LOGGER.fine("Response for remote search (" + query.getGUID().toString() + ") with key '" + query.getKeyRange() + "' for '" + query.getLowerBound() + "' from " + message.getHeader().getHost().toHostString() + " received with " + message.getHits() + " hit(s).");
 		// something message
@@ -163,36 +276,33 @@ class ExactQueryRoutingStrategy extends pgrid.network.router.RoutingStrategy imp
 		SearchListener listener = request.getSearchListener();
 		short status = getRouter().checkAcknowledgment(message);
 		if (status == Router.ROUTE_OK) {
-			listener.searchStarted(message.getGUID(), message.getMessage());
+			if (request.acknowledge())
+				listener.searchStarted(message.getGUID(), message.getMessage());
 		} else if (status == Router.ROUTE_FAILED) {
-			listener.searchFailed(message.getGUID());
+			if (request.isHedged()) {
+				// only the hedge failed, the first host may still be processing the query => wait for the reply or the deadline
+				Router.LOGGER.fine("Hedge for query (" + message.getGUID().toString() + ") failed, wait for the first host.");
+			} else if (mQueries.remove(message.getGUID()) != null) {
+				request.cancelTimers();
+				listener.searchFailed(message.getGUID());
+			}
 		}
 	}
 
 	/**
-	 * Timer triggered callback method
+	 * Timer triggered callback method. The id is the query request to hedge, or the GUID of a query at its deadline.
 	 *
 	 * @param id
 	 */
 	public void timerTriggered(Object id) {
-		Iterator it = mQueries.values().iterator();
-		Vector guids = new Vector();
-		long currentTime = System.currentTimeMillis();
-		QueryRoutingRequest request;
-
-		while(it.hasNext()) {
-			request = (QueryRoutingRequest)it.next();
-			if (request.getStartTime()+Constants.QUERY_PROCESSING_TIMEOUT < currentTime)
-				guids.add(request.getQuery().getGUID());
-		}
-
-		if (!guids.isEmpty()) {
-			it = guids.iterator();
-			while(it.hasNext()) {
-				request = (QueryRoutingRequest)mQueries.remove(it.next());
-				if (request != null)
-					Router.LOGGER.finest("["+request.getQuery().getGUID()+"]: Removing  query request reference.");
-			}
+		if (id instanceof QueryRoutingRequest) {
+			// hedge in the router thread
+			QueryRoutingRequest request = (QueryRoutingRequest)id;
+			if (mQueries.get(request.getQuery().getGUID()) == request)
+				getRouter().route(request);
+			return;
+		} else if (id instanceof GUID) {
+			deadlineExceeded((GUID)id);
 		}
 	}
 
@@ -200,4 +310,20 @@ class ExactQueryRoutingStrategy extends pgrid.network.router.RoutingStrategy imp
 		return STRATEGY_NAME;
 	}
 
+	/**
+	 * A dropped query is reported as failed, a dropped hedge is ignored as the query is still pending.
+	 *
+	 * @param routingRequest the dropped request.
+	 */
+	public void dropped(Request routingRequest) {
+		if (!(routingRequest instanceof QueryRoutingRequest))
+			return;
+
+		QueryRoutingRequest request = (QueryRoutingRequest)routingRequest;
+		if (request.getMessage() == null) {
+			Router.LOGGER.fine("Query (" + request.getQuery().getGUID().toString() + ") dropped.");
+			request.getSearchListener().searchFailed(request.getQuery().getGUID());
+		}
+	}
+
 }
\ No newline at end of file
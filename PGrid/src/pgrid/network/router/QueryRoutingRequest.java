@@ -26,6 +26,11 @@ package pgrid.network.router;
 
 import p2p.storage.Query;
 import p2p.storage.events.SearchListener;
+import pgrid.network.protocol.PGridMessage;
+import pgrid.util.TimerManager;
+
+import java.util.Collection;
+import java.util.Vector;
 
 /**
  * A routing request for a query.
@@ -41,6 +46,24 @@ class QueryRoutingRequest implements Request {
 
 	private long mStartTime = 0;
 
+	private PGridMessage mMessage = null;
+
+	private int mLevel = 0;
+
+	private boolean mLocal = false;
+
+	private Collection mSentHosts = new Vector();
+
+	private TimerManager.TimerElement mHedgeTimer = null;
+
+	private TimerManager.TimerElement mDeadlineTimer = null;
+
+	private boolean mTimersCancelled = false;
+
+	private boolean mAcknowledged = false;
+
+	private boolean mHedged = false;
+
 	public QueryRoutingRequest(Query query, SearchListener listener) {
 		mQuery = query;
 		mSearchListener = listener;
@@ -62,6 +85,74 @@ class QueryRoutingRequest implements Request {
 		return mStartTime;
 	}
 
+	public PGridMessage getMessage() {
+		return mMessage;
+	}
+
+	public void setMessage(PGridMessage message) {
+		mMessage = message;
+	}
+
+	public int getLevel() {
+		return mLevel;
+	}
+
+	public void setLevel(int level) {
+		mLevel = level;
+	}
+
+	public boolean isLocal() {
+		return mLocal;
+	}
+
+	public void setLocal(boolean local) {
+		mLocal = local;
+	}
+
+	public Collection getSentHosts() {
+		return mSentHosts;
+	}
+
+	/**
+	 * Marks the query as acknowledged by a host.
+	 *
+	 * @return <code>true</code> if the query was not acknowledged before.
+	 */
+	public synchronized boolean acknowledge() {
+		boolean first = !mAcknowledged;
+		mAcknowledged = true;
+		return first;
+	}
+
+	public synchronized boolean isHedged() {
+		return mHedged;
+	}
+
+	public synchronized void setHedged() {
+		mHedged = true;
+	}
+
+	public synchronized void setHedgeTimer(TimerManager.TimerElement timer) {
+		mHedgeTimer = timer;
+		// the query may have been answered by another thread before the timer was set
+		if (mTimersCancelled)
+			timer.cancel();
+	}
+
+	public synchronized void setDeadlineTimer(TimerManager.TimerElement timer) {
+		mDeadlineTimer = timer;
+		if (mTimersCancelled)
+			timer.cancel();
+	}
+
+	public synchronized void cancelTimers() {
+		mTimersCancelled = true;
+		if (mHedgeTimer != null)
+			mHedgeTimer.cancel();
+		if (mDeadlineTimer != null)
+			mDeadlineTimer.cancel();
+	}
+
 	public String getRoutingStrategyName() {
 		return pgrid.network.router.ExactQueryRoutingStrategy.STRATEGY_NAME;
 	}
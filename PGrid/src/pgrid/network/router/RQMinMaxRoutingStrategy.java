@@ -250,6 +250,24 @@ class RQMinMaxRoutingStrategy extends RoutingStrategy implements QueryReplyWaite
 		return STRATEGY_NAME;
 	}
 
+	/**
+	 * A dropped range query is forgotten and reported as failed.
+	 *
+	 * @param routingRequest the dropped request.
+	 */
+	public void dropped(Request routingRequest) {
+		if (!(routingRequest instanceof RangeQueryRoutingRequest))
+			return;
+
+		RangeQueryRoutingRequest request = (RangeQueryRoutingRequest)routingRequest;
+		synchronized (mQueries) {
+			if (mQueries.get(request.getQuery().getGUID()) == request)
+				mQueries.remove(request.getQuery().getGUID());
+		}
+		Router.LOGGER.fine("Range query (" + request.getQuery().getGUID().toString() + ") dropped.");
+		request.getSearchListener().searchFailed(request.getQuery().getGUID());
+	}
+
 	/**
 	 * For the lookup algorithm
 	 * @see p2p.storage.events.SearchListener#newSearchResult(p2p.basic.GUID, java.util.Collection)
@@ -72,7 +72,6 @@ class RQShowerRoutingStrategy extends pgrid.network.router.RoutingStrategy imple
 	 */
 	public RQShowerRoutingStrategy(Router router) {
 		super(router);
-		timerManager.register(1000*60*1, null, this, true);
 	}
 
 	/**
@@ -101,7 +100,10 @@ class RQShowerRoutingStrategy extends pgrid.network.router.RoutingStrategy imple
 
 		// add query to the already seen queries list
 		request.startProcessing();
-		mQueries.put(request.getQuery().getGUID(), request);
+		RangeQueryRoutingRequest previous = (RangeQueryRoutingRequest)mQueries.put(request.getQuery().getGUID(), request);
+		if (previous != null)
+			previous.cancelTimer();
+		request.setTimer(timerManager.register(Constants.QUERY_PROCESSING_TIMEOUT, request, this, false));
 
 		RangeQueryMessage msg;
 
@@ -176,27 +178,29 @@ class RQShowerRoutingStrategy extends pgrid.network.router.RoutingStrategy imple
 		return STRATEGY_NAME;
 	}
 
+	/**
+	 * A dropped range query is reported as failed.
+	 *
+	 * @param routingRequest the dropped request.
+	 */
+	public void dropped(Request routingRequest) {
+		if (!(routingRequest instanceof RangeQueryRoutingRequest))
+			return;
+
+		RangeQueryRoutingRequest request = (RangeQueryRoutingRequest)routingRequest;
+		Router.LOGGER.fine("Range query (" + request.getQuery().getGUID().toString() + ") dropped.");
+		request.getSearchListener().searchFailed(request.getQuery().getGUID());
+	}
+
 	public void timerTriggered(Object id) {
-		Iterator it = mQueries.values().iterator();
-		Vector guids = new Vector();
-		long currentTime = System.currentTimeMillis();
-		RangeQueryRoutingRequest request;
-
-		while(it.hasNext()) {
-			request = (RangeQueryRoutingRequest)it.next();
-			if (request.getStartTime()+Constants.QUERY_PROCESSING_TIMEOUT < currentTime)
-				guids.add(request.getQuery().getGUID());
+		RangeQueryRoutingRequest request = (RangeQueryRoutingRequest)id;
+		synchronized (mQueries) {
+			if (mQueries.get(request.getQuery().getGUID()) != request)
+				return;
+			mQueries.remove(request.getQuery().getGUID());
 		}
 
-		if (!guids.isEmpty()) {
-			it = guids.iterator();
-			while(it.hasNext()) {
-				request = (RangeQueryRoutingRequest)mQueries.remove(it.next());
-				if (request != null) {
-					Router.LOGGER.fine("["+request.getQuery().getGUID()+"]: Removing range query request reference.");
-					request.getSearchListener().searchFinished(request.getQuery().getGUID());
-				}
-			}
-		}
+		Router.LOGGER.fine("["+request.getQuery().getGUID()+"]: Removing range query request reference.");
+		request.getSearchListener().searchFinished(request.getQuery().getGUID());
 	}
 }
\ No newline at end of file
@@ -28,6 +28,7 @@ import p2p.storage.Query;
 import p2p.storage.events.SearchListener;
 import pgrid.RangeQuery;
 import pgrid.PGridHost;
+import pgrid.util.TimerManager;
 
 /**
  * A routing request for a range query.
@@ -49,6 +50,8 @@ class RangeQueryRoutingRequest implements Request {
 
 	private String mPath;
 
+	private TimerManager.TimerElement mTimer = null;
+
 	RangeQueryRoutingRequest(RangeQuery query, SearchListener listener, String strategy) {
 		mQuery = query;
 		mSearchListener = listener;
@@ -93,5 +96,16 @@ class RangeQueryRoutingRequest implements Request {
 	public long getStartTime() {
 		return mStartTime;
 	}
+
+	public synchronized void setTimer(TimerManager.TimerElement timer) {
+		mTimer = timer;
+	}
+
+	public synchronized void cancelTimer() {
+		if (mTimer != null) {
+			mTimer.cancel();
+			mTimer = null;
+		}
+	}
 	
 }
@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2002 The P-Grid Team,
+ *                    All Rights Reserved.
+ *
+ * This file is part of the P-Grid package.
+ * P-Grid homepage: http://www.p-grid.org/
+ *
+ * The P-Grid package is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This package is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; see the file LICENSE.
+ * If not you can find the GPL at http://www.gnu.org/copyleft/gpl.html
+ */
+
+package pgrid.network.router;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent reply times of a routing table level to estimate their percentiles.
+ *
+ * @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
+ * @version 1.0.0
+ */
+class ReplyTimes {
+
+	/**
+	 * The amount of kept reply times.
+	 */
+	private static final int CAPACITY = 128;
+
+	/**
+	 * The minimum amount of reply times required for an estimate.
+	 */
+	static final int MIN_SAMPLES = 20;
+
+	/**
+	 * The ring buffer of reply times.
+	 */
+	private long[] mTimes = new long[CAPACITY];
+
+	/**
+	 * The amount of recorded reply times.
+	 */
+	private int mCount = 0;
+
+	/**
+	 * Records a reply time.
+	 *
+	 * @param time the reply time in ms.
+	 */
+	synchronized void add(long time) {
+		mTimes[mCount % CAPACITY] = time;
+		mCount++;
+	}
+
+	/**
+	 * Returns the given percentile of the recent reply times.
+	 *
+	 * @param percentile the percentile between 0 and 100.
+	 * @return the reply time in ms, or -1 if too few reply times are known.
+	 */
+	synchronized long percentile(int percentile) {
+		int size = Math.min(mCount, CAPACITY);
+		if (size < MIN_SAMPLES)
+			return -1;
+		long[] times = new long[size];
+		System.arraycopy(mTimes, 0, times, 0, size);
+		Arrays.sort(times);
+		int index = (int)Math.ceil(size * percentile / 100.0) - 1;
+		return times[Math.max(0, Math.min(size - 1, index))];
+	}
+
+}
@@ -1,6 +1,8 @@
 package pgrid.network.router;
 
 import p2p.basic.Message;
+import pgrid.PGridHost;
+import pgrid.util.TimerManager;
 
 import java.util.Collection;
 import java.util.Iterator;
@@ -24,6 +26,14 @@ class RouteAttempt {
 
 	private MessageWaiter mWaiter = null;
 
+	private Collection mSentHosts = null;
+
+	private PGridHost mHost = null;
+
+	private long mSendTime = 0;
+
+	private TimerManager.TimerElement mTimer = null;
+
 	public RouteAttempt(Message msg, Collection col, Iterator it, MessageWaiter waiter) {
 		mMessage = msg;
 		mCollection = col;
@@ -32,6 +42,11 @@ class RouteAttempt {
 		mStartTime = System.currentTimeMillis();
 	}
 
+	public RouteAttempt(Message msg, Collection col, Iterator it, MessageWaiter waiter, Collection sentHosts) {
+		this(msg, col, it, waiter);
+		mSentHosts = sentHosts;
+	}
+
 	public Collection getCollection() {
 		return mCollection;
 	}
@@ -50,4 +65,71 @@ class RouteAttempt {
 
 	public long getStartTime() {return mStartTime;}
 
+	/**
+	 * Returns the hosts the message was sent to.
+	 *
+	 * @return the hosts, or <code>null</code> if not recorded.
+	 */
+	public Collection getSentHosts() {
+		return mSentHosts;
+	}
+
+	/**
+	 * Sets the host the message is currently sent to.
+	 *
+	 * @param host the host.
+	 */
+	public synchronized void setHost(PGridHost host) {
+		mHost = host;
+		mSendTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Returns the host waiting for an answer.
+	 *
+	 * @return the host, or <code>null</code> if no host is waiting.
+	 */
+	public synchronized PGridHost getHost() {
+		return mHost;
+	}
+
+	/**
+	 * Returns and clears the host waiting for an answer.
+	 *
+	 * @return the host, or <code>null</code> if no host is waiting.
+	 */
+	public synchronized PGridHost removeHost() {
+		PGridHost host = mHost;
+		mHost = null;
+		return host;
+	}
+
+	/**
+	 * Returns the time the message was sent to the current host.
+	 *
+	 * @return the send time.
+	 */
+	public synchronized long getSendTime() {
+		return mSendTime;
+	}
+
+	/**
+	 * Sets the timer removing this attempt if it is not acknowledged in time.
+	 *
+	 * @param timer the timer.
+	 */
+	public synchronized void setTimer(TimerManager.TimerElement timer) {
+		mTimer = timer;
+	}
+
+	/**
+	 * Cancels the timer removing this attempt.
+	 */
+	public synchronized void cancelTimer() {
+		if (mTimer != null) {
+			mTimer.cancel();
+			mTimer = null;
+		}
+	}
+
 }
@@ -32,36 +32,41 @@ import p2p.basic.events.NoRouteToKeyException;
 import pgrid.Constants;
 import pgrid.PGridHost;
 import pgrid.PGridKey;
+import pgrid.Properties;
 import pgrid.core.RoutingTable;
 import pgrid.interfaces.basic.PGridP2P;
 import pgrid.network.MessageManager;
 import pgrid.network.protocol.ACKMessage;
 import pgrid.network.protocol.PGridMessage;
 import pgrid.network.protocol.RoutableMessage;
+import pgrid.util.Dispatcher;
 import pgrid.util.Utils;
 import pgrid.util.logging.LogFormatter;
 import pgrid.util.TimerManager;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Random;
 import java.util.Vector;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * The Router routes messages in the network.
  *
  * To route a message, it should first be encapsulated into a request which contains
- * the routing strategy.
+ * the routing strategy. The requests of each routing strategy are routed by its own pool of threads, so a strategy
+ * blocked by a slow host does not stall the other strategies. The strategies therefore have to be thread-safe, the
+ * requests of a strategy are routed concurrently.
  *
  * @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
  * @version 1.0.0
  */
-public class Router extends pgrid.util.WorkerThread implements AcknowledgmentWaiter, pgrid.util.TimerListener {
+public class Router implements AcknowledgmentWaiter, pgrid.util.TimerListener {
 
 	/**
 	 * The routing failed.
@@ -88,6 +93,16 @@ public class Router extends pgrid.util.WorkerThread implements AcknowledgmentWai
 	 */
 	public static final int REPLY_TIMEOUT = 60000 * 1; // 1 min.
 
+	/**
+	 * The probability to route to a random host instead of the expected fastest to refresh the latency estimates.
+	 */
+	private static final double EXPLORATION_RATE = 0.05;
+
+	/**
+	 * The latency in ms added to the expected latency of a host always failing.
+	 */
+	private static final double FAILURE_PENALTY = 10000;
+
 	/**
 	 * The P2P facility.
 	 */
@@ -104,9 +119,9 @@ public class Router extends pgrid.util.WorkerThread implements AcknowledgmentWai
 	protected PGridP2P mPGridP2P = PGridP2P.sharedInstance();
 
 	/**
-	 * The messages requests to route.
+	 * The dispatchers of the routing strategies, by strategy name.
 	 */
-	private final Vector mMessageToRoute = new Vector();
+	private Hashtable mDispatchers = new Hashtable();
 
 	/**
 	 * The timer manager
@@ -121,9 +136,9 @@ public class Router extends pgrid.util.WorkerThread implements AcknowledgmentWai
 	private Hashtable mRouteAttempts = new Hashtable();
 
 	/**
-	 * The worker thread
+	 * The randomizer to shuffle and select hosts.
 	 */
-	private Thread mThread = null;
+	private Random mRandom = new Random();
 
 	static {
 		LogFormatter formatter = new LogFormatter();
@@ -138,14 +153,13 @@ public class Router extends pgrid.util.WorkerThread implements AcknowledgmentWai
 	 *
 	 */
 	public Router() {
-		super();
-
 		// Register strategies
 		registerStrategy(new DistributionRoutingStrategy(this));
 		registerStrategy(new pgrid.network.router.ReplicasRoutingStrategy(this));
 
 		// simple queries
 		registerStrategy(new pgrid.network.router.ExactQueryRoutingStrategy(this));
+		registerStrategy(new BatchQueryRoutingStrategy(this));
 
 		// range queries
 		registerStrategy(new RQShowerRoutingStrategy(this));
@@ -154,8 +168,6 @@ public class Router extends pgrid.util.WorkerThread implements AcknowledgmentWai
 		
 		// Generic messages
 		registerStrategy(new GenericRoutingStrategy(this));
-
-		timerManager.register(1000*60*1, null, this, true);
 	}
 
 	/**
@@ -170,6 +182,19 @@ public class Router extends pgrid.util.WorkerThread implements AcknowledgmentWai
 	 */
 	public void registerStrategy(pgrid.network.router.RoutingStrategy strategy) {
 		mRoutingStrategies.put(strategy.getStrategyName(), strategy);
+		Dispatcher dispatcher = (Dispatcher)mDispatchers.put(strategy.getStrategyName(), new Dispatcher("Router " + strategy.getStrategyName(),
+				mPGridP2P.propertyInteger(Properties.ROUTER_THREADS), mPGridP2P.propertyInteger(Properties.ROUTER_QUEUE_SIZE), LOGGER));
+		if (dispatcher != null)
+			dispatcher.shutdown();
+	}
+
+	/**
+	 * Returns the dispatchers of the routing strategies, which keep the queue depth and wait time of the requests.
+	 *
+	 * @return the dispatchers.
+	 */
+	public Collection getDispatchers() {
+		return new Vector(mDispatchers.values());
 	}
 
 	/**
@@ -188,7 +213,31 @@ public class Router extends pgrid.util.WorkerThread implements AcknowledgmentWai
 	 * @param message the response message.
 	 */
 	public short checkAcknowledgment(ACKMessage message) {
-		RouteAttempt attempt = (RouteAttempt)mRouteAttempts.remove(message.getGUID());
+		RouteAttempt attempt;
+		synchronized (mRouteAttempts) {
+			attempt = (RouteAttempt)mRouteAttempts.get(message.getGUID());
+			if (attempt != null) {
+				PGridHost host = attempt.getHost();
+				PGridHost sender = message.getHeader().getHost();
+				if ((host != null) && (sender != null) && !host.equals(sender)) {
+					// the acknowledgment belongs to an earlier attempt replaced by a new attempt for the same message
+					return (message.getCode() == ACKMessage.CODE_OK ? ROUTE_OK : ROUTE_PENDING);
+				}
+				// only the checked attempt is removed, not an attempt for the same message routed meanwhile
+				mRouteAttempts.remove(message.getGUID());
+			}
+		}
+		if (attempt != null) {
+			attempt.cancelTimer();
+			PGridHost host = attempt.removeHost();
+			if (host != null) {
+				boolean success = (message.getCode() == ACKMessage.CODE_OK) || (message.getCode() == ACKMessage.CODE_MSG_ALREADY_SEEN);
+				host.requestAnswered(System.currentTimeMillis() - attempt.getSendTime(), success);
+			}
+		} else if (message.getCode() != ACKMessage.CODE_OK) {
+			// the attempt was already acknowledged or timed out, e.g. by a concurrent acknowledgment
+			return ROUTE_PENDING;
+		}
 		if (message.getCode() == ACKMessage.CODE_OK) {
 			// the message was routed correctly
 			return ROUTE_OK;
@@ -237,11 +286,33 @@ public class Router extends pgrid.util.WorkerThread implements AcknowledgmentWai
 	 * @param msg the message.
 	 */
 	public boolean route(Key key, Message msg, AcknowledgmentWaiter waiter) {
-		// determine the responsible routing table level
-		String compath = pgrid.util.Utils.commonPrefix(key.toString(), mPGridP2P.getLocalPath());
-		int level = compath.length();
+		return route(key, msg, waiter, null);
+	}
 
-		return routeAtLevel(msg, level, waiter);
+	/**
+	 * Routes a message to a peer responsible for the given key, which has not received the message yet.
+	 *
+	 * @param key       the key.
+	 * @param msg       the message.
+	 * @param waiter    the acknowledgment waiter.
+	 * @param sentHosts the hosts already sent the message to, extended by the host sent to (may be <code>null</code>).
+	 * @return <code>true</code> if the message was sent.
+	 */
+	public boolean route(Key key, Message msg, AcknowledgmentWaiter waiter, Collection sentHosts) {
+		return routeAtLevel(msg, getLevel(key), waiter, sentHosts);
+	}
+
+	/**
+	 * Returns the routing table level responsible for the given key.
+	 *
+	 * @param key the key.
+	 * @return the routing table level.
+	 */
+	public int getLevel(Key key) {
+		if (key instanceof PGridKey)
+			return ((PGridKey)key).commonPrefixLength(mPGridP2P.getLocalPath());
+		else
+			return Utils.commonPrefix(key.toString(), mPGridP2P.getLocalPath()).length();
 	}
 
 	/**
@@ -299,13 +370,26 @@ public class Router extends pgrid.util.WorkerThread implements AcknowledgmentWai
 		}
 	}
 	/**
-	 * Route a message to a random host at the given level
+	 * Route a message to a host at the given level. The hosts are tried by their expected latency, the first host is
+	 * the faster of two random hosts and sometimes a random host to keep the latency estimates fresh.
 	 * @param msg   message to route
 	 * @param level to choose the host from
 	 * @param waiter
 	 * @return true if the attemp has succeeded
 	 */
 	protected boolean routeAtLevel(Message msg, int level, AcknowledgmentWaiter waiter) {
+		return routeAtLevel(msg, level, waiter, null);
+	}
+
+	/**
+	 * Route a message to a host at the given level not contained in the given hosts.
+	 * @param msg       message to route
+	 * @param level     to choose the host from
+	 * @param waiter
+	 * @param sentHosts the hosts to skip, extended by the host sent to (may be <code>null</code>).
+	 * @return true if the attemp has succeeded
+	 */
+	protected boolean routeAtLevel(Message msg, int level, AcknowledgmentWaiter waiter, Collection sentHosts) {
 		RoutingTable rTable = mPGridP2P.getRoutingTable();
 
 		// determine the responsible routing table level
@@ -315,23 +399,116 @@ public class Router extends pgrid.util.WorkerThread implements AcknowledgmentWai
 		if ((hosts == null) || (hosts.length == 0))
 			throw new NoRouteToKeyException();
 
-		// create and shuffle hosts list and iterate throw it
-		List list = Arrays.asList(hosts);
-		Collections.shuffle(list);
+		// skip the hosts the message was already sent to
+		if ((sentHosts != null) && !sentHosts.isEmpty()) {
+			Vector remaining = new Vector(hosts.length);
+			for (int i = 0; i < hosts.length; i++) {
+				boolean sent = false;
+				for (Iterator it = sentHosts.iterator(); it.hasNext() && !sent;)
+					sent = hosts[i].equals((PGridHost)it.next());
+				if (!sent)
+					remaining.add(hosts[i]);
+			}
+			if (remaining.isEmpty())
+				return false;
+			hosts = (PGridHost[])remaining.toArray(new PGridHost[remaining.size()]);
+		}
+
+		// create and order hosts list and iterate throw it
+		List list = orderHosts(hosts);
 		Iterator it = list.iterator();
 
-		RouteAttempt attempt = new RouteAttempt(msg, list, it, waiter);
+		RouteAttempt attempt = new RouteAttempt(msg, list, it, waiter, sentHosts);
 
 		// send query message
 		return route(attempt);
 	}
 
 
+	/**
+	 * Orders the given hosts by their expected latency. The first host is chosen by the power of two choices among the
+	 * hosts, or randomly with the exploration rate.
+	 *
+	 * @param hosts the hosts.
+	 * @return the ordered hosts.
+	 */
+	protected List orderHosts(PGridHost[] hosts) {
+		List list = Arrays.asList(hosts);
+		Collections.shuffle(list, mRandom);
+		if ((hosts.length < 2) || (mRandom.nextDouble() < EXPLORATION_RATE))
+			return list;
+
+		// unknown hosts are expected to be as fast as the average known host
+		double known = 0;
+		int knownCount = 0;
+		for (int i = 0; i < hosts.length; i++) {
+			double latency = hosts[i].getLatency();
+			if (latency >= 0) {
+				known += latency;
+				knownCount++;
+			}
+		}
+		double unknown = (knownCount == 0 ? 0 : known / knownCount);
+
+		// insertion sort by expected latency keeping the shuffled order for equal hosts
+		double[] expected = new double[hosts.length];
+		for (int i = 0; i < hosts.length; i++) {
+			PGridHost host = hosts[i];
+			double latency = expectedLatency(host, unknown);
+			int j = i;
+			for (; (j > 0) && (expected[j - 1] > latency); j--) {
+				expected[j] = expected[j - 1];
+				hosts[j] = hosts[j - 1];
+			}
+			expected[j] = latency;
+			hosts[j] = host;
+		}
+
+		// power of two choices: move the faster of two random hosts to the front
+		int first = mRandom.nextInt(hosts.length);
+		int second = mRandom.nextInt(hosts.length - 1);
+		if (second >= first)
+			second++;
+		int chosen = Math.min(first, second);
+		PGridHost host = hosts[chosen];
+		System.arraycopy(hosts, 0, hosts, 1, chosen);
+		hosts[0] = host;
+		return list;
+	}
+
+	/**
+	 * Returns the expected latency of a request to the given host, considering its average round trip time, its
+	 * outstanding requests and its failure rate.
+	 *
+	 * @param host    the host.
+	 * @param unknown the latency to assume if the host has not answered yet.
+	 * @return the expected latency in ms.
+	 */
+	private double expectedLatency(PGridHost host, double unknown) {
+		double latency = host.getLatency();
+		if (latency < 0)
+			latency = unknown;
+		return latency * (1 + host.getOutstandingRequests()) + host.getFailureRate() * FAILURE_PENALTY;
+	}
+
 	protected boolean route(RouteAttempt attempt) {
 		Message msg = attempt.getMessage();
 		MessageWaiter waiter = attempt.getWaiter();
 		Iterator it = attempt.getIterator();
-		mRouteAttempts.put(msg.getGUID(), attempt);
+		RouteAttempt previous;
+		synchronized (mRouteAttempts) {
+			previous = (RouteAttempt)mRouteAttempts.put(msg.getGUID(), attempt);
+			if (previous != attempt)
+				attempt.setTimer(timerManager.register(attempt.getStartTime() + Constants.QUERY_PROCESSING_TIMEOUT - System.currentTimeMillis(), attempt, this, false));
+		}
+		if ((previous != null) && (previous != attempt)) {
+			// a new attempt for the same message replaces an unacknowledged one, e.g. a hedge => the host of the
+			// replaced attempt may only be slower, so no failure is recorded
+			previous.cancelTimer();
+			PGridHost host = previous.removeHost();
+			if (host != null)
+				host.requestCancelled();
+		}
 
 		while (it.hasNext()) {
 			PGridHost host;
@@ -341,8 +518,14 @@ public class Router extends pgrid.util.WorkerThread implements AcknowledgmentWai
 				return false;
 			}
 			LOGGER.fine("Send message (" + msg.getGUID().toString() + ") to " + host.toHostString() + ".");
+			host.requestSent();
+			attempt.setHost(host);
 			boolean sent = mMsgMgr.sendMessage(host, (PGridMessage)msg, waiter);
 			if (!sent) {
+				if (attempt.removeHost() != null)
+					host.requestFailed();
+				if (attempt.getSentHosts() != null)
+					attempt.getSentHosts().add(host);
 				if (it.hasNext()) {
 					continue;
 				} else {
@@ -350,6 +533,8 @@ public class Router extends pgrid.util.WorkerThread implements AcknowledgmentWai
 					return false;
 				}
 			}
+			if (attempt.getSentHosts() != null)
+				attempt.getSentHosts().add(host);
 			break;
 		}
 		return true;
@@ -359,91 +544,52 @@ public class Router extends pgrid.util.WorkerThread implements AcknowledgmentWai
 	 * Routes a message encapsulated into a request to the responsible peer.
 	 * @param request
 	 */
-	public void route(Request request) {
-
-		mMessageToRoute.add(request);
-		broadcast();
-	}
-
-	protected void work() throws Exception {
-		// Queries
-		Iterator requests;
-		synchronized (mMessageToRoute) {
-			requests = ((Vector)mMessageToRoute.clone()).iterator();
-			mMessageToRoute.clear();
+	public void route(final Request request) {
+		final RoutingStrategy strategy = (RoutingStrategy)mRoutingStrategies.get(request.getRoutingStrategyName());
+		Dispatcher dispatcher = (Dispatcher)mDispatchers.get(request.getRoutingStrategyName());
+		if ((strategy == null) || (dispatcher == null)) {
+			LOGGER.fine("No routing strategy '" + request.getRoutingStrategyName() + "' registered.");
+			return;
 		}
-		if (requests != null) {
-			while (requests.hasNext()) {
-				Request request =  (Request)requests.next();
-				RoutingStrategy strategy =
-					(RoutingStrategy)mRoutingStrategies.get(request.getRoutingStrategyName());
-
-
-				if (strategy != null) {
-					strategy.route(request);
-				}
 
+		boolean queued = dispatcher.dispatch(new Runnable() {
+			public void run() {
+				strategy.route(request);
 			}
-		}
-
-	}
-
-	protected void handleError(Throwable t) {
-		if (t instanceof InterruptedException) {
-			LOGGER.finer("Router interupted.");
-		} else {
-			LOGGER.log(Level.WARNING, "Error in Router thread", t);
-		}
-
-	}
-
-	protected void prepareWorker() throws Exception {
-		mThread = Thread.currentThread();
-		LOGGER.config("Router thread prepared.");
-	}
-
-	protected void releaseWorker() throws Exception {
-		LOGGER.config("Router thread released.");
-	}
-
-	protected boolean isCondition() {
-		return !mMessageToRoute.isEmpty();
+		});
+		if (!queued)
+			strategy.dropped(request);
 	}
 
 	/**
 	 * Shutdown
 	 */
 	public void shutdown() {
-		mThread.interrupt();
+		for (Iterator it = mDispatchers.values().iterator(); it.hasNext();) {
+			Dispatcher dispatcher = (Dispatcher)it.next();
+			LOGGER.config(dispatcher.toString());
+			dispatcher.shutdown();
+		}
 	}
 
 	/**
-	 * Timer triggered callback method. This method will remove all routing attempts older then a
+	 * Timer triggered callback method. This method will remove a routing attempt not acknowledged in a
 	 * certain amount of time.
 	 *
-	 * @param id
+	 * @param id the routing attempt
 	 */
 	public void timerTriggered(Object id) {
-		Iterator it = mRouteAttempts.values().iterator();
-		Vector guids = new Vector();
-		long currentTime = System.currentTimeMillis();
-		RouteAttempt request;
-
-		while(it.hasNext()) {
-			request = (RouteAttempt)it.next();
-			if (request.getStartTime()+Constants.QUERY_PROCESSING_TIMEOUT < currentTime)
-				guids.add(request.getMessage().getGUID());
+		RouteAttempt request = (RouteAttempt)id;
+		synchronized (mRouteAttempts) {
+			if (mRouteAttempts.get(request.getMessage().getGUID()) != request)
+				return;
+			mRouteAttempts.remove(request.getMessage().getGUID());
 		}
 
-		if (!guids.isEmpty()) {
-			it = guids.iterator();
-			while(it.hasNext()) {
-				request = (RouteAttempt)mRouteAttempts.remove(it.next());
-				if (request != null) {
-					Router.LOGGER.finest("["+request.getMessage().getGUID()+"]: Removing routing attemps request reference.");
-				}
-			}
-		}
+		PGridHost host = request.removeHost();
+		if (host != null)
+			host.requestFailed();
+		Router.LOGGER.finest("["+request.getMessage().getGUID()+"]: Removing routing attemps request reference.");
 	}
 
 }
\ No newline at end of file
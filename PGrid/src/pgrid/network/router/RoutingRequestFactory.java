@@ -4,11 +4,16 @@ import pgrid.core.storage.DistributionListener;
 import pgrid.network.protocol.PGridMessage;
 import pgrid.network.protocol.PeerLookupMessage;
 import pgrid.network.protocol.GenericMessage;
+import pgrid.network.protocol.QueryBatchMessage;
+import pgrid.network.protocol.QueryMessage;
+import pgrid.interfaces.basic.PGridP2P;
 import pgrid.RangeQuery;
 import p2p.storage.Query;
 import p2p.storage.events.SearchListener;
 import p2p.basic.Key;
+import p2p.basic.GUID;
 
+import java.util.Collection;
 import java.util.Vector;
 
 /**
@@ -32,6 +37,27 @@ public class RoutingRequestFactory {
 		return new QueryRoutingRequest(query, listener);
 	}
 
+	/**
+	 * Create a new batch query routing request for locally started queries
+	 * @param guid the GUID of the batch
+	 * @param queries the exact queries
+	 * @param listener the listner
+	 * @return a BatchQueryRoutingRequest to be used by the router
+	 */
+	public static BatchQueryRoutingRequest createBatchQueryRoutingRequest(GUID guid, Collection queries, SearchListener listener) {
+		return new BatchQueryRoutingRequest(guid, queries, listener, PGridP2P.sharedInstance().getLocalHost(), true);
+	}
+
+	/**
+	 * Create a new batch query routing request for a received batch
+	 * @param batch the batch message
+	 * @return a BatchQueryRoutingRequest to be used by the router
+	 */
+	public static BatchQueryRoutingRequest createBatchQueryRoutingRequest(QueryBatchMessage batch) {
+		QueryMessage first = (QueryMessage)batch.getQueries().iterator().next();
+		return new BatchQueryRoutingRequest(batch.getBatchGUID(), batch.getQueries(), null, first.getInitialHost(), false);
+	}
+
 	/**
 	 * Create a new query routing request
 	 * @param query the query
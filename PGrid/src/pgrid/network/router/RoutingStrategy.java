@@ -38,6 +38,15 @@ abstract class RoutingStrategy {
 	 */
 	public abstract String getStrategyName();
 
+	/**
+	 * Invoked when a request was dropped because the queue of the strategy was full. The request may be dropped by a
+	 * timer or connection thread, so this method must not block.
+	 *
+	 * @param req the dropped request.
+	 */
+	public void dropped(Request req) {
+	}
+
 	/**
 	 * Returns the router associated with this strategy
 	 * @return the router object
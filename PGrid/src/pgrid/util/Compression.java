@@ -22,6 +22,7 @@
 
 package pgrid.util;
 
+import java.util.LinkedList;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
@@ -29,6 +30,9 @@ import java.util.zip.Inflater;
 /**
  * This class compresses and decompresses data using the Java {@link java.util.zip.Deflater} and
  * {@link java.util.zip.Inflater}.
+ * <p/>
+ * Deflaters and inflaters are kept in small pools and reused, instead of allocating their native zlib memory for
+ * every call. Instances not fitting into a pool are ended at once.
  *
  * @author @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
  * @version 1.0 2003/04/15
@@ -37,6 +41,26 @@ import java.util.zip.Inflater;
  */
 public class Compression {
 
+	/**
+	 * The maximum number of pooled deflaters per compression level, and of pooled inflaters.
+	 */
+	private static final int MAX_POOLED = 8;
+
+	/**
+	 * The pooled deflaters, by compression level plus one.
+	 */
+	private static final LinkedList[] DEFLATERS = new LinkedList[Deflater.BEST_COMPRESSION + 2];
+
+	/**
+	 * The pooled inflaters.
+	 */
+	private static final LinkedList INFLATERS = new LinkedList();
+
+	static {
+		for (int i = 0; i < DEFLATERS.length; i++)
+			DEFLATERS[i] = new LinkedList();
+	}
+
 	/**
 	 * Creates a new <code>Compression</code>.
 	 */
@@ -44,6 +68,80 @@ public class Compression {
 		// do nothing
 	}
 
+	/**
+	 * Returns a deflater for the given compression level.
+	 *
+	 * @param level the compression level.
+	 * @return the deflater.
+	 */
+	private static Deflater acquireDeflater(int level) {
+		if ((level < Deflater.DEFAULT_COMPRESSION) || (level > Deflater.BEST_COMPRESSION))
+			throw new IllegalArgumentException("compression level " + level + " is illegal!");
+		LinkedList pool = DEFLATERS[level + 1];
+		synchronized (pool) {
+			if (!pool.isEmpty())
+				return (Deflater)pool.removeFirst();
+		}
+		return new Deflater(level);
+	}
+
+	/**
+	 * Returns a deflater to its pool, or ends it if the pool is full.
+	 *
+	 * @param deflater the deflater.
+	 * @param level    the compression level of the deflater.
+	 */
+	private static void releaseDeflater(Deflater deflater, int level) {
+		deflater.reset();
+		LinkedList pool = DEFLATERS[level + 1];
+		synchronized (pool) {
+			if (pool.size() < MAX_POOLED) {
+				pool.add(deflater);
+				return;
+			}
+		}
+		deflater.end();
+	}
+
+	/**
+	 * Returns an inflater.
+	 *
+	 * @return the inflater.
+	 */
+	private static Inflater acquireInflater() {
+		synchronized (INFLATERS) {
+			if (!INFLATERS.isEmpty())
+				return (Inflater)INFLATERS.removeFirst();
+		}
+		return new Inflater();
+	}
+
+	/**
+	 * Returns an inflater to the pool, or ends it if the pool is full.
+	 *
+	 * @param inflater the inflater.
+	 */
+	private static void releaseInflater(Inflater inflater) {
+		inflater.reset();
+		synchronized (INFLATERS) {
+			if (INFLATERS.size() < MAX_POOLED) {
+				INFLATERS.add(inflater);
+				return;
+			}
+		}
+		inflater.end();
+	}
+
+	/**
+	 * Returns the maximum length of the compressed data for data of the given length.
+	 *
+	 * @param len the length of the uncompressed data.
+	 * @return the maximum length of the compressed data.
+	 */
+	public static int maxCompressedLength(int len) {
+		return len + (len >> 12) + (len >> 14) + (len >> 25) + 13;
+	}
+
 	/**
 	 * Compresses the delivered data with the default level, and returns it.
 	 *
@@ -71,25 +169,42 @@ public class Compression {
 		if ((offset + len) > data.length)
 			return null;
 
-		Deflater compresser = new Deflater(compression);
-		compresser.setInput(data, offset, len);
-		compresser.finish();
-		byte[] buffer = new byte[1024];
-		int bufferPos = 0;
-		while (!compresser.finished()) {
-			if (bufferPos >= buffer.length) {
-				final byte[] tmp = buffer;
-				buffer = new byte[buffer.length + len];
-				System.arraycopy(tmp, 0, buffer, 0, tmp.length);
-			}
-			final int tmpLen = compresser.deflate(buffer, bufferPos, buffer.length - bufferPos);
-			bufferPos += tmpLen;
-		}
+		byte[] buffer = new byte[maxCompressedLength(len)];
+		int bufferPos = compress(data, offset, len, compression, buffer, 0);
 		byte[] ret = new byte[bufferPos];
 		System.arraycopy(buffer, 0, ret, 0, bufferPos);
 		return ret;
 	}
 
+	/**
+	 * Compresses the delivered data into the given buffer. The buffer should provide
+	 * {@link #maxCompressedLength(int)} bytes.
+	 *
+	 * @param data        the byte array to compress.
+	 * @param offset      the first byte to compress.
+	 * @param len         the amount of bytes to compress.
+	 * @param compression the compression level (levels of {@link java.util.zip.Deflater}).
+	 * @param dest        the buffer for the compressed bytes.
+	 * @param destOffset  the first byte of the buffer to use.
+	 * @return the amount of compressed bytes, or <code>-1</code> if the buffer was too small.
+	 */
+	public static int compress(byte[] data, int offset, int len, int compression, byte[] dest, int destOffset) {
+		Deflater compresser = acquireDeflater(compression);
+		try {
+			compresser.setInput(data, offset, len);
+			compresser.finish();
+			int bufferPos = destOffset;
+			while (!compresser.finished()) {
+				if (bufferPos >= dest.length)
+					return -1;
+				bufferPos += compresser.deflate(dest, bufferPos, dest.length - bufferPos);
+			}
+			return bufferPos - destOffset;
+		} finally {
+			releaseDeflater(compresser, compression);
+		}
+	}
+
 	/**
 	 * Decompresses the delivered data, and returns it.
 	 *
@@ -100,28 +215,51 @@ public class Compression {
 	 * @throws DataFormatException
 	 */
 	public static byte[] decompress(byte[] data, int offset, int len) throws DataFormatException {
+		return decompress(data, offset, len, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Decompresses the delivered data, and returns it. Bytes following the end of the compressed data are ignored.
+	 *
+	 * @param data   the byte array to decompress.
+	 * @param offset the first byte to decompress.
+	 * @param len    the amount of bytes to decompress.
+	 * @param maxLen the maximum accepted length of the decompressed data.
+	 * @return the decompressed bytes.
+	 * @throws DataFormatException if the data is corrupt or truncated, or the decompressed data is too long.
+	 */
+	public static byte[] decompress(byte[] data, int offset, int len, int maxLen) throws DataFormatException {
 		if (data == null)
 			return null;
 		if ((offset + len) > data.length)
 			return null;
-		Inflater decompresser = new Inflater();
-		decompresser.setInput(data, offset, len);
-		byte[] buffer = new byte[1024];
-		int bufferPos = 0;
-		while (decompresser.getRemaining() > 0) {
-			if (bufferPos >= buffer.length) {
-				byte[] tmp = buffer;
-				buffer = new byte[buffer.length + len];
-				System.arraycopy(tmp, 0, buffer, 0, tmp.length);
+		Inflater decompresser = acquireInflater();
+		try {
+			decompresser.setInput(data, offset, len);
+			byte[] buffer = new byte[(int)Math.min(Math.max((long)len * 4, 64), maxLen)];
+			int bufferPos = 0;
+			while (!decompresser.finished()) {
+				if (bufferPos >= buffer.length) {
+					if (buffer.length >= maxLen)
+						throw new DataFormatException("decompressed data exceeds " + maxLen + " bytes");
+					byte[] tmp = buffer;
+					buffer = new byte[(int)Math.min((long)buffer.length * 2, maxLen)];
+					System.arraycopy(tmp, 0, buffer, 0, bufferPos);
+				}
+				int tmpLen = decompresser.inflate(buffer, bufferPos, buffer.length - bufferPos);
+				if ((tmpLen == 0) && (decompresser.needsInput() || decompresser.needsDictionary()))
+					throw new DataFormatException("compressed data is truncated");
+				bufferPos += tmpLen;
 			}
-			int tmpLen = decompresser.inflate(buffer, bufferPos, buffer.length - bufferPos);
-			bufferPos += tmpLen;
-		}
 
-		decompresser.end();
-		byte[] ret = new byte[bufferPos];
-		System.arraycopy(buffer, 0, ret, 0, bufferPos);
-		return ret;
+			if (bufferPos == buffer.length)
+				return buffer;
+			byte[] ret = new byte[bufferPos];
+			System.arraycopy(buffer, 0, ret, 0, bufferPos);
+			return ret;
+		} finally {
+			releaseInflater(decompresser);
+		}
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,250 @@
+/**
+ * Copyright (c) 2003 Roman Schmidt,
+ *                    All Rights Reserved.
+ *
+ * This file is part of the pgrid.utils package.
+ * pgrid.utils homepage: http://lsirpeople.epfl.ch/pgrid.helper/pgrid.utils
+ *
+ * The pgrid.utils package is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This package is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this package; see the file gpl.txt.
+ * If not you can find the GPL at http://www.gnu.org/copyleft/gpl.html
+ */
+
+package pgrid.util;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class dispatches tasks to a pool of worker threads through a bounded queue. The dispatching thread never runs
+ * a task itself and never blocks, as it may be a timer or connection thread. If the queue is full, the task is
+ * dropped and counted. The dispatcher keeps the queue depth, the time the tasks waited in the queue, and the amount
+ * of dropped tasks.
+ *
+ * @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
+ * @version 1.0.0
+ */
+public class Dispatcher {
+
+	/**
+	 * The thread pool running the tasks.
+	 */
+	private ThreadPoolExecutor mExecutor = null;
+
+	/**
+	 * The logger to report failed tasks.
+	 */
+	private Logger mLogger = null;
+
+	/**
+	 * The name of the dispatcher.
+	 */
+	private String mName = null;
+
+	/**
+	 * The amount of run tasks.
+	 */
+	private long mTasks = 0;
+
+	/**
+	 * The amount of dropped tasks.
+	 */
+	private long mDropped = 0;
+
+	/**
+	 * The maximal queue depth.
+	 */
+	private int mMaxQueueSize = 0;
+
+	/**
+	 * The maximal time a task waited in the queue in ms.
+	 */
+	private long mMaxWaitTime = 0;
+
+	/**
+	 * The total time the tasks waited in the queue in ms.
+	 */
+	private long mWaitTime = 0;
+
+	/**
+	 * Creates a new dispatcher.
+	 *
+	 * @param name     the name of the dispatcher, used for the worker threads.
+	 * @param threads  the amount of worker threads.
+	 * @param capacity the capacity of the queue.
+	 * @param logger   the logger to report failed tasks.
+	 */
+	public Dispatcher(String name, int threads, int capacity, Logger logger) {
+		mName = name;
+		mLogger = logger;
+		mExecutor = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 0, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue(Math.max(1, capacity)), new NamedThreadFactory(name), new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	/**
+	 * Dispatches the given task to a worker thread. The task is dropped if the queue is full.
+	 *
+	 * @param task the task.
+	 * @return <code>true</code> if the task was queued, <code>false</code> if it was dropped.
+	 */
+	public boolean dispatch(Runnable task) {
+		try {
+			mExecutor.execute(new Task(task));
+		} catch (RejectedExecutionException e) {
+			if (mExecutor.isShutdown())
+				return false;
+			long dropped;
+			synchronized (this) {
+				dropped = ++mDropped;
+			}
+			mLogger.warning(mName + " queue full, task dropped (" + dropped + " dropped so far).");
+			return false;
+		}
+		int size = mExecutor.getQueue().size();
+		synchronized (this) {
+			if (size > mMaxQueueSize)
+				mMaxQueueSize = size;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the average time a task waited in the queue.
+	 *
+	 * @return the average wait time in ms.
+	 */
+	public synchronized double getAverageWaitTime() {
+		return (mTasks == 0 ? 0 : (double)mWaitTime / mTasks);
+	}
+
+	/**
+	 * Returns the amount of tasks dropped because the queue was full.
+	 *
+	 * @return the amount of dropped tasks.
+	 */
+	public synchronized long getDroppedCount() {
+		return mDropped;
+	}
+
+	/**
+	 * Returns the maximal queue depth.
+	 *
+	 * @return the maximal queue depth.
+	 */
+	public synchronized int getMaxQueueSize() {
+		return mMaxQueueSize;
+	}
+
+	/**
+	 * Returns the maximal time a task waited in the queue.
+	 *
+	 * @return the maximal wait time in ms.
+	 */
+	public synchronized long getMaxWaitTime() {
+		return mMaxWaitTime;
+	}
+
+	/**
+	 * Returns the name of the dispatcher.
+	 *
+	 * @return the name.
+	 */
+	public String getName() {
+		return mName;
+	}
+
+	/**
+	 * Returns the current queue depth.
+	 *
+	 * @return the amount of waiting tasks.
+	 */
+	public int getQueueSize() {
+		return mExecutor.getQueue().size();
+	}
+
+	/**
+	 * Returns the amount of run tasks.
+	 *
+	 * @return the amount of run tasks.
+	 */
+	public synchronized long getTaskCount() {
+		return mTasks;
+	}
+
+	/**
+	 * Stops the worker threads. Waiting tasks are discarded.
+	 */
+	public void shutdown() {
+		mExecutor.shutdownNow();
+	}
+
+	/**
+	 * Returns a string represantation of the dispatcher statistics.
+	 *
+	 * @return a string represantation.
+	 */
+	public String toString() {
+		synchronized (this) {
+			return mName + ": " + mTasks + " tasks, queue " + getQueueSize() + " (max. " + mMaxQueueSize + "), wait " + Math.round(getAverageWaitTime()) + " ms (max. " + mMaxWaitTime + " ms), " + mDropped + " dropped";
+		}
+	}
+
+	/**
+	 * A dispatched task, which records its time in the queue.
+	 */
+	private class Task implements Runnable {
+
+		/**
+		 * The time the task was dispatched.
+		 */
+		private long mDispatchTime = System.currentTimeMillis();
+
+		/**
+		 * The task to run.
+		 */
+		private Runnable mTask = null;
+
+		/**
+		 * Creates a new dispatched task.
+		 *
+		 * @param task the task to run.
+		 */
+		Task(Runnable task) {
+			mTask = task;
+		}
+
+		/**
+		 * Runs the task.
+		 */
+		public void run() {
+			long wait = System.currentTimeMillis() - mDispatchTime;
+			synchronized (Dispatcher.this) {
+				mTasks++;
+				mWaitTime += wait;
+				if (wait > mMaxWaitTime)
+					mMaxWaitTime = wait;
+			}
+			try {
+				mTask.run();
+			} catch (Throwable t) {
+				mLogger.log(Level.WARNING, "Error in " + mName + " thread", t);
+			}
+		}
+
+	}
+
+}
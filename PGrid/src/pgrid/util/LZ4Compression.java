@@ -0,0 +1,325 @@
+/**
+ * Copyright (c) 2003 Roman Schmidt,
+ *                    All Rights Reserved.
+ *
+ * This file is part of the pgrid.utils package.
+ * pgrid.utils homepage: http://lsirpeople.epfl.ch/pgrid.helper/pgrid.utils
+ *
+ * The pgrid.utils package is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This package is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this package; see the file gpl.txt.
+ * If not you can find the GPL at http://www.gnu.org/copyleft/gpl.html
+ */
+
+package pgrid.util;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.zip.DataFormatException;
+
+/**
+ * This class compresses and decompresses data in the LZ4 block format. It trades compression ratio for speed:
+ * compressing is several times faster than {@link Compression} at its fastest level, which pays off for large
+ * payloads like the data tables sent during exchanges.
+ * <p/>
+ * A block is a sequence of literal runs, each followed by a back reference of at least four bytes into the
+ * previous 64KB. The block does not contain the length of the uncompressed data, it has to be stored by the caller.
+ *
+ * @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
+ * @version 1.0.0
+ * @see <a href="https://github.com/lz4/lz4/blob/dev/doc/lz4_Block_format.md">LZ4 Block Format Description</a>
+ */
+public class LZ4Compression {
+
+	/**
+	 * The number of bits of the hash table index.
+	 */
+	private static final int HASH_LOG = 12;
+
+	/**
+	 * The amount of literals at the end of a block.
+	 */
+	private static final int LAST_LITERALS = 5;
+
+	/**
+	 * The maximum distance of a back reference.
+	 */
+	private static final int MAX_DISTANCE = 65535;
+
+	/**
+	 * The maximum number of pooled hash tables.
+	 */
+	private static final int MAX_POOLED = 8;
+
+	/**
+	 * The minimum length of a match.
+	 */
+	private static final int MIN_MATCH = 4;
+
+	/**
+	 * The last position at which a match can start, counted from the end of a block.
+	 */
+	private static final int MF_LIMIT = 12;
+
+	/**
+	 * The pooled hash tables.
+	 */
+	private static final LinkedList TABLES = new LinkedList();
+
+	/**
+	 * Creates a new <code>LZ4Compression</code>.
+	 */
+	protected LZ4Compression() {
+		// do nothing
+	}
+
+	/**
+	 * Returns the maximum length of the compressed data for data of the given length.
+	 *
+	 * @param len the length of the uncompressed data.
+	 * @return the maximum length of the compressed data.
+	 */
+	public static int maxCompressedLength(int len) {
+		return len + len / 255 + 16;
+	}
+
+	/**
+	 * Compresses the delivered data into the given buffer. The buffer must provide
+	 * {@link #maxCompressedLength(int)} bytes.
+	 *
+	 * @param data       the byte array to compress.
+	 * @param offset     the first byte to compress.
+	 * @param len        the amount of bytes to compress.
+	 * @param dest       the buffer for the compressed bytes.
+	 * @param destOffset the first byte of the buffer to use.
+	 * @return the amount of compressed bytes.
+	 */
+	public static int compress(byte[] data, int offset, int len, byte[] dest, int destOffset) {
+		int end = offset + len;
+		int pos = offset;
+		int anchor = offset;
+		int destPos = destOffset;
+
+		if (len > MF_LIMIT) {
+			int[] table = acquireTable();
+			try {
+				int matchLimit = end - LAST_LITERALS;
+				int mfLimit = end - MF_LIMIT;
+				pos++;
+				while (pos < mfLimit) {
+					int seq = readInt(data, pos);
+					int hash = hash(seq);
+					int ref = table[hash] - 1;
+					table[hash] = pos + 1 - offset;
+					ref += offset;
+					if ((ref < offset) || (pos - ref > MAX_DISTANCE) || (readInt(data, ref) != seq)) {
+						// skip faster through data which does not compress
+						pos += 1 + ((pos - anchor) >>> 6);
+						continue;
+					}
+
+					// extend the match backwards
+					while ((pos > anchor) && (ref > offset) && (data[pos - 1] == data[ref - 1])) {
+						pos--;
+						ref--;
+					}
+					// and forwards
+					int matchEnd = pos + MIN_MATCH;
+					int refEnd = ref + MIN_MATCH;
+					while ((matchEnd < matchLimit) && (data[matchEnd] == data[refEnd])) {
+						matchEnd++;
+						refEnd++;
+					}
+
+					destPos = writeSequence(data, anchor, pos - anchor, pos - ref, matchEnd - pos - MIN_MATCH, dest, destPos);
+					pos = matchEnd;
+					anchor = pos;
+					if (pos - 2 > offset)
+						table[hash(readInt(data, pos - 2))] = pos - 2 + 1 - offset;
+				}
+			} finally {
+				releaseTable(table);
+			}
+		}
+
+		// the last literals
+		return writeSequence(data, anchor, end - anchor, 0, 0, dest, destPos) - destOffset;
+	}
+
+	/**
+	 * Decompresses the delivered data into the given buffer.
+	 *
+	 * @param data       the byte array to decompress.
+	 * @param offset     the first byte to decompress.
+	 * @param len        the amount of bytes to decompress.
+	 * @param dest       the buffer for the decompressed bytes.
+	 * @param destOffset the first byte of the buffer to use.
+	 * @param destLen    the length of the decompressed data.
+	 * @throws DataFormatException if the data is corrupt, or does not decompress to the given length.
+	 */
+	public static void decompress(byte[] data, int offset, int len, byte[] dest, int destOffset, int destLen) throws DataFormatException {
+		int end = offset + len;
+		int destEnd = destOffset + destLen;
+		int pos = offset;
+		int destPos = destOffset;
+		while (true) {
+			if (pos >= end)
+				throw new DataFormatException("compressed data is truncated");
+			int token = data[pos++] & 0xFF;
+
+			// literals
+			int literals = token >>> 4;
+			if (literals == 15) {
+				int b;
+				do {
+					if ((pos >= end) || (literals > destLen))
+						throw new DataFormatException("illegal literal length");
+					b = data[pos++] & 0xFF;
+					literals += b;
+				} while (b == 255);
+			}
+			if ((literals > end - pos) || (literals > destEnd - destPos))
+				throw new DataFormatException("illegal literal length");
+			System.arraycopy(data, pos, dest, destPos, literals);
+			pos += literals;
+			destPos += literals;
+			if (pos == end)
+				break;
+
+			// back reference
+			if (end - pos < 2)
+				throw new DataFormatException("compressed data is truncated");
+			int distance = (data[pos] & 0xFF) | ((data[pos + 1] & 0xFF) << 8);
+			pos += 2;
+			if ((distance == 0) || (distance > destPos - destOffset))
+				throw new DataFormatException("illegal match distance " + distance);
+			int matchLen = token & 0x0F;
+			if (matchLen == 15) {
+				int b;
+				do {
+					if ((pos >= end) || (matchLen > destLen))
+						throw new DataFormatException("illegal match length");
+					b = data[pos++] & 0xFF;
+					matchLen += b;
+				} while (b == 255);
+			}
+			matchLen += MIN_MATCH;
+			if (matchLen > destEnd - destPos)
+				throw new DataFormatException("illegal match length");
+			int ref = destPos - distance;
+			if (distance >= matchLen) {
+				System.arraycopy(dest, ref, dest, destPos, matchLen);
+				destPos += matchLen;
+			} else {
+				// overlapping match, repeats the last bytes
+				for (int i = 0; i < matchLen; i++)
+					dest[destPos++] = dest[ref++];
+			}
+		}
+		if (destPos != destEnd)
+			throw new DataFormatException("decompressed " + (destPos - destOffset) + " instead of " + destLen + " bytes");
+	}
+
+	/**
+	 * Returns a cleared hash table.
+	 *
+	 * @return the hash table.
+	 */
+	private static int[] acquireTable() {
+		synchronized (TABLES) {
+			if (!TABLES.isEmpty())
+				return (int[])TABLES.removeFirst();
+		}
+		return new int[1 << HASH_LOG];
+	}
+
+	/**
+	 * Clears a hash table and returns it to the pool.
+	 *
+	 * @param table the hash table.
+	 */
+	private static void releaseTable(int[] table) {
+		Arrays.fill(table, 0);
+		synchronized (TABLES) {
+			if (TABLES.size() < MAX_POOLED)
+				TABLES.add(table);
+		}
+	}
+
+	/**
+	 * Returns the hash table index for four bytes.
+	 *
+	 * @param seq the four bytes.
+	 * @return the index.
+	 */
+	private static int hash(int seq) {
+		return (seq * -1640531535) >>> (32 - HASH_LOG);
+	}
+
+	/**
+	 * Reads four bytes in little endian order.
+	 *
+	 * @param data the data.
+	 * @param pos  the position of the first byte.
+	 * @return the four bytes.
+	 */
+	private static int readInt(byte[] data, int pos) {
+		return (data[pos] & 0xFF) | ((data[pos + 1] & 0xFF) << 8) | ((data[pos + 2] & 0xFF) << 16) | ((data[pos + 3] & 0xFF) << 24);
+	}
+
+	/**
+	 * Writes a length exceeding the four bits of the token.
+	 *
+	 * @param len     the remaining length.
+	 * @param dest    the buffer.
+	 * @param destPos the position in the buffer.
+	 * @return the new position in the buffer.
+	 */
+	private static int writeLength(int len, byte[] dest, int destPos) {
+		while (len >= 255) {
+			dest[destPos++] = (byte)255;
+			len -= 255;
+		}
+		dest[destPos++] = (byte)len;
+		return destPos;
+	}
+
+	/**
+	 * Writes a sequence of literals followed by a back reference. The last sequence of a block has no back
+	 * reference.
+	 *
+	 * @param data     the data.
+	 * @param literal  the position of the first literal.
+	 * @param literals the amount of literals.
+	 * @param distance the distance of the back reference, or <code>0</code> for the last sequence.
+	 * @param matchLen the length of the back reference minus the minimum match length.
+	 * @param dest     the buffer.
+	 * @param destPos  the position in the buffer.
+	 * @return the new position in the buffer.
+	 */
+	private static int writeSequence(byte[] data, int literal, int literals, int distance, int matchLen, byte[] dest, int destPos) {
+		int token = destPos++;
+		dest[token] = (byte)((Math.min(literals, 15) << 4) | Math.min(matchLen, 15));
+		if (literals >= 15)
+			destPos = writeLength(literals - 15, dest, destPos);
+		System.arraycopy(data, literal, dest, destPos, literals);
+		destPos += literals;
+		if (distance == 0)
+			return destPos;
+		dest[destPos++] = (byte)distance;
+		dest[destPos++] = (byte)(distance >>> 8);
+		if (matchLen >= 15)
+			destPos = writeLength(matchLen - 15, dest, destPos);
+		return destPos;
+	}
+
+}
\ No newline at end of file
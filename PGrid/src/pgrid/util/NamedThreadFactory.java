@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) 2003 Roman Schmidt,
+ *                    All Rights Reserved.
+ *
+ * This file is part of the pgrid.utils package.
+ * pgrid.utils homepage: http://lsirpeople.epfl.ch/pgrid.helper/pgrid.utils
+ *
+ * The pgrid.utils package is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ *
+ * This package is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this package; see the file gpl.txt.
+ * If not you can find the GPL at http://www.gnu.org/copyleft/gpl.html
+ */
+
+package pgrid.util;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This class creates the daemon threads of thread pools. The threads are named by the given prefix and a running
+ * number, so they can be told apart in thread dumps.
+ *
+ * @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
+ * @version 1.0.0
+ */
+public class NamedThreadFactory implements ThreadFactory {
+
+	/**
+	 * The number of created threads.
+	 */
+	private int mCount = 0;
+
+	/**
+	 * The prefix of the thread names.
+	 */
+	private String mPrefix = null;
+
+	/**
+	 * Creates a new thread factory.
+	 *
+	 * @param prefix the prefix of the thread names.
+	 */
+	public NamedThreadFactory(String prefix) {
+		mPrefix = prefix;
+	}
+
+	/**
+	 * Creates a new daemon thread running the given task.
+	 *
+	 * @param task the task.
+	 * @return the thread.
+	 */
+	public Thread newThread(Runnable task) {
+		int count;
+		synchronized (this) {
+			count = ++mCount;
+		}
+		Thread t = new Thread(task, mPrefix + " " + count);
+		t.setDaemon(true);
+		return t;
+	}
+
+}
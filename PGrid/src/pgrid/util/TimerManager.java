@@ -1,29 +1,83 @@
 package pgrid.util;
 
+import pgrid.Constants;
 import pgrid.util.TimerListener;
 
-import java.util.TreeSet;
-import java.util.SortedSet;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Vector;
+import java.util.logging.Level;
 
 /**
  * This class is a timer manager. It use a single thread to manager all timers
+ * <p/>
+ * The timers are kept in a hierarchical timing wheel of four wheels with 256 slots each. A slot of the first wheel
+ * covers one tick, a slot of the upper wheels one turn of the wheel below. Timers are registered and cancelled in
+ * constant time, the timers of an upper wheel slot are moved to the lower wheels when these have turned around. The
+ * listeners are informed outside of the lock, so they can register and cancel timers themselves.
  *
  * @author <a href="mailto:Renault John <renault.john@epfl.ch>">Renault John</a>
  * @version 1.0.0
  */
 
 public class TimerManager {
+	/**
+	 * The resolution of the timers in ms
+	 */
+	public static final long TICK = 10;
+
+	/**
+	 * The number of bits of the slot index of a wheel
+	 */
+	private static final int WHEEL_BITS = 8;
+
+	/**
+	 * The number of slots of a wheel
+	 */
+	private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+
+	/**
+	 * The mask of the slot index of a wheel
+	 */
+	private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+	/**
+	 * The number of wheels
+	 */
+	private static final int WHEELS = 4;
+
+	/**
+	 * The maximal number of ticks until a timeout
+	 */
+	private static final long MAX_TICKS = (1L << (WHEEL_BITS * WHEELS)) - 1;
+
 	/**
 	 * Lock object
 	 */
 	private final Object mLock = new Object();
 
 	/**
-	 * A sorted list of timer listener
+	 * The wheels, each slot is the head of a circular list of timer elements
+	 */
+	private final TimerElement[][] mWheels = new TimerElement[WHEELS][WHEEL_SIZE];
+
+	/**
+	 * The number of registered timers
 	 */
-	private SortedSet mTimerListner;
+	private int mCount = 0;
+
+	/**
+	 * The time of tick 0 in ns
+	 */
+	private final long mStartTime = System.nanoTime();
+
+	/**
+	 * The next tick to process
+	 */
+	private long mTick = 0;
+
+	/**
+	 * The tick the timer thread waits for
+	 */
+	private long mWakeTick = Long.MAX_VALUE;
 
 	/**
 	 * The timer thread
@@ -41,13 +95,16 @@ public class TimerManager {
 	private static final TimerManager SHARED_INSTANCE = new TimerManager();
 
 	protected TimerManager() {
-		mTimerListner = Collections.synchronizedSortedSet(new TreeSet(new Comparator() {
-			public int compare(Object o1, Object o2) {
-				return (int)(((TimerElement)o1).mNextTimeout - ((TimerElement)o2).mNextTimeout);
+		for (int i = 0; i < WHEELS; i++) {
+			for (int j = 0; j < WHEEL_SIZE; j++) {
+				TimerElement head = new TimerElement(0, null, null, false);
+				head.mPrev = head;
+				head.mNext = head;
+				mWheels[i][j] = head;
 			}
-		}));
+		}
 
-		mTimerThread = new Thread(new TimerManager.Timer());
+		mTimerThread = new Thread(new TimerManager.Timer(), "Timer");
 		mTimerThread.setDaemon(true);
 		mTimerThread.start();
 	}
@@ -72,37 +129,168 @@ public class TimerManager {
 	 * @param id		User dependent ID. It could be null
 	 * @param listener  to inform
 	 * @param periodic	if true the timer will be reconducted automatically
+	 * @return the timer, which can be cancelled
 	 */
-	public void register(long timeout, Object id, TimerListener listener, boolean periodic) {
+	public TimerElement register(long timeout, Object id, TimerListener listener, boolean periodic) {
 		TimerElement te = new TimerElement(timeout, id, listener, periodic);
 		synchronized(mLock) {
-			//Add the new timer element
-			mTimerListner.add(te);
-			if (mTimerListner.first().equals(te)) {
-				// The new TE should be the next triggered element
-				mLock.notifyAll();
+			schedule(te);
+		}
+		return te;
+	}
+
+	/**
+	 * Returns the current tick.
+	 *
+	 * @return the current tick.
+	 */
+	private long currentTick() {
+		return (System.nanoTime() - mStartTime) / (TICK * 1000000);
+	}
+
+	/**
+	 * Adds a timer to the wheels, to be triggered after its timeout. The lock must be held.
+	 *
+	 * @param te the timer
+	 */
+	private void schedule(TimerElement te) {
+		// round up to trigger not before the timeout
+		long expires = (System.nanoTime() - mStartTime + te.mTimeout * 1000000 + TICK * 1000000 - 1) / (TICK * 1000000);
+		add(te, expires);
+		mCount++;
+		if (te.mExpires < mWakeTick) {
+			// the new timer should be triggered before the timer thread wakes up
+			mLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Links a timer into the slot of the wheel covering the given tick. The lock must be held.
+	 *
+	 * @param te      the timer
+	 * @param expires the tick to trigger the timer
+	 */
+	private void add(TimerElement te, long expires) {
+		if (expires < mTick)
+			expires = mTick;
+		else if (expires - mTick > MAX_TICKS)
+			expires = mTick + MAX_TICKS;
+		te.mExpires = expires;
+
+		long ticks = expires - mTick;
+		int wheel = 0;
+		while ((wheel < WHEELS - 1) && (ticks >= (1L << (WHEEL_BITS * (wheel + 1)))))
+			wheel++;
+		TimerElement head = mWheels[wheel][(int)((expires >>> (WHEEL_BITS * wheel)) & WHEEL_MASK)];
+
+		te.mPrev = head.mPrev;
+		te.mNext = head;
+		head.mPrev.mNext = te;
+		head.mPrev = te;
+	}
+
+	/**
+	 * Unlinks a timer from its slot. The lock must be held.
+	 *
+	 * @param te the timer
+	 */
+	private void remove(TimerElement te) {
+		te.mPrev.mNext = te.mNext;
+		te.mNext.mPrev = te.mPrev;
+		te.mPrev = null;
+		te.mNext = null;
+	}
+
+	/**
+	 * Processes the next tick: moves the timers of the upper wheels down if the lower wheels have turned around, and
+	 * collects the timers of the tick. The lock must be held.
+	 *
+	 * @param expired the collected timers
+	 */
+	private void tick(Vector expired) {
+		int index = (int)(mTick & WHEEL_MASK);
+		for (int wheel = 1; (index == 0) && (wheel < WHEELS); wheel++) {
+			index = (int)((mTick >>> (WHEEL_BITS * wheel)) & WHEEL_MASK);
+			TimerElement head = mWheels[wheel][index];
+			TimerElement te = head.mNext;
+			head.mPrev = head;
+			head.mNext = head;
+			while (te != head) {
+				TimerElement next = te.mNext;
+				add(te, te.mExpires);
+				te = next;
 			}
 		}
 
+		TimerElement head = mWheels[0][(int)(mTick & WHEEL_MASK)];
+		while (head.mNext != head) {
+			TimerElement te = head.mNext;
+			remove(te);
+			mCount--;
+			expired.add(te);
+		}
+		mTick++;
+	}
+
+	/**
+	 * Returns the next tick with timers to trigger or to move down, or <code>Long.MAX_VALUE</code> if no timers are
+	 * registered. The lock must be held.
+	 *
+	 * @return the next tick to process.
+	 */
+	private long nextTick() {
+		if (mCount == 0)
+			return Long.MAX_VALUE;
+		for (long tick = mTick; ; tick++) {
+			int index = (int)(tick & WHEEL_MASK);
+			if ((index == 0) && (tick > mTick))
+				return tick;
+			if (mWheels[0][index].mNext != mWheels[0][index])
+				return tick;
+		}
 	}
 
 	/**
 	 * a timer object
 	 */
-	class TimerElement {
-		public long mTimeout;
-		public long mNextTimeout;
-		public Object mID;
-		public pgrid.util.TimerListener mListener;
-		public boolean mPeriodic;
+	public class TimerElement {
+		private long mTimeout;
+		private long mExpires;
+		private Object mID;
+		private pgrid.util.TimerListener mListener;
+		private boolean mPeriodic;
+		private boolean mCancelled = false;
+		private TimerElement mPrev;
+		private TimerElement mNext;
 
 		public TimerElement(long timout, Object id, TimerListener listener, boolean periodic) {
 			mTimeout = timout;
-			mNextTimeout = mTimeout + System.currentTimeMillis();
 			mID = id;
 			mListener = listener;
 			mPeriodic = periodic;
 		}
+
+		/**
+		 * Cancels the timer. The listener is not informed anymore, unless it is informed at the moment.
+		 */
+		public void cancel() {
+			synchronized(mLock) {
+				mCancelled = true;
+				if (mPrev != null) {
+					remove(this);
+					mCount--;
+				}
+			}
+		}
+
+		/**
+		 * Returns the user dependent ID.
+		 *
+		 * @return the ID.
+		 */
+		public Object getID() {
+			return mID;
+		}
 	}
 
 	/**
@@ -123,32 +311,51 @@ public class TimerManager {
 		 */
 		public void run() {
 			try {
-				long currentTime;
-				long tmp;
+				Vector expired = new Vector();
 				TimerElement te;
 
 				while (true) {
 					synchronized(mLock) {
-						if (mTimerListner.isEmpty()) mLock.wait();
-						else {
-							tmp = ((TimerElement)mTimerListner.first()).mNextTimeout-System.currentTimeMillis();
-							if (tmp > 0)
-								mLock.wait(tmp);
+						// collect the timers up to the current tick
+						long currentTick = currentTick();
+						while (mTick <= currentTick)
+							tick(expired);
+
+						if (expired.isEmpty()) {
+							mWakeTick = nextTick();
+							if (mWakeTick == Long.MAX_VALUE) {
+								mLock.wait();
+							} else {
+								long wait = (mStartTime + mWakeTick * TICK * 1000000 - System.nanoTime() + 999999) / 1000000;
+								if (wait > 0)
+									mLock.wait(wait);
+							}
+							mWakeTick = Long.MAX_VALUE;
+							continue;
 						}
+					}
 
-						// trigger function that should be triggered
-						currentTime = System.currentTimeMillis();
-						while (!mTimerListner.isEmpty() && (te = ((TimerElement)mTimerListner.first())).mNextTimeout <= currentTime) {
-							mTimerListner.remove(te);
+					// trigger function that should be triggered
+					for (int i = 0; i < expired.size(); i++) {
+						te = (TimerElement)expired.get(i);
+						synchronized(mLock) {
+							if (te.mCancelled)
+								continue;
+						}
+						try {
 							te.mListener.timerTriggered(te.mID);
+						} catch (RuntimeException e) {
+							Constants.LOGGER.log(Level.WARNING, "Error in timer listener", e);
+						}
 
-							if (te.mPeriodic) {
-								te.mNextTimeout = currentTime+te.mTimeout;
-								mTimerListner.add(te);
+						if (te.mPeriodic) {
+							synchronized(mLock) {
+								if (!te.mCancelled)
+									schedule(te);
 							}
 						}
 					}
-
+					expired.clear();
 				}
 			} catch (InterruptedException e) {
 				e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
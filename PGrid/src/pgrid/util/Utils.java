@@ -109,23 +109,11 @@ public class Utils {
 	 * @return the common prefix string.
 	 */
 	public static String commonPrefix(String str1, String str2) {
-		if ((str1.length() == 0) || (str2.length() == 0))
-			return "";
-		String prefix = "";
-		int length;
-		if (str1.length() < str2.length()) {
-			length = str1.length();
-		} else {
-			length = str2.length();
-		}
-		for (int i = 1; i <= length; i++) {
-			if (str1.substring(0, i).equals(str2.substring(0, i))) {
-				prefix = str1.substring(0, i);
-			} else {
-				break;
-			}
-		}
-		return prefix;
+		int length = Math.min(str1.length(), str2.length());
+		int i = 0;
+		while ((i < length) && (str1.charAt(i) == str2.charAt(i)))
+			i++;
+		return str1.substring(0, i);
 	}
 
 	/**
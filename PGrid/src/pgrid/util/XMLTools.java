@@ -46,4 +46,32 @@ public class XMLTools {
 		xmlString = xmlString.replaceAll("\"", "&quot;");
 		return xmlString;
 	}
+
+	/**
+	 * Returns the value of an attribute of a single XML start or empty element tag, e.g., the leading part of a
+	 * message header, without using a XML parser. The entities produced by {@link #xmlCoding(String)} are decoded.
+	 *
+	 * @param element the element tag.
+	 * @param name    the attribute name.
+	 * @return the attribute value, or <code>null</code> if the element has no such attribute.
+	 */
+	public static String getAttribute(String element, String name) {
+		String key = " " + name + "=\"";
+		int start = element.indexOf(key);
+		if (start < 0)
+			return null;
+		start += key.length();
+		int end = element.indexOf('"', start);
+		if (end < 0)
+			return null;
+		String value = element.substring(start, end);
+		if (value.indexOf('&') < 0)
+			return value;
+		value = value.replaceAll("&quot;", "\"");
+		value = value.replaceAll("&apos;", "'");
+		value = value.replaceAll("&gt;", ">");
+		value = value.replaceAll("&lt;", "<");
+		value = value.replaceAll("&amp;", "&");
+		return value;
+	}
 }
@@ -57,6 +57,15 @@ public class GUID implements Comparable, Serializable {
 		theId = generate();
 	}
 
+	/**
+	 * Constructs an unique ID object from the given bytes.
+	 *
+	 * @param id the bytes of the unique ID.
+	 */
+	public GUID(byte[] id) {
+		theId = id;
+	}
+
 	/**
 	 * Constructs an unique ID object from the given string.
 	 * This constructor should only be used to create GUIDs, which were never used by other objects again.
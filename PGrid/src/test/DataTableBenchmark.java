@@ -0,0 +1,151 @@
+package test;
+
+import p2p.basic.P2P;
+import p2p.storage.Type;
+import pgrid.Constants;
+import pgrid.DataItem;
+import pgrid.PGridHost;
+import pgrid.PGridKey;
+import pgrid.core.storage.DataTable;
+import pgrid.core.storage.StorageManager;
+import pgrid.interfaces.basic.PGridP2P;
+import pgrid.interfaces.basic.PGridP2PFactory;
+import pgrid.interfaces.storage.PGridStorageFactory;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Vector;
+
+/**
+ * Copyright (c) 2002 The P-Grid Team,
+ * All Rights Reserved.
+ * <p/>
+ * This file is part of the P-Grid package.
+ * P-Grid homepage: http://www.p-grid.org/
+ * <p/>
+ * The P-Grid package is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ * <p/>
+ * This package is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU General Public License
+ * along with this program; see the file LICENSE.
+ * If not you can find the GPL at http://www.gnu.org/copyleft/gpl.html
+ */
+
+/**
+ * Measures the insert rate of <code>DataTable.addAll</code> and the rate the inserted data items are read
+ * again for growing numbers of data items.
+ * <p/>
+ * Usage: <code>java test.DataTableBenchmark [DB|Memory] [batch size] [items ...]</code>, the default is
+ * the DB backend with the default batch size and 10000, 100000 and 1000000 items. Every run inserts the items
+ * into a fresh data table of an own host, the items are spread over a few owning hosts. The data is stored
+ * in a separate directory which is deleted on start. Large runs need a large heap (-Xmx1g for 1000000 items).
+ */
+public class DataTableBenchmark {
+
+	/**
+	 * The data directory used by the benchmark.
+	 */
+	private static final String DATA_DIR = "benchmark" + File.separator;
+
+	/**
+	 * The number of hosts owning the inserted data items.
+	 */
+	private static final int OWNERS = 16;
+
+	/**
+	 * The default numbers of inserted data items.
+	 */
+	private static final int[] DEFAULT_ITEMS = {10000, 100000, 1000000};
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param args the backend, the batch size and the numbers of data items.
+	 * @throws Exception if the benchmark fails.
+	 */
+	public static void main(String[] args) throws Exception {
+		String backend = (args.length > 0 ? args[0] : StorageManager.DB_BACKEND);
+		int[] items = DEFAULT_ITEMS;
+		if (args.length > 2) {
+			items = new int[args.length - 2];
+			for (int i = 2; i < args.length; i++)
+				items[i - 2] = Integer.parseInt(args[i]);
+		}
+
+		File dir = new File(DATA_DIR);
+		deleteAll(dir);
+		dir.mkdirs();
+		Constants.DATA_DIR = DATA_DIR;
+
+		Properties properties = new Properties();
+		properties.setProperty(PGridP2P.PROP_DEBUG_LEVEL, "0");
+		properties.setProperty(pgrid.Properties.DATA_TABLE_BACKEND, backend);
+		if (args.length > 1)
+			properties.setProperty(pgrid.Properties.DATA_TABLE_BATCH_SIZE, args[1]);
+		P2P p2p = PGridP2PFactory.sharedInstance().createP2P(properties);
+		PGridStorageFactory storageFactory = PGridStorageFactory.sharedInstance();
+		storageFactory.createStorage(p2p);
+		Type type = storageFactory.createType("SimpleType");
+		SimpleTypeHandler handler = new SimpleTypeHandler(type);
+		storageFactory.registerTypeHandler(type, handler);
+
+		InetAddress address = InetAddress.getLocalHost();
+		PGridHost[] owners = new PGridHost[OWNERS];
+		for (int i = 0; i < OWNERS; i++)
+			owners[i] = PGridHost.getHost(new pgrid.GUID(), address, 1806 + i);
+
+		System.out.println("backend: " + backend + ", batch size: " + ((PGridP2P)p2p).propertyString(pgrid.Properties.DATA_TABLE_BATCH_SIZE));
+		Random rnd = new Random(1806);
+		for (int i = 0; i < items.length; i++) {
+			Vector dataItems = new Vector(items[i]);
+			for (int j = 0; j < items[i]; j++) {
+				String key = Integer.toBinaryString(rnd.nextInt() | 0x80000000).substring(1, 17);
+				dataItems.add(handler.createDataItem(new pgrid.GUID(), new PGridKey(key), owners[j % OWNERS], "item" + j));
+			}
+
+			DataTable table = StorageManager.getInstance().createDataTable(PGridHost.getHost(new pgrid.GUID(), address, 1805));
+			long start = System.currentTimeMillis();
+			table.addAll(dataItems);
+			long time = Math.max(1, System.currentTimeMillis() - start);
+
+			int count = table.count();
+			System.out.println(items[i] + " items: " + time + " ms, " + (items[i] * 1000L / time) + " items/s" + (count != items[i] ? " (only " + count + " stored)" : ""));
+
+			start = System.currentTimeMillis();
+			int read = 0;
+			for (Iterator it = table.dataItemIterator(); it.hasNext(); it.next())
+				read++;
+			time = Math.max(1, System.currentTimeMillis() - start);
+			System.out.println(read + " items read: " + time + " ms, " + (read * 1000L / time) + " items/s");
+
+			table.delete();
+			StorageManager.getInstance().compactDB();
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Deletes the given file or directory with all its content.
+	 *
+	 * @param file the file or directory.
+	 */
+	private static void deleteAll(File file) {
+		File[] files = file.listFiles();
+		if (files != null) {
+			for (int i = 0; i < files.length; i++)
+				deleteAll(files[i]);
+		}
+		file.delete();
+	}
+
+}
@@ -0,0 +1,232 @@
+package test;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import p2p.basic.P2P;
+import p2p.storage.Type;
+import pgrid.Constants;
+import pgrid.PGridHost;
+import pgrid.PGridKey;
+import pgrid.core.LocalRoutingTable;
+import pgrid.core.storage.Signature;
+import pgrid.core.storage.StorageManager;
+import pgrid.interfaces.basic.PGridP2P;
+import pgrid.interfaces.basic.PGridP2PFactory;
+import pgrid.interfaces.storage.PGridStorageFactory;
+import pgrid.network.protocol.BinaryCodec;
+import pgrid.network.protocol.BinaryMessage;
+import pgrid.network.protocol.BinaryWriter;
+import pgrid.network.protocol.ExchangeMessage;
+import pgrid.network.protocol.GenericMessage;
+import pgrid.network.protocol.MessageHeader;
+import pgrid.network.protocol.QueryMessage;
+import pgrid.network.protocol.QueryReplyMessage;
+import pgrid.util.Compression;
+
+import javax.xml.parsers.SAXParserFactory;
+import java.io.File;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Vector;
+
+/**
+ * Copyright (c) 2002 The P-Grid Team,
+ * All Rights Reserved.
+ * <p/>
+ * This file is part of the P-Grid package.
+ * P-Grid homepage: http://www.p-grid.org/
+ * <p/>
+ * The P-Grid package is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License (GPL) as
+ * published by the Free Software Foundation; either version 2 of
+ * the License, or (at your option) any later version.
+ * <p/>
+ * This package is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * <p/>
+ * You should have received a copy of the GNU General Public License
+ * along with this program; see the file LICENSE.
+ * If not you can find the GPL at http://www.gnu.org/copyleft/gpl.html
+ */
+
+/**
+ * Compares the XML and the binary message format by the message size and the time to encode and decode a
+ * message, with and without compression.
+ * <p/>
+ * Usage: <code>java test.ProtocolBenchmark [iterations] [items]</code>, the default is 2000 iterations and
+ * messages with 100 data items. The XML format is measured as written by <code>getBytes</code> and parsed by
+ * a SAX parser, the binary format as written and read by {@link BinaryCodec}. The data is stored in a
+ * separate directory which is deleted on start.
+ */
+public class ProtocolBenchmark {
+
+	/**
+	 * The data directory used by the benchmark.
+	 */
+	private static final String DATA_DIR = "benchmark" + File.separator;
+
+	/**
+	 * The default number of iterations.
+	 */
+	private static final int DEFAULT_ITERATIONS = 2000;
+
+	/**
+	 * The default number of data items of a message.
+	 */
+	private static final int DEFAULT_ITEMS = 100;
+
+	/**
+	 * The SAX parser for XML messages.
+	 */
+	private static XMLReader mParser = null;
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param args the number of iterations and of data items.
+	 * @throws Exception if the benchmark fails.
+	 */
+	public static void main(String[] args) throws Exception {
+		int iterations = (args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS);
+		int items = (args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITEMS);
+
+		File dir = new File(DATA_DIR);
+		deleteAll(dir);
+		dir.mkdirs();
+		Constants.DATA_DIR = DATA_DIR;
+
+		// decoded exchange messages create a data table each
+		Properties properties = new Properties();
+		properties.setProperty(PGridP2P.PROP_DEBUG_LEVEL, "0");
+		properties.setProperty(pgrid.Properties.DATA_TABLE_BACKEND, StorageManager.MEMORY_BACKEND);
+		P2P p2p = PGridP2PFactory.sharedInstance().createP2P(properties);
+		PGridStorageFactory storageFactory = PGridStorageFactory.sharedInstance();
+		storageFactory.createStorage(p2p);
+		Type type = storageFactory.createType("SimpleType");
+		SimpleTypeHandler handler = new SimpleTypeHandler(type);
+		storageFactory.registerTypeHandler(type, handler);
+		mParser = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+
+		PGridP2P pgrid = (PGridP2P)p2p;
+		PGridHost localHost = pgrid.getLocalHost();
+		localHost.setPath("01101");
+		InetAddress address = InetAddress.getLocalHost();
+		LocalRoutingTable routingTable = pgrid.getRoutingTable();
+		routingTable.setLevels(localHost.getPath().length() - 1);
+		for (int i = 0; i < localHost.getPath().length(); i++) {
+			for (int j = 0; j < 4; j++) {
+				PGridHost host = PGridHost.getHost(new pgrid.GUID(), address, 1806 + i * 4 + j);
+				host.setPath(localHost.getPath().substring(0, i) + (localHost.getPath().charAt(i) == '0' ? "1" : "0"));
+				routingTable.addLevel(i, host);
+			}
+		}
+
+		Random rnd = new Random(1806);
+		Vector dataItems = new Vector(items);
+		for (int i = 0; i < items; i++) {
+			String key = Integer.toBinaryString(rnd.nextInt() | 0x80000000).substring(1, 17);
+			dataItems.add(handler.createDataItem(new pgrid.GUID(), new PGridKey(key), localHost, "item" + i));
+		}
+
+		System.out.println(iterations + " iterations, " + items + " data items");
+		run("Generic", new GenericMessage(new PGridKey("0110"), "benchmark".getBytes("UTF-8")), iterations);
+		run("Query", new QueryMessage(new pgrid.GUID(), type, "item", new PGridKey("0110"), 0, 0, localHost, 0, null), iterations);
+		run("QueryReply", new QueryReplyMessage(new pgrid.GUID(), 0, dataItems), iterations);
+		run("Exchange", new ExchangeMessage(new pgrid.GUID(), localHost, 0, 2, 0, 1.0, routingTable, dataItems, new Signature(1, 4)), iterations);
+		System.exit(0);
+	}
+
+	/**
+	 * Measures a message in both formats and prints the results.
+	 *
+	 * @param name       the printed name of the message.
+	 * @param msg        the message.
+	 * @param iterations the number of iterations.
+	 * @throws Exception if the message cannot be encoded or decoded.
+	 */
+	private static void run(String name, BinaryMessage msg, int iterations) throws Exception {
+		msg.getHeader().setHost(PGridP2P.sharedInstance().getLocalHost());
+		byte[] xml = msg.getBytes();
+		byte[] xmlCompressed = Compression.compress(xml, 0, xml.length);
+		BinaryWriter out = new BinaryWriter();
+		BinaryCodec.encode(msg, out, false);
+		int binary = out.size();
+		out = new BinaryWriter();
+		BinaryCodec.encode(msg, out, true);
+		int binaryCompressed = out.size();
+		System.out.println(name + ": XML " + xml.length + " bytes (" + xmlCompressed.length + " compressed), binary "
+				+ binary + " bytes (" + binaryCompressed + " compressed)");
+
+		// warm up
+		for (int i = 0; i < iterations / 4; i++) {
+			xmlRoundTrip(msg, false);
+			binaryRoundTrip(msg, false);
+		}
+		for (int c = 0; c < 2; c++) {
+			boolean compress = (c == 1);
+			long start = System.currentTimeMillis();
+			for (int i = 0; i < iterations; i++)
+				xmlRoundTrip(msg, compress);
+			long xmlTime = Math.max(1, System.currentTimeMillis() - start);
+			start = System.currentTimeMillis();
+			for (int i = 0; i < iterations; i++)
+				binaryRoundTrip(msg, compress);
+			long binaryTime = Math.max(1, System.currentTimeMillis() - start);
+			System.out.println("  " + (compress ? "compressed" : "plain") + ": XML " + (xmlTime * 1000 / iterations) + " us/msg, binary "
+					+ (binaryTime * 1000 / iterations) + " us/msg (" + (xmlTime * 10 / binaryTime) / 10.0 + "x)");
+		}
+	}
+
+	/**
+	 * Writes a message as XML and parses it again like <code>PGridReader</code> does.
+	 *
+	 * @param msg      the message.
+	 * @param compress if the message is compressed.
+	 * @throws Exception if the message cannot be parsed.
+	 */
+	private static void xmlRoundTrip(BinaryMessage msg, boolean compress) throws Exception {
+		byte[] bytes = msg.getBytes();
+		if (compress) {
+			byte[] compressed = Compression.compress(bytes, 0, bytes.length);
+			bytes = Compression.decompress(compressed, 0, compressed.length);
+		}
+		String content = new String(bytes, "UTF-8").trim();
+		Object recvMsg = msg.getClass().getConstructor(new Class[] {MessageHeader.class}).newInstance(new Object[] {msg.getHeader()});
+		mParser.setProperty("http://xml.org/sax/properties/lexical-handler", recvMsg);
+		mParser.setContentHandler((ContentHandler)recvMsg);
+		mParser.parse(new InputSource(new StringReader(content)));
+	}
+
+	/**
+	 * Writes a message as binary frame and reads it again.
+	 *
+	 * @param msg      the message.
+	 * @param compress if the message is compressed.
+	 * @throws Exception if the message cannot be read.
+	 */
+	private static void binaryRoundTrip(BinaryMessage msg, boolean compress) throws Exception {
+		BinaryWriter out = new BinaryWriter();
+		BinaryCodec.encode(msg, out, compress);
+		BinaryCodec.decode(out.getBuffer(), 0, out.size());
+	}
+
+	/**
+	 * Deletes the given file or directory with all its content.
+	 *
+	 * @param file the file or directory.
+	 */
+	private static void deleteAll(File file) {
+		File[] files = file.listFiles();
+		if (files != null) {
+			for (int i = 0; i < files.length; i++)
+				deleteAll(files[i]);
+		}
+		file.delete();
+	}
+
+}
@@ -30,18 +30,23 @@ import p2p.basic.GUID;
 import p2p.basic.Key;
 import p2p.basic.Peer;
 import p2p.storage.Type;
+import pgrid.BinaryDataItem;
 import pgrid.PGridKey;
 import pgrid.XMLDataItem;
 import pgrid.core.storage.StorageManager;
+import pgrid.network.protocol.BinaryReader;
+import pgrid.network.protocol.BinaryWriter;
 import pgrid.network.protocol.XMLPGridHost;
 
+import java.io.IOException;
+
 /**
  * This class represents a shared Gridella file.
  *
  * @author <a href="mailto:Roman Schmidt <Roman.Schmidt@epfl.ch>">Roman Schmidt</a>
  * @version 1.0.0
  */
-public class XMLSimpleDataItem extends test.SimpleDataItem implements XMLDataItem {
+public class XMLSimpleDataItem extends test.SimpleDataItem implements XMLDataItem, BinaryDataItem {
 
 	/**
 	 * A temp string used during parsing a data item.
@@ -113,6 +118,36 @@ public class XMLSimpleDataItem extends test.SimpleDataItem implements XMLDataIte
 		}
 	}
 
+	/**
+	 * Reads the values of this data item from a binary message.
+	 *
+	 * @param in the binary reader.
+	 * @throws IOException if the data item is malformed.
+	 */
+	public void decode(BinaryReader in) throws IOException {
+		mGUID = in.readGUID();
+		mKey = in.readKey();
+		mHost = in.readHost(false);
+		String data = in.readString();
+		if (data != null) {
+			mData = data;
+			decode();
+		}
+	}
+
+	/**
+	 * Writes the values of this data item for a binary message.
+	 *
+	 * @param out       the binary writer.
+	 * @param signature whether or not to include the signature.
+	 */
+	public void encode(BinaryWriter out, boolean signature) {
+		out.writeGUID(mGUID);
+		out.writeKey(mKey);
+		out.writeHost(mHost, false);
+		out.writeString(((mData != null) && (mData.trim().length() > 0)) ? mData : null);
+	}
+
 	/**
 	 * The SAX parser will invoke this method at the end of every element in the XML document; there will be a
 	 * corresponding startElement event for every endElement event (even when the element is empty).